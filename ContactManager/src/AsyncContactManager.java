@@ -0,0 +1,388 @@
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous contact manager
+ *
+ * A facade over a contact manager for asynchronous callers: each {@link ContactManager ContactManager} method returns
+ * a <code>CompletableFuture</code> of its result at once, rather than blocking, and the future is completed with the
+ * result, or with the exception the method throws.
+ *
+ * Writes are run one at a time, in the order they were called, on a single writer thread. Reads run concurrently on
+ * a read executor against a read-only view of the contact manager, see {@link ContactManager#snapshot() snapshot}, so
+ * they take no lock while they run, and readers do not hold up the writer. The view is taken on the writer thread
+ * after each write, before the write's future completes, and published to readers through a volatile field, so a
+ * read called once a write's future has completed sees that write, and readers never call the contact manager. A
+ * read that finds a meeting of the view has passed since, see {@link ContactManagerSnapshot#getValidUntil()
+ * getValidUntil}, waits for a new view to be taken on the writer thread. Changes made to the contact manager other
+ * than through this facade are seen once the next write through it is done. A contact manager that cannot take a
+ * view, or fails to after a write, is read directly instead, until a view is next taken.
+ *
+ * The read executor runs each read on a virtual thread where the runtime has them, so that many thousands of
+ * callers can be waiting on reads without a platform thread each. Otherwise reads are queued for a pool of one
+ * thread per processor. A flush is started on the writer thread once earlier writes are done, and written in the
+ * background, see {@link ContactManagerImpl#flushAsync() flushAsync}, so that it does not hold up later writes.
+ *
+ * The executors are stopped by {@link #close() close}.
+ */
+public class AsyncContactManager implements AutoCloseable {
+
+    /* V A R I A B L E S */
+
+    private final ContactManager delegate;          // contact manager called
+    private final ExecutorService readExecutor;     // threads for reads
+    private final ExecutorService writeExecutor;    // single thread for writes, in order
+    private volatile ContactManager view;           // view taken after the last write, or null to read the delegate
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>AsyncContactManager()</code> constructor
+     *
+     * @param delegate contact manager to call, which must be safe to call from several threads
+     */
+    public AsyncContactManager(ContactManager delegate) {
+
+        this.delegate = delegate;
+        refreshView(null);
+        readExecutor = VirtualThreads.newExecutor("async-contact-manager-reader",
+                Runtime.getRuntime().availableProcessors());
+        writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "async-contact-manager-writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * @see ContactManager#addFutureMeeting(Set, Calendar)
+     */
+    public CompletableFuture<Integer> addFutureMeeting(final Set<Contact> contacts, final Calendar date) {
+
+        return write(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return delegate.addFutureMeeting(contacts, date);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getPastMeeting(int)
+     */
+    public CompletableFuture<PastMeeting> getPastMeeting(final int id) {
+
+        return read(new Function<ContactManager, PastMeeting>() {
+            @Override
+            public PastMeeting apply(ContactManager view) {
+                return view.getPastMeeting(id);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getFutureMeeting(int)
+     */
+    public CompletableFuture<FutureMeeting> getFutureMeeting(final int id) {
+
+        return read(new Function<ContactManager, FutureMeeting>() {
+            @Override
+            public FutureMeeting apply(ContactManager view) {
+                return view.getFutureMeeting(id);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getMeeting(int)
+     */
+    public CompletableFuture<Meeting> getMeeting(final int id) {
+
+        return read(new Function<ContactManager, Meeting>() {
+            @Override
+            public Meeting apply(ContactManager view) {
+                return view.getMeeting(id);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getFutureMeetingList(Contact)
+     */
+    public CompletableFuture<List<Meeting>> getFutureMeetingList(final Contact contact) {
+
+        return read(new Function<ContactManager, List<Meeting>>() {
+            @Override
+            public List<Meeting> apply(ContactManager view) {
+                return view.getFutureMeetingList(contact);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getFutureMeetingList(Calendar)
+     */
+    public CompletableFuture<List<Meeting>> getFutureMeetingList(final Calendar date) {
+
+        return read(new Function<ContactManager, List<Meeting>>() {
+            @Override
+            public List<Meeting> apply(ContactManager view) {
+                return view.getFutureMeetingList(date);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getPastMeetingList(Contact)
+     */
+    public CompletableFuture<List<PastMeeting>> getPastMeetingList(final Contact contact) {
+
+        return read(new Function<ContactManager, List<PastMeeting>>() {
+            @Override
+            public List<PastMeeting> apply(ContactManager view) {
+                return view.getPastMeetingList(contact);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#addNewPastMeeting(Set, Calendar, String)
+     */
+    public CompletableFuture<Void> addNewPastMeeting(final Set<Contact> contacts, final Calendar date,
+                                                     final String text) {
+
+        return write(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                delegate.addNewPastMeeting(contacts, date, text);
+                return null;
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#addMeetingNotes(int, String)
+     */
+    public CompletableFuture<Void> addMeetingNotes(final int id, final String text) {
+
+        return write(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                delegate.addMeetingNotes(id, text);
+                return null;
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#addNewContact(String, String)
+     */
+    public CompletableFuture<Void> addNewContact(final String name, final String notes) {
+
+        return write(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                delegate.addNewContact(name, notes);
+                return null;
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getContacts(int...)
+     */
+    public CompletableFuture<Set<Contact>> getContacts(final int... ids) {
+
+        return read(new Function<ContactManager, Set<Contact>>() {
+            @Override
+            public Set<Contact> apply(ContactManager view) {
+                return view.getContacts(ids);
+            }
+        });
+
+    }
+
+    /**
+     * @see ContactManager#getContacts(String)
+     */
+    public CompletableFuture<Set<Contact>> getContacts(final String name) {
+
+        return read(new Function<ContactManager, Set<Contact>>() {
+            @Override
+            public Set<Contact> apply(ContactManager view) {
+                return view.getContacts(name);
+            }
+        });
+
+    }
+
+    /**
+     * <code>flush()</code>
+     * <p>
+     *     Saves the contact manager once the writes called before are done. A
+     *     {@link ContactManagerImpl ContactManagerImpl} is saved in the background, see
+     *     {@link ContactManagerImpl#flushAsync() flushAsync}, and other contact managers on the writer thread.
+     * </p>
+     *
+     * @return a future completed once the contact manager is saved
+     * @see ContactManager#flush()
+     */
+    public CompletableFuture<Void> flush() {
+
+        return write(new Supplier<CompletableFuture<Void>>() {
+            @Override
+            public CompletableFuture<Void> get() {
+                if (delegate instanceof ContactManagerImpl)
+                    return ((ContactManagerImpl) delegate).flushAsync();
+                delegate.flush();
+                return CompletableFuture.completedFuture(null);
+            }
+        }).thenCompose(Function.<CompletableFuture<Void>>identity());
+
+    }
+
+    /**
+     * <code>snapshot()</code>
+     *
+     * @return a future of a read-only view of the contact manager, taken once the writes called before are done
+     * @see ContactManager#snapshot()
+     */
+    public CompletableFuture<ContactManager> snapshot() {
+
+        return write(new Supplier<ContactManager>() {
+            @Override
+            public ContactManager get() {
+                return delegate.snapshot();
+            }
+        });
+
+    }
+
+    /**
+     * <code>close()</code>
+     * <p>
+     *     Stops the executors once the reads and writes called are done. The contact manager is not flushed.
+     * </p>
+     */
+    @Override
+    public void close() {
+
+        writeExecutor.shutdown();
+        readExecutor.shutdown();
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>read()</code>
+     * <p>
+     *     Runs a read on the read executor against the view published by the last write. If a meeting of the view
+     *     has passed since it was taken, the read is run once a new view is taken on the writer thread. If there is
+     *     no view, the contact manager is read directly.
+     * </p>
+     *
+     * @return a future of a read run on the read executor against a view of the contact manager
+     */
+    private <T> CompletableFuture<T> read(final Function<ContactManager, T> query) {
+
+        // view expired, so take a new view on the writer thread first
+        ContactManager current = view;
+        if (current instanceof ContactManagerSnapshot
+                && System.currentTimeMillis() > ((ContactManagerSnapshot) current).getValidUntil()) {
+            return write(new Supplier<Void>() {
+                @Override
+                public Void get() {
+                    return null;
+                }
+            }).thenApplyAsync(new Function<Void, T>() {
+                @Override
+                public T apply(Void unused) {
+                    ContactManager refreshed = view;
+                    return query.apply(refreshed != null ? refreshed : delegate);
+                }
+            }, readExecutor);
+        }
+
+        final ContactManager published = current != null ? current : delegate;
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                return query.apply(published);
+            }
+        }, readExecutor);
+
+    }
+
+    /**
+     * <code>write()</code>
+     * <p>
+     *     Runs a write on the writer thread, then takes a view of the contact manager for later reads, whether or not
+     *     the write succeeds. A failure to take the view does not fail the write, see internal method
+     *     {@link #refreshView(RuntimeException) refreshView}.
+     * </p>
+     *
+     * @return a future of a write run on the writer thread
+     */
+    private <T> CompletableFuture<T> write(final Supplier<T> update) {
+
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                T ret;
+                try {
+                    ret = update.get();
+                } catch (RuntimeException e) {
+                    refreshView(e);
+                    throw e;
+                }
+                refreshView(null);
+                return ret;
+            }
+        }, writeExecutor);
+
+    }
+
+    /**
+     * <code>refreshView()</code>
+     * <p>
+     *     Takes a view of the contact manager for later reads. If no view can be taken, readers read the contact
+     *     manager directly until the next view is taken, and the exception is added as suppressed to that of the
+     *     write, if the write failed, rather than replacing it.
+     * </p>
+     *
+     * @param failure exception thrown by the write, or null if none
+     */
+    private void refreshView(RuntimeException failure) {
+
+        try {
+            view = delegate.snapshot();
+        } catch (RuntimeException e) {
+            view = null;
+            if (failure != null)
+                failure.addSuppressed(e);
+        }
+
+    }
+
+}
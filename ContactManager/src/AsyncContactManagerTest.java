@@ -0,0 +1,160 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncContactManagerTest {
+
+    private File dir;
+    private AsyncContactManager async;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dir = File.createTempFile("contacts", "");
+        dir.delete();
+        async = new AsyncContactManager(new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        async.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testWritesInOrder() throws Exception {
+
+        List<CompletableFuture<Void>> added = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 100; i++)
+            added.add(async.addNewContact("Basil", "notes " + i));
+        added.get(99).join();
+
+        // every write called before is done
+        assertEquals(100, async.getContacts("Basil").join().size());
+
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+
+        async.addNewContact("Basil", "notes").join();
+        Contact c = async.getContacts("Basil").join().iterator().next();
+        Calendar future = Calendar.getInstance();
+        future.add(Calendar.DAY_OF_MONTH, 1);
+        int id = async.addFutureMeeting(Collections.singleton(c), future).join();
+
+        List<CompletableFuture<Meeting>> reads = new ArrayList<CompletableFuture<Meeting>>();
+        for (int i = 0; i < 1000; i++)
+            reads.add(async.getMeeting(id));
+        for (CompletableFuture<Meeting> read : reads)
+            assertEquals(id, read.join().getId());
+
+    }
+
+    @Test
+    public void testReadsUsePublishedView() throws Exception {
+
+        final AtomicInteger snapshots = new AtomicInteger();
+        AsyncContactManager counted = new AsyncContactManager(new ContactManagerImpl(
+                new ContactManagerOptions().setDirectory(dir)) {
+            @Override
+            public ContactManagerSnapshot snapshot() {
+                snapshots.incrementAndGet();
+                return super.snapshot();
+            }
+        });
+
+        // one view taken at the start, and one after each write
+        counted.addNewContact("Basil", "notes").join();
+        assertEquals(2, snapshots.get());
+
+        // reads see the write without taking a view of their own
+        for (int i = 0; i < 100; i++)
+            assertEquals(1, counted.getContacts("Basil").join().size());
+        assertEquals(2, snapshots.get());
+        counted.close();
+
+    }
+
+    @Test
+    public void testDelegateWithoutViews() throws Exception {
+
+        // a contact manager whose views cannot be taken
+        final ContactManager impl = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir));
+        ContactManager noViews = (ContactManager) Proxy.newProxyInstance(ContactManager.class.getClassLoader(),
+                new Class<?>[] {ContactManager.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("snapshot"))
+                            throw new UnsupportedOperationException();
+                        try {
+                            return method.invoke(impl, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        AsyncContactManager direct = new AsyncContactManager(noViews);
+
+        // reads go to the contact manager, and a failed write keeps its own exception
+        direct.addNewContact("Basil", "notes").join();
+        assertEquals(1, direct.getContacts("Basil").join().size());
+        try {
+            direct.addMeetingNotes(-1, "notes").join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            assertTrue(e.getCause().getSuppressed()[0] instanceof UnsupportedOperationException);
+        }
+        direct.close();
+
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+
+        try {
+            async.addMeetingNotes(-1, "notes").join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        try {
+            async.getContacts(-1).join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+
+        async.addNewContact("Basil", "notes");
+        async.flush().join();
+
+        ContactManager reloaded = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir));
+        assertEquals(1, reloaded.getContacts("Basil").size());
+
+    }
+
+}
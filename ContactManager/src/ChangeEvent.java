@@ -0,0 +1,166 @@
+/**
+ * Change event
+ *
+ * A change made to a contact manager, published to subscribers so that they can keep their own views of the contact
+ * manager up to date without polling it, see {@link ContactManagerImpl#getChangeEvents() getChangeEvents}. Each type
+ * of change is a subclass.
+ *
+ * Events are numbered in the order the changes were made, starting from 1. A subscriber that falls too far behind has
+ * events dropped, rather than holding up the contact manager, so a gap in the numbering tells the subscriber that its
+ * view is out of date and should be read again from the contact manager.
+ *
+ * Events are immutable: contacts are copied as they were when the change was made.
+ */
+public abstract class ChangeEvent {
+
+    /* V A R I A B L E S */
+
+    private final long sequence;                // number of the event, in order of change
+    private final long time;                    // time of the change in epoch milliseconds
+
+    /* I N N E R   C L A S S E S */
+
+    /**
+     * A contact was added
+     */
+    public static final class ContactAdded extends ChangeEvent {
+
+        private final Contact contact;          // copy of the contact added
+
+        public ContactAdded(long sequence, long time, Contact contact) {
+            super(sequence, time);
+            this.contact = new ContactImpl(contact.getId(), contact.getName(), contact.getNotes());
+        }
+
+        public Contact getContact() {
+            return contact;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " contact added " + contact.getId();
+        }
+
+    }
+
+    /**
+     * A future meeting was scheduled
+     */
+    public static final class MeetingScheduled extends ChangeEvent {
+
+        private final FutureMeeting meeting;    // meeting scheduled
+
+        public MeetingScheduled(long sequence, long time, FutureMeeting meeting) {
+            super(sequence, time);
+            this.meeting = meeting;
+        }
+
+        public FutureMeeting getMeeting() {
+            return meeting;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " meeting scheduled " + meeting.getId();
+        }
+
+    }
+
+    /**
+     * A past meeting was added, either directly or as an occurrence of a recurring meeting that has passed
+     */
+    public static final class PastMeetingAdded extends ChangeEvent {
+
+        private final PastMeeting meeting;      // meeting added
+
+        public PastMeetingAdded(long sequence, long time, PastMeeting meeting) {
+            super(sequence, time);
+            this.meeting = meeting;
+        }
+
+        public PastMeeting getMeeting() {
+            return meeting;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " past meeting added " + meeting.getId();
+        }
+
+    }
+
+    /**
+     * A future meeting has passed, and is now a past meeting of the same id
+     */
+    public static final class MeetingBecamePast extends ChangeEvent {
+
+        private final PastMeeting meeting;      // meeting as a past meeting
+
+        public MeetingBecamePast(long sequence, long time, PastMeeting meeting) {
+            super(sequence, time);
+            this.meeting = meeting;
+        }
+
+        public PastMeeting getMeeting() {
+            return meeting;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " meeting became past " + meeting.getId();
+        }
+
+    }
+
+    /**
+     * Notes were added to a past meeting
+     */
+    public static final class NotesAdded extends ChangeEvent {
+
+        private final PastMeeting meeting;      // meeting with the notes added
+        private final String notes;             // notes added
+
+        public NotesAdded(long sequence, long time, PastMeeting meeting, String notes) {
+            super(sequence, time);
+            this.meeting = meeting;
+            this.notes = notes;
+        }
+
+        public PastMeeting getMeeting() {
+            return meeting;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " notes added " + meeting.getId();
+        }
+
+    }
+
+    /* C O N S T R U C T O R S */
+
+    protected ChangeEvent(long sequence, long time) {
+        this.sequence = sequence;
+        this.time = time;
+    }
+
+    /* G E T T E R S */
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence;
+    }
+
+}
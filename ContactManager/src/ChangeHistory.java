@@ -0,0 +1,857 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Change history
+ *
+ * An append-only history of the changes made to a contact manager, from which the state of the contact manager as of
+ * any earlier time can be rebuilt, see {@link #viewAsOf(long) viewAsOf}. Five kinds of change are recorded, each with
+ * the time it was made:
+ *
+ *      contact:        a contact was added
+ *      contactnotes:   notes were added to a contact
+ *      meeting:        a past or future meeting was added
+ *      notes:          notes were added to a past meeting
+ *      recurring:      a series of recurring meetings was added
+ *
+ * A future meeting becoming past as time goes on is not a change, since it follows from the date of the meeting and
+ * the time asked about.
+ *
+ * Every {@link #CHECKPOINT_INTERVAL CHECKPOINT_INTERVAL} changes, a checkpoint of the state is taken. State as of a
+ * time is rebuilt from the latest checkpoint before it, plus the changes made after the checkpoint up to the time, so
+ * the number of changes replayed is bounded by the interval.
+ *
+ * The state is held in versioned lists and maps, see {@link VersionedList VersionedList} and
+ * {@link VersionedIntMap VersionedIntMap}, so a checkpoint is taken by freezing them in constant time, and shares with
+ * the state and with other checkpoints every node not changed since. The checkpoints together take memory in
+ * proportion to the changes, not to the state times the number of checkpoints. State rebuilt from a checkpoint starts
+ * from its frozen lists and maps, again in constant time, and copies only the nodes the replayed changes reach.
+ * Meetings that have passed by the time asked about are made past as they are read, so rebuilding state costs in
+ * proportion to the changes replayed, not to the state.
+ *
+ * The history is saved to file by appending each change as a line of tab separated fields. Tabs, new lines and
+ * backslashes in names and notes are escaped with a backslash.
+ *
+ *      1426804200000   contact         34  New Contact     Met 2015-03-23
+ *      1426804230000   contactnotes    34  Met 2015-03-23, and again
+ *      1426804260000   meeting         96  1427034600000   60  95,43   Agenda  past
+ *      1426804320000   notes           96  Agenda, and minutes
+ *      1426804380000   recurring       104 1426496400000   30  95  weekly  52
+ *
+ * A history is not thread-safe. The contact manager records changes and rebuilds state while it is locked. A view
+ * of rebuilt state holds only frozen lists and maps, so may then be read without the lock.
+ */
+public class ChangeHistory {
+
+    /* C O N S T A N T S */
+
+    public static final int CHECKPOINT_INTERVAL = 1024;     // changes between checkpoints
+
+    /* V A R I A B L E S */
+
+    private final List<Change> changes;             // every change, in time order
+    private final List<Checkpoint> checkpoints;     // checkpoints, in time order
+    private final State head;                       // state after every change
+    private final List<String> pending;             // lines of changes not yet saved to file
+    private long lastTime;                          // time of the latest change
+
+    /* E N U M S */
+
+    // kinds of change, as named in file
+    private enum ChangeType {
+        CONTACT ("contact"),
+        CONTACT_NOTES ("contactnotes"),
+        MEETING ("meeting"),
+        NOTES ("notes"),
+        RECURRING ("recurring");
+        private final String type;
+        private ChangeType(final String type) {
+            this.type = type;
+        }
+        @Override
+        public String toString() {
+            return type;
+        }
+        // the kind of change with the given name
+        public static ChangeType fromString(String type) {
+            for (ChangeType t : values()) {
+                if (t.type.equals(type))
+                    return t;
+            }
+            throw new IllegalArgumentException(type);
+        }
+    }
+
+    /* I N N E R   C L A S S E S */
+
+    // a change, with the fields used by its kind
+    private static class Change {
+        final long time;                // time the change was made
+        final ChangeType type;          // kind of change
+        final int id;                   // contact, meeting or first occurrence id
+        final String name;              // contact name
+        final String notes;             // contact or meeting notes
+        final long date;                // meeting or first occurrence date
+        final int duration;             // meeting duration in minutes
+        final int[] contactIds;         // meeting contacts
+        final boolean past;             // true if the meeting was added as a past meeting
+        final RecurringMeeting.Frequency frequency;     // series frequency
+        final int count;                // series number of occurrences
+
+        Change(long time, ChangeType type, int id, String name, String notes, long date, int duration,
+               int[] contactIds, boolean past, RecurringMeeting.Frequency frequency, int count) {
+            this.time = time;
+            this.type = type;
+            this.id = id;
+            this.name = name;
+            this.notes = notes;
+            this.date = date;
+            this.duration = duration;
+            this.contactIds = contactIds;
+            this.past = past;
+            this.frequency = frequency;
+            this.count = count;
+        }
+    }
+
+    // the state after a number of changes, frozen
+    private static class Checkpoint {
+        final long time;                                    // time of the last change included
+        final int changeCount;                              // number of changes included
+        final List<Contact> contacts;                       // contacts
+        final Map<Integer, Integer> contactRows;            // position of each contact by id
+        final List<Meeting> meetings;                       // meetings
+        final Map<Integer, Integer> meetingRows;            // position of each meeting by id
+        final List<RecurringMeeting> recurringMeetings;     // series
+
+        Checkpoint(long time, int changeCount, State state) {
+            this.time = time;
+            this.changeCount = changeCount;
+            contacts = state.contacts.freeze();
+            contactRows = state.contactRows.freeze();
+            meetings = state.meetings.freeze();
+            meetingRows = state.meetingRows.freeze();
+            recurringMeetings = state.recurringMeetings.freeze();
+        }
+    }
+
+    // state rebuilt from changes. Contacts, meetings and series are replaced rather than changed, since checkpoints
+    // share them.
+    private static class State {
+        final VersionedList<Contact> contacts;              // contacts, in the order added
+        final VersionedIntMap<Integer> contactRows;         // position of each contact by id
+        final VersionedList<Meeting> meetings;              // meetings, in the order added
+        final VersionedIntMap<Integer> meetingRows;         // position of each meeting by id
+        final VersionedList<RecurringMeeting> recurringMeetings;    // series, in the order added
+
+        // empty state
+        State() {
+            contacts = new VersionedList<Contact>();
+            contactRows = new VersionedIntMap<Integer>();
+            meetings = new VersionedList<Meeting>();
+            meetingRows = new VersionedIntMap<Integer>();
+            recurringMeetings = new VersionedList<RecurringMeeting>();
+        }
+
+        // state started from a checkpoint, sharing its nodes
+        State(Checkpoint checkpoint) {
+            contacts = new VersionedList<Contact>(checkpoint.contacts);
+            contactRows = new VersionedIntMap<Integer>(checkpoint.contactRows);
+            meetings = new VersionedList<Meeting>(checkpoint.meetings);
+            meetingRows = new VersionedIntMap<Integer>(checkpoint.meetingRows);
+            recurringMeetings = new VersionedList<RecurringMeeting>(checkpoint.recurringMeetings);
+        }
+
+        // the contact with the given id, or null if none
+        Contact contact(int id) {
+            Integer row = contactRows.get(id);
+            return row == null ? null : contacts.get(row);
+        }
+
+        // the meeting with the given id, or null if none
+        Meeting meeting(int id) {
+            Integer row = meetingRows.get(id);
+            return row == null ? null : meetings.get(row);
+        }
+
+        // adds or replaces a contact
+        void putContact(Contact c) {
+            Integer row = contactRows.get(c.getId());
+            if (row != null) {
+                contacts.set(row, c);
+            } else {
+                contacts.add(c);
+                contactRows.put(c.getId(), contacts.size() - 1);
+            }
+        }
+
+        // adds or replaces a meeting
+        void putMeeting(Meeting m) {
+            Integer row = meetingRows.get(m.getId());
+            if (row != null) {
+                meetings.set(row, m);
+            } else {
+                meetings.add(m);
+                meetingRows.put(m.getId(), meetings.size() - 1);
+            }
+        }
+    }
+
+    // the meetings of a frozen state as of a time. Meetings dated before the time are made past as they are read, and
+    // are followed by the occurrences of each series that passed by the time and were not yet made concrete.
+    private static final class MeetingsAsOf extends AbstractList<Meeting> implements RandomAccess {
+        private final List<Meeting> held;                   // meetings of the state
+        private final Map<Integer, Integer> rows;           // position of each meeting by id
+        private final List<RecurringMeeting> series;        // series of the state
+        private final long time;                            // time asked about
+        private volatile RecurringMeeting[] seriesAsOf;     // copies of the series as of the time, once found
+        private volatile int[] offsets;                     // position of each series' passed occurrences, once found
+
+        MeetingsAsOf(List<Meeting> held, Map<Integer, Integer> rows, List<RecurringMeeting> series, long time) {
+            this.held = held;
+            this.rows = rows;
+            this.series = series;
+            this.time = time;
+        }
+
+        @Override
+        public Meeting get(int index) {
+            if (index < held.size())
+                return asOf(held.get(index));
+            int passed = index - held.size();
+            int[] o = offsets();
+            if (index < 0 || passed >= o[series.size()])
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            // find the series by binary search over the offsets
+            int lo = 0, hi = series.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (o[mid] <= passed)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            RecurringMeeting r = series.get(lo);
+            return occurrence(r, r.getMaterialized() + passed - o[lo]);
+        }
+
+        @Override
+        public int size() {
+            return held.size() + offsets()[series.size()];
+        }
+
+        // the meeting with the given id as of the time, or null if none
+        Meeting byId(int id) {
+            Integer row = rows.get(id);
+            if (row != null)
+                return asOf(held.get(row));
+            RecurringMeeting[] copies = seriesAsOf();
+            for (int k = 0; k < copies.length; k++) {
+                int i = series.get(k).indexOf(id);
+                if (i >= series.get(k).getMaterialized() && i < copies[k].getMaterialized())
+                    return occurrence(copies[k], i);
+            }
+            return null;
+        }
+
+        // the series as of the time, with the occurrences passed by then made concrete
+        List<RecurringMeeting> recurringMeetings() {
+            return new AbstractList<RecurringMeeting>() {
+                @Override
+                public RecurringMeeting get(int index) {
+                    return seriesAsOf()[index];
+                }
+
+                @Override
+                public int size() {
+                    return series.size();
+                }
+            };
+        }
+
+        // a meeting as of the time
+        private Meeting asOf(Meeting m) {
+            return m instanceof FutureMeeting && m.getDate().getTimeInMillis() < time ? new PastMeetingImpl(m, "") : m;
+        }
+
+        // a passed occurrence of a series, with no notes
+        private static PastMeeting occurrence(RecurringMeeting r, int index) {
+            return new PastMeetingImpl(r.getFirstId() + index, r.getOccurrenceDate(index), r.getContacts(), "",
+                    r.getDuration());
+        }
+
+        // copies of the series, found on first use
+        private RecurringMeeting[] seriesAsOf() {
+            RecurringMeeting[] ret = seriesAsOf;
+            if (ret == null) {
+                ret = new RecurringMeeting[series.size()];
+                for (int k = 0; k < ret.length; k++) {
+                    RecurringMeeting r = series.get(k);
+                    ret[k] = new RecurringMeeting(r.getFirstId(), r.getStart(), r.getDuration(), r.getContacts(),
+                            r.getFrequency(), r.getCount(), r.firstFrom(time));
+                }
+                seriesAsOf = ret;
+            }
+            return ret;
+        }
+
+        // offsets of the passed occurrences of each series after the held meetings, and their total, found on first
+        // use
+        private int[] offsets() {
+            int[] ret = offsets;
+            if (ret == null) {
+                RecurringMeeting[] copies = seriesAsOf();
+                ret = new int[copies.length + 1];
+                for (int k = 0; k < copies.length; k++)
+                    ret[k + 1] = ret[k] + copies[k].getMaterialized() - series.get(k).getMaterialized();
+                offsets = ret;
+            }
+            return ret;
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public ChangeHistory() {
+        changes = new ArrayList<Change>();
+        checkpoints = new ArrayList<Checkpoint>();
+        head = new State();
+        pending = new ArrayList<String>();
+        lastTime = Long.MIN_VALUE;
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>load()</code>
+     * <p>
+     *     Reads a history from file, taking checkpoints as the changes are replayed
+     * </p>
+     *
+     * @param file history file
+     * @return history read from file
+     * @throws IOException if the file cannot be read
+     */
+    public static ChangeHistory load(File file) throws IOException {
+
+        ChangeHistory ret = new ChangeHistory();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty())
+                    ret.add(parse(line));
+            }
+        } finally {
+            in.close();
+        }
+
+        return ret;
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>recordContact()</code>
+     * <p>
+     *     Records that a contact was added
+     * </p>
+     *
+     * @param time time of the change in epoch milliseconds
+     * @param contact contact added
+     */
+    public void recordContact(long time, Contact contact) {
+        record(new Change(time(time), ChangeType.CONTACT, contact.getId(), contact.getName(), contact.getNotes(),
+                0, 0, null, false, null, 0));
+    }
+
+    /**
+     * <code>recordContactNotes()</code>
+     * <p>
+     *     Records that notes were added to a contact
+     * </p>
+     *
+     * @param time time of the change in epoch milliseconds
+     * @param id contact id
+     * @param notes the contact's notes after the change
+     */
+    public void recordContactNotes(long time, int id, String notes) {
+        record(new Change(time(time), ChangeType.CONTACT_NOTES, id, null, notes, 0, 0, null, false, null, 0));
+    }
+
+    /**
+     * <code>recordMeeting()</code>
+     * <p>
+     *     Records that a past or future meeting was added
+     * </p>
+     *
+     * @param time time of the change in epoch milliseconds
+     * @param meeting meeting added
+     */
+    public void recordMeeting(long time, Meeting meeting) {
+        boolean past = meeting instanceof PastMeeting;
+        record(new Change(time(time), ChangeType.MEETING, meeting.getId(), null,
+                past ? ((PastMeeting) meeting).getNotes() : "", meeting.getDate().getTimeInMillis(),
+                meeting.getDuration(), contactIds(meeting.getContacts()), past, null, 0));
+    }
+
+    /**
+     * <code>recordNotes()</code>
+     * <p>
+     *     Records that notes were added to a past meeting, or to an occurrence of a recurring meeting that has passed
+     * </p>
+     *
+     * @param time time of the change in epoch milliseconds
+     * @param id meeting id
+     * @param notes the meeting's notes after the change
+     */
+    public void recordNotes(long time, int id, String notes) {
+        record(new Change(time(time), ChangeType.NOTES, id, null, notes, 0, 0, null, true, null, 0));
+    }
+
+    /**
+     * <code>recordRecurringMeeting()</code>
+     * <p>
+     *     Records that a series of recurring meetings was added
+     * </p>
+     *
+     * @param time time of the change in epoch milliseconds
+     * @param series series added
+     */
+    public void recordRecurringMeeting(long time, RecurringMeeting series) {
+        record(new Change(time(time), ChangeType.RECURRING, series.getFirstId(), null, null,
+                series.getStart().getTimeInMillis(), series.getDuration(), contactIds(series.getContacts()), false,
+                series.getFrequency(), series.getCount()));
+    }
+
+    /**
+     * <code>viewAsOf()</code>
+     * <p>
+     *     Rebuilds the state as of the given time, from the latest checkpoint at or before the time plus the changes
+     *     made after the checkpoint up to and including the time. Meetings dated before the time are past meetings,
+     *     and occurrences of recurring meetings before the time are concrete past meetings, each made as it is read.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return read-only view of the state as of the time
+     */
+    public ContactManagerSnapshot viewAsOf(long time) {
+
+        // find the latest checkpoint at or before the time
+        int lo = 0, hi = checkpoints.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (checkpoints.get(mid).time <= time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        State state;
+        int from;
+        if (lo == 0) {
+            state = new State();
+            from = 0;
+        } else {
+            Checkpoint checkpoint = checkpoints.get(lo - 1);
+            state = new State(checkpoint);
+            from = checkpoint.changeCount;
+        }
+
+        // replay the changes after the checkpoint up to the time
+        for (int i = from; i < changes.size() && changes.get(i).time <= time; i++)
+            apply(state, changes.get(i));
+
+        // view the frozen state, with meetings passed by the time made past as they are read
+        Checkpoint frozen = new Checkpoint(time, countAsOf(time), state);
+        final MeetingsAsOf meetings = new MeetingsAsOf(frozen.meetings, frozen.meetingRows,
+                frozen.recurringMeetings, time);
+        Map<Integer, Meeting> meetingIndex = new AbstractMap<Integer, Meeting>() {
+
+            @Override
+            public Meeting get(Object key) {
+                return key instanceof Integer ? meetings.byId((Integer) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Map.Entry<Integer, Meeting>> entrySet() {
+                Map<Integer, Meeting> ret = new LinkedHashMap<Integer, Meeting>();
+                for (Meeting m : meetings)
+                    ret.put(m.getId(), m);
+                return Collections.unmodifiableSet(ret.entrySet());
+            }
+
+        };
+
+        return new ContactManagerSnapshot(frozen.changeCount, Long.MAX_VALUE,
+                new StoreSnapshot(0, frozen.contacts, meetings, meetings.recurringMeetings()),
+                VersionedList.index(frozen.contacts, frozen.contactRows), meetingIndex);
+
+    }
+
+    /**
+     * <code>asOf()</code>
+     *
+     * @param time time in epoch milliseconds
+     * @return snapshot of the state as of the time, see {@link #viewAsOf(long) viewAsOf}
+     */
+    public StoreSnapshot asOf(long time) {
+        return viewAsOf(time).getStoreSnapshot();
+    }
+
+    /**
+     * <code>drainPending()</code>
+     * <p>
+     *     Removes and returns the lines of the changes recorded since the last drain, to be appended to file
+     * </p>
+     *
+     * @return lines of changes, in order
+     */
+    public List<String> drainPending() {
+
+        List<String> ret = new ArrayList<String>(pending);
+        pending.clear();
+        return ret;
+
+    }
+
+    /**
+     * <code>append()</code>
+     * <p>
+     *     Appends lines of changes to a history file, creating it if necessary
+     * </p>
+     *
+     * @param file history file
+     * @param lines lines of changes, see {@link #drainPending() drainPending}
+     * @throws IOException if the file cannot be written
+     */
+    public static void append(File file, List<String> lines) throws IOException {
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                StandardCharsets.UTF_8));
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+
+    }
+
+    /**
+     * <code>countAsOf()</code>
+     *
+     * @param time time in epoch milliseconds
+     * @return number of changes made up to and including the given time
+     */
+    public int countAsOf(long time) {
+
+        int lo = 0, hi = changes.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (changes.get(mid).time <= time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+
+    }
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of changes recorded
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>record()</code>
+     * <p>
+     *     Adds a new change, and queues its line to be saved to file
+     * </p>
+     */
+    private void record(Change change) {
+        add(change);
+        pending.add(format(change));
+    }
+
+    /**
+     * <code>add()</code>
+     * <p>
+     *     Adds a change to the history, applying it to the head state and taking a checkpoint if one is due
+     * </p>
+     */
+    private void add(Change change) {
+
+        changes.add(change);
+        lastTime = Math.max(lastTime, change.time);
+        apply(head, change);
+
+        if (changes.size() % CHECKPOINT_INTERVAL == 0)
+            checkpoints.add(new Checkpoint(change.time, changes.size(), head));
+
+    }
+
+    /**
+     * <code>time()</code>
+     *
+     * @return the given time, or the time of the latest change if later, so that changes stay in time order
+     */
+    private long time(long time) {
+        return Math.max(time, lastTime);
+    }
+
+    /**
+     * <code>apply()</code>
+     * <p>
+     *     Applies a change to a state
+     * </p>
+     */
+    private static void apply(State state, Change change) {
+
+        switch (change.type) {
+
+            case CONTACT:
+                state.putContact(ContactImpl.readOnly(change.id, change.name, change.notes));
+                break;
+
+            case CONTACT_NOTES:
+                Contact c = state.contact(change.id);
+                if (c != null)
+                    state.putContact(ContactImpl.readOnly(change.id, c.getName(), change.notes));
+                break;
+
+            case MEETING:
+                Calendar date = Calendar.getInstance();
+                date.setTimeInMillis(change.date);
+                if (change.past)
+                    state.putMeeting(new PastMeetingImpl(change.id, date, contacts(state, change.contactIds),
+                            change.notes, change.duration));
+                else
+                    state.putMeeting(new FutureMeetingImpl(change.id, date, contacts(state, change.contactIds),
+                            change.duration));
+                break;
+
+            case NOTES:
+                Meeting m = state.meeting(change.id);
+                if (m == null) {
+                    // notes on a passed occurrence of a recurring meeting, made concrete first in a copy of the
+                    // series, since checkpoints share the series
+                    for (int i = 0; i < state.recurringMeetings.size(); i++) {
+                        RecurringMeeting r = state.recurringMeetings.get(i);
+                        if (r.indexOf(change.id) >= 0) {
+                            RecurringMeeting copy = new RecurringMeeting(r.getFirstId(), r.getStart(),
+                                    r.getDuration(), r.getContacts(), r.getFrequency(), r.getCount(),
+                                    r.getMaterialized());
+                            state.recurringMeetings.set(i, copy);
+                            putAbsent(state, copy.materializeBefore(change.time));
+                        }
+                    }
+                    m = state.meeting(change.id);
+                }
+                if (m != null)
+                    state.putMeeting(new PastMeetingImpl(m, change.notes));
+                break;
+
+            case RECURRING:
+                Calendar start = Calendar.getInstance();
+                start.setTimeInMillis(change.date);
+                state.recurringMeetings.add(new RecurringMeeting(change.id, start, change.duration,
+                        contacts(state, change.contactIds), change.frequency, change.count, 0));
+                break;
+
+        }
+
+    }
+
+    /**
+     * <code>putAbsent()</code>
+     * <p>
+     *     Adds passed occurrences of a recurring meeting to the meetings of a state. Occurrences already held, having
+     *     been recorded as meetings, are kept with their notes.
+     * </p>
+     */
+    private static void putAbsent(State state, List<PastMeeting> occurrences) {
+
+        for (PastMeeting pm : occurrences) {
+            if (state.meeting(pm.getId()) == null)
+                state.putMeeting(pm);
+        }
+
+    }
+
+    /**
+     * <code>contacts()</code>
+     *
+     * @return the contacts of a state with the given ids
+     */
+    private static Set<Contact> contacts(State state, int[] ids) {
+
+        Set<Contact> ret = new HashSet<Contact>();
+        for (int id : ids) {
+            Contact c = state.contact(id);
+            ret.add(c != null ? c : ContactImpl.readOnly(id, "", ""));
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>contactIds()</code>
+     *
+     * @return ids of the given contacts
+     */
+    private static int[] contactIds(Set<Contact> contacts) {
+
+        int[] ret = new int[contacts.size()];
+        int i = 0;
+        for (Contact c : contacts)
+            ret[i++] = c.getId();
+        return ret;
+
+    }
+
+    /**
+     * <code>format()</code>
+     *
+     * @return a change as a line of tab separated fields
+     */
+    private static String format(Change change) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(change.time).append('\t').append(change.type).append('\t').append(change.id);
+
+        switch (change.type) {
+            case CONTACT:
+                sb.append('\t').append(escape(change.name)).append('\t').append(escape(change.notes));
+                break;
+            case MEETING:
+                sb.append('\t').append(change.date).append('\t').append(change.duration)
+                        .append('\t').append(join(change.contactIds)).append('\t').append(escape(change.notes))
+                        .append('\t').append(change.past ? "past" : "future");
+                break;
+            case CONTACT_NOTES:
+            case NOTES:
+                sb.append('\t').append(escape(change.notes));
+                break;
+            case RECURRING:
+                sb.append('\t').append(change.date).append('\t').append(change.duration)
+                        .append('\t').append(join(change.contactIds)).append('\t').append(change.frequency)
+                        .append('\t').append(change.count);
+                break;
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     * <code>parse()</code>
+     *
+     * @return the change in a line of tab separated fields
+     */
+    private static Change parse(String line) {
+
+        String[] f = line.split("\t", -1);
+        long time = Long.parseLong(f[0]);
+        ChangeType type = ChangeType.fromString(f[1]);
+        int id = Integer.parseInt(f[2]);
+
+        switch (type) {
+            case CONTACT:
+                return new Change(time, type, id, unescape(f[3]), unescape(f[4]), 0, 0, null, false, null, 0);
+            case CONTACT_NOTES:
+                return new Change(time, type, id, null, unescape(f[3]), 0, 0, null, false, null, 0);
+            case MEETING:
+                return new Change(time, type, id, null, unescape(f[6]), Long.parseLong(f[3]), Integer.parseInt(f[4]),
+                        split(f[5]), f[7].equals("past"), null, 0);
+            case NOTES:
+                return new Change(time, type, id, null, unescape(f[3]), 0, 0, null, true, null, 0);
+            default:
+                return new Change(time, type, id, null, null, Long.parseLong(f[3]), Integer.parseInt(f[4]),
+                        split(f[5]), false, RecurringMeeting.Frequency.fromString(f[6]), Integer.parseInt(f[7]));
+        }
+
+    }
+
+    /**
+     * <code>join()</code>
+     *
+     * @return ids separated by commas
+     */
+    private static String join(int[] ids) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(ids[i]);
+        }
+        return sb.toString();
+
+    }
+
+    /**
+     * <code>split()</code>
+     *
+     * @return ids separated by commas
+     */
+    private static int[] split(String ids) {
+
+        if (ids.isEmpty())
+            return new int[0];
+        String[] parts = ids.split(",");
+        int[] ret = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            ret[i] = Integer.parseInt(parts[i]);
+        return ret;
+
+    }
+
+    /**
+     * <code>escape()</code>
+     *
+     * @return text with backslashes, tabs and new lines escaped
+     */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * <code>unescape()</code>
+     *
+     * @return text with escapes replaced
+     */
+    private static String unescape(String text) {
+
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+
+    }
+
+}
@@ -0,0 +1,174 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ChangeHistoryTest {
+
+    private ChangeHistory history;
+    private Contact basil, rebecca;
+    private Set<Contact> both;
+
+    @Before
+    public void setUp() throws Exception {
+
+        basil = new ContactImpl(1, "Basil Mason", "Tab\there\nand new line \\ backslash");
+        rebecca = new ContactImpl(2, "Rebecca White");
+        both = new HashSet<Contact>();
+        both.add(basil);
+        both.add(rebecca);
+
+        // contacts at 1000, a future meeting dated 5000 at 2000, a past meeting at 3000, notes on it at 4000
+        history = new ChangeHistory();
+        history.recordContact(1000, basil);
+        history.recordContact(1000, rebecca);
+        history.recordMeeting(2000, new FutureMeetingImpl(10, date(5000), both, 30));
+        history.recordMeeting(3000, new PastMeetingImpl(11, date(500), both, "Agenda"));
+        history.recordNotes(4000, 11, "Minutes");
+    }
+
+    @Test
+    public void testAsOf() throws Exception {
+
+        // before any change
+        assertTrue(history.asOf(500).getContacts().isEmpty());
+
+        // after the contacts were added
+        StoreSnapshot s = history.asOf(1500);
+        assertEquals(2, s.getContacts().size());
+        assertTrue(s.getMeetings().isEmpty());
+
+        // after the past meeting was added, before its notes changed
+        assertEquals("Agenda", ((PastMeeting) meeting(history.asOf(3500), 11)).getNotes());
+        assertTrue(meeting(history.asOf(3500), 10) instanceof FutureMeeting);
+
+        // after the future meeting has passed
+        s = history.asOf(6000);
+        assertEquals("Minutes", ((PastMeeting) meeting(s, 11)).getNotes());
+        assertTrue(meeting(s, 10) instanceof PastMeeting);
+        assertEquals(30, meeting(s, 10).getDuration());
+
+        assertEquals(3, history.countAsOf(2000));
+        assertEquals(5, history.size());
+
+    }
+
+    @Test
+    public void testAsOfRecurringMeeting() throws Exception {
+
+        // weekly series from 10000, with notes on its first occurrence
+        history.recordRecurringMeeting(7000, new RecurringMeeting(20, date(10000), 60, both,
+                RecurringMeeting.Frequency.WEEKLY, 3, 0));
+        history.recordNotes(20000, 20, "First");
+
+        // before the first occurrence
+        assertEquals(2, history.asOf(8000).getMeetings().size());
+
+        // after the first occurrence, with its notes
+        StoreSnapshot s = history.asOf(30000);
+        assertEquals("First", ((PastMeeting) meeting(s, 20)).getNotes());
+        assertEquals(1, s.getRecurringMeetings().get(0).getMaterialized());
+
+    }
+
+    @Test
+    public void testAsOfFromCheckpoint() throws Exception {
+
+        // enough contacts for several checkpoints, one each millisecond
+        for (int i = 0; i < 3 * ChangeHistory.CHECKPOINT_INTERVAL; i++)
+            history.recordContact(10000 + i, new ContactImpl(100 + i, "Contact " + i));
+
+        assertEquals(2 + 1501, history.asOf(10000 + 1500).getContacts().size());
+        assertEquals(2 + 3 * ChangeHistory.CHECKPOINT_INTERVAL, history.asOf(Long.MAX_VALUE).getContacts().size());
+        assertEquals("Minutes", ((PastMeeting) meeting(history.asOf(20000), 11)).getNotes());
+
+    }
+
+    @Test
+    public void testAsOfContactNotes() throws Exception {
+
+        history.recordContactNotes(5000, 2, "Met again");
+
+        assertEquals("", contact(history.asOf(4500), 2).getNotes());
+        assertEquals("Met again", contact(history.asOf(5500), 2).getNotes());
+        assertEquals("Rebecca White", contact(history.asOf(5500), 2).getName());
+
+    }
+
+    @Test
+    public void testCheckpointUnchangedByLaterChanges() throws Exception {
+
+        // a weekly series from 10000, and enough contacts for a checkpoint before its first occurrence
+        history.recordRecurringMeeting(7000, new RecurringMeeting(20, date(10000), 60, both,
+                RecurringMeeting.Frequency.WEEKLY, 3, 0));
+        for (int i = 0; i < ChangeHistory.CHECKPOINT_INTERVAL; i++)
+            history.recordContact(8000, new ContactImpl(100 + i, "Contact " + i));
+
+        // notes on the first occurrence, after the checkpoint
+        history.recordNotes(20000, 20, "First");
+        assertEquals("First", ((PastMeeting) meeting(history.asOf(30000), 20)).getNotes());
+
+        // state rebuilt from the checkpoint before the notes still has the occurrence with none
+        StoreSnapshot s = history.asOf(15000);
+        assertEquals("", ((PastMeeting) meeting(s, 20)).getNotes());
+        assertEquals(1, s.getRecurringMeetings().get(0).getMaterialized());
+        assertEquals(3, s.getMeetings().size());
+
+        // a view as of the time finds meetings and contacts by id
+        ContactManagerSnapshot view = history.viewAsOf(15000);
+        assertTrue(view.getMeeting(20) instanceof PastMeeting);
+        assertTrue(view.getMeeting(21) instanceof FutureMeeting);
+        assertEquals(1, view.getContacts(100).size());
+
+    }
+
+    @Test
+    public void testAppendAndLoad() throws Exception {
+
+        File file = File.createTempFile("contacts", ".history");
+        file.deleteOnExit();
+        file.delete();
+
+        // append in two parts
+        history.recordContactNotes(5000, 2, "Tab\there");
+        List<String> lines = history.drainPending();
+        ChangeHistory.append(file, lines.subList(0, 2));
+        ChangeHistory.append(file, lines.subList(2, lines.size()));
+        assertTrue(history.drainPending().isEmpty());
+
+        // check the loaded history rebuilds the same state
+        ChangeHistory loaded = ChangeHistory.load(file);
+        assertEquals(history.size(), loaded.size());
+        StoreSnapshot s = loaded.asOf(6000);
+        assertEquals(basil.getNotes(), s.getContacts().get(0).getNotes());
+        assertEquals("Tab\there", contact(s, 2).getNotes());
+        assertEquals("Minutes", ((PastMeeting) meeting(s, 11)).getNotes());
+        assertEquals(2, meeting(s, 10).getContacts().size());
+
+    }
+
+    private static Calendar date(long time) {
+        Calendar ret = Calendar.getInstance();
+        ret.setTimeInMillis(time);
+        return ret;
+    }
+
+    private static Contact contact(StoreSnapshot s, int id) {
+        for (Contact c : s.getContacts()) {
+            if (c.getId() == id)
+                return c;
+        }
+        return null;
+    }
+
+    private static Meeting meeting(StoreSnapshot s, int id) {
+        for (Meeting m : s.getMeetings()) {
+            if (m.getId() == id)
+                return m;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+
+/**
+ * Co-attendance index
+ *
+ * An index of which contacts have shared a meeting with which other contacts. The index is maintained incrementally as
+ * meetings are added or removed, and holds for each contact:
+ *
+ *      co-attendees:       other contact id -> number of meetings shared
+ *
+ * and for each pair of contacts that have shared a meeting:
+ *
+ *      shared meetings:    ids of the meetings attended by both contacts, in the order they were added
+ *
+ * Both queries are answered from the index in time proportional to the size of the result. A meeting with n contacts
+ * adds n * (n - 1) / 2 pairs to the index.
+ */
+public class CoAttendanceIndex {
+
+    /* V A R I A B L E S */
+
+    private final Map<Integer, Map<Integer, Integer>> coAttendees;  // contact id -> other contact id -> count
+    private final Map<Long, List<Integer>> sharedMeetings;          // pair key -> meeting ids
+
+    /* C O N S T R U C T O R S */
+
+    public CoAttendanceIndex() {
+        coAttendees = new HashMap<Integer, Map<Integer, Integer>>();
+        sharedMeetings = new HashMap<Long, List<Integer>>();
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>add()</code>
+     * <p>
+     *     Adds a meeting to the index, recording each pair of its contacts as having shared the meeting. A meeting
+     *     must only be added once.
+     * </p>
+     *
+     * @param meetingId id of the meeting
+     * @param contactIds ids of the contacts in the meeting
+     */
+    public void add(int meetingId, int[] contactIds) {
+
+        for (int i = 0; i < contactIds.length; i++) {
+            for (int j = i + 1; j < contactIds.length; j++) {
+
+                int a = contactIds[i], b = contactIds[j];
+                if (a == b)
+                    continue;   // a contact does not share a meeting with themselves
+
+                // count the meeting for both contacts
+                increment(a, b);
+                increment(b, a);
+
+                // record the meeting for the pair
+                List<Integer> meetingIds = sharedMeetings.get(pairKey(a, b));
+                if (meetingIds == null) {
+                    meetingIds = new ArrayList<Integer>();
+                    sharedMeetings.put(pairKey(a, b), meetingIds);
+                }
+                meetingIds.add(meetingId);
+
+            }
+        }
+
+    }
+
+    /**
+     * <code>remove()</code>
+     * <p>
+     *     Removes a meeting from the index, given the same contacts it was added with. Contacts and pairs left with no
+     *     shared meetings are dropped from the index.
+     * </p>
+     *
+     * @param meetingId id of the meeting
+     * @param contactIds ids of the contacts in the meeting
+     */
+    public void remove(int meetingId, int[] contactIds) {
+
+        for (int i = 0; i < contactIds.length; i++) {
+            for (int j = i + 1; j < contactIds.length; j++) {
+
+                int a = contactIds[i], b = contactIds[j];
+                if (a == b)
+                    continue;
+
+                // remove the meeting for the pair, and uncount it if it was recorded
+                List<Integer> meetingIds = sharedMeetings.get(pairKey(a, b));
+                if (meetingIds == null || !meetingIds.remove(Integer.valueOf(meetingId)))
+                    continue;
+                if (meetingIds.isEmpty())
+                    sharedMeetings.remove(pairKey(a, b));
+                decrement(a, b);
+                decrement(b, a);
+
+            }
+        }
+
+    }
+
+    /**
+     * <code>getCoAttendees()</code>
+     *
+     * @param contactId id of a contact
+     * @return read-only map of the ids of every contact that has shared a meeting with the given contact, to the
+     *         number of meetings shared. Empty if there are none.
+     */
+    public Map<Integer, Integer> getCoAttendees(int contactId) {
+
+        Map<Integer, Integer> counts = coAttendees.get(contactId);
+        if (counts == null)
+            return Collections.emptyMap();
+        return Collections.unmodifiableMap(counts);
+
+    }
+
+    /**
+     * <code>getSharedMeetings()</code>
+     *
+     * @param a id of a contact
+     * @param b id of another contact
+     * @return read-only list of the ids of the meetings attended by both contacts. Empty if there are none.
+     */
+    public List<Integer> getSharedMeetings(int a, int b) {
+
+        List<Integer> meetingIds = sharedMeetings.get(pairKey(a, b));
+        if (meetingIds == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(meetingIds);
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>increment()</code>
+     * <p>
+     *     Increments the number of meetings contact a has shared with contact b
+     * </p>
+     */
+    private void increment(int a, int b) {
+
+        Map<Integer, Integer> counts = coAttendees.get(a);
+        if (counts == null) {
+            counts = new HashMap<Integer, Integer>();
+            coAttendees.put(a, counts);
+        }
+        Integer count = counts.get(b);
+        counts.put(b, count == null ? 1 : count + 1);
+
+    }
+
+    /**
+     * <code>decrement()</code>
+     * <p>
+     *     Decrements the number of meetings contact a has shared with contact b, dropping the count at zero
+     * </p>
+     */
+    private void decrement(int a, int b) {
+
+        Map<Integer, Integer> counts = coAttendees.get(a);
+        int count = counts.get(b);
+        if (count > 1) {
+            counts.put(b, count - 1);
+        } else {
+            counts.remove(b);
+            if (counts.isEmpty())
+                coAttendees.remove(a);
+        }
+
+    }
+
+    /**
+     * <code>pairKey()</code>
+     *
+     * @return a key for a pair of contacts, the same whichever order the contacts are given in
+     */
+    private static long pairKey(int a, int b) {
+        return a < b ? ((long) a << 32) | (b & 0xffffffffL) : ((long) b << 32) | (a & 0xffffffffL);
+    }
+
+}
@@ -0,0 +1,61 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CoAttendanceIndexTest {
+
+    private CoAttendanceIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+
+        index = new CoAttendanceIndex();
+        index.add(10, new int[] {1, 2, 3});
+        index.add(11, new int[] {1, 2});
+        index.add(12, new int[] {4});
+
+    }
+
+    @Test
+    public void testGetCoAttendees() throws Exception {
+
+        Map<Integer, Integer> coAttendees = index.getCoAttendees(1);
+
+        assertEquals(2, coAttendees.size());
+        assertEquals(Integer.valueOf(2), coAttendees.get(2));
+        assertEquals(Integer.valueOf(1), coAttendees.get(3));
+        assertTrue(index.getCoAttendees(4).isEmpty());
+
+    }
+
+    @Test
+    public void testGetSharedMeetings() throws Exception {
+
+        assertEquals(Arrays.asList(10, 11), index.getSharedMeetings(1, 2));
+        assertEquals(Arrays.asList(10, 11), index.getSharedMeetings(2, 1));
+        assertEquals(Arrays.asList(10), index.getSharedMeetings(2, 3));
+        assertTrue(index.getSharedMeetings(1, 4).isEmpty());
+
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+
+        index.remove(10, new int[] {1, 2, 3});
+
+        assertEquals(Arrays.asList(11), index.getSharedMeetings(1, 2));
+        assertTrue(index.getSharedMeetings(2, 3).isEmpty());
+        assertEquals(1, index.getCoAttendees(1).size());
+        assertEquals(Integer.valueOf(1), index.getCoAttendees(1).get(2));
+        assertTrue(index.getCoAttendees(3).isEmpty());
+
+        // removing a meeting not in the index changes nothing
+        index.remove(99, new int[] {1, 2});
+        assertEquals(Integer.valueOf(1), index.getCoAttendees(2).get(1));
+
+    }
+}
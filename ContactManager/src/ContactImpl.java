@@ -8,6 +8,13 @@ public class ContactImpl implements Contact {
     // class variables
     private int contactId;
     private String contactName, contactNotes;
+    private NotesListener notesListener;    // told of notes added, or null
+    private boolean readOnly;               // whether notes cannot be added, as for a contact of a read-only view
+
+    // listener told of notes added to a contact, so that the contact manager holding it can record the change
+    interface NotesListener {
+        void notesAdded(ContactImpl contact, String note);
+    }
 
     // constructors
 
@@ -30,6 +37,25 @@ public class ContactImpl implements Contact {
         this.contactNotes = contactNotes;
     }
 
+    /**
+     * <code>readOnly()</code>
+     * <p>
+     *     Makes a contact for a read-only view of a contact manager, see
+     *     {@link ContactManagerSnapshot ContactManagerSnapshot}. Adding notes to the contact throws an
+     *     <code>UnsupportedOperationException</code>, so the view, and the state saved from it, cannot diverge from
+     *     the contact manager.
+     * </p>
+     *
+     * @return a contact that rejects notes
+     */
+    static ContactImpl readOnly(int contactId, String contactName, String contactNotes) {
+
+        ContactImpl ret = new ContactImpl(contactId, contactName, contactNotes);
+        ret.readOnly = true;
+        return ret;
+
+    }
+
     /** {@inheritDoc}
      *
      */
@@ -55,10 +81,20 @@ public class ContactImpl implements Contact {
 
     /** {@inheritDoc}
      *
+     * @throws UnsupportedOperationException if the contact is read-only
      */
     @Override
     public void addNotes(String note) {
+        if (readOnly)
+            throw new UnsupportedOperationException();
         contactNotes = contactNotes + note;
+        if (notesListener != null)
+            notesListener.notesAdded(this, note);
+    }
+
+    // set by the contact manager holding the contact
+    void setNotesListener(NotesListener notesListener) {
+        this.notesListener = notesListener;
     }
 
 }
@@ -152,4 +152,22 @@ public interface ContactManager {
      */
     void flush();
 
+    /**
+     * Returns a read-only view of the contacts and meetings as they are now.
+     * <p/>
+     * Every query made on the view sees the same state, whatever
+     * changes are made to the contact manager after the view is
+     * taken. Methods that would change the view throw an
+     * UnsupportedOperationException.
+     * <p/>
+     * Implementations that cannot pin a view need not support this
+     * method, which by default throws an UnsupportedOperationException.
+     *
+     * @return a read-only view pinned at the current state
+     * @throws UnsupportedOperationException if views are not supported
+     */
+    default ContactManager snapshot() {
+        throw new UnsupportedOperationException();
+    }
+
 }
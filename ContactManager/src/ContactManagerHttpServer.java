@@ -0,0 +1,426 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Contact manager http server
+ *
+ * Serves the queries of a contact manager as json over http, on the JDK's built-in http server. The queries are:
+ *
+ *      GET /contacts?name=Bas                  contacts whose names contain a string
+ *      GET /contacts?id=1&id=2                 contacts by id
+ *      GET /meetings/7                         a meeting by id
+ *      GET /meetings/future?contact=1          future meetings of a contact
+ *      GET /meetings/future?date=2016-03-31    meetings on a day, at any time of the day
+ *      GET /meetings/past?contact=1            past meetings of a contact
+ *
+ * A contact is written as <code>{"id":1,"name":"Basil","notes":""}</code>, and a meeting as
+ * <code>{"id":7,"date":"2016-03-31T14:00","duration":60,"past":true,"notes":"","contacts":[1,2]}</code>, with notes
+ * only for past meetings. A missing meeting, or an unknown id, is answered with 404, a malformed query with 400, and
+ * a query the contact manager does not support with 501.
+ *
+ * Each query runs against a read-only view of the contact manager, see {@link ContactManager#snapshot() snapshot},
+ * so queries take no lock while they run. For a {@link ContactManagerImpl ContactManagerImpl}, the view published by
+ * its last write is reused, see {@link ContactManagerImpl#getPublishedView() getPublishedView}, and a view is only
+ * taken once a meeting of that view has passed. Contacts by name and past meetings are iterated from a
+ * {@link ContactManagerSnapshot ContactManagerSnapshot} view as they are written, see
+ * {@link ContactManagerSnapshot#iterateContacts(String) iterateContacts} and
+ * {@link ContactManagerSnapshot#iteratePastMeetings(Contact) iteratePastMeetings}, and future meetings from a list
+ * whose recurring occurrences are made as they are read, see {@link LazyMeetingList LazyMeetingList}. Responses are
+ * streamed in chunks as they are written, so a long result is not held in memory as a whole. Connections are kept
+ * alive between requests, and requests sent before the last response is read are answered in order. Requests are
+ * handled on a virtual thread each, where the runtime has them, see {@link VirtualThreads VirtualThreads}.
+ */
+public class ContactManagerHttpServer implements AutoCloseable {
+
+    /* V A R I A B L E S */
+
+    private final ContactManager delegate;          // contact manager queried
+    private final HttpServer server;                // http server
+    private final ExecutorService executor;         // threads handling requests
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>ContactManagerHttpServer()</code> constructor
+     * <p>
+     *     Binds the server to the given address. The server does not answer requests until started.
+     * </p>
+     *
+     * @param delegate contact manager to query
+     * @param address address to listen on, for example port 0 on the loopback address for any free port
+     * @throws IOException if the address cannot be bound
+     */
+    public ContactManagerHttpServer(ContactManager delegate, InetSocketAddress address) throws IOException {
+
+        this.delegate = delegate;
+        server = HttpServer.create(address, 0);
+        executor = VirtualThreads.newExecutor("contact-manager-http", Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    ContactManagerHttpServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>start()</code>
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * <code>close()</code>
+     * <p>
+     *     Stops the server, closing open connections, and the threads handling requests
+     * </p>
+     */
+    @Override
+    public void close() {
+
+        server.stop(0);
+        executor.shutdown();
+
+    }
+
+    /* G E T T E R S */
+
+    /**
+     * <code>getAddress()</code>
+     *
+     * @return the address the server listens on, with the port bound
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>handle()</code>
+     * <p>
+     *     Answers a request, mapping the exceptions of the contact manager to status codes
+     * </p>
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+
+        if (!exchange.getRequestMethod().equals("GET")) {
+            sendStatus(exchange, 405);
+            return;
+        }
+
+        try {
+
+            String path = exchange.getRequestURI().getPath();
+            Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            ContactManager view = view();
+
+            if (path.equals("/contacts")) {
+                if (query.containsKey("name")) {
+                    String name = query.get("name").get(0);
+                    sendContacts(exchange, view instanceof ContactManagerSnapshot
+                            ? ((ContactManagerSnapshot) view).iterateContacts(name)
+                            : view.getContacts(name).iterator());
+                } else if (query.containsKey("id")) {
+                    int[] ids = new int[query.get("id").size()];
+                    for (int i = 0; i < ids.length; i++)
+                        ids[i] = Integer.parseInt(query.get("id").get(i));
+                    Set<Contact> found = contacts(view, ids);
+                    if (found == null)
+                        sendStatus(exchange, 404);
+                    else
+                        sendContacts(exchange, found.iterator());
+                } else {
+                    sendStatus(exchange, 400);
+                }
+
+            } else if (path.equals("/meetings/future")) {
+                if (query.containsKey("contact")) {
+                    Contact contact = contact(view, query);
+                    if (contact == null)
+                        sendStatus(exchange, 404);
+                    else
+                        sendMeetings(exchange, view.getFutureMeetingList(contact).iterator());
+                } else if (query.containsKey("date")) {
+                    sendMeetings(exchange, meetingsOn(view, query.get("date").get(0)).iterator());
+                } else {
+                    sendStatus(exchange, 400);
+                }
+
+            } else if (path.equals("/meetings/past")) {
+                if (query.containsKey("contact")) {
+                    Contact contact = contact(view, query);
+                    if (contact == null)
+                        sendStatus(exchange, 404);
+                    else
+                        sendMeetings(exchange, view instanceof ContactManagerSnapshot
+                                ? ((ContactManagerSnapshot) view).iteratePastMeetings(contact)
+                                : view.getPastMeetingList(contact).iterator());
+                } else {
+                    sendStatus(exchange, 400);
+                }
+
+            } else if (path.startsWith("/meetings/")) {
+                Meeting m = view.getMeeting(Integer.parseInt(path.substring("/meetings/".length())));
+                if (m == null)
+                    sendStatus(exchange, 404);
+                else
+                    sendMeetings(exchange, Collections.singletonList(m).iterator(), false);
+
+            } else {
+                sendStatus(exchange, 404);
+            }
+
+        // malformed queries, including numbers and escapes, and queries the contact manager does not support
+        } catch (ParseException e) {
+            sendStatus(exchange, 400);
+        } catch (IllegalArgumentException e) {
+            sendStatus(exchange, 400);
+        } catch (UnsupportedOperationException e) {
+            sendStatus(exchange, 501);
+        }
+
+    }
+
+    /**
+     * <code>view()</code>
+     *
+     * @return the view published by the last write to a contact manager while no meeting of it has passed,
+     *         otherwise a view taken now
+     */
+    private ContactManager view() {
+
+        if (delegate instanceof ContactManagerImpl) {
+            ContactManagerSnapshot published = ((ContactManagerImpl) delegate).getPublishedView();
+            if (published != null && System.currentTimeMillis() <= published.getValidUntil())
+                return published;
+        }
+        return delegate.snapshot();
+
+    }
+
+    /**
+     * <code>contacts()</code>
+     *
+     * @return the contacts with the given ids, or null if any id is unknown
+     */
+    private static Set<Contact> contacts(ContactManager view, int[] ids) {
+
+        try {
+            return view.getContacts(ids);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+    }
+
+    /**
+     * <code>contact()</code>
+     *
+     * @return the contact whose id is the contact parameter of a query, or null if there is no such contact
+     * @throws NumberFormatException if the id is not a number
+     */
+    private static Contact contact(ContactManager view, Map<String, List<String>> query) {
+
+        Set<Contact> found = contacts(view, new int[] {Integer.parseInt(query.get("contact").get(0))});
+        return found == null ? null : found.iterator().next();
+
+    }
+
+    /**
+     * <code>meetingsOn()</code>
+     * <p>
+     *     Finds the meetings on a day, from the start of the day up to the start of the next, as meetings are held to
+     *     the minute. Only a {@link ContactManagerSnapshot ContactManagerSnapshot} view answers a range of dates, see
+     *     {@link ContactManagerSnapshot#getMeetingList(Calendar, Calendar) getMeetingList}.
+     * </p>
+     *
+     * @param day a day as <code>yyyy-MM-dd</code>
+     * @return meetings on the day, in chronological order
+     * @throws ParseException if the day is malformed
+     * @throws UnsupportedOperationException if the view does not answer a range of dates
+     */
+    private static List<Meeting> meetingsOn(ContactManager view, String day) throws ParseException {
+
+        if (!(view instanceof ContactManagerSnapshot))
+            throw new UnsupportedOperationException();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setLenient(false);
+        Calendar from = Calendar.getInstance();
+        from.setTime(format.parse(day));
+        Calendar to = (Calendar) from.clone();
+        to.add(Calendar.DAY_OF_MONTH, 1);
+        return ((ContactManagerSnapshot) view).getMeetingList(from, to);
+
+    }
+
+    /**
+     * <code>sendContacts()</code>
+     * <p>
+     *     Streams a json array of contacts, read from the iterator as they are written
+     * </p>
+     */
+    private static void sendContacts(HttpExchange exchange, Iterator<Contact> contacts) throws IOException {
+
+        Writer out = startResponse(exchange);
+        out.write('[');
+        boolean first = true;
+        while (contacts.hasNext()) {
+            Contact c = contacts.next();
+            if (!first)
+                out.write(',');
+            first = false;
+            out.write("{\"id\":" + c.getId() + ",\"name\":" + quote(c.getName()) + ",\"notes\":"
+                    + quote(c.getNotes()) + "}");
+        }
+        out.write(']');
+        out.close();
+
+    }
+
+    /**
+     * <code>sendMeetings()</code>
+     * <p>
+     *     Streams a json array of meetings, read from the iterator as they are written
+     * </p>
+     */
+    private static void sendMeetings(HttpExchange exchange, Iterator<? extends Meeting> meetings)
+            throws IOException {
+        sendMeetings(exchange, meetings, true);
+    }
+
+    /**
+     * <code>sendMeetings()</code>
+     * <p>
+     *     Streams meetings, as a json array or as a single object
+     * </p>
+     */
+    private static void sendMeetings(HttpExchange exchange, Iterator<? extends Meeting> meetings, boolean array)
+            throws IOException {
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm");
+        Writer out = startResponse(exchange);
+        if (array)
+            out.write('[');
+        boolean first = true;
+        while (meetings.hasNext()) {
+            Meeting m = meetings.next();
+            if (!first)
+                out.write(',');
+            first = false;
+            out.write("{\"id\":" + m.getId() + ",\"date\":" + quote(format.format(m.getDate().getTime()))
+                    + ",\"duration\":" + m.getDuration() + ",\"past\":" + (m instanceof PastMeeting));
+            if (m instanceof PastMeeting)
+                out.write(",\"notes\":" + quote(((PastMeeting) m).getNotes()));
+            out.write(",\"contacts\":[");
+            boolean firstContact = true;
+            for (Contact c : m.getContacts()) {
+                if (!firstContact)
+                    out.write(',');
+                firstContact = false;
+                out.write(Integer.toString(c.getId()));
+            }
+            out.write("]}");
+        }
+        if (array)
+            out.write(']');
+        out.close();
+
+    }
+
+    /**
+     * <code>startResponse()</code>
+     * <p>
+     *     Sends the headers of a json response of unknown length, so that the body is sent in chunks as written
+     * </p>
+     *
+     * @return writer of the response body, to be closed once written
+     */
+    private static Writer startResponse(HttpExchange exchange) throws IOException {
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+
+    }
+
+    /**
+     * <code>sendStatus()</code>
+     * <p>
+     *     Sends a status code with no body
+     * </p>
+     */
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    /**
+     * <code>parseQuery()</code>
+     *
+     * @return the values of each parameter of a raw query string, in order
+     * @throws IllegalArgumentException if an escape in the query is malformed
+     */
+    private static Map<String, List<String>> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+
+        Map<String, List<String>> ret = new HashMap<String, List<String>>();
+        if (rawQuery == null)
+            return ret;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0)
+                continue;
+            String name = URLDecoder.decode(pair.substring(0, eq), "UTF-8");
+            List<String> values = ret.get(name);
+            if (values == null) {
+                values = new ArrayList<String>();
+                ret.put(name, values);
+            }
+            values.add(URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>quote()</code>
+     *
+     * @return a string as a json string literal
+     */
+    private static String quote(String s) {
+
+        StringBuilder ret = new StringBuilder(s.length() + 2);
+        ret.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                ret.append('\\').append(c);
+            else if (c < 0x20)
+                ret.append(String.format("\\u%04x", (int) c));
+            else
+                ret.append(c);
+        }
+        ret.append('"');
+        return ret.toString();
+
+    }
+
+}
@@ -0,0 +1,235 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ContactManagerHttpServerTest {
+
+    private File dir;
+    private ContactManager cm;
+    private ContactManagerHttpServer server;
+    private int contactId;
+    private int meetingId;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dir = File.createTempFile("contacts", "");
+        dir.delete();
+        cm = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir));
+        cm.addNewContact("Basil \"Baz\" Mason", "notes");
+        cm.addNewContact("Anne", "");
+        Contact c = cm.getContacts("Basil").iterator().next();
+        contactId = c.getId();
+        Calendar past = Calendar.getInstance();
+        past.add(Calendar.DAY_OF_MONTH, -1);
+        cm.addNewPastMeeting(Collections.singleton(c), past, "met");
+        meetingId = cm.getPastMeetingList(c).get(0).getId();
+
+        server = new ContactManagerHttpServer(cm, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        server.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testContacts() throws Exception {
+
+        assertEquals("[{\"id\":" + contactId + ",\"name\":\"Basil \\\"Baz\\\" Mason\",\"notes\":\"notes\"}]",
+                get("/contacts?name=Basil"));
+        assertEquals("[{\"id\":" + contactId + ",\"name\":\"Basil \\\"Baz\\\" Mason\",\"notes\":\"notes\"}]",
+                get("/contacts?id=" + contactId));
+        assertTrue(get("/contacts?name=").contains("Anne"));
+
+    }
+
+    @Test
+    public void testMeetings() throws Exception {
+
+        String meeting = get("/meetings/" + meetingId);
+        assertTrue(meeting.startsWith("{\"id\":" + meetingId + ","));
+        assertTrue(meeting.contains("\"past\":true,\"notes\":\"met\",\"contacts\":[" + contactId + "]"));
+        assertEquals("[" + meeting + "]", get("/meetings/past?contact=" + contactId));
+        assertEquals("[]", get("/meetings/future?contact=" + contactId));
+
+    }
+
+    @Test
+    public void testReusesPublishedView() throws Exception {
+
+        final AtomicInteger snapshots = new AtomicInteger();
+        ContactManager counted = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir)) {
+            @Override
+            public ContactManagerSnapshot snapshot() {
+                snapshots.incrementAndGet();
+                return super.snapshot();
+            }
+        };
+        counted.addNewContact("Cedric", "");
+        ContactManagerHttpServer reusing = new ContactManagerHttpServer(counted,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        reusing.start();
+        try {
+
+            // a view is taken for the first request only
+            for (int i = 0; i < 10; i++)
+                assertTrue(read(url(reusing, "/contacts?name=Cedric").openStream()).contains("Cedric"));
+            assertEquals(1, snapshots.get());
+
+            // later writes publish the view read by the next request
+            counted.addNewContact("Cedric Jones", "");
+            assertEquals(2, read(url(reusing, "/contacts?name=Cedric").openStream()).split("\\{").length - 1);
+            assertEquals(1, snapshots.get());
+
+        } finally {
+            reusing.close();
+        }
+
+    }
+
+    @Test
+    public void testMeetingsOnDate() throws Exception {
+
+        // a future meeting at a time of day, and the past meeting of the day before
+        Calendar tomorrow = Calendar.getInstance();
+        tomorrow.add(Calendar.DAY_OF_MONTH, 1);
+        tomorrow.set(Calendar.HOUR_OF_DAY, 14);
+        tomorrow.set(Calendar.MINUTE, 30);
+        int futureId = cm.addFutureMeeting(cm.getContacts(contactId), tomorrow);
+        Calendar yesterday = cm.getMeeting(meetingId).getDate();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+
+        // each found on its day, whatever its time of day
+        String future = get("/meetings/future?date=" + format.format(tomorrow.getTime()));
+        assertTrue(future.startsWith("[{\"id\":" + futureId + ","));
+        assertTrue(future.contains("\"past\":false"));
+        String past = get("/meetings/future?date=" + format.format(yesterday.getTime()));
+        assertTrue(past.startsWith("[{\"id\":" + meetingId + ","));
+        assertEquals(-1, past.indexOf("\"id\":" + futureId + ","));
+        assertEquals(400, status("/meetings/future?date=2016-02-30"));
+
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+
+        assertEquals(404, status("/meetings/-1"));
+        assertEquals(404, status("/contacts?id=-1"));
+        assertEquals(404, status("/meetings/past?contact=-1"));
+        assertEquals(400, status("/contacts?id=x"));
+        assertEquals(400, status("/contacts?name=%zz"));
+        assertEquals(400, status("/meetings/future"));
+        assertEquals(404, status("/other"));
+
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+
+        // a contact manager that supports no method, not even a view
+        ContactManager unsupported = (ContactManager) Proxy.newProxyInstance(ContactManager.class.getClassLoader(),
+                new Class<?>[] {ContactManager.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException();
+                    }
+                });
+        ContactManagerHttpServer other = new ContactManagerHttpServer(unsupported,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        other.start();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) url(other, "/contacts?name=Basil").openConnection();
+            assertEquals(501, conn.getResponseCode());
+        } finally {
+            other.close();
+        }
+
+    }
+
+    @Test
+    public void testPipelining() throws Exception {
+
+        // two requests sent on one connection before either response is read
+        Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            String request = "GET /meetings/" + meetingId + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            String last = "GET /contacts?name=Anne HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+            out.write((request + last).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            // both answered in order, on the same connection
+            String responses = read(socket.getInputStream());
+            int first = responses.indexOf("HTTP/1.1 200");
+            int second = responses.indexOf("HTTP/1.1 200", first + 1);
+            assertTrue(first >= 0 && second > first);
+            assertTrue(responses.indexOf("\"met\"") < second);
+            assertTrue(responses.indexOf("Anne") > second);
+        } finally {
+            socket.close();
+        }
+
+    }
+
+    private String get(String path) throws IOException {
+
+        HttpURLConnection conn = (HttpURLConnection) url(path).openConnection();
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("application/json; charset=UTF-8", conn.getContentType());
+        return read(conn.getInputStream());
+
+    }
+
+    private int status(String path) throws IOException {
+
+        HttpURLConnection conn = (HttpURLConnection) url(path).openConnection();
+        return conn.getResponseCode();
+
+    }
+
+    private URL url(String path) throws IOException {
+        return url(server, path);
+    }
+
+    private static URL url(ContactManagerHttpServer server, String path) throws IOException {
+        return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+    }
+
+    private static String read(InputStream in) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+            bytes.write(buffer, 0, n);
+        in.close();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+
+    }
+
+}
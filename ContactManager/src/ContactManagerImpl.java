@@ -1,22 +1,16 @@
 // file read, xml and java utility libraries and methods
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 /**
  * Created by Basil on 07/03/2015.
  *
@@ -26,19 +20,92 @@ import java.util.*;
  * a List and Set, respectively. All meetings, Past and Future are stored as Meetings only and cast when required.
  *
  * IDs are unique for all contacts and meetings. The ID generation is centralised within the contact manager and the
- * contact and meeting classes are considered dependent on the contact manager, not separate entities. See internal
- * method {@link #uniqueId() uniqueId()}.
+ * contact and meeting classes are considered dependent on the contact manager, not separate entities. Each contact
+ * manager keeps its own ID seed, saved with its files, so that several contact managers in one process each continue
+ * their own IDs. Contacts and meetings created outside a contact manager take IDs from a shared seed, see method
+ * {@link #uniqueId() uniqueId()}.
  *
- * All data is stored offline in an xml file, contacts.txt. If a file is not present at initialisation, one is created.
+ * All data is stored offline in an xml file, contacts.txt, in the working directory or in the directory given by
+ * {@link ContactManagerOptions#setDirectory(File) setDirectory}. If a file is not present at initialisation, one is
+ * created.
  * Otherwise, the existing file is read and used to populate the internal data structures. The file is written to by
- * a call to the {@link #flush() flush} method.
+ * a call to the {@link #flush() flush} method, or in the background by a call to the {@link #flushAsync() flushAsync}
+ * method. The file is written by an {@link XmlStore XmlStore} from a {@link StoreSnapshot StoreSnapshot}.
+ * The file may be saved gzip compressed, see {@link ContactManagerOptions#setCompressFiles(boolean)
+ * setCompressFiles}, and is read whether compressed or not.
  *
- * The xml format has three sections: manager, contacts and, meetings.
+ * Optionally, the data is split by id across several shard files, contacts-0.txt, contacts-1.txt and so on, which are
+ * read and written in parallel, see {@link ContactManagerOptions#setShards(int) setShards}. Each shard file has the
+ * same format as contacts.txt. Shard files are read in preference to contacts.txt when present, and a meeting may
+ * reference a contact held in any shard. The shards of a save are committed together, so that a crash part way through
+ * a save never leaves shards of different saves, see internal method {@link #commitShards(int) commitShards}.
+ *
+ * If the files cannot be read at start up, the contact manager holds only what was read, and a flush fails rather
+ * than overwrite the files with it.
+ *
+ * Optionally, past meetings are saved to a separate binary segment file, contacts.past, and read on demand, see
+ * {@link ContactManagerOptions#setLazyPastMeetings(boolean) setLazyPastMeetings}. At start up only the segment's index
+ * is read, and each past meeting is read through a bounded cache when first requested. Past meetings in the segment
+ * are not added to the co-attendance index, contact schedules or timeline: queries find them from the segment's own
+ * index of arrays, so the heap does not grow with the history of past meetings. See
+ * {@link PastMeetingSegment PastMeetingSegment}.
+ *
+ * Past meetings older than a given age may be archived to a compressed segment file, contacts.archive, see
+ * {@link #archivePastMeetings(Calendar) archivePastMeetings}. Archived meetings are no longer held in memory, in the
+ * list of meetings or its indexes, or written by a flush, but are found and read on demand as for contacts.past,
+ * whatever the storage options. The archive is only rewritten when more meetings are archived.
+ *
+ * Public methods are synchronized on the contact manager, so it can be used from more than one thread. A flush only
+ * holds the lock while its snapshot is captured, not while the file is written.
+ *
+ * Consistent reads across several queries are made on a read-only view, see {@link #snapshot() snapshot}. Each change
+ * to the contact manager increments its version, and a view is pinned at the version it was taken at. The meetings,
+ * and copies of the contacts and recurring meetings, are held in versioned lists that are frozen in constant time, see
+ * {@link VersionedList VersionedList}, so a view costs the same however many meetings are held. Once a view has been
+ * taken, a new view is published after each change, so that taking a view does not wait for the lock.
+ *
+ * Optionally, an append-only history of changes is kept in a second file, contacts.history, so that a view of the
+ * contact manager as of an earlier date can be rebuilt, see {@link #asOf(Calendar) asOf}. Changes are appended to the
+ * history file when the contact manager is flushed.
+ *
+ * Storage options are given at construction with a {@link ContactManagerOptions ContactManagerOptions} object. By
+ * default meetings are held on the heap in a VersionedList. Optionally, they may be held off-heap in an
+ * {@link OffHeapMeetingList OffHeapMeetingList}, in which case meeting objects are only created when returned: scans
+ * match the state, contact and date columns of each row first, and meetings are found by id from the meetings index.
+ *
+ * Meetings are indexed by id, and by the contacts who have shared them in a
+ * {@link CoAttendanceIndex CoAttendanceIndex}. The indexes are updated as each meeting is added, see internal method
+ * {@link #addMeeting(Meeting) addMeeting()}. For each contact, the times of their meetings are also indexed in an
+ * {@link IntervalTree IntervalTree} so that scheduling conflicts can be found, see
+ * {@link #findConflicts(Set, Calendar, Calendar) findConflicts()}, and the times of all meetings in another, so that
+ * the meetings nearest the current time can be found, see {@link #getUpcomingMeetings(int) getUpcomingMeetings()}.
+ *
+ * Optionally, the meeting lists of a contact and the searches for contacts by name are cached in a
+ * {@link QueryCache QueryCache}, see {@link ContactManagerOptions#setQueryCacheSize(int) setQueryCacheSize}. Cached
+ * results are invalidated for each contact whose meetings change, including when their future meetings pass.
+ *
+ * Optionally, the time taken by each load and save, the bytes and records written, and the records read are recorded
+ * in a {@link ContactManagerMetrics ContactManagerMetrics}, see
+ * {@link ContactManagerOptions#setMetrics(ContactManagerMetrics) setMetrics}.
+ *
+ * Optionally, calls that take longer than a threshold are logged with the shape of their arguments and the number
+ * of meetings and contacts they scanned, see
+ * {@link ContactManagerOptions#setSlowOperationLogSize(int) setSlowOperationLogSize} and
+ * {@link #getSlowOperations() getSlowOperations}.
+ *
+ * Recurring meetings are held as one {@link RecurringMeeting RecurringMeeting} record per series, in a separate list.
+ * Their future occurrences are expanded when meetings are requested, and each occurrence becomes a concrete past
+ * meeting in the list of meetings once it has passed.
+ *
+ * The xml format has four sections: manager, contacts, meetings and, recurringMeetings.
  *
  *      manager:    stores to current unique ID seed
  *      contacts:   stores details of the contacts
  *      meetings:   stores details of the meetings. Each meeting also has a list of contacts. Within each meeting,
- *                  only a reference to the contact is made by id.
+ *                  only a reference to the contact is made by id. Dates are held to the minute and durations
+ *                  in minutes. Dates held to the day only, and meetings with no duration, are also read.
+ *      recurringMeetings:  stores each series of recurring meetings, with the date of the first occurrence, the
+ *                  number of occurrences, and how many have already been stored as past meetings.
  *
  * *** Example XML ***
  *
@@ -54,7 +121,8 @@ import java.util.*;
  *      </contacts>
  *      <meetings>
  *          <meeting id="96" type="past">
- *              <date>22-03-2015</date>
+ *              <date>22-03-2015 14:30</date>
+ *              <duration>60</duration>
  *              <meetingContacts>
  *                  <meetingContact id="95"/>
  *                  <meetingContact id="43"/>
@@ -62,6 +130,15 @@ import java.util.*;
  *              <notes>Agenda</notes>
  *          </meeting>
  *      </meetings>
+ *      <recurringMeetings>
+ *          <recurringMeeting id="104" frequency="weekly" count="52" materialized="1">
+ *              <date>16-03-2015 09:00</date>
+ *              <duration>30</duration>
+ *              <meetingContacts>
+ *                  <meetingContact id="95"/>
+ *              </meetingContacts>
+ *          </recurringMeeting>
+ *      </recurringMeetings>
  * </contactmanager>
  *
  */
@@ -70,15 +147,66 @@ public class ContactManagerImpl implements ContactManager {
     /* V A R I A B L E S */
 
     private final String filePath = "contacts.txt"; // contact manager output file
+    private final String shardPath = "contacts-%d.txt";     // contact manager output file for each shard
+    private final String nextShardPath = "contacts-%d.txt.next";    // shard file of a save not yet committed
+    private final String manifestPath = "contacts.shards";  // number of shards of a save being committed
+    private final String segmentPath = "contacts.past";     // past meetings output file
+    private final String historyPath = "contacts.history";  // history of changes output file
+    private final String archivePath = "contacts.archive";  // archived past meetings output file
+    private final String deltaPath = "contacts.delta.%d";   // changes since the last full save, in order
+    private final ContactManagerOptions options;    // storage options
+    private final File directory;                   // directory of the files, or null for the working directory
+    private int idSeed;                             // unique ID seed of this contact manager
+    private boolean loadFailed;                     // files not read at start up, so not to be overwritten by a flush
+    private final StringPool stringPool;            // pool of names and notes
+    private long loadDeduplicated;                  // number of names and notes deduplicated on load
     private Set<Contact> contacts;                  // collection of contacts
+    private Map<Integer, Contact> contactIndex;     // contacts by id
     private List<? super Meeting> meetings;         // list of meetings (Past or Future)
-    private static int CM_ID = 0;                   // unique ID for meeting and contact creation
-    SimpleDateFormat format;                        // format for dates in file
+    private VersionedIntMap<Integer> meetingRows;   // meeting id -> index in list of meetings, frozen by views
+    private VersionedList<Contact> contactCopies;   // copies of contacts, frozen by views and snapshots
+    private Map<Integer, Integer> contactRows;      // contact id -> index in copies of contacts, also read by views
+    private CoAttendanceIndex coAttendance;         // contacts who have shared meetings
+    private Map<Integer, IntervalTree> schedules;   // contact id -> times of the contact's meetings
+    private IntervalTree timeline;                  // times of all meetings
+    private List<RecurringMeeting> recurringMeetings;   // series of recurring meetings
+    private Map<Integer, List<RecurringMeeting>> contactSeries; // contact id -> recurring meetings of the contact
+    private VersionedList<RecurringMeeting> seriesCopies;   // copies of recurring meetings, in the same order
+    private ExecutorService flushExecutor;          // background thread for writing to file
+    private volatile long version;                  // number of changes made, for pinning snapshots
+    private volatile ContactManagerSnapshot published;  // view of the latest version, or null until a view is taken
+    private ChangeHistory history;                  // history of changes, or null if not kept
+    private PastMeetingSegment pastSegment;         // past meetings read on demand, or null if none
+    private PastMeetingSegment archiveSegment;      // archived past meetings, or null if none
+    private QueryCache queryCache;                  // cached query results, or null if not cached
+    private long nextTransition = Long.MIN_VALUE;   // earliest date of a future meeting or occurrence
+    private SlowOperationLog slowLog;               // calls over the slow operation threshold, or null if not logged
+    private int callDepth;                          // depth of calls made from within a call, which are not logged
+    private long meetingsScanned;                   // number of meetings scanned by linear scans
+    private long contactsScanned;                   // number of contacts scanned by linear scans
+    private Set<Integer> dirtyMeetings;             // meetings changed since the last save, or null if not tracked
+    private Set<Integer> dirtyContacts;             // contacts added or given notes since the last save, or null
+    private Set<Integer> dirtySeries;               // positions of recurring meetings changed since the last save
+    private int deltasSinceFull;                    // delta saves since the last full save
+    private boolean fullSaveDue = true;             // whether the next save must be full
+    private volatile int deltaFiles;                // number of the last delta file written, 0 if none
+    private SubmissionPublisher<ChangeEvent> changeEvents;  // publisher of changes, or null if not published
+    private long eventSequence;                     // number of the last change event published
+    private long droppedEvents;                     // change events dropped for subscribers too far behind
+    private static int CM_ID = 0;                   // unique ID for contacts and meetings created outside a manager
+
+    // records notes added to a contact of this contact manager
+    private final ContactImpl.NotesListener notesListener = new ContactImpl.NotesListener() {
+        @Override
+        public void notesAdded(ContactImpl contact, String note) {
+            contactNotesAdded(contact);
+        }
+    };
 
     /* E N U M S */
 
     // an internal string enum for meeting type checking
-    private enum MeetingType {
+    enum MeetingType {
         PAST ("past"),
         FUTURE ("future");
         private final String type;
@@ -94,8 +222,8 @@ public class ContactManagerImpl implements ContactManager {
     /* P U B L I C   S T A T I C */
 
     // a static method to generate unique IDs
-    // called externally by meetings and contacts upon creation
-    public static int uniqueId() {
+    // called externally by meetings and contacts created outside a contact manager
+    public static synchronized int uniqueId() {
         CM_ID++;
         return CM_ID;
     }
@@ -111,134 +239,111 @@ public class ContactManagerImpl implements ContactManager {
      */
     public ContactManagerImpl() {
 
-        // xml file read setup
-        File contactsXml = new File(filePath);                      // set xml file path
-        NodeList managerNodes, contactNodes,
-                    meetingNodes, meetingContactNodes;              // node lists for xml read
-        DocumentBuilderFactory dbFactory;                           // for xml output
-        DocumentBuilder dBuilder;                                   // for xml output
-        Document doc;                                               // for xml output
+        this(new ContactManagerOptions());
+
+    }
+
+    /**
+     * <code>ContactManagerImpl(ContactManagerOptions)</code> constructor
+     * <p>
+     *     As the default constructor, but with the storage of the internal collections set by the given options.
+     * </p>
+     *
+     * @param options storage options
+     */
+    public ContactManagerImpl(ContactManagerOptions options) {
 
         // variable initialisation
+        this.options = options;                                     // storage options
+        directory = options.getDirectory();                         // directory of the files
+        if (directory != null)
+            directory.mkdirs();
+        stringPool = options.getStringPool() != null ? options.getStringPool() : new StringPool();
         contacts = new HashSet<Contact>();                          // initialise contacts set
-        meetings = new ArrayList<Meeting>();                        // initialise meetings list
-        format = new SimpleDateFormat("dd-MM-yyyy");                // initialise date format
+        contactIndex = new HashMap<Integer, Contact>();             // initialise contacts index
+        if (options.isOffHeapMeetings())
+            meetings = new OffHeapMeetingList(contactIndex);        // initialise off-heap meetings list
+        else
+            meetings = new VersionedList<Meeting>();                // initialise meetings list
+        meetingRows = new VersionedIntMap<Integer>();               // initialise meetings index
+        contactCopies = new VersionedList<Contact>();               // initialise copies of contacts
+        contactRows = new ConcurrentHashMap<Integer, Integer>();    // initialise copies of contacts index
+        coAttendance = new CoAttendanceIndex();                     // initialise co-attendance index
+        schedules = new HashMap<Integer, IntervalTree>();           // initialise contact schedules
+        timeline = new IntervalTree();                              // initialise timeline of all meetings
+        recurringMeetings = new ArrayList<RecurringMeeting>();      // initialise recurring meetings list
+        contactSeries = new HashMap<Integer, List<RecurringMeeting>>(); // initialise recurring meetings index
+        seriesCopies = new VersionedList<RecurringMeeting>();       // initialise copies of recurring meetings
+        if (options.getQueryCacheSize() > 0)
+            queryCache = new QueryCache(options.getQueryCacheSize());   // initialise query cache
+        if (options.getSlowOperationLogSize() > 0)
+            slowLog = new SlowOperationLog(options.getSlowOperationLogSize()); // initialise slow operation log
+        if (options.getChangeEventBufferSize() > 0)
+            changeEvents = new SubmissionPublisher<ChangeEvent>(ForkJoinPool.commonPool(),
+                    options.getChangeEventBufferSize());                // initialise change event publisher
 
         // file read
+        long loadStart = System.nanoTime();
         try {
 
-            // if file doesn't already exist
-            if(!contactsXml.exists()) {
-                contactsXml.createNewFile();        // create the file
-            } else {                                // else read file
-
-                // xml DOM builder
-                dbFactory = DocumentBuilderFactory.newInstance();   // setup xml read
-                dBuilder = dbFactory.newDocumentBuilder();          // setup xml read
-                doc = dBuilder.parse(contactsXml);                  // read in file
-                doc.getDocumentElement().normalize();               // normalise xml
-
-                // 1. Manager section - contains unique ID
-                // read in current unique ID
-                managerNodes = doc.getElementsByTagName("manager");                 // get manager section
-                CM_ID = Integer.parseInt(managerNodes.item(0).getTextContent());    // only one node expected
-                                                                                    // containing unique ID seed
-                // 2. Contacts section - contains all known contacts
-                // read in contacts
-                contactNodes = doc.getElementsByTagName("contact");     // get list of contact nodes
-                for (int i = 0; i < contactNodes.getLength(); i++) {
-
-                    Node nNode = contactNodes.item(i);      // current node
-
-                    if (nNode.getNodeType() == Node.ELEMENT_NODE) {     // read only element type nodes
-
-                        Element eElement = (Element) nNode; // current element node
-
-                        // create contact based on node
-                        Contact c = new ContactImpl(Integer.parseInt(eElement.getAttribute("id")),
-                                eElement.getElementsByTagName("name").item(0).getTextContent(),
-                                eElement.getElementsByTagName("notes").item(0).getTextContent());
+            // complete or discard a save of shard files interrupted by a crash
+            recoverShards();
 
-                        contacts.add(c);    // add contact to set
+            // read shard files if present, otherwise the single xml file unless empty
+            List<File> files = shardFiles();
+            File contactsXml = file(filePath);      // set xml file path
+            if (files.isEmpty() && contactsXml.length() > 0)
+                files.add(contactsXml);
 
-                    }
-                }
-
-                // 3. Meetings section - contacts all scheduled meetings, past and future
-                // read in meetings
-                meetingNodes = doc.getElementsByTagName("meeting");     // get list of meeting nodes
-
-                for (int i = 0; i < meetingNodes.getLength(); i++) {    // read each node into meeting list
-
-                    Node nMeeting = meetingNodes.item(i);      // current node
-
-                    if (nMeeting.getNodeType() == Node.ELEMENT_NODE) {     // read only element type nodes
-
-                        Element eElement = (Element) nMeeting; // current element node
-
-                        // 3.1 meeting date from file as calendar object
-                        Date xmlDate = format.parse(eElement.getElementsByTagName("date").item(0).getTextContent());    // read date from string
-                        Calendar meetingDate = Calendar.getInstance();  // create calendar object
-                        meetingDate.setTime(xmlDate);                   // initialise calendar object with date from file
-
-                        // 3.2 meeting notes
-                        String meetingNotes = eElement.getElementsByTagName("notes").item(0).getTextContent();
-
-                        // 3.3 meeting contacts collection from file
-                        Set<Contact> meetingContacts = new HashSet<Contact>();  // set for current meeting
-
-                        Element mcs = (Element) eElement.getElementsByTagName("meetingContacts").item(0);
-                        meetingContactNodes = mcs.getElementsByTagName("meetingContact");  // get list of meeting contact nodes
-
-                        for (int j = 0; j < meetingContactNodes.getLength(); j++) {     // read each node into current meeting contact set
-
-                            Node nMeetingContactNode = meetingContactNodes.item(j);             // current node
-
-                            if (nMeetingContactNode.getNodeType() == Node.ELEMENT_NODE) {       // read only element type nodes
-
-                                Element eMeetingContactElement = (Element) nMeetingContactNode; // current element node
-
-                                int id = Integer.parseInt(eMeetingContactElement.getAttribute("id"));   // get meeting ID
-
-                                Set<Contact> cs = getContacts(id);      // find contact by ID
-                                Contact c = (Contact) cs.toArray()[0];  // one contact return expected since only one unique ID searched
-                                meetingContacts.add(c);                 // add contact to meeting contacts set
-
-                            }
-                        }
-
-                        // determine meeting type and add meeting to meeting list
-                        if (eElement.getAttribute("type").equals(MeetingType.PAST.toString())) {
-
-                            PastMeeting m = new PastMeetingImpl(Integer.parseInt(eElement.getAttribute("id")),
-                                    meetingDate,
-                                    meetingContacts,
-                                    meetingNotes);
-
-                            meetings.add(m);
-
-                        } else if (eElement.getAttribute("type").equals(MeetingType.FUTURE.toString())) {
+            // if no file exists, create the single xml file
+            if (files.isEmpty()) {
+                if (options.getShards() == 1)
+                    contactsXml.createNewFile();
+            } else {
+                load(files);
+            }
 
-                            FutureMeeting m = new FutureMeetingImpl(Integer.parseInt(eElement.getAttribute("id")),
-                                    meetingDate,
-                                    meetingContacts);
+            // apply the changes saved since the last full save, if any
+            loadDeltas();
+            fullSaveDue = contactsXml.length() == 0;
 
-                            meetings.add(m);
+            // read past meetings segment and archive, if present
+            loadPastSegment();
+            loadArchiveSegment();
 
-                        }
-                    }
-                }
+            // archive past meetings older than the archive age
+            if (options.getArchiveAfterDays() > 0) {
+                Calendar before = Calendar.getInstance();
+                before.add(Calendar.DAY_OF_MONTH, -options.getArchiveAfterDays());
+                archivePastMeetings(before);
             }
 
         // exception handling
         } catch (IOException e) {
+            loadFailed = true;
             e.printStackTrace();
-        } catch (ParserConfigurationException e) {
-            e.printStackTrace();
-        } catch (SAXException e) {
-            e.printStackTrace();
-        } catch (ParseException e) {
-            e.printStackTrace();
+        } catch (CompletionException e) {
+            loadFailed = true;
+            e.getCause().printStackTrace();
+        }
+
+        // history read
+        if (options.isKeepHistory())
+            loadHistory();
+
+        // track changes from here on, if they are saved as deltas
+        if (options.getDeltaSaves() > 0 && options.getShards() == 1 && !options.isLazyPastMeetings()) {
+            dirtyMeetings = new HashSet<Integer>();
+            dirtyContacts = new HashSet<Integer>();
+            dirtySeries = new HashSet<Integer>();
+        }
+
+        // record the time taken to load, and the records loaded
+        if (options.getMetrics() != null) {
+            long records = contacts.size() + meetings.size() + recurringMeetings.size();
+            for (PastMeetingSegment segment : pastSegments())
+                records += segment.size();
+            options.getMetrics().recordLoad(System.nanoTime() - loadStart, records);
         }
 
     }
@@ -252,12 +357,46 @@ public class ContactManagerImpl implements ContactManager {
      *     After checking that the contacts for the meeting are known to the contact manager
      *     and that the date is in the future, this methods creates a new instance of a future meeting
      *     and adds it to the internal list of meetings
+     *
+     *     The meeting lasts the default duration, and is not checked for conflicts. See method
+     *     {@link #addFutureMeeting(Set, Calendar, int, boolean) addFutureMeeting(Set, Calendar, int, boolean)}.
      * </p>
      *
      * @return a unique id
      */
     @Override
-    public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+    public synchronized int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+
+        return addFutureMeeting(contacts, date, Meeting.DEFAULT_DURATION, false);
+
+    }
+
+    /**
+     * <code>addFutureMeeting(Set, Calendar, int, boolean)</code> with duration
+     * <p>
+     *     As {@link #addFutureMeeting(Set, Calendar) addFutureMeeting(Set, Calendar)}, but for a meeting of the
+     *     given duration. Optionally, the meeting is rejected if any of its contacts already has a meeting at an
+     *     overlapping time. See method {@link #findConflicts(Set, Calendar, Calendar) findConflicts}.
+     * </p>
+     *
+     * @param contacts a list of contacts that will participate in the meeting
+     * @param date the date on which the meeting will take place
+     * @param duration the duration of the meeting in minutes
+     * @param rejectConflicts true to reject a meeting that conflicts with an existing meeting
+     * @return a unique id
+     * @throws IllegalArgumentException if the meeting is set for a time in the past, if any contact is unknown /
+     *                                  non-existent, or if the duration is not positive
+     * @throws SchedulingConflictException if conflicts are rejected and the meeting conflicts with an existing
+     *                                     meeting
+     */
+    public synchronized int addFutureMeeting(Set<Contact> contacts, Calendar date, int duration,
+                                             boolean rejectConflicts) {
+
+        Call call = beginCall();
+
+        // check the duration is positive
+        if (duration <= 0)
+            throw new IllegalArgumentException();
 
         // check date for meeting is a future date
         Calendar now = Calendar.getInstance();      // get time as at now
@@ -268,15 +407,35 @@ public class ContactManagerImpl implements ContactManager {
         if (!checkContactsExist(contacts))          // call internal method to verify contacts
             throw new IllegalArgumentException();   // if false returned, throw exception
 
+        // check for conflicts if they are to be rejected
+        if (rejectConflicts) {
+            Calendar end = (Calendar) date.clone();
+            end.add(Calendar.MINUTE, duration);
+            List<Meeting> conflicts;
+            callDepth++;                            // not logged apart from this call
+            try {
+                conflicts = findConflicts(contacts, date, end);
+            } finally {
+                callDepth--;
+            }
+            if (!conflicts.isEmpty())
+                throw new SchedulingConflictException(conflicts);
+        }
+
         // if all exceptions are passed, generate a unique id for the meeting
-        int id = uniqueId();    // call internal method to generate unique id
+        int id = nextId();      // call internal method to generate unique id
 
         // create new instance of future meeting and add to internal list of meetings
-        FutureMeeting fm = new FutureMeetingImpl(id, date, contacts);
-        meetings.add(fm);
+        FutureMeeting fm = new FutureMeetingImpl(id, date, contacts, duration);
+        addMeeting(fm);
+        if (history != null)
+            history.recordMeeting(System.currentTimeMillis(), fm);
+        if (changeEvents != null)
+            publish(new ChangeEvent.MeetingScheduled(++eventSequence, System.currentTimeMillis(), fm));
+        refreshView();
 
         // return the id of the new future meeting
-        return id;
+        return endCall(call, "addFutureMeeting", id, contacts, date);
     }
 
     /**
@@ -295,7 +454,9 @@ public class ContactManagerImpl implements ContactManager {
      * @return past meeting based on unique id, or null
      */
     @Override
-    public PastMeeting getPastMeeting(int id) {
+    public synchronized PastMeeting getPastMeeting(int id) {
+
+        Call call = beginCall();
 
         // past meeting to be returned, initialised to null
         PastMeeting ret = null;
@@ -303,29 +464,25 @@ public class ContactManagerImpl implements ContactManager {
         // call internal method to update any future meetings that are now in the past
         updateMeetingTypes();
 
-        // scan internal list of meetings
-        for (Object m : meetings) {
-
-            // if the meeting is a past meeting, check the id and return if found
-            if (m instanceof PastMeeting) {
-
-                PastMeeting pm = (PastMeeting) m;   // cast to past meeting to get id
-                if (pm.getId() == id)               // check id
-                    ret = pm;                       // set return object if meeting found
-
-            // if the meeting is a future meeting, check id and throw exception if found
-            } else if (m instanceof FutureMeeting) {
-
-                FutureMeeting fm = (FutureMeeting) m;       // cast to future meeting to get id
-                if (fm.getId() == id)                       // check id
-                    throw new IllegalArgumentException();   // thrown exception if found
+        // find the meeting in the internal list from the meetings index, throwing an exception if a future meeting
+        int row = indexOfMeeting(id);
+        if (row >= 0) {
+            Object m = meetings.get(row);
+            if (m instanceof FutureMeeting)
+                throw new IllegalArgumentException();
+            ret = (PastMeeting) m;
+        }
 
-            }
+        // if not found, check for a past meeting read on demand or archived
+        if (ret == null)
+            ret = segmentMeeting(id);
 
-        }
+        // if the id is of a future occurrence of a recurring meeting, throw exception
+        if (getOccurrence(id) != null)
+            throw new IllegalArgumentException();
 
         // return past meeting or null
-        return ret;
+        return endCall(call, "getPastMeeting", ret, id);
     }
 
     /**
@@ -344,7 +501,9 @@ public class ContactManagerImpl implements ContactManager {
      * @return future meeting based on unique id, or null
      */
     @Override
-    public FutureMeeting getFutureMeeting(int id) {
+    public synchronized FutureMeeting getFutureMeeting(int id) {
+
+        Call call = beginCall();
 
         // past meeting to be returned, initialised to null
         FutureMeeting ret = null;
@@ -352,29 +511,25 @@ public class ContactManagerImpl implements ContactManager {
         // call internal method to update any future meetings that are now in the past
         updateMeetingTypes();
 
-        // scan internal list of meetings
-        for (Object m : meetings) {
-
-            // if the meeting is a future meeting, check the id and return if found
-            if (m instanceof FutureMeeting) {
-
-                FutureMeeting fm = (FutureMeeting) m;   // cast to future meeting to get id
-                if (fm.getId() == id)                   // check id
-                    ret = fm;                           // set return object if meeting found
-
-            // if the meeting is a past meeting, check id and throw exception if found
-            } else if (m instanceof PastMeeting) {
-
-                PastMeeting pm = (PastMeeting) m;           // cast to future meeting to get id
-                if (pm.getId() == id)                       // check id
-                    throw new IllegalArgumentException();   // thrown exception if found
+        // find the meeting in the internal list from the meetings index, throwing an exception if a past meeting
+        int row = indexOfMeeting(id);
+        if (row >= 0) {
+            Object m = meetings.get(row);
+            if (m instanceof PastMeeting)
+                throw new IllegalArgumentException();
+            ret = (FutureMeeting) m;
+        }
 
-            }
+        // if the id is of a past meeting read on demand or archived, throw exception
+        if (segmentOf(id) != null)
+            throw new IllegalArgumentException();
 
-        }
+        // if not found, check for a future occurrence of a recurring meeting
+        if (ret == null)
+            ret = getOccurrence(id);
 
         // return past meeting or null
-        return ret;
+        return endCall(call, "getFutureMeeting", ret, id);
     }
 
     /**
@@ -392,23 +547,29 @@ public class ContactManagerImpl implements ContactManager {
      * @return future meeting based on unique id, or null
      */
     @Override
-    public Meeting getMeeting(int id) {
+    public synchronized Meeting getMeeting(int id) {
 
-        Meeting ret = null, m;
+        Call call = beginCall();
+
+        Meeting ret = null;
 
         updateMeetingTypes();   // update any future meetings
 
-        // scan internal meeting list
-        for (Object o : meetings) {
+        // find the meeting in the internal list from the meetings index
+        int row = indexOfMeeting(id);
+        if (row >= 0)
+            ret = (Meeting) meetings.get(row);
 
-            m = (Meeting) o;        // cast to meeting to get id
-            if (m.getId() == id)    // check id
-                ret = m;            // set return object if id found
+        // if not found, check for a past meeting read on demand or archived
+        if (ret == null)
+            ret = segmentMeeting(id);
 
-        }
+        // if not found, check for a future occurrence of a recurring meeting
+        if (ret == null)
+            ret = getOccurrence(id);
 
         // return meeting or null
-        return ret;
+        return endCall(call, "getMeeting", ret, id);
     }
 
     /**
@@ -422,14 +583,18 @@ public class ContactManagerImpl implements ContactManager {
      *     list of meetings. Any future meetings whose dates is now in the past are updated accordingly. See internal
      *     method {@link #updateMeetingTypes() updateMeetingTypes}.
      *
-     *     Furthermore, the list of meetings to be returned is sorted into chronological order. See method
-     *     {@link #sortMeetingList(List) sortMeetingList}.
+     *     Furthermore, the list of meetings to be returned is in chronological order. The meetings found are sorted,
+     *     see method {@link #sortMeetingList(List) sortMeetingList}, and merged lazily with the future occurrences of
+     *     each recurring meeting with the contact, see {@link LazyMeetingList LazyMeetingList}, so occurrences are only
+     *     created as the list is read.
      * </p>
      *
      * @return list of future meetings based on contact, or an empty list.
      */
     @Override
-    public List<Meeting> getFutureMeetingList(Contact contact) {
+    public synchronized List<Meeting> getFutureMeetingList(Contact contact) {
+
+        Call call = beginCall();
 
         // if the contact is unknown to the contact manager, throw an exception
         if (!checkContactExists(contact))
@@ -438,11 +603,19 @@ public class ContactManagerImpl implements ContactManager {
         // update any future meetings that are now in the past
         updateMeetingTypes();
 
-        // list of meetings to be returned
-        List<Meeting> ret = new ArrayList<Meeting>();
+        // return a copy of the cached list, if any
+        if (queryCache != null) {
+            LazyMeetingList cached = queryCache.get(QueryCache.Query.FUTURE_BY_CONTACT, contact.getId());
+            if (cached != null)
+                return endCall(call, "getFutureMeetingList(Contact)", cached.copy(), contact);
+        }
 
-        // scan internal list of meetings
-        for (Object o : meetings) {
+        // list of meetings found
+        List<Meeting> held = new ArrayList<Meeting>();
+
+        // scan internal list of meetings, off-heap only the meetings whose columns match
+        meetingsScanned += meetings.size();
+        for (Object o : candidates(false, Collections.singleton(contact.getId()))) {
 
             // if the meeting is a future meeting
             if (o instanceof FutureMeeting) {
@@ -454,7 +627,7 @@ public class ContactManagerImpl implements ContactManager {
                 for (Contact c : cs) {
 
                     if (contact.getId() == c.getId())   // if the contact is present in this meeting
-                        ret.add(m);                     // add the meeting to the return list
+                        held.add(m);                    // add the meeting to the list found
 
                 }
 
@@ -462,11 +635,17 @@ public class ContactManagerImpl implements ContactManager {
 
         }
 
-        // sort the return list in chronological order
-        sortMeetingList(ret);
+        // sort the meetings found in chronological order, and merge the occurrences of each recurring meeting with
+        // the contact as the list is read
+        sortMeetingList(held);
+        LazyMeetingList ret = new LazyMeetingList(held, recurringWithContact(contact.getId()));
+
+        // cache a copy of the list
+        if (queryCache != null)
+            queryCache.put(QueryCache.Query.FUTURE_BY_CONTACT, contact.getId(), ret.copy());
 
         // return list of meetings, or an empty list
-        return ret;
+        return endCall(call, "getFutureMeetingList(Contact)", ret, contact);
     }
 
     /**
@@ -487,7 +666,9 @@ public class ContactManagerImpl implements ContactManager {
      * @return list of future meetings based on contact, or an empty list.
      */
     @Override
-    public List<Meeting> getFutureMeetingList(Calendar date) {
+    public synchronized List<Meeting> getFutureMeetingList(Calendar date) {
+
+        Call call = beginCall();
 
         // update any future meetings
         updateMeetingTypes();
@@ -495,8 +676,9 @@ public class ContactManagerImpl implements ContactManager {
         // return list of meetings
         List<Meeting> ret = new ArrayList<Meeting>();
 
-        // scan internal list of meetings
-        for (Object o : meetings) {
+        // scan internal list of meetings, off-heap only the meetings whose columns match
+        meetingsScanned += meetings.size();
+        for (Object o : candidatesOnDate(date.getTimeInMillis())) {
 
             Meeting m = (Meeting) o;                // cast to meeting to access date
             if (m.getDate().compareTo(date) == 0)   // if dates are the same
@@ -504,11 +686,24 @@ public class ContactManagerImpl implements ContactManager {
 
         }
 
+        // find past meetings read on demand or archived on the date, from the segment indexes
+        for (PastMeetingSegment segment : pastSegments()) {
+            for (int id : segment.getIdsOnDate(date.getTimeInMillis()))
+                ret.add(segment.get(id, contactIndex));
+        }
+
+        // find any future occurrence of each recurring meeting on the date
+        for (RecurringMeeting r : recurringMeetings) {
+            int i = r.firstFrom(date.getTimeInMillis());
+            if (i < r.getCount() && r.getOccurrenceDate(i).compareTo(date) == 0)
+                ret.add(r.getOccurrence(i));
+        }
+
         // sort return list chronologically
         sortMeetingList(ret);
 
         // return list of meetings, or empty list
-        return ret;
+        return endCall(call, "getFutureMeetingList(Calendar)", ret, date);
 
     }
 
@@ -530,7 +725,9 @@ public class ContactManagerImpl implements ContactManager {
      * @return list of past meetings based on contact, or an empty list.
      */
     @Override
-    public List<PastMeeting> getPastMeetingList(Contact contact) {
+    public synchronized List<PastMeeting> getPastMeetingList(Contact contact) {
+
+        Call call = beginCall();
 
         // if the contact is unknown to the contact manager, throw an exception
         if (!checkContactExists(contact))
@@ -539,11 +736,19 @@ public class ContactManagerImpl implements ContactManager {
         // update any future meetings
         updateMeetingTypes();
 
+        // return a copy of the cached list, if any
+        if (queryCache != null) {
+            List<PastMeeting> cached = queryCache.get(QueryCache.Query.PAST_BY_CONTACT, contact.getId());
+            if (cached != null)
+                return endCall(call, "getPastMeetingList", new ArrayList<PastMeeting>(cached), contact);
+        }
+
         // return list of meetings
         List<PastMeeting> ret = new ArrayList<PastMeeting>();
 
-        // scan internal list of meetings
-        for (Object o : meetings) {
+        // scan internal list of meetings, off-heap only the meetings whose columns match
+        meetingsScanned += meetings.size();
+        for (Object o : candidates(true, Collections.singleton(contact.getId()))) {
 
             // if the meeting is a past meeting
             if (o instanceof PastMeeting) {
@@ -561,11 +766,21 @@ public class ContactManagerImpl implements ContactManager {
 
         }
 
+        // find past meetings read on demand or archived with the contact, from the segment indexes
+        for (PastMeetingSegment segment : pastSegments()) {
+            for (int id : segment.getIdsWithContact(contact.getId()))
+                ret.add(segment.get(id, contactIndex));
+        }
+
         // sort the return list in chronological order
         sortPastMeetingList(ret);
 
+        // cache a copy of the list
+        if (queryCache != null)
+            queryCache.put(QueryCache.Query.PAST_BY_CONTACT, contact.getId(), new ArrayList<PastMeeting>(ret));
+
         // return list of meetings, or an empty list
-        return ret;
+        return endCall(call, "getPastMeetingList", ret, contact);
 
     }
 
@@ -579,7 +794,9 @@ public class ContactManagerImpl implements ContactManager {
      * </p>
      */
     @Override
-    public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+    public synchronized void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+
+        Call call = beginCall();
 
         // check none of the arguments are null
         if (contacts == null || date == null || text == null)
@@ -594,7 +811,15 @@ public class ContactManagerImpl implements ContactManager {
             throw new IllegalArgumentException();
 
         // add a new past meeting to the internal list of meetings
-        this.meetings.add(new PastMeetingImpl(uniqueId(), date, contacts, text));
+        PastMeeting pm = new PastMeetingImpl(nextId(), date, contacts, stringPool.intern(text));
+        addMeeting(pm);
+        if (history != null)
+            history.recordMeeting(System.currentTimeMillis(), pm);
+        if (changeEvents != null)
+            publish(new ChangeEvent.PastMeetingAdded(++eventSequence, System.currentTimeMillis(), pm));
+        refreshView();
+
+        endCall(call, "addNewPastMeeting", null, contacts, date, text);
 
     }
 
@@ -607,18 +832,27 @@ public class ContactManagerImpl implements ContactManager {
      *
      *     Since there is no API on the meeting class to add notes directly, a
      *     copy constructor is used, creating a new meeting with the details of the
-     *     given meeting, but with the notes added.
+     *     given meeting, but with the notes added. The new meeting replaces the
+     *     given meeting in place in the internal list of meetings.
      * </p>
      */
     @Override
-    public void addMeetingNotes(int id, String text) {
+    public synchronized void addMeetingNotes(int id, String text) {
+
+        Call call = beginCall();
 
         // check that the notes are not null
         if (text == null)
             throw new NullPointerException();
 
         // check that the meeting exists
-        Meeting m = getMeeting(id);
+        Meeting m;
+        callDepth++;                                // not logged apart from this call
+        try {
+            m = getMeeting(id);
+        } finally {
+            callDepth--;
+        }
         if (m == null)
             throw new IllegalArgumentException();
 
@@ -628,11 +862,33 @@ public class ContactManagerImpl implements ContactManager {
             throw new IllegalStateException();
 
         // create a new meeting using the copy constructor
-        PastMeeting pm = new PastMeetingImpl(m, text);
+        PastMeeting pm = new PastMeetingImpl(m, stringPool.intern(text));
 
         // update the internal list of meetings
-        meetings.remove(m);     // remove existing meeting
-        meetings.add(pm);       // add new past meeting with notes
+        int row = indexOfMeeting(id);
+        if (row >= 0) {
+            meetings.set(row, pm);              // replace existing meeting with new past meeting with notes
+        } else {
+            meetings.add(pm);                   // past meeting read on demand or archived is now held in the
+            meetingRows.put(id, meetings.size() - 1);   // list
+            if (segmentOf(id) == pastSegment)
+                pastSegment = pastSegment.without(id);
+            else
+                archiveSegment = archiveSegment.without(id);
+            indexMeeting(pm);                   // no longer found from the segment's index
+        }
+        version++;
+        if (dirtyMeetings != null)
+            dirtyMeetings.add(id);
+        if (queryCache != null)
+            queryCache.invalidateContacts(pm.getContacts());
+        if (history != null)
+            history.recordNotes(System.currentTimeMillis(), id, text);
+        if (changeEvents != null)
+            publish(new ChangeEvent.NotesAdded(++eventSequence, System.currentTimeMillis(), pm, text));
+        refreshView();
+
+        endCall(call, "addMeetingNotes", null, id, text);
 
     }
 
@@ -645,14 +901,27 @@ public class ContactManagerImpl implements ContactManager {
      * </p>
      */
     @Override
-    public void addNewContact(String name, String notes) {
+    public synchronized void addNewContact(String name, String notes) {
+
+        Call call = beginCall();
 
         // check that the arguments are of null
         if (name == null || notes == null)
             throw new NullPointerException();
 
         // create a new contact and add them to the collection of contacts
-        contacts.add(new ContactImpl(uniqueId(), name, notes));
+        Contact c = new ContactImpl(nextId(), stringPool.intern(name), stringPool.intern(notes));
+        addContact(c);
+        version++;
+        if (queryCache != null)
+            queryCache.invalidateName(name);
+        if (history != null)
+            history.recordContact(System.currentTimeMillis(), c);
+        if (changeEvents != null)
+            publish(new ChangeEvent.ContactAdded(++eventSequence, System.currentTimeMillis(), c));
+        refreshView();
+
+        endCall(call, "addNewContact", null, name, notes);
 
     }
 
@@ -665,13 +934,16 @@ public class ContactManagerImpl implements ContactManager {
      * </p>
      */
     @Override
-    public Set<Contact> getContacts(int... ids) {
+    public synchronized Set<Contact> getContacts(int... ids) {
+
+        Call call = beginCall();
 
         // check that each of the given ids exists
         for (int i : ids) {
 
             // iterate through set of contacts to check for id
             boolean exists = false;         // existence flag
+            contactsScanned += contacts.size();
             for (Contact c : contacts) {
                 if (i == c.getId())         // if the contact exists
                     exists = true;          // set the flag to true
@@ -687,6 +959,7 @@ public class ContactManagerImpl implements ContactManager {
         Set<Contact> ret = new HashSet<Contact>();
 
         // go through internal set of contacts
+        contactsScanned += contacts.size();
         for (Contact c : contacts) {
 
             // for each id passed to the method
@@ -698,7 +971,7 @@ public class ContactManagerImpl implements ContactManager {
         }
 
         // return set of contacts
-        return ret;
+        return endCall(call, "getContacts(int...)", ret, ids);
     }
 
     /**
@@ -710,23 +983,37 @@ public class ContactManagerImpl implements ContactManager {
      * </p>
      */
     @Override
-    public Set<Contact> getContacts(String name) {
+    public synchronized Set<Contact> getContacts(String name) {
+
+        Call call = beginCall();
 
         // check the name is not null
         if (name == null)
             throw new NullPointerException();
 
+        // return a copy of the cached set, if any
+        if (queryCache != null) {
+            Set<Contact> cached = queryCache.get(QueryCache.Query.CONTACTS_BY_NAME, name);
+            if (cached != null)
+                return endCall(call, "getContacts(String)", new HashSet<Contact>(cached), name);
+        }
+
         // return set
         Set<Contact> ret = new HashSet<Contact>();
 
         // iterate thought contacts
+        contactsScanned += contacts.size();
         for (Contact c : contacts) {
             if (c.getName().contains(name))     // if the name matches
                 ret.add(c);                     // add the contact to the return set
         }
 
+        // cache a copy of the set
+        if (queryCache != null)
+            queryCache.put(QueryCache.Query.CONTACTS_BY_NAME, name, new HashSet<Contact>(ret));
+
         // return set of contacts with given name
-        return ret;
+        return endCall(call, "getContacts(String)", ret, name);
     }
 
     /**
@@ -739,250 +1026,2341 @@ public class ContactManagerImpl implements ContactManager {
     @Override
     public void flush() {
 
-        // file write setup
-        Document output;                                    // document to be output to file
-        Element managerRoot, contactRoot, meetingRoot;      // xml elements
-        DocumentBuilderFactory docFactory;                  // for xml output
-        DocumentBuilder docBuilder;                         // for xml output
-
-        // file write
+        // write a snapshot of the current state, waiting until it is saved
         try {
+            flushAsync().join();
 
-            docFactory = DocumentBuilderFactory.newInstance();
-            docBuilder = docFactory.newDocumentBuilder();
-
-            // 1. root element - contactmanager
-            output = docBuilder.newDocument();
-            Element rootElement = output.createElement("contactmanager");
-            output.appendChild(rootElement);
-
-            // 2. manager element - manager
-            managerRoot = output.createElement("manager");
-            rootElement.appendChild(managerRoot);
+        // handle exceptions
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        }
 
-            // output unique id seed
-            Element eId = output.createElement("CM_ID");
-            eId.appendChild(output.createTextNode("" + CM_ID));
-            managerRoot.appendChild(eId);
+    }
 
-            // 3. contacts element - contact
-            contactRoot = output.createElement("contacts");
-            rootElement.appendChild(contactRoot);
+    /**
+     * <code>flushAsync()</code>
+     * <p>
+     *     Save details of contacts, meetings and unique ids to file, in the background.
+     *
+     *     A point-in-time snapshot of the contact manager is frozen on the caller's thread in constant time, see
+     *     {@link StoreSnapshot StoreSnapshot} and internal method {@link #freezeView() freezeView}. The snapshot is
+     *     then written on a background thread to a temporary
+     *     file, which is renamed over the contacts file, see {@link XmlStore XmlStore}. The contact manager can be
+     *     used, and changed, while the snapshot is written. Snapshots are written one at a time, in the order they
+     *     were captured.
+     *
+     *     Where delta saves are set, see {@link ContactManagerOptions#setDeltaSaves(int) setDeltaSaves}, only the
+     *     contacts and meetings changed since the last save are captured, and written to the next delta file. Every
+     *     so many delta saves, the full snapshot is written instead, and the delta files are removed.
+     * </p>
+     *
+     * @return a future completed once the snapshot is saved, or completed exceptionally if it could not be saved,
+     *         or if the files could not be read at start up
+     */
+    public CompletableFuture<Void> flushAsync() {
+
+        // refuse to overwrite files that could not be read with the part of them that was
+        if (loadFailed) {
+            CompletableFuture<Void> ret = new CompletableFuture<Void>();
+            ret.completeExceptionally(new UncheckedIOException(
+                    new IOException("the files could not be read at start up, so are not overwritten")));
+            return ret;
+        }
 
-            // 4. meetings element - meeting
-            meetingRoot = output.createElement("meetings");
-            rootElement.appendChild(meetingRoot);
+        // capture snapshot, or the changes since the last save, and changes to append to the history, while locked
+        final StoreSnapshot snapshot;
+        final StoreSnapshot changes;
+        final List<String> historyLines;
+        synchronized (this) {
+            changes = dirtyMeetings == null ? null : captureChanges();
+            if (changes == null || fullSaveDue || deltasSinceFull >= options.getDeltaSaves()) {
+                snapshot = freezeView().getStoreSnapshot();
+                deltasSinceFull = 0;
+                fullSaveDue = false;
+            } else {
+                snapshot = null;                    // only the changes are written
+                deltasSinceFull++;
+            }
+            historyLines = history == null ? Collections.<String>emptyList() : history.drainPending();
 
-            // write contacts to document
-            for (Contact c : contacts) {
-                // call internal method to setup contact elements
-                addContactElement(output, contactRoot, "" + c.getId(), c.getName(), c.getNotes());
-            }
-
-            // write meetings to output
-            for (Object m : meetings) {
-
-                // check meeting type
-                if (m instanceof PastMeeting) {
-
-                    // call internal method to setup meeting element
-                    PastMeeting pm = (PastMeeting) m;
-                    addMeetingElement(output,
-                            meetingRoot,
-                            "" + pm.getId(),
-                            MeetingType.PAST.toString(),
-                            pm.getDate(),
-                            pm.getContacts(),
-                            pm.getNotes());
-
-                } else if (m instanceof FutureMeeting) {
-
-                    // call internal method to setup meeting element
-                    FutureMeeting fm = (FutureMeeting) m;
-                    addMeetingElement(output,
-                            meetingRoot,
-                            "" + fm.getId(),
-                            MeetingType.FUTURE.toString(),
-                            fm.getDate(),
-                            fm.getContacts(),
-                            "");
+            // release notes and contacts of replaced off-heap rows, once they are half the shared columns
+            if (meetings instanceof OffHeapMeetingList) {
+                OffHeapMeetingList list = (OffHeapMeetingList) meetings;
+                if (list.getWastedBytes() * 2 > list.getSharedBytes())
+                    list.compact();
+            }
+        }
 
+        // write snapshot in the background
+        return CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    if (!historyLines.isEmpty())
+                        ChangeHistory.append(file(historyPath), historyLines);
+                    StoreSnapshot written = snapshot != null ? snapshot : changes;
+                    long bytes = snapshot != null ? save(snapshot, changes) : saveDelta(changes);
+                    if (options.getMetrics() != null)
+                        options.getMetrics().recordSave(System.nanoTime() - start, bytes,
+                                written.getContacts().size() + written.getMeetings().size()
+                                        + written.getRecurringMeetings().size());
+                } catch (IOException e) {
+                    if (changes != null)
+                        redirty(changes);           // write the changes again at the next save
+                    throw new UncheckedIOException(e);
                 }
-
             }
-
-            // write the output into xml file
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(output);
-            StreamResult result = new StreamResult(new File(filePath));
-
-            // Output to console for testing
-            //StreamResult result = new StreamResult(System.out);
-
-            // write
-            transformer.transform(source, result);
-
-        // handle exceptions
-        } catch (ParserConfigurationException pce) {
-            pce.printStackTrace();
-        } catch (TransformerException tfe) {
-            tfe.printStackTrace();
-        }
+        }, flushExecutor());
 
     }
 
-    /* P R I V A T E   M E T H O D S */
-
     /**
-     * <code>addContactElement()</code>
+     * <code>snapshot()</code>
+     * {@inheritDoc}
      * <p>
-     *     Creates an xml element for a contact
+     *     Each view is frozen from the versioned lists of the contact manager in constant time, see internal method
+     *     {@link #freezeView() freezeView} and {@link ContactManagerSnapshot ContactManagerSnapshot}. Once a view has
+     *     been taken, a view of each new version is published by the change that made it, so the view returned is
+     *     normally the published view, read without taking the lock. The view takes no locks, so its readers never
+     *     block writers.
+     *
+     *     The lock is only taken if a future meeting may have passed since the published view was frozen. Any future
+     *     meetings that have become past meetings are then updated, see internal method
+     *     {@link #updateMeetingTypes() updateMeetingTypes}, and a new view is published. If nothing has changed, the
+     *     same view is returned again.
      * </p>
+     *
+     * @return a read-only view pinned at the current version
      */
-    private void addContactElement(Document output, Element root, String id, String name, String notes) {
+    @Override
+    public ContactManagerSnapshot snapshot() {
 
-        Element contact, eName, eNotes;     // elements
+        // the published view, while it is of the current version and no meeting has passed since
+        ContactManagerSnapshot ret = published;
+        if (ret != null && ret.getVersion() == version && System.currentTimeMillis() <= ret.getValidUntil())
+            return ret;
 
-        // contact root
-        contact = output.createElement("contact");
-        root.appendChild(contact);
+        synchronized (this) {
 
-        // set contact id attribute
-        contact.setAttribute("id", id);
+            // update any future meetings that are now in the past
+            updateMeetingTypes();
 
-        // add contact name
-        eName = output.createElement("name");
-        eName.appendChild(output.createTextNode(name));
-        contact.appendChild(eName);
+            // publish a view of the current version, unless already published
+            if (published == null || published.getVersion() != version
+                    || published.getValidUntil() != nextTransition)
+                publishView();
+            return published;
 
-        // add contact notes
-        eNotes = output.createElement("notes");
-        eNotes.appendChild(output.createTextNode(notes));
-        contact.appendChild(eNotes);
+        }
 
     }
 
     /**
-     * <code>addMeetingElement()</code>
+     * <code>asOf()</code>
      * <p>
-     *     Creates an xml element for a meeting
+     *     Returns a read-only view of the contacts and meetings as they were at the given date, rebuilt from the
+     *     history of changes, see {@link ChangeHistory ChangeHistory}. Meetings dated before the given date are past
+     *     meetings in the view, with the notes they had at that date.
+     *
+     *     The history is only kept when set in the options, see
+     *     {@link ContactManagerOptions#setKeepHistory(boolean) setKeepHistory}. Changes made before the history was
+     *     first kept are all recorded as of the time the history was started.
      * </p>
+     *
+     * @param date the date to view the contact manager as of
+     * @return a read-only view as of the date
+     * @throws IllegalStateException if no history is kept
      */
-    private void addMeetingElement(Document output,
-                                   Element root,
-                                   String id,
-                                   String type,
-                                   Calendar date,
-                                   Set<Contact> meetingContacts,
-                                   String notes) {
+    public synchronized ContactManagerSnapshot asOf(Calendar date) {
 
-        Element meeting, eDate, eMeetingContacts, eNotes;       // elements
+        Call call = beginCall();
 
-        // meeting root
-        meeting = output.createElement("meeting");
-        root.appendChild(meeting);
+        if (history == null)
+            throw new IllegalStateException();
 
-        // set meeting id attribute
-        meeting.setAttribute("id", id);
-        meeting.setAttribute("type", type);
+        long time = date.getTimeInMillis();
+        return endCall(call, "asOf", history.viewAsOf(time), date);
 
-        // meeting date
-        eDate = output.createElement("date");
-        eDate.appendChild(output.createTextNode(format.format(date.getTime())));
-        meeting.appendChild(eDate);
+    }
 
-        // meeting contacts
-        eMeetingContacts = output.createElement("meetingContacts");
-        meeting.appendChild(eMeetingContacts);
+    /**
+     * <code>archivePastMeetings()</code>
+     * <p>
+     *     Moves past meetings dated before the given date to the archive segment, contacts.archive, in which the notes
+     *     of each meeting are compressed, see {@link PastMeetingSegment PastMeetingSegment}. The archive is written
+     *     with the meetings already archived, copied as they are, and the given meetings, which are then removed from
+     *     the internal list of meetings or past meetings segment. Meetings archived from the list are also removed
+     *     from the co-attendance index, contact schedules and timeline, see internal method
+     *     {@link #unindexMeeting(Meeting) unindexMeeting}. Queries find them from the archive's own index instead, see
+     *     {@link PastMeetingSegment PastMeetingSegment}, and read them from the archive on demand.
+
+     *     The meetings to archive are found from the timeline and the date index of the segment, and each is removed
+     *     from the list by moving the last meeting into its row, see internal method {@link #removeRow(int)
+     *     removeRow}, so only the rows archived are changed, however many meetings are kept.
+     *
+     *     Archived meetings no longer take space on the heap, in the list or the indexes, nor time to flush. The
+     *     archive itself is only written by this method, and is left as it is by a flush.
+     * </p>
+     *
+     * @param before date before which past meetings are archived
+     * @return number of meetings archived
+     * @throws IOException if the archive cannot be written
+     */
+    public synchronized int archivePastMeetings(Calendar before) throws IOException {
 
-        // iterate through set of contacts
-        for (Contact c : meetingContacts) {
+        Call call = beginCall();
 
-            Element contact = output.createElement("meetingContact");
-            contact.setAttribute("id", "" + c.getId());
-            eMeetingContacts.appendChild(contact);
+        // update any future meetings that are now in the past
+        updateMeetingTypes();
 
+        // find past meetings before the date, held in the list from the timeline or read on demand from the index
+        long cutoff = before.getTimeInMillis();
+        List<PastMeeting> archived = new ArrayList<PastMeeting>();
+        List<Integer> fromList = new ArrayList<Integer>();     // rows of the meetings held in the list
+        for (Iterator<Integer> ids = timeline.startingBefore(cutoff); ids.hasNext(); ) {
+            int row = indexOfMeeting(ids.next());
+            Object o = meetings.get(row);
+            if (o instanceof PastMeeting) {
+                archived.add((PastMeeting) o);
+                fromList.add(row);
+            }
         }
+        List<Integer> fromSegment = pastSegment == null
+                ? Collections.<Integer>emptyList() : pastSegment.getIdsWithin(Long.MIN_VALUE, cutoff);
+        for (int id : fromSegment)
+            archived.add(pastSegment.get(id, contactIndex));
+        if (archived.isEmpty())
+            return endCall(call, "archivePastMeetings", 0, before);
+
+        // write the archive, then read it on demand
+        File archiveFile = file(archivePath);
+        PastMeetingSegment.write(archiveFile, archiveSegment, archived, true);
+        archiveSegment = PastMeetingSegment.open(archiveFile, options.getPastMeetingCacheSize());
+
+        // remove archived meetings from the list of meetings, and from the past meetings segment
+        for (int i = 0; i < fromList.size(); i++) {
+            unindexMeeting(archived.get(i));        // those from the list, which come first
+            meetingRows.remove(archived.get(i).getId());
+        }
+        Collections.sort(fromList, Collections.reverseOrder());
+        for (int row : fromList)
+            removeRow(row);
+        if (!fromSegment.isEmpty())
+            pastSegment = pastSegment.without(fromSegment);
+        version++;
+        fullSaveDue = true;                         // meetings removed from the list are not held by a delta
+        if (queryCache != null) {
+            for (PastMeeting pm : archived)
+                queryCache.invalidateContacts(pm.getContacts());
+        }
+        refreshView();
 
-        // meeting notes
-        eNotes = output.createElement("notes");
-        eNotes.appendChild(output.createTextNode(notes));
-        meeting.appendChild(eNotes);
+        return endCall(call, "archivePastMeetings", archived.size(), before);
 
     }
 
-
     /**
-     * <code>sortMeetingList()</code>
-     * <p>
-     *     Rearranges the given list of meetings into chronological order
-     * </p>
+     * <code>getQueryCacheHits()</code>
+     *
+     * @return number of queries answered from the query cache, or 0 if results are not cached
      */
-    private void sortMeetingList(List<Meeting> toSort) {
-
-        // setup comparator class to check meetings based on their meeting date
-        Comparator<? super Meeting> comp = new Comparator<Meeting>() {
-            @Override
-            public int compare(Meeting o1, Meeting o2) {
-                return o1.getDate().compareTo(o2.getDate());
-            }
-        };
-
-        // apply comparator to the given list
-        Collections.sort(toSort, (Comparator) comp);
+    public synchronized long getQueryCacheHits() {
+        return queryCache == null ? 0 : queryCache.getHits();
+    }
 
+    /**
+     * <code>getQueryCacheMisses()</code>
+     *
+     * @return number of cacheable queries not answered from the query cache, or 0 if results are not cached
+     */
+    public synchronized long getQueryCacheMisses() {
+        return queryCache == null ? 0 : queryCache.getMisses();
     }
 
     /**
-     * <code>sortPastMeetingList()</code>
+     * <code>getChangeEvents()</code>
      * <p>
-     *     Rearranges the given list of past meetings into chronological order
+     *     Returns the publisher of the changes made to the contact manager, see {@link ChangeEvent ChangeEvent}.
+     *     Each subscriber has its own buffer of events of the size set in the options, see
+     *     {@link ContactManagerOptions#setChangeEventBufferSize(int) setChangeEventBufferSize}, and is sent events
+     *     only as it requests them. Events are published as changes are made, and never hold up the change: once a
+     *     subscriber's buffer is full, further events are dropped for that subscriber until it catches up, which it
+     *     sees as a gap in the event numbers.
+     *
+     *     Changes are published as they are made through the contact manager. Future meetings are published as
+     *     having passed when the contact manager next checks meeting dates, on its next call.
      * </p>
+     *
+     * @return publisher of change events
+     * @throws IllegalStateException if change events are not published, or the publisher has been closed
      */
-    private void sortPastMeetingList(List<PastMeeting> toSort) {
-
-        // setup comparator class to check meetings based on their meeting date
-        Comparator<? super Meeting> comp = new Comparator<Meeting>() {
-            @Override
-            public int compare(Meeting o1, Meeting o2) {
-                return o1.getDate().compareTo(o2.getDate());
-            }
-        };
+    public synchronized Flow.Publisher<ChangeEvent> getChangeEvents() {
 
-        // apply comparator to the given list
-        Collections.sort(toSort, (Comparator) comp);
+        if (changeEvents == null)
+            throw new IllegalStateException();
+        return changeEvents;
 
     }
 
     /**
-     * <code>checkContactExists()</code>
+     * <code>closeChangeEvents()</code>
      * <p>
-     *     Checks a given contact to see if it exists in the internal set of contacts. Calls method checker
-     *     for sets of contacts {@link #checkContactsExist(Set) checkContactsExist}.
+     *     Closes the publisher of change events, completing each subscriber once it has been sent the events in its
+     *     buffer. Changes made afterwards are not published.
      * </p>
-     *
-     * @return true if contact exists
      */
-    private boolean checkContactExists(Contact c) {
+    public synchronized void closeChangeEvents() {
 
-        // create set with the given contact
-        Set<Contact> cs = new HashSet<Contact>();
-        cs.add(c);
+        if (changeEvents != null) {
+            changeEvents.close();
+            changeEvents = null;
+        }
 
-        // call internal method to check existence of contacts
-        // and return value
-        return checkContactsExist(cs);
+    }
 
+    /**
+     * <code>getDroppedChangeEvents()</code>
+     *
+     * @return number of change events dropped for subscribers whose buffers were full, counted once per subscriber
+     */
+    public synchronized long getDroppedChangeEvents() {
+        return droppedEvents;
     }
 
     /**
-     * <code>checkContactsExist()</code>
+     * <code>getLoadDeduplicated()</code>
      * <p>
-     *     Checks a given set of contact to see if each contact contains exists in the internal set of contacts
+     *     Names and notes read from file are canonicalized through a {@link StringPool StringPool}, see
+     *     {@link ContactManagerOptions#setStringPool(StringPool) setStringPool}, as are those given to
+     *     <code>addNewContact</code>, <code>addNewPastMeeting</code> and <code>addMeetingNotes</code>.
      * </p>
      *
-     * @return true if all contact exists
+     * @return number of names and notes read from file that share an instance with an equal string read before
+     */
+    public synchronized long getLoadDeduplicated() {
+        return loadDeduplicated;
+    }
+
+    /**
+     * <code>getStringPool()</code>
+     *
+     * @return pool the names and notes of the contact manager are canonicalized through
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * <code>getSlowOperations()</code>
+     * <p>
+     *     Returns the calls that took longer than the slow operation threshold, most recent last, see
+     *     {@link ContactManagerOptions#setSlowOperationThresholdMicros(long) setSlowOperationThresholdMicros}. Only
+     *     the most recent calls are kept, up to the size of the log.
+     * </p>
+     *
+     * @return slow calls, oldest first, or an empty list if slow calls are not logged
+     */
+    public List<SlowOperationLog.Entry> getSlowOperations() {
+        return slowLog == null ? Collections.<SlowOperationLog.Entry>emptyList() : slowLog.getEntries();
+    }
+
+    /**
+     * <code>getPublishedView()</code>
+     * <p>
+     *     Returns the view published by the last change, read without taking the lock. Once a view has been taken,
+     *     see {@link #snapshot() snapshot}, each change publishes a view of the new version, so the view is current
+     *     until a future meeting of it passes, see {@link ContactManagerSnapshot#getValidUntil() getValidUntil},
+     *     after which a new view is only published by the next change or snapshot.
+     * </p>
+     *
+     * @return the view published by the last change, or null if no view has been taken
+     */
+    public ContactManagerSnapshot getPublishedView() {
+        return published;
+    }
+
+    /* B A T C H   Q U E R I E S */
+
+    /**
+     * <code>getMeetings()</code>
+     * <p>
+     *     Returns the meetings of many ids at once, as {@link #getMeeting(int) getMeeting} would for each. Future
+     *     meetings that have become past meetings are updated once for the batch, and each id is then found from
+     *     the index of the internal list of meetings, the past meeting segments, or the recurring meetings, without
+     *     scanning the list.
+     * </p>
+     *
+     * @param ids meeting ids
+     * @return the meeting of each id, in the order of the ids, leaving out ids with no meeting
+     */
+    public synchronized Map<Integer, Meeting> getMeetings(int... ids) {
+
+        Call call = beginCall();
+
+        updateMeetingTypes();   // update any future meetings, once for all ids
+
+        Map<Integer, Meeting> ret = new LinkedHashMap<Integer, Meeting>();
+        for (int id : ids) {
+
+            // find in the internal list, then read on demand or archived, then as an occurrence
+            int row = indexOfMeeting(id);
+            Meeting m = row >= 0 ? (Meeting) meetings.get(row) : segmentMeeting(id);
+            if (m == null)
+                m = getOccurrence(id);
+            if (m != null)
+                ret.put(id, m);
+
+        }
+
+        return endCall(call, "getMeetings", ret, ids);
+
+    }
+
+    /**
+     * <code>getFutureMeetingLists()</code>
+     * <p>
+     *     Returns the future meetings of many contacts at once, as
+     *     {@link #getFutureMeetingList(Contact) getFutureMeetingList} would for each. Future meetings that have become
+     *     past meetings are updated once for the batch, and the lists of contacts not in the query cache are then
+     *     built in a single scan of the internal list of meetings.
+     * </p>
+     *
+     * @param contacts contacts
+     * @return the future meetings of each contact, in chronological order
+     * @throws IllegalArgumentException if any contact is unknown
+     */
+    public synchronized Map<Contact, List<Meeting>> getFutureMeetingLists(Set<Contact> contacts) {
+
+        Call call = beginCall();
+
+        checkContactsIndexed(contacts);
+        updateMeetingTypes();
+
+        // take the lists in the query cache, leaving the rest to be found
+        Map<Contact, List<Meeting>> ret = new HashMap<Contact, List<Meeting>>();
+        Map<Integer, List<Meeting>> found = new HashMap<Integer, List<Meeting>>();
+        for (Contact c : contacts) {
+            LazyMeetingList cached = queryCache == null ? null
+                    : queryCache.<LazyMeetingList>get(QueryCache.Query.FUTURE_BY_CONTACT, c.getId());
+            if (cached != null)
+                ret.put(c, cached.copy());
+            else if (!found.containsKey(c.getId()))
+                found.put(c.getId(), new ArrayList<Meeting>());
+        }
+
+        // scan internal list of meetings once for all contacts left
+        if (!found.isEmpty()) {
+            meetingsScanned += meetings.size();
+            for (Object o : candidates(false, found.keySet())) {
+                if (o instanceof FutureMeeting) {
+                    for (Contact c : ((Meeting) o).getContacts()) {
+                        List<Meeting> list = found.get(c.getId());
+                        if (list != null)
+                            list.add((Meeting) o);
+                    }
+                }
+            }
+
+            // sort each list found, merging the occurrences of each recurring meeting with the contact as read
+            for (Map.Entry<Integer, List<Meeting>> e : found.entrySet()) {
+                sortMeetingList(e.getValue());
+                LazyMeetingList list = new LazyMeetingList(e.getValue(), recurringWithContact(e.getKey()));
+                if (queryCache != null)
+                    queryCache.put(QueryCache.Query.FUTURE_BY_CONTACT, e.getKey(), list);
+                e.setValue(list);
+            }
+        }
+
+        for (Contact c : contacts) {
+            if (!ret.containsKey(c))
+                ret.put(c, ((LazyMeetingList) found.get(c.getId())).copy());
+        }
+
+        return endCall(call, "getFutureMeetingLists", ret, contacts);
+
+    }
+
+    /**
+     * <code>getPastMeetingLists()</code>
+     * <p>
+     *     Returns the past meetings of many contacts at once, as
+     *     {@link #getPastMeetingList(Contact) getPastMeetingList} would for each, updating future meetings that have
+     *     become past meetings once, and finding the lists not in the query cache in a single scan of the internal
+     *     list of meetings and a probe of each past meeting segment index.
+     * </p>
+     *
+     * @param contacts contacts
+     * @return the past meetings of each contact, in chronological order
+     * @throws IllegalArgumentException if any contact is unknown
+     */
+    public synchronized Map<Contact, List<PastMeeting>> getPastMeetingLists(Set<Contact> contacts) {
+
+        Call call = beginCall();
+
+        checkContactsIndexed(contacts);
+        updateMeetingTypes();
+
+        // take the lists in the query cache, leaving the rest to be found
+        Map<Contact, List<PastMeeting>> ret = new HashMap<Contact, List<PastMeeting>>();
+        Map<Integer, List<PastMeeting>> found = new HashMap<Integer, List<PastMeeting>>();
+        for (Contact c : contacts) {
+            List<PastMeeting> cached = queryCache == null ? null
+                    : queryCache.<List<PastMeeting>>get(QueryCache.Query.PAST_BY_CONTACT, c.getId());
+            if (cached != null)
+                ret.put(c, new ArrayList<PastMeeting>(cached));
+            else if (!found.containsKey(c.getId()))
+                found.put(c.getId(), new ArrayList<PastMeeting>());
+        }
+
+        // scan internal list of meetings once for all contacts left
+        if (!found.isEmpty()) {
+            meetingsScanned += meetings.size();
+            for (Object o : candidates(true, found.keySet())) {
+                if (o instanceof PastMeeting) {
+                    for (Contact c : ((Meeting) o).getContacts()) {
+                        List<PastMeeting> list = found.get(c.getId());
+                        if (list != null)
+                            list.add((PastMeeting) o);
+                    }
+                }
+            }
+
+            // find past meetings read on demand or archived, from the segment indexes
+            for (PastMeetingSegment segment : pastSegments()) {
+                for (Map.Entry<Integer, List<PastMeeting>> e : found.entrySet()) {
+                    for (int id : segment.getIdsWithContact(e.getKey()))
+                        e.getValue().add(segment.get(id, contactIndex));
+                }
+            }
+
+            // sort and cache each list found
+            for (Map.Entry<Integer, List<PastMeeting>> e : found.entrySet()) {
+                sortPastMeetingList(e.getValue());
+                if (queryCache != null)
+                    queryCache.put(QueryCache.Query.PAST_BY_CONTACT, e.getKey(),
+                            new ArrayList<PastMeeting>(e.getValue()));
+            }
+        }
+
+        for (Contact c : contacts) {
+            if (!ret.containsKey(c))
+                ret.put(c, new ArrayList<PastMeeting>(found.get(c.getId())));
+        }
+
+        return endCall(call, "getPastMeetingLists", ret, contacts);
+
+    }
+
+    /* D A T E   R A N G E S */
+
+    /**
+     * <code>getFutureMeetingList(Contact, Calendar, Calendar)</code> by contact and date range
+     * <p>
+     *     Returns the future meetings of a contact dated within the given range, as
+     *     {@link #getFutureMeetingList(Contact) getFutureMeetingList} would for the whole range. The meetings are found
+     *     from the contact's interval tree in O(log n + k) time, where k is the number of the contact's meetings in
+     *     the range, see {@link IntervalTree#findStarting(long, long) IntervalTree.findStarting}, so neither the
+     *     internal list of meetings nor the rest of the contact's meetings are read.
+     *
+     *     The occurrences of recurring meetings are not held in the interval tree, as a series is expanded on demand.
+     *     Only the contact's own recurring meetings are read, from the index of series by contact, and the first
+     *     occurrence of each in the range is found by binary search. The occurrences are merged by date with the
+     *     meetings found, so the query takes O(log n + r log m + k log r) time for r recurring meetings of the
+     *     contact, of m occurrences at most.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     * </p>
+     *
+     * @param contact contact to find meetings of
+     * @param from start of the range, included
+     * @param to end of the range, excluded
+     * @return list of future meetings of the contact within the range, in chronological order, or an empty list
+     * @throws IllegalArgumentException if the contact is unknown / non-existent, or the range ends before it starts
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized List<Meeting> getFutureMeetingList(Contact contact, Calendar from, Calendar to) {
+
+        Call call = beginCall();
+
+        // check the arguments
+        if (contact == null || from == null || to == null)
+            throw new NullPointerException();
+        if (!checkContactExists(contact) || to.compareTo(from) < 0)
+            throw new IllegalArgumentException();
+
+        // update any future meetings that are now in the past
+        updateMeetingTypes();
+
+        // find the contact's meetings in the range, in order of date, of which only those held in the internal list
+        // may be future
+        List<Meeting> held = new ArrayList<Meeting>();
+        for (int id : startingWithin(contact, from, to)) {
+            int row = indexOfMeeting(id);
+            if (row >= 0 && meetings.get(row) instanceof FutureMeeting)
+                held.add((Meeting) meetings.get(row));
+        }
+        List<RecurringMeeting> series = contactSeries.get(contact.getId());
+        if (series == null)
+            return endCall(call, "getFutureMeetingList(Contact, Calendar, Calendar)", held, contact, from, to);
+
+        // order the meetings and the occurrences of each of the contact's recurring meetings in the range by date
+        Comparator<PeekingMeetings> byNextDate = new Comparator<PeekingMeetings>() {
+            @Override
+            public int compare(PeekingMeetings o1, PeekingMeetings o2) {
+                return o1.next.getDate().compareTo(o2.next.getDate());
+            }
+        };
+        PriorityQueue<PeekingMeetings> merge = new PriorityQueue<PeekingMeetings>(series.size() + 1, byNextDate);
+        if (!held.isEmpty())
+            merge.add(new PeekingMeetings(held.iterator()));
+        for (RecurringMeeting r : series) {
+            Iterator<Meeting> occurrences = occurrencesWithin(r, from.getTimeInMillis(), to.getTimeInMillis());
+            if (occurrences.hasNext())
+                merge.add(new PeekingMeetings(occurrences));
+        }
+
+        // take the earliest next meeting until none are left
+        List<Meeting> ret = new ArrayList<Meeting>();
+        while (!merge.isEmpty()) {
+            PeekingMeetings p = merge.poll();
+            ret.add(p.next);
+            if (p.meetings.hasNext()) {
+                p.next = p.meetings.next();
+                merge.add(p);
+            }
+        }
+
+        return endCall(call, "getFutureMeetingList(Contact, Calendar, Calendar)", ret, contact, from, to);
+
+    }
+
+    /**
+     * <code>getPastMeetingList(Contact, Calendar, Calendar)</code> by contact and date range
+     * <p>
+     *     Returns the past meetings of a contact dated within the given range, as
+     *     {@link #getPastMeetingList(Contact) getPastMeetingList} would for the whole range. The meetings are found
+     *     from the contact's interval tree in O(log n + k) time, where k is the number of the contact's meetings in
+     *     the range, already in chronological order, so only the past meetings read on demand or archived within the
+     *     range are read.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     * </p>
+     *
+     * @param contact contact to find meetings of
+     * @param from start of the range, included
+     * @param to end of the range, excluded
+     * @return list of past meetings of the contact within the range, in chronological order, or an empty list
+     * @throws IllegalArgumentException if the contact is unknown / non-existent, or the range ends before it starts
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized List<PastMeeting> getPastMeetingList(Contact contact, Calendar from, Calendar to) {
+
+        Call call = beginCall();
+
+        // check the arguments
+        if (contact == null || from == null || to == null)
+            throw new NullPointerException();
+        if (!checkContactExists(contact) || to.compareTo(from) < 0)
+            throw new IllegalArgumentException();
+
+        // update any future meetings that are now in the past
+        updateMeetingTypes();
+
+        // find the contact's meetings in the range, in order of date
+        List<PastMeeting> ret = new ArrayList<PastMeeting>();
+        for (int id : startingWithin(contact, from, to)) {
+            Meeting m = meetingById(id);
+            if (m instanceof PastMeeting)
+                ret.add((PastMeeting) m);
+        }
+
+        return endCall(call, "getPastMeetingList(Contact, Calendar, Calendar)", ret, contact, from, to);
+
+    }
+
+    /**
+     * <code>getUpcomingMeetings()</code>
+     * <p>
+     *     Returns the next future meetings across all contacts. Future meetings are read from the timeline of all
+     *     meetings from the current time, see {@link IntervalTree#startingFrom(long) IntervalTree.startingFrom}, and
+     *     merged with the future occurrences of each recurring meeting with a priority queue on the date of each
+     *     one's next meeting, so only the meetings returned are read, in O(n log r) time for r recurring meetings
+     *     after the first is found.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     * </p>
+     *
+     * @param n largest number of meetings to return
+     * @return list of the next future meetings, in chronological order, or an empty list
+     * @throws IllegalArgumentException if n is negative
+     */
+    public synchronized List<Meeting> getUpcomingMeetings(int n) {
+
+        Call call = beginCall();
+
+        if (n < 0)
+            throw new IllegalArgumentException();
+
+        // future meetings not yet updated are dated no earlier than the time before the update
+        long now = System.currentTimeMillis();
+        updateMeetingTypes();
+
+        // order the timeline and each recurring meeting by the date of their next meeting
+        Comparator<PeekingMeetings> byNextDate = new Comparator<PeekingMeetings>() {
+            @Override
+            public int compare(PeekingMeetings o1, PeekingMeetings o2) {
+                return o1.next.getDate().compareTo(o2.next.getDate());
+            }
+        };
+        PriorityQueue<PeekingMeetings> merge =
+                new PriorityQueue<PeekingMeetings>(recurringMeetings.size() + 1, byNextDate);
+        Iterator<Meeting> upcoming = futureMeetingsFrom(now);
+        if (upcoming.hasNext())
+            merge.add(new PeekingMeetings(upcoming));
+        for (RecurringMeeting r : recurringMeetings) {
+            if (r.getMaterialized() < r.getCount())
+                merge.add(new PeekingMeetings(futureOccurrences(r)));
+        }
+
+        // take the earliest next meeting until there are enough
+        List<Meeting> ret = new ArrayList<Meeting>(Math.min(n, 64));
+        while (ret.size() < n && !merge.isEmpty()) {
+            PeekingMeetings p = merge.poll();
+            ret.add(p.next);
+            if (p.meetings.hasNext()) {
+                p.next = p.meetings.next();
+                merge.add(p);
+            }
+        }
+
+        return endCall(call, "getUpcomingMeetings", ret, n);
+
+    }
+
+    /**
+     * <code>getRecentPastMeetings()</code>
+     * <p>
+     *     Returns the latest past meetings across all contacts, dated up to the current time. Past meetings are read
+     *     from the timeline of all meetings back from the current time, see
+     *     {@link IntervalTree#startingBefore(long) IntervalTree.startingBefore}, merged with those read on demand
+     *     back from the date index of their segment, see
+     *     {@link PastMeetingSegment#startingBefore(long) PastMeetingSegment.startingBefore}, so only the meetings
+     *     returned are read. Passed occurrences of recurring meetings are held as past meetings, so are on the
+     *     timeline.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     * </p>
+     *
+     * @param n largest number of meetings to return
+     * @return list of the latest past meetings, latest first, or an empty list
+     * @throws IllegalArgumentException if n is negative
+     */
+    public synchronized List<PastMeeting> getRecentPastMeetings(int n) {
+
+        Call call = beginCall();
+
+        if (n < 0)
+            throw new IllegalArgumentException();
+
+        // update any future meetings that are now in the past
+        updateMeetingTypes();
+
+        // read back along the timeline and any segment not on it, latest first, skipping future meetings
+        Comparator<PeekingMeetings> byLatestDate = new Comparator<PeekingMeetings>() {
+            @Override
+            public int compare(PeekingMeetings o1, PeekingMeetings o2) {
+                return o2.next.getDate().compareTo(o1.next.getDate());
+            }
+        };
+        PriorityQueue<PeekingMeetings> merge = new PriorityQueue<PeekingMeetings>(2, byLatestDate);
+        long time = System.currentTimeMillis() + 1;
+        List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>();
+        sources.add(timeline.startingBefore(time));
+        for (PastMeetingSegment segment : unindexedSegments())
+            sources.add(segment.startingBefore(time));
+        for (Iterator<Integer> ids : sources) {
+            Iterator<Meeting> source = meetingsOf(ids);
+            if (source.hasNext())
+                merge.add(new PeekingMeetings(source));
+        }
+        List<PastMeeting> ret = new ArrayList<PastMeeting>(Math.min(n, 64));
+        while (ret.size() < n && !merge.isEmpty()) {
+            PeekingMeetings p = merge.poll();
+            if (p.next instanceof PastMeeting)
+                ret.add((PastMeeting) p.next);
+            if (p.meetings.hasNext()) {
+                p.next = p.meetings.next();
+                merge.add(p);
+            }
+        }
+
+        return endCall(call, "getRecentPastMeetings", ret, n);
+
+    }
+
+    /* R E C U R R I N G   M E E T I N G S */
+
+    /**
+     * <code>addRecurringMeeting(Set, Calendar, int, Frequency, int)</code> by count
+     * <p>
+     *     After checking that the contacts for the meeting are known to the contact manager and that the first date
+     *     is in the future, this method adds a series of recurring meetings, held as one record. A block of unique
+     *     ids is reserved for the occurrences, so each occurrence has the id of the first occurrence plus its index.
+     *
+     *     Future occurrences are returned by the future meeting methods as future meetings. Once each occurrence
+     *     has passed, it becomes a past meeting. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     * </p>
+     *
+     * @param contacts a list of contacts that will participate in the meetings
+     * @param start the date of the first occurrence
+     * @param duration the duration of each occurrence in minutes
+     * @param frequency the frequency of occurrences
+     * @param count the number of occurrences
+     * @return the id of the first occurrence
+     * @throws IllegalArgumentException if the first occurrence is in the past, if any contact is unknown /
+     *                                  non-existent, or if the duration or count is not positive
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized int addRecurringMeeting(Set<Contact> contacts, Calendar start, int duration,
+                                   RecurringMeeting.Frequency frequency, int count) {
+
+        Call call = beginCall();
+
+        // check none of the arguments are null
+        if (contacts == null || start == null || frequency == null)
+            throw new NullPointerException();
+
+        // check the duration and count are positive
+        if (duration <= 0 || count <= 0)
+            throw new IllegalArgumentException();
+
+        // check date for first occurrence is a future date
+        Calendar now = Calendar.getInstance();
+        if (now.compareTo(start) > 0)
+            throw new IllegalArgumentException();
+
+        // check contacts are known to contact manager
+        if (!checkContactsExist(contacts))
+            throw new IllegalArgumentException();
+
+        // reserve ids and add the series
+        int id = nextIds(count);
+        RecurringMeeting series = new RecurringMeeting(id, start, duration, contacts, frequency, count, 0);
+        recurringMeetings.add(series);
+        seriesCopies.add(copyOf(series));
+        indexSeries(series);
+        if (dirtySeries != null)
+            dirtySeries.add(recurringMeetings.size() - 1);
+        version++;
+        nextTransition = Math.min(nextTransition, start.getTimeInMillis());
+        if (queryCache != null)
+            queryCache.invalidateContacts(contacts);
+        if (history != null)
+            history.recordRecurringMeeting(System.currentTimeMillis(), series);
+        refreshView();
+
+        // return the id of the first occurrence
+        return endCall(call, "addRecurringMeeting", id, contacts, start);
+
+    }
+
+    /**
+     * <code>addRecurringMeeting(Set, Calendar, int, Frequency, Calendar)</code> until date
+     * <p>
+     *     As {@link #addRecurringMeeting(Set, Calendar, int, RecurringMeeting.Frequency, int) addRecurringMeeting}
+     *     by count, with the number of occurrences being those on or before the until date.
+     * </p>
+     *
+     * @param contacts a list of contacts that will participate in the meetings
+     * @param start the date of the first occurrence
+     * @param duration the duration of each occurrence in minutes
+     * @param frequency the frequency of occurrences
+     * @param until the date of the last possible occurrence
+     * @return the id of the first occurrence
+     * @throws IllegalArgumentException if the first occurrence is in the past or after the until date, if any
+     *                                  contact is unknown / non-existent, or if the duration is not positive
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized int addRecurringMeeting(Set<Contact> contacts, Calendar start, int duration,
+                                   RecurringMeeting.Frequency frequency, Calendar until) {
+
+        // check none of the arguments are null
+        if (start == null || frequency == null || until == null)
+            throw new NullPointerException();
+
+        return addRecurringMeeting(contacts, start, duration, frequency,
+                RecurringMeeting.countUntil(start, frequency, until));
+
+    }
+
+    /* A N A L Y T I C S */
+
+    /**
+     * <code>getMeetingStatistics()</code>
+     * <p>
+     *     Counts all meetings, past and future, per contact and per month. The counts are computed in a single
+     *     parallel pass over the internal list of meetings, see {@link MeetingCountTask MeetingCountTask}. Past
+     *     meetings read on demand or archived are counted from the segment indexes, without being read. Occurrences
+     *     of recurring meetings not yet made concrete are counted from their series, as they are returned by the
+     *     queries, without being expanded.
+     * </p>
+     *
+     * @return statistics of all meetings
+     */
+    public synchronized MeetingStatistics getMeetingStatistics() {
+
+        Call call = beginCall();
+
+        List<List<?>> lists = new ArrayList<List<?>>();
+        lists.add(meetings);
+        for (PastMeetingSegment segment : pastSegments())
+            lists.add(segment.asList(contactIndex));
+        for (RecurringMeeting r : recurringMeetings)
+            lists.add(r.asList());
+        MeetingStatistics ret = MeetingCountTask.count(lists.toArray(new List<?>[lists.size()]));
+
+        return endCall(call, "getMeetingStatistics", ret);
+
+    }
+
+    /**
+     * <code>getTopContacts()</code>
+     * <p>
+     *     Finds the contacts who are in the most meetings, past and future. See
+     *     {@link #getMeetingStatistics() getMeetingStatistics}.
+     * </p>
+     *
+     * @param n number of contacts to return
+     * @return list of up to n contacts, with the most meetings first
+     * @throws IllegalArgumentException if n is negative
+     */
+    public synchronized List<Contact> getTopContacts(int n) {
+
+        Call call = beginCall();
+
+        // count the meetings of each contact
+        MeetingStatistics stats;
+        callDepth++;                                // not logged apart from this call
+        try {
+            stats = getMeetingStatistics();
+        } finally {
+            callDepth--;
+        }
+
+        // return list of contacts
+        List<Contact> ret = new ArrayList<Contact>();
+
+        // resolve the ids of the top contacts
+        for (int id : stats.getTopContactIds(n))
+            ret.add(contactIndex.get(id));
+
+        return endCall(call, "getTopContacts", ret, n);
+
+    }
+
+    /* C O - A T T E N D A N C E */
+
+    /**
+     * <code>getCoAttendees()</code>
+     * <p>
+     *     Finds every contact that has shared a meeting, past or future, with the given contact, and how many
+     *     meetings they have shared. The result is read from the co-attendance index, see
+     *     {@link CoAttendanceIndex CoAttendanceIndex}, and from the contact index of any segment of past meetings
+     *     not held in it.
+     * </p>
+     *
+     * @param contact one of the user's contacts
+     * @return map of contacts to the number of meetings shared with the given contact, or an empty map
+     * @throws IllegalArgumentException if the contact does not exist
+     */
+    public synchronized Map<Contact, Integer> getCoAttendees(Contact contact) {
+
+        Call call = beginCall();
+
+        // if the contact is unknown to the contact manager, throw an exception
+        if (!checkContactExists(contact))
+            throw new IllegalArgumentException();
+
+        // return map of contacts
+        Map<Contact, Integer> ret = new HashMap<Contact, Integer>();
+
+        // resolve the ids of the co-attendees
+        for (Map.Entry<Integer, Integer> e : coAttendance.getCoAttendees(contact.getId()).entrySet())
+            ret.put(contactIndex.get(e.getKey()), e.getValue());
+
+        // count the meetings not in the index from the index of their segment
+        for (PastMeetingSegment segment : unindexedSegments()) {
+            for (int id : segment.getIdsWithContact(contact.getId())) {
+                for (int other : segment.getContactIds(id)) {
+                    if (other != contact.getId()) {
+                        Integer count = ret.get(contactIndex.get(other));
+                        ret.put(contactIndex.get(other), count == null ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+
+        return endCall(call, "getCoAttendees", ret, contact);
+
+    }
+
+    /**
+     * <code>getSharedMeetings()</code>
+     * <p>
+     *     Finds the meetings, past and future, attended by both of the given contacts. The meetings are read from
+     *     the co-attendance index, see {@link CoAttendanceIndex CoAttendanceIndex}, and from the contact index of
+     *     any segment of past meetings not held in it.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     *
+     *     Furthermore, the list of meetings to be returned is sorted into chronological order. See method
+     *     {@link #sortMeetingList(List) sortMeetingList}.
+     * </p>
+     *
+     * @param a one of the user's contacts
+     * @param b another of the user's contacts
+     * @return list of meetings attended by both contacts, or an empty list
+     * @throws IllegalArgumentException if either contact does not exist, or both are the same contact
+     */
+    public synchronized List<Meeting> getSharedMeetings(Contact a, Contact b) {
+
+        Call call = beginCall();
+
+        // if either contact is unknown to the contact manager, or they are the same, throw an exception
+        if (!checkContactExists(a) || !checkContactExists(b) || a.getId() == b.getId())
+            throw new IllegalArgumentException();
+
+        // update any future meetings
+        updateMeetingTypes();
+
+        // return list of meetings
+        List<Meeting> ret = new ArrayList<Meeting>();
+
+        // resolve the ids of the shared meetings
+        for (int id : coAttendance.getSharedMeetings(a.getId(), b.getId()))
+            ret.add(meetingById(id));
+        for (PastMeetingSegment segment : unindexedSegments()) {
+            for (int id : segment.getIdsWithContact(a.getId())) {
+                for (int other : segment.getContactIds(id)) {
+                    if (other == b.getId())
+                        ret.add(segment.get(id, contactIndex));
+                }
+            }
+        }
+
+        // sort the return list in chronological order
+        sortMeetingList(ret);
+
+        return endCall(call, "getSharedMeetings", ret, a, b);
+
+    }
+
+    /* S C H E D U L I N G */
+
+    /**
+     * <code>findConflicts()</code>
+     * <p>
+     *     Finds the meetings, past and future, of any of the given contacts that overlap the given time. Each
+     *     contact's meetings are found from their interval tree in O(log n + k) time, where k is the number found.
+     *
+     *     A check is made for all future meetings that have become past meetings since the last update to the internal
+     *     list of meetings. See method {@link #updateMeetingTypes() updateMeetingTypes}.
+     *
+     *     Furthermore, the list of meetings to be returned is sorted into chronological order. See method
+     *     {@link #sortMeetingList(List) sortMeetingList}.
+     * </p>
+     *
+     * @param contacts contacts to check
+     * @param start start of the time to check
+     * @param end end of the time to check
+     * @return list of meetings overlapping the time, without duplicates, or an empty list
+     * @throws IllegalArgumentException if any contact is unknown / non-existent, or the end is not after the start
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized List<Meeting> findConflicts(Set<Contact> contacts, Calendar start, Calendar end) {
+
+        Call call = beginCall();
+
+        // check none of the arguments are null
+        if (contacts == null || start == null || end == null)
+            throw new NullPointerException();
+
+        // check the time is not empty
+        if (start.compareTo(end) >= 0)
+            throw new IllegalArgumentException();
+
+        // check contacts are known to contact manager
+        if (!checkContactsExist(contacts))
+            throw new IllegalArgumentException();
+
+        // update any future meetings
+        updateMeetingTypes();
+
+        // find overlapping meeting ids in each contact's schedule, without duplicates
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (Contact c : contacts) {
+            IntervalTree schedule = schedules.get(c.getId());
+            if (schedule != null)
+                ids.addAll(schedule.findOverlapping(start.getTimeInMillis(), end.getTimeInMillis()));
+            for (PastMeetingSegment segment : unindexedSegments())
+                ids.addAll(segment.findOverlapping(c.getId(), start.getTimeInMillis(), end.getTimeInMillis()));
+        }
+
+        // return list of meetings
+        List<Meeting> ret = new ArrayList<Meeting>();
+        for (int id : ids)
+            ret.add(meetingById(id));
+
+        // add future occurrences of recurring meetings with any of the contacts that overlap the time
+        for (RecurringMeeting r : recurringMeetings) {
+            if (hasAnyContact(r.getContacts(), contacts)) {
+                int i = r.firstFrom(start.getTimeInMillis() - r.getDuration() * 60000L + 1);
+                for (; i < r.getCount() && r.getOccurrenceDate(i).compareTo(end) < 0; i++)
+                    ret.add(r.getOccurrence(i));
+            }
+        }
+
+        // sort the return list in chronological order
+        sortMeetingList(ret);
+
+        return endCall(call, "findConflicts", ret, contacts, start, end);
+
+    }
+
+    /**
+     * <code>findFreeSlot()</code>
+     * <p>
+     *     Finds the earliest time, within the given time, at which all of the given contacts are free for the given
+     *     duration. Each contact's schedule is read lazily in order of start, see
+     *     {@link IntervalTree#endingAfter(long) IntervalTree.endingAfter}, and the schedules are merged with a
+     *     priority queue on the start of each contact's next meeting. The future occurrences of recurring meetings
+     *     with any of the contacts are merged in the same way, see
+     *     {@link RecurringMeeting#endingAfter(long) RecurringMeeting.endingAfter}. The merge stops at the first gap
+     *     long enough for the meeting, so only the meetings before the free slot are read.
+     * </p>
+     *
+     * @param contacts contacts who must all be free
+     * @param duration the duration of the meeting in minutes
+     * @param from start of the time to search
+     * @param to end of the time to search, by which the meeting must have ended
+     * @return the earliest start of a free slot, or null if there is none
+     * @throws IllegalArgumentException if any contact is unknown / non-existent, or the duration is not positive
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public synchronized Calendar findFreeSlot(Set<Contact> contacts, int duration, Calendar from, Calendar to) {
+
+        Call call = beginCall();
+
+        // check none of the arguments are null
+        if (contacts == null || from == null || to == null)
+            throw new NullPointerException();
+
+        // check the duration is positive
+        if (duration <= 0)
+            throw new IllegalArgumentException();
+
+        // check contacts are known to contact manager
+        if (!checkContactsExist(contacts))
+            throw new IllegalArgumentException();
+
+        long length = duration * 60000L;        // duration in milliseconds
+        long slot = from.getTimeInMillis();     // earliest possible start of the free slot
+        long end = to.getTimeInMillis();        // latest possible end of the free slot
+
+        // order each contact's schedule by the start of their next meeting
+        Comparator<PeekingSchedule> byNextStart = new Comparator<PeekingSchedule>() {
+            @Override
+            public int compare(PeekingSchedule o1, PeekingSchedule o2) {
+                return Long.compare(o1.next[0], o2.next[0]);
+            }
+        };
+        PriorityQueue<PeekingSchedule> merge =
+                new PriorityQueue<PeekingSchedule>(Math.max(1, contacts.size()), byNextStart);
+        for (Contact c : contacts) {
+            IntervalTree schedule = schedules.get(c.getId());
+            if (schedule != null) {
+                Iterator<long[]> meetingTimes = schedule.endingAfter(slot);
+                if (meetingTimes.hasNext())
+                    merge.add(new PeekingSchedule(meetingTimes));
+            }
+            for (PastMeetingSegment segment : unindexedSegments()) {
+                Iterator<long[]> meetingTimes = segment.endingAfter(c.getId(), slot);
+                if (meetingTimes.hasNext())
+                    merge.add(new PeekingSchedule(meetingTimes));
+            }
+        }
+        for (RecurringMeeting r : recurringMeetings) {
+            if (hasAnyContact(r.getContacts(), contacts)) {
+                Iterator<long[]> meetingTimes = r.endingAfter(slot);
+                if (meetingTimes.hasNext())
+                    merge.add(new PeekingSchedule(meetingTimes));
+            }
+        }
+
+        // move the slot past each meeting that starts before the slot would end
+        while (!merge.isEmpty() && merge.peek().next[0] < slot + length && slot + length <= end) {
+
+            PeekingSchedule s = merge.poll();
+            slot = Math.max(slot, s.next[1]);   // the slot starts no earlier than the meeting ends
+
+            // move to the contact's next meeting
+            if (s.meetingTimes.hasNext()) {
+                s.next = s.meetingTimes.next();
+                merge.add(s);
+            }
+
+        }
+
+        // check the slot ends in time
+        if (slot + length > end)
+            return endCall(call, "findFreeSlot", null, contacts, from, to);
+
+        // return the start of the slot
+        Calendar ret = Calendar.getInstance();
+        ret.setTimeInMillis(slot);
+        return endCall(call, "findFreeSlot", ret, contacts, from, to);
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    // a contact's schedule, with the next meeting time read ahead for merging
+    private static class PeekingSchedule {
+        final Iterator<long[]> meetingTimes;    // remaining meeting times of the contact
+        long[] next;                            // next meeting start and end
+
+        PeekingSchedule(Iterator<long[]> meetingTimes) {
+            this.meetingTimes = meetingTimes;
+            this.next = meetingTimes.next();
+        }
+    }
+
+    // meetings in chronological order, with the next meeting read ahead for merging
+    private static class PeekingMeetings {
+        final Iterator<Meeting> meetings;       // remaining meetings
+        Meeting next;                           // next meeting
+
+        PeekingMeetings(Iterator<Meeting> meetings) {
+            this.meetings = meetings;
+            this.next = meetings.next();
+        }
+    }
+
+    // the start of a call, for the slow operation log
+    private static class Call {
+        final long start;                       // start time in nanoseconds
+        final long meetingsScanned;             // meetings scanned before the call
+        final long contactsScanned;             // contacts scanned before the call
+
+        Call(long start, long meetingsScanned, long contactsScanned) {
+            this.start = start;
+            this.meetingsScanned = meetingsScanned;
+            this.contactsScanned = contactsScanned;
+        }
+    }
+
+    // the contents of one xml file, as it is read
+    private static class LoadedFile {
+        Document doc;                               // parsed file
+        int cmId;                                   // unique ID seed
+        List<Contact> contacts;                     // contacts
+        List<Meeting> meetings;                     // past and future meetings
+        List<RecurringMeeting> recurringMeetings;   // series of recurring meetings
+        long deduplicated;                          // names and notes replaced by a pooled string
+    }
+
+    /**
+     * <code>publish()</code>
+     * <p>
+     *     Offers a change event to each subscriber without waiting. Where a subscriber's buffer is full, the event is
+     *     dropped for that subscriber and counted, see {@link #getDroppedChangeEvents() getDroppedChangeEvents}.
+     * </p>
+     */
+    private void publish(ChangeEvent event) {
+
+        changeEvents.offer(event, new BiPredicate<Flow.Subscriber<? super ChangeEvent>, ChangeEvent>() {
+            @Override
+            public boolean test(Flow.Subscriber<? super ChangeEvent> subscriber, ChangeEvent dropped) {
+                droppedEvents++;            // called on the publishing thread, which holds the lock
+                return false;
+            }
+        });
+
+    }
+
+    /**
+     * <code>nextId()</code>
+     *
+     * @return a new unique ID from the ID seed of this contact manager
+     */
+    private int nextId() {
+        return ++idSeed;
+    }
+
+    /**
+     * <code>nextIds()</code>
+     * <p>
+     *     Reserves a block of unique IDs from the ID seed of this contact manager
+     * </p>
+     *
+     * @return the first ID of the block
+     */
+    private int nextIds(int count) {
+
+        int first = idSeed + 1;
+        idSeed += count;
+        return first;
+
+    }
+
+    /**
+     * <code>file()</code>
+     *
+     * @return the file of the given name in the directory of the contact manager
+     */
+    private File file(String name) {
+        return new File(directory, name);
+    }
+
+    /**
+     * <code>beginCall()</code>
+     *
+     * <p>
+     *     Starts a call to a public method. Calls made by the contact manager to its own public methods, such as
+     *     {@link #findConflicts(Set, Calendar, Calendar) findConflicts} checked while adding a meeting, are made with
+     *     the call depth raised, and are counted in the call that made them rather than logged apart.
+     * </p>
+     *
+     * @return the start of a call, or null if slow calls are not logged or the call is made from within a call
+     */
+    private Call beginCall() {
+
+        if (slowLog == null || callDepth > 0)
+            return null;
+        return new Call(System.nanoTime(), meetingsScanned, contactsScanned);
+
+    }
+
+    /**
+     * <code>endCall()</code>
+     * <p>
+     *     Logs a call that took longer than the slow operation threshold, with the shape of its arguments, the size of
+     *     its result, and the meetings and contacts it scanned. See {@link SlowOperationLog SlowOperationLog}.
+     * </p>
+     *
+     * @param call start of the call, or null if slow calls are not logged
+     * @param method method called
+     * @param result result of the call, or null if none
+     * @param args arguments of the call
+     * @return the result, unchanged
+     */
+    private <T> T endCall(Call call, String method, T result, Object... args) {
+
+        if (call == null)
+            return result;
+
+        long nanos = System.nanoTime() - call.start;
+        if (nanos >= options.getSlowOperationThresholdMicros() * 1000) {
+            int resultSize = result instanceof Collection ? ((Collection<?>) result).size()
+                    : result instanceof Map ? ((Map<?, ?>) result).size() : result == null ? 0 : 1;
+            slowLog.add(new SlowOperationLog.Entry(System.currentTimeMillis(), method, shapeOf(args), resultSize,
+                    meetingsScanned - call.meetingsScanned, contactsScanned - call.contactsScanned, nanos));
+        }
+        return result;
+
+    }
+
+    /**
+     * <code>shapeOf()</code>
+     *
+     * @return a description of the shape of the given arguments: the number of ids, contacts or characters, and the
+     *         range between consecutive dates in minutes
+     */
+    private static String shapeOf(Object[] args) {
+
+        StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (ret.length() > 0)
+                ret.append(", ");
+            Object arg = args[i];
+            if (arg == null) {
+                ret.append("null");
+            } else if (arg instanceof int[]) {
+                ret.append(((int[]) arg).length).append(" ids");
+            } else if (arg instanceof Collection) {
+                ret.append(((Collection<?>) arg).size()).append(" contacts");
+            } else if (arg instanceof String) {
+                ret.append(((String) arg).length()).append(" chars");
+            } else if (arg instanceof Calendar && i + 1 < args.length && args[i + 1] instanceof Calendar) {
+                long millis = ((Calendar) args[i + 1]).getTimeInMillis() - ((Calendar) arg).getTimeInMillis();
+                ret.append("range ").append(millis / 60000).append(" min");
+                i++;
+            } else if (arg instanceof Calendar) {
+                ret.append("date");
+            } else if (arg instanceof Contact) {
+                ret.append("contact");
+            } else {
+                ret.append("id");
+            }
+        }
+        return ret.toString();
+
+    }
+
+    /**
+     * <code>addMeeting()</code>
+     * <p>
+     *     Adds a new meeting to the internal list of meetings, and to the meeting and co-attendance indexes
+     * </p>
+     */
+    private void addMeeting(Meeting m) {
+
+        // add to list of meetings and index by id
+        meetings.add(m);
+        meetingRows.put(m.getId(), meetings.size() - 1);
+        version++;
+        if (dirtyMeetings != null)
+            dirtyMeetings.add(m.getId());
+        if (m instanceof FutureMeeting)
+            nextTransition = Math.min(nextTransition, m.getDate().getTimeInMillis());
+        if (queryCache != null)
+            queryCache.invalidateContacts(m.getContacts());
+
+        // add to contact indexes
+        indexMeeting(m);
+
+    }
+
+    /**
+     * <code>addContact()</code>
+     * <p>
+     *     Adds a contact to the internal collection and index of contacts, and a read-only copy of it to the versioned
+     *     list of copies read by views, marking it changed if changes are tracked. Notes later added to the contact
+     *     are recorded, see internal method {@link #contactNotesAdded(Contact) contactNotesAdded}.
+     * </p>
+     */
+    private void addContact(Contact c) {
+
+        contacts.add(c);
+        contactIndex.put(c.getId(), c);
+        contactCopies.add(ContactImpl.readOnly(c.getId(), c.getName(), c.getNotes()));
+        contactRows.put(c.getId(), contactCopies.size() - 1);
+        if (dirtyContacts != null)
+            dirtyContacts.add(c.getId());
+        if (c instanceof ContactImpl)
+            ((ContactImpl) c).setNotesListener(notesListener);
+
+    }
+
+    /**
+     * <code>contactNotesAdded()</code>
+     * <p>
+     *     Called when notes are added to a contact of this contact manager. Contacts are changed directly by the
+     *     caller, not through the contact manager, so the change is recorded here: the copy of the contact is
+     *     replaced, the contact marked changed if changes are tracked, the change added to the history if kept, and
+     *     the version incremented.
+     * </p>
+     */
+    private synchronized void contactNotesAdded(Contact c) {
+
+        contactCopies.set(contactRows.get(c.getId()),
+                ContactImpl.readOnly(c.getId(), c.getName(), c.getNotes()));
+        if (dirtyContacts != null)
+            dirtyContacts.add(c.getId());
+        if (history != null)
+            history.recordContactNotes(System.currentTimeMillis(), c.getId(), c.getNotes());
+        version++;
+        refreshView();
+
+    }
+
+    /**
+     * <code>copyOf()</code>
+     *
+     * @return a copy of a recurring meeting, unaffected by occurrences later made concrete
+     */
+    private static RecurringMeeting copyOf(RecurringMeeting r) {
+        return new RecurringMeeting(r.getFirstId(), r.getStart(), r.getDuration(), r.getContacts(),
+                r.getFrequency(), r.getCount(), r.getMaterialized());
+    }
+
+    /**
+     * <code>freezeView()</code>
+     * <p>
+     *     Freezes the copies of contacts, the meetings and the copies of recurring meetings as they are now, each in
+     *     constant time, see {@link VersionedList#freeze() freeze}, and holds them with the current segments in a
+     *     read-only view. The indexes of the contact manager are shared with the view, which only finds the ids at
+     *     positions within its lists. The view is valid until the earliest future meeting or occurrence passes. The
+     *     caller must hold the lock.
+     * </p>
+     *
+     * @return a read-only view of the current version
+     */
+    @SuppressWarnings("unchecked")
+    private ContactManagerSnapshot freezeView() {
+
+        List<Contact> frozenContacts = contactCopies.freeze();
+        Map<Integer, Contact> frozenContactIndex = VersionedList.index(frozenContacts, contactRows);
+        List<Meeting> frozenMeetings;
+        if (meetings instanceof OffHeapMeetingList)
+            frozenMeetings = ((OffHeapMeetingList) meetings).freeze(frozenContactIndex);
+        else
+            frozenMeetings = ((VersionedList<Meeting>) meetings).freeze();
+
+        StoreSnapshot state = new StoreSnapshot(idSeed, frozenContacts, frozenMeetings, seriesCopies.freeze(),
+                pastSegment, archiveSegment);
+        return new ContactManagerSnapshot(version, nextTransition, state, frozenContactIndex,
+                VersionedList.index(frozenMeetings, meetingRows.freeze()));
+
+    }
+
+    /**
+     * <code>publishView()</code>
+     * <p>
+     *     Publishes a view of the current version, to be returned by {@link #snapshot() snapshot} without taking the
+     *     lock. The caller must hold the lock.
+     * </p>
+     */
+    private void publishView() {
+        published = freezeView();
+    }
+
+    /**
+     * <code>refreshView()</code>
+     * <p>
+     *     Publishes a view of the current version after a change, if a view has been taken. Until then no view is
+     *     frozen, so the versioned lists are changed in place. The caller must hold the lock.
+     * </p>
+     */
+    private void refreshView() {
+        if (published != null)
+            publishView();
+    }
+
+    /**
+     * <code>indexMeeting()</code> meeting
+     * <p>
+     *     Adds a meeting held in the internal list of meetings to the co-attendance index, contact schedules and
+     *     timeline
+     * </p>
+     */
+    private void indexMeeting(Meeting m) {
+
+        int[] contactIds = new int[m.getContacts().size()];
+        int i = 0;
+        for (Contact c : m.getContacts())
+            contactIds[i++] = c.getId();
+        indexMeeting(m.getId(), m.getDate().getTimeInMillis(), m.getDuration(), contactIds);
+
+    }
+
+    /**
+     * <code>indexMeeting()</code>
+     * <p>
+     *     Adds a meeting to the co-attendance index, to the schedule of each of its contacts, and to the timeline of
+     *     all meetings
+     * </p>
+     */
+    private void indexMeeting(int meetingId, long start, int duration, int[] contactIds) {
+
+        // add to co-attendance index
+        coAttendance.add(meetingId, contactIds);
+
+        // add to the schedule of each contact
+        for (int id : contactIds) {
+            IntervalTree schedule = schedules.get(id);
+            if (schedule == null) {
+                schedule = new IntervalTree();
+                schedules.put(id, schedule);
+            }
+            schedule.insert(start, start + duration * 60000L, meetingId);
+        }
+
+        // add to the timeline of all meetings
+        timeline.insert(start, start + duration * 60000L, meetingId);
+
+    }
+
+    /**
+     * <code>indexSeries()</code>
+     * <p>
+     *     Adds a recurring meeting to the index of recurring meetings by contact, under each of its contacts
+     * </p>
+     */
+    private void indexSeries(RecurringMeeting series) {
+
+        for (Contact c : series.getContacts()) {
+            List<RecurringMeeting> ofContact = contactSeries.get(c.getId());
+            if (ofContact == null) {
+                ofContact = new ArrayList<RecurringMeeting>();
+                contactSeries.put(c.getId(), ofContact);
+            }
+            ofContact.add(series);
+        }
+
+    }
+
+    /**
+     * <code>unindexSeries()</code>
+     * <p>
+     *     Removes a recurring meeting from the index of recurring meetings by contact. A list left empty is dropped.
+     * </p>
+     */
+    private void unindexSeries(RecurringMeeting series) {
+
+        for (Contact c : series.getContacts()) {
+            List<RecurringMeeting> ofContact = contactSeries.get(c.getId());
+            if (ofContact != null && ofContact.remove(series) && ofContact.isEmpty())
+                contactSeries.remove(c.getId());
+        }
+
+    }
+
+    /**
+     * <code>unindexMeeting()</code>
+     * <p>
+     *     Removes a meeting from the co-attendance index, the schedule of each of its contacts, and the timeline of
+     *     all meetings. A schedule left empty is dropped.
+     * </p>
+     */
+    private void unindexMeeting(Meeting m) {
+
+        long start = m.getDate().getTimeInMillis();
+        int[] contactIds = new int[m.getContacts().size()];
+        int i = 0;
+        for (Contact c : m.getContacts())
+            contactIds[i++] = c.getId();
+
+        // remove from co-attendance index
+        coAttendance.remove(m.getId(), contactIds);
+
+        // remove from the schedule of each contact
+        for (int id : contactIds) {
+            IntervalTree schedule = schedules.get(id);
+            if (schedule != null && schedule.remove(start, m.getId()) && schedule.size() == 0)
+                schedules.remove(id);
+        }
+
+        // remove from the timeline of all meetings
+        timeline.remove(start, m.getId());
+
+    }
+
+    /**
+     * <code>load()</code>
+     * <p>
+     *     Reads the given xml files in parallel, in two phases. First each file is parsed and its contacts are read.
+     *     Once the contacts of every file are indexed, the meetings and recurring meetings of each file are read, so
+     *     that a meeting may reference a contact held in any file. The unique ID seed is the largest held by any file.
+     * </p>
+     *
+     * @throws CompletionException if a file cannot be read
+     */
+    private void load(List<File> files) {
+
+        // 1. parse each file and read its manager and contacts sections, in parallel
+        List<CompletableFuture<LoadedFile>> parsed = new ArrayList<CompletableFuture<LoadedFile>>();
+        for (final File file : files) {
+            parsed.add(CompletableFuture.supplyAsync(new Supplier<LoadedFile>() {
+                @Override
+                public LoadedFile get() {
+                    try {
+                        XmlStore store = new XmlStore(stringPool);
+                        LoadedFile ret = new LoadedFile();
+                        ret.doc = store.parse(file);
+                        ret.cmId = store.readCmId(ret.doc);
+                        ret.contacts = store.readContacts(ret.doc);
+                        ret.deduplicated = store.getDeduplicated();
+                        return ret;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }));
+        }
+
+        // index the contacts of every file, and take the largest unique ID seed
+        List<LoadedFile> loaded = new ArrayList<LoadedFile>();
+        int cmId = 0;
+        for (CompletableFuture<LoadedFile> f : parsed) {
+            LoadedFile lf = f.join();
+            loaded.add(lf);
+            cmId = Math.max(cmId, lf.cmId);
+            for (Contact c : lf.contacts)
+                addContact(c);                      // add contact to set and indexes
+        }
+        idSeed = cmId;
+
+        // 2. read the meetings and recurring meetings sections of each file against the contact index, in parallel
+        List<CompletableFuture<LoadedFile>> read = new ArrayList<CompletableFuture<LoadedFile>>();
+        for (final LoadedFile lf : loaded) {
+            read.add(CompletableFuture.supplyAsync(new Supplier<LoadedFile>() {
+                @Override
+                public LoadedFile get() {
+                    try {
+                        XmlStore store = new XmlStore(stringPool);
+                        lf.meetings = store.readMeetings(lf.doc, contactIndex);
+                        lf.recurringMeetings = store.readRecurringMeetings(lf.doc, contactIndex);
+                        lf.deduplicated += store.getDeduplicated();
+                        lf.doc = null;                      // document no longer needed
+                        return lf;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }));
+        }
+
+        // add the meetings of each file to the internal collections and indexes
+        for (CompletableFuture<LoadedFile> f : read) {
+            LoadedFile lf = f.join();
+            for (Meeting m : lf.meetings)
+                addMeeting(m);
+            for (RecurringMeeting r : lf.recurringMeetings) {
+                recurringMeetings.add(r);
+                seriesCopies.add(copyOf(r));
+                indexSeries(r);
+            }
+            loadDeduplicated += lf.deduplicated;
+        }
+
+    }
+
+    /**
+     * <code>save()</code>
+     * <p>
+     *     Writes a snapshot to file. If past meetings are read on demand, they are first written to the past meetings
+     *     segment, see {@link PastMeetingSegment PastMeetingSegment}, and the remaining meetings are written to the
+     *     xml files. Otherwise all meetings are written to the xml files, and any segment is removed.
+     *
+     *     With one shard, the snapshot is written to the single xml file. Otherwise the snapshot is split into shards
+     *     by id, see {@link StoreSnapshot#split(int) split}, and the shards are written to the next file of each
+     *     shard in parallel. The shards are then committed together, see internal method
+     *     {@link #commitShards(int) commitShards}, which also removes shard files no longer in use.
+     *
+     *     Any delta files are removed once the snapshot is written. So that a failure while removing them cannot
+     *     leave an older delta to be applied over the newer snapshot, the changes since the last delta are first
+     *     written as a last delta: applied in order, any remaining deltas then end at the state of the snapshot.
+     * </p>
+     *
+     * @param snapshot snapshot to write
+     * @param changes changes since the last save, or null if changes are not tracked
+     * @return number of bytes written
+     * @throws IOException if a file cannot be written
+     */
+    private long save(StoreSnapshot snapshot, StoreSnapshot changes) throws IOException {
+
+        long bytes = 0;
+
+        // close the sequence of delta files with the latest changes
+        if (changes != null && deltaFiles > 0)
+            bytes += saveDelta(changes);
+
+        int shards = options.getShards();
+
+        // write past meetings to the segment, leaving current meetings for the xml files
+        if (options.isLazyPastMeetings()) {
+            List<Meeting> current = new ArrayList<Meeting>();
+            List<PastMeeting> past = new ArrayList<PastMeeting>();
+            for (Meeting m : snapshot.getMeetings()) {
+                if (m instanceof PastMeeting)
+                    past.add((PastMeeting) m);
+                else
+                    current.add(m);
+            }
+            PastMeetingSegment.write(file(segmentPath), snapshot.getPastSegment(), past);
+            bytes += file(segmentPath).length();
+            snapshot = new StoreSnapshot(snapshot.getCmId(), snapshot.getContacts(), current,
+                    snapshot.getRecurringMeetings());
+        }
+
+        if (shards == 1) {
+            new XmlStore().save(snapshot, file(filePath), options.isCompressFiles());
+            bytes += file(filePath).length();
+        } else {
+
+            // write each shard in parallel
+            List<StoreSnapshot> parts = snapshot.split(shards);
+            CompletableFuture<?>[] saved = new CompletableFuture<?>[shards];
+            for (int i = 0; i < shards; i++) {
+                final StoreSnapshot part = parts.get(i);
+                final File file = file(String.format(nextShardPath, i));
+                saved[i] = CompletableFuture.runAsync(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            new XmlStore().save(part, file, options.isCompressFiles());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+
+            // wait for every shard, reporting the first failure
+            try {
+                CompletableFuture.allOf(saved).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException)
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                throw e;
+            }
+            for (int i = 0; i < shards; i++)
+                bytes += file(String.format(nextShardPath, i)).length();
+
+        }
+
+        // commit the shards written, or remove those left by an earlier save to shards
+        if (shards > 1 || !shardFiles().isEmpty())
+            commitShards(shards);
+
+        // remove the segment if past meetings are now held in the xml files
+        if (!options.isLazyPastMeetings())
+            file(segmentPath).delete();
+
+        // remove the delta files, oldest first, now held in the snapshot
+        for (File file : deltaFiles())
+            file.delete();
+        deltaFiles = 0;
+
+        return bytes;
+
+    }
+
+    /**
+     * <code>saveDelta()</code>
+     * <p>
+     *     Writes the changes since the last save to the next delta file, in the same xml format as the contacts file
+     * </p>
+     *
+     * @return number of bytes written
+     * @throws IOException if the file cannot be written
+     */
+    private long saveDelta(StoreSnapshot changes) throws IOException {
+
+        File file = file(String.format(deltaPath, deltaFiles + 1));
+        new XmlStore().save(changes, file, options.isCompressFiles());
+        deltaFiles++;
+        return file.length();
+
+    }
+
+    /**
+     * <code>captureChanges()</code>
+     * <p>
+     *     Captures the contacts, meetings and recurring meetings changed since the last save: contacts added or
+     *     given notes, meetings added or replaced, and recurring meetings added or with occurrences made concrete.
+     *     Only the changes marked are visited, not every contact or series. The changes are then taken as saved. The
+     *     caller must hold the lock.
+     * </p>
+     *
+     * @return snapshot of the changes
+     */
+    private StoreSnapshot captureChanges() {
+
+        // contacts added or given notes
+        List<Contact> changedContacts = new ArrayList<Contact>();
+        for (int id : dirtyContacts)
+            changedContacts.add(contactIndex.get(id));
+        dirtyContacts.clear();
+
+        // meetings added or replaced, still held in the list
+        List<Meeting> changedMeetings = new ArrayList<Meeting>();
+        for (int id : dirtyMeetings) {
+            Integer row = meetingRows.get(id);
+            if (row != null)
+                changedMeetings.add((Meeting) meetings.get(row));
+        }
+        dirtyMeetings.clear();
+
+        // recurring meetings added or with occurrences made concrete
+        List<RecurringMeeting> changedSeries = new ArrayList<RecurringMeeting>();
+        for (int i : dirtySeries)
+            changedSeries.add(recurringMeetings.get(i));
+        dirtySeries.clear();
+
+        return StoreSnapshot.capture(idSeed, changedContacts, changedMeetings, changedSeries);
+
+    }
+
+    /**
+     * <code>redirty()</code>
+     * <p>
+     *     Marks changes that could not be saved as changed again, so that they are written by the next save
+     * </p>
+     */
+    private synchronized void redirty(StoreSnapshot changes) {
+
+        for (Contact c : changes.getContacts())
+            dirtyContacts.add(c.getId());
+        for (Meeting m : changes.getMeetings())
+            dirtyMeetings.add(m.getId());
+        for (RecurringMeeting r : changes.getRecurringMeetings()) {
+            for (int i = 0; i < recurringMeetings.size(); i++) {
+                if (recurringMeetings.get(i).getFirstId() == r.getFirstId())
+                    dirtySeries.add(i);
+            }
+        }
+
+    }
+
+    /**
+     * <code>deltaFiles()</code>
+     *
+     * @return the delta files present, in order of delta number
+     */
+    private List<File> deltaFiles() {
+
+        List<File> ret = new ArrayList<File>();
+        File[] files = file(filePath).getAbsoluteFile().getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (fileNumber(file, deltaPath) >= 0)
+                    ret.add(file);
+            }
+        }
+
+        Collections.sort(ret, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Integer.compare(fileNumber(o1, deltaPath), fileNumber(o2, deltaPath));
+            }
+        });
+        return ret;
+
+    }
+
+    /**
+     * <code>loadDeltas()</code>
+     * <p>
+     *     Applies the delta files present, in order, over the state read from the xml files. Each contact and meeting
+     *     in a delta replaces that of the same id, or is added if new, and likewise each recurring meeting by its
+     *     first id. As contact notes are only ever added to, a changed contact has the notes it gained added.
+     * </p>
+     *
+     * @throws IOException if a delta file cannot be read
+     */
+    private void loadDeltas() throws IOException {
+
+        for (File file : deltaFiles()) {
+
+            XmlStore store = new XmlStore(stringPool);
+            Document doc = store.parse(file);
+            idSeed = Math.max(idSeed, store.readCmId(doc));
+
+            // contacts, before the meetings that reference them
+            for (Contact c : store.readContacts(doc)) {
+                Contact existing = contactIndex.get(c.getId());
+                if (existing == null) {
+                    addContact(c);
+                } else if (c.getNotes().startsWith(existing.getNotes())) {
+                    existing.addNotes(c.getNotes().substring(existing.getNotes().length()));
+                }
+            }
+
+            // meetings
+            for (Meeting m : store.readMeetings(doc, contactIndex)) {
+                Integer row = meetingRows.get(m.getId());
+                if (row == null)
+                    addMeeting(m);
+                else
+                    meetings.set(row, m);
+            }
+
+            // recurring meetings
+            for (RecurringMeeting r : store.readRecurringMeetings(doc, contactIndex)) {
+                boolean replaced = false;
+                for (int i = 0; i < recurringMeetings.size() && !replaced; i++) {
+                    if (recurringMeetings.get(i).getFirstId() == r.getFirstId()) {
+                        unindexSeries(recurringMeetings.get(i));
+                        recurringMeetings.set(i, r);
+                        seriesCopies.set(i, copyOf(r));
+                        indexSeries(r);
+                        replaced = true;
+                    }
+                }
+                if (!replaced) {
+                    recurringMeetings.add(r);
+                    seriesCopies.add(copyOf(r));
+                    indexSeries(r);
+                }
+            }
+
+            deltaFiles = fileNumber(file, deltaPath);
+            deltasSinceFull++;
+            loadDeduplicated += store.getDeduplicated();
+
+        }
+
+    }
+
+    /**
+     * <code>shardFiles()</code>
+     *
+     * @return the shard files present, in order of shard number
+     */
+    private List<File> shardFiles() {
+
+        List<File> ret = new ArrayList<File>();
+        File[] files = file(filePath).getAbsoluteFile().getParentFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (shardNumber(file) >= 0)
+                    ret.add(file);
+            }
+        }
+
+        Collections.sort(ret, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Integer.compare(shardNumber(o1), shardNumber(o2));
+            }
+        });
+        return ret;
+
+    }
+
+    /**
+     * <code>commitShards()</code>
+     * <p>
+     *     Commits a save of the given number of shards. The number is first written to the manifest file,
+     *     contacts.shards, renamed into place in one step, after which the save is complete: the next file of each
+     *     shard is renamed over the shard file, shard files beyond those saved are removed, and then the manifest is
+     *     removed. A crash before the manifest is in place leaves the shard files of the previous save, and the next
+     *     files are discarded on the next start. A crash after it is completed on the next start, see internal method
+     *     {@link #recoverShards() recoverShards}. With one shard, the single xml file has been written, and every
+     *     shard file is removed.
+     * </p>
+     *
+     * @param shards number of shards saved
+     * @throws IOException if a file cannot be written or renamed
+     */
+    private void commitShards(int shards) throws IOException {
+
+        File manifest = file(manifestPath);
+        File temp = file(manifestPath + ".tmp");
+        Files.write(temp.toPath(), Integer.toString(shards).getBytes(StandardCharsets.UTF_8));
+        move(temp, manifest);
+        completeShards(shards);
+        manifest.delete();
+
+    }
+
+    /**
+     * <code>recoverShards()</code>
+     * <p>
+     *     Completes a save of shard files interrupted after its manifest was written, see internal method
+     *     {@link #commitShards(int) commitShards}, or otherwise removes the next files of a save interrupted before,
+     *     so that the shard files read are all of the same save.
+     * </p>
+     *
+     * @throws IOException if the manifest cannot be read, or a file cannot be renamed
+     */
+    private void recoverShards() throws IOException {
+
+        File manifest = file(manifestPath);
+        if (manifest.exists()) {
+            String shards = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8).trim();
+            try {
+                completeShards(Integer.parseInt(shards));
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid manifest " + manifest, e);
+            }
+            manifest.delete();
+        } else {
+            File[] files = file(filePath).getAbsoluteFile().getParentFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (fileNumber(file, nextShardPath) >= 0)
+                        file.delete();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * <code>completeShards()</code>
+     * <p>
+     *     Renames the next file of each of the given number of shards, where still present, over its shard file, and
+     *     removes the shard files beyond them. With one shard, every shard file is removed.
+     * </p>
+     *
+     * @throws IOException if a file cannot be renamed
+     */
+    private void completeShards(int shards) throws IOException {
+
+        int used = shards == 1 ? 0 : shards;
+        for (int i = 0; i < used; i++) {
+            File next = file(String.format(nextShardPath, i));
+            if (next.exists())
+                move(next, file(String.format(shardPath, i)));
+        }
+        for (File file : shardFiles()) {
+            if (shardNumber(file) >= used)
+                file.delete();
+        }
+
+    }
+
+    /**
+     * <code>move()</code>
+     * <p>
+     *     Renames a file over another, atomically if possible
+     * </p>
+     *
+     * @throws IOException if the file cannot be renamed
+     */
+    private static void move(File from, File to) throws IOException {
+
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+    }
+
+    /**
+     * <code>shardNumber()</code>
+     *
+     * @return the shard number of a shard file, or -1 if the file is not a shard file
+     */
+    private int shardNumber(File file) {
+        return fileNumber(file, shardPath);
+    }
+
+    /**
+     * <code>fileNumber()</code>
+     *
+     * @return the number of a file named by the given numbered path, or -1 if the file is not named by the path
+     */
+    private int fileNumber(File file, String path) {
+
+        String prefix = path.substring(0, path.indexOf("%d"));
+        String suffix = path.substring(path.indexOf("%d") + 2);
+        String name = file.getName();
+        if (name.length() <= prefix.length() + suffix.length() || !name.startsWith(prefix) || !name.endsWith(suffix))
+            return -1;
+
+        String number = name.substring(prefix.length(), name.length() - suffix.length());
+        for (int i = 0; i < number.length(); i++) {
+            if (!Character.isDigit(number.charAt(i)))
+                return -1;
+        }
+        return Integer.parseInt(number);
+
+    }
+
+    /**
+     * <code>loadPastSegment()</code>
+     * <p>
+     *     Opens the past meetings segment, if present. If past meetings are read on demand, only the segment index is
+     *     read, and the meetings are neither held on the heap nor added to the co-attendance index, contact schedules
+     *     or timeline: queries find them from the segment's own index, see {@link #unindexedSegments()
+     *     unindexedSegments}. Otherwise every meeting in the segment is read into the internal list of meetings.
+     *     Meetings also held in the xml files take precedence over the segment.
+     * </p>
+     */
+    private void loadPastSegment() {
+
+        File segmentFile = file(segmentPath);
+        if (!segmentFile.exists())
+            return;
+
+        try {
+
+            PastMeetingSegment segment = PastMeetingSegment.open(segmentFile, options.getPastMeetingCacheSize());
+            for (int id : segment.getIds()) {
+                if (meetingRows.get(id) != null)
+                    segment = segment.without(id);      // held in the xml files
+                else if (!options.isLazyPastMeetings())
+                    addMeeting(segment.get(id, contactIndex));
+            }
+            if (options.isLazyPastMeetings())
+                pastSegment = segment;
+
+        // exception handling
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * <code>loadArchiveSegment()</code>
+     * <p>
+     *     Opens the archive segment, if present, reading its index only, whatever the storage options. As for the past
+     *     meetings segment, archived meetings are not added to the co-attendance index, contact schedules or
+     *     timeline. Meetings also held in the xml files or the past meetings segment take precedence over the
+     *     archive.
+     * </p>
+     */
+    private void loadArchiveSegment() {
+
+        File archiveFile = file(archivePath);
+        if (!archiveFile.exists())
+            return;
+
+        try {
+
+            PastMeetingSegment segment = PastMeetingSegment.open(archiveFile, options.getPastMeetingCacheSize());
+            for (int id : segment.getIds()) {
+                if (meetingRows.get(id) != null || (pastSegment != null && pastSegment.contains(id)))
+                    segment = segment.without(id);      // held in the xml files or past meetings segment
+            }
+            archiveSegment = segment;
+
+        // exception handling
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+    }
+
+    /**
+     * <code>loadHistory()</code>
+     * <p>
+     *     Reads the history of changes from file. If there is no history file, a new history is started, recording
+     *     the contacts, meetings and recurring meetings already held as changes made now.
+     * </p>
+     */
+    private void loadHistory() {
+
+        File historyFile = file(historyPath);
+        try {
+
+            // read existing history
+            if (historyFile.exists()) {
+                history = ChangeHistory.load(historyFile);
+                return;
+            }
+
+            // start history from the current state
+            history = new ChangeHistory();
+            long now = System.currentTimeMillis();
+            for (Contact c : contacts)
+                history.recordContact(now, c);
+            for (Object m : meetings)
+                history.recordMeeting(now, (Meeting) m);
+            for (PastMeetingSegment segment : pastSegments()) {
+                for (int id : segment.getIds())
+                    history.recordMeeting(now, segment.get(id, contactIndex));
+            }
+            for (RecurringMeeting r : recurringMeetings)
+                history.recordRecurringMeeting(now, r);
+
+        // exception handling
+        } catch (IOException e) {
+            e.printStackTrace();
+            history = new ChangeHistory();
+        }
+
+    }
+
+    /**
+     * <code>flushExecutor()</code>
+     * <p>
+     *     Returns the single background thread on which snapshots are written to file, starting it on first use. The
+     *     thread is a daemon thread, so does not keep the program running.
+     * </p>
+     *
+     * @return executor for writing to file
+     */
+    private synchronized ExecutorService flushExecutor() {
+
+        if (flushExecutor == null)
+            flushExecutor = options.getFlushExecutor();
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "contact-manager-flush");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return flushExecutor;
+
+    }
+
+    /**
+     * <code>sortMeetingList()</code>
+     * <p>
+     *     Rearranges the given list of meetings into chronological order
+     * </p>
+     */
+    private void sortMeetingList(List<Meeting> toSort) {
+
+        // setup comparator class to check meetings based on their meeting date
+        Comparator<? super Meeting> comp = new Comparator<Meeting>() {
+            @Override
+            public int compare(Meeting o1, Meeting o2) {
+                return o1.getDate().compareTo(o2.getDate());
+            }
+        };
+
+        // apply comparator to the given list
+        Collections.sort(toSort, (Comparator) comp);
+
+    }
+
+    /**
+     * <code>sortPastMeetingList()</code>
+     * <p>
+     *     Rearranges the given list of past meetings into chronological order
+     * </p>
+     */
+    private void sortPastMeetingList(List<PastMeeting> toSort) {
+
+        // setup comparator class to check meetings based on their meeting date
+        Comparator<? super Meeting> comp = new Comparator<Meeting>() {
+            @Override
+            public int compare(Meeting o1, Meeting o2) {
+                return o1.getDate().compareTo(o2.getDate());
+            }
+        };
+
+        // apply comparator to the given list
+        Collections.sort(toSort, (Comparator) comp);
+
+    }
+
+    /**
+     * <code>checkContactExists()</code>
+     * <p>
+     *     Checks a given contact to see if it exists in the internal set of contacts. Calls method checker
+     *     for sets of contacts {@link #checkContactsExist(Set) checkContactsExist}.
+     * </p>
+     *
+     * @return true if contact exists
+     */
+    private boolean checkContactExists(Contact c) {
+
+        // create set with the given contact
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+
+        // call internal method to check existence of contacts
+        // and return value
+        return checkContactsExist(cs);
+
+    }
+
+    /**
+     * <code>checkContactsExist()</code>
+     * <p>
+     *     Checks a given set of contact to see if each contact contains exists in the internal set of contacts
+     * </p>
+     *
+     * @return true if all contact exists
      */
     private boolean checkContactsExist(Set<Contact> checkContacts) {
 
@@ -995,6 +3373,7 @@ public class ContactManagerImpl implements ContactManager {
             boolean exists = false;             // existence flag
 
             // iterate through contact manager's set of contacts
+            contactsScanned += contacts.size();
             for (Contact known : this.contacts) {
 
                 if (known.getId() == c.getId()) // if id matches
@@ -1013,20 +3392,484 @@ public class ContactManagerImpl implements ContactManager {
 
     }
 
+    /**
+     * <code>getOccurrence()</code>
+     *
+     * @return the future occurrence of a recurring meeting with the given id, or null if the id is not of a future
+     *         occurrence
+     */
+    private FutureMeeting getOccurrence(int id) {
+
+        for (RecurringMeeting r : recurringMeetings) {
+            int i = r.indexOf(id);
+            if (i >= r.getMaterialized())
+                return r.getOccurrence(i);
+        }
+        return null;
+
+    }
+
+    /**
+     * <code>hasContact()</code>
+     *
+     * @return true if the given contacts include the contact with the given id
+     */
+    private boolean hasContact(Set<Contact> meetingContacts, int contactId) {
+
+        for (Contact c : meetingContacts) {
+            if (c.getId() == contactId)
+                return true;
+        }
+        return false;
+
+    }
+
+    /**
+     * <code>hasAnyContact()</code>
+     *
+     * @return true if the given meeting contacts include any of the other contacts, by id
+     */
+    private boolean hasAnyContact(Set<Contact> meetingContacts, Set<Contact> others) {
+
+        for (Contact c : others) {
+            if (hasContact(meetingContacts, c.getId()))
+                return true;
+        }
+        return false;
+
+    }
+
+    /**
+     * <code>candidates()</code>
+     * <p>
+     *     Returns the meetings of the internal list a scan for the meetings of some contacts need read. Meetings held
+     *     on the heap are all returned, to be checked by the caller. For meetings held off-heap, the state and contact
+     *     columns of each row are checked first, see {@link OffHeapMeetingList OffHeapMeetingList}, and a meeting is
+     *     only created for the rows that match, so a scan does not create a meeting for every row.
+     * </p>
+     *
+     * @param past true for past meetings, false for future meetings
+     * @param contactIds ids of the contacts, any of whom a meeting must include
+     * @return the meetings to check, which include every matching meeting
+     */
+    private List<?> candidates(boolean past, Set<Integer> contactIds) {
+
+        if (!(meetings instanceof OffHeapMeetingList))
+            return meetings;
+
+        OffHeapMeetingList list = (OffHeapMeetingList) meetings;
+        List<Meeting> ret = new ArrayList<Meeting>();
+        int only = contactIds.size() == 1 ? contactIds.iterator().next() : -1;     // the one id, if only one
+        for (int i = 0; i < list.size(); i++) {
+            if (list.isPast(i) != past)
+                continue;
+            if (only >= 0) {
+                if (list.hasContact(i, only))
+                    ret.add(list.get(i));
+            } else {
+                for (int id : list.getContactIds(i)) {
+                    if (contactIds.contains(id)) {
+                        ret.add(list.get(i));
+                        break;
+                    }
+                }
+            }
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>candidatesOnDate()</code>
+     * <p>
+     *     As {@link #candidates(boolean, Set) candidates}, for a scan for the meetings dated at the given time, read
+     *     from the date column of meetings held off-heap.
+     * </p>
+     *
+     * @param date time in epoch milliseconds
+     * @return the meetings to check, which include every matching meeting
+     */
+    private List<?> candidatesOnDate(long date) {
+
+        if (!(meetings instanceof OffHeapMeetingList))
+            return meetings;
+
+        OffHeapMeetingList list = (OffHeapMeetingList) meetings;
+        List<Meeting> ret = new ArrayList<Meeting>();
+        for (int i = 0; i < list.size(); i++) {
+            if (list.getDateMillis(i) == date)
+                ret.add(list.get(i));
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>meetingById()</code>
+     *
+     * @return the meeting with the given id from the internal list of meetings, or read on demand if a past meeting
+     *         not held in the list
+     */
+    private Meeting meetingById(int id) {
+
+        int row = indexOfMeeting(id);
+        if (row >= 0)
+            return (Meeting) meetings.get(row);
+        return segmentMeeting(id);
+
+    }
+
+    /**
+     * <code>meetingsOf()</code>
+     *
+     * @return iterator over the meetings with the given ids, each found as it is read
+     */
+    private Iterator<Meeting> meetingsOf(final Iterator<Integer> ids) {
+
+        return new Iterator<Meeting>() {
+
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Meeting next() {
+                return meetingById(ids.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>futureMeetingsFrom()</code>
+     * <p>
+     *     Iterates lazily over the future meetings held in the internal list, dated at or after the given time, in
+     *     order of date, from the timeline of all meetings. Past meetings on the timeline are skipped.
+     * </p>
+     *
+     * @return iterator over the future meetings from the given time
+     */
+    private Iterator<Meeting> futureMeetingsFrom(long time) {
+
+        final Iterator<Integer> ids = timeline.startingFrom(time);
+        return new Iterator<Meeting>() {
+
+            private Meeting next = advance();       // next future meeting to return
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Meeting next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Meeting ret = next;
+                next = advance();
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            // find the next id on the timeline of a future meeting
+            private Meeting advance() {
+                while (ids.hasNext()) {
+                    int row = indexOfMeeting(ids.next());
+                    if (row >= 0 && meetings.get(row) instanceof FutureMeeting)
+                        return (Meeting) meetings.get(row);
+                }
+                return null;
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>futureOccurrences()</code>
+     *
+     * @return iterator over the occurrences of a recurring meeting not yet made concrete, in order of date
+     */
+    private static Iterator<Meeting> futureOccurrences(RecurringMeeting r) {
+        return occurrencesWithin(r, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * <code>occurrencesWithin()</code>
+     *
+     * @param from start of the range in epoch milliseconds, included
+     * @param to end of the range in epoch milliseconds, excluded
+     * @return iterator over the occurrences of a recurring meeting not yet made concrete dated within the given
+     *         range, in order of date, starting from the first found by binary search
+     */
+    private static Iterator<Meeting> occurrencesWithin(final RecurringMeeting r, long from, final long to) {
+
+        final int first = r.firstFrom(from);
+
+        return new Iterator<Meeting>() {
+
+            private int i = first;                  // index of the next occurrence
+
+            @Override
+            public boolean hasNext() {
+                return i < r.getCount() && r.getOccurrenceDate(i).getTimeInMillis() < to;
+            }
+
+            @Override
+            public Meeting next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return r.getOccurrence(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>startingWithin()</code>
+     *
+     * @return ids of the meetings of a contact dated within the given range, in order of date, from the contact's
+     *         schedule and the contact index of any segment of past meetings not held in it
+     */
+    private List<Integer> startingWithin(Contact contact, Calendar from, Calendar to) {
+
+        IntervalTree schedule = schedules.get(contact.getId());
+        List<Integer> ret = schedule == null ? new ArrayList<Integer>()
+                : schedule.findStarting(from.getTimeInMillis(), to.getTimeInMillis());
+
+        // merge in the meetings of each segment by date, both lists being in order of date
+        for (PastMeetingSegment segment : unindexedSegments()) {
+            List<Integer> held = ret;
+            List<Integer> found = segment.getIdsWithContact(contact.getId(), from.getTimeInMillis(),
+                    to.getTimeInMillis());
+            if (found.isEmpty())
+                continue;
+            ret = new ArrayList<Integer>(held.size() + found.size());
+            int i = 0, j = 0;
+            while (i < held.size() || j < found.size()) {
+                if (j == found.size() || (i < held.size()
+                        && meetingById(held.get(i)).getDate().getTimeInMillis() <= segment.getDateMillis(found.get(j))))
+                    ret.add(held.get(i++));
+                else
+                    ret.add(found.get(j++));
+            }
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>recurringWithContact()</code>
+     *
+     * @return the recurring meetings with the given contact, from the index of recurring meetings by contact
+     */
+    private List<RecurringMeeting> recurringWithContact(int contactId) {
+
+        List<RecurringMeeting> series = contactSeries.get(contactId);
+        return series == null ? new ArrayList<RecurringMeeting>() : new ArrayList<RecurringMeeting>(series);
+
+    }
+
+    /**
+     * <code>pastSegments()</code>
+     *
+     * @return the segments of past meetings read on demand, then archived, that are present
+     */
+    private List<PastMeetingSegment> pastSegments() {
+
+        List<PastMeetingSegment> ret = new ArrayList<PastMeetingSegment>(2);
+        if (pastSegment != null)
+            ret.add(pastSegment);
+        if (archiveSegment != null)
+            ret.add(archiveSegment);
+        return ret;
+
+    }
+
+    /**
+     * <code>unindexedSegments()</code>
+     *
+     * @return the segments whose meetings are not held in the co-attendance index, contact schedules or timeline,
+     *         but found by queries from the segment's own index: every segment present, see
+     *         {@link #pastSegments() pastSegments}. Their meetings are never held on the heap, however long the
+     *         history.
+     */
+    private List<PastMeetingSegment> unindexedSegments() {
+        return pastSegments();
+    }
+
+    /**
+     * <code>segmentOf()</code>
+     *
+     * @return the segment holding the past meeting with the given id, or null if it is not held in a segment
+     */
+    private PastMeetingSegment segmentOf(int id) {
+
+        for (PastMeetingSegment segment : pastSegments()) {
+            if (segment.contains(id))
+                return segment;
+        }
+        return null;
+
+    }
+
+    /**
+     * <code>segmentMeeting()</code>
+     *
+     * @return the past meeting with the given id, read on demand from its segment, or null if not held in a segment
+     */
+    private PastMeeting segmentMeeting(int id) {
+
+        PastMeetingSegment segment = segmentOf(id);
+        return segment == null ? null : segment.get(id, contactIndex);
+
+    }
+
+    /**
+     * <code>checkContactsIndexed()</code>
+     * <p>
+     *     Checks each of a set of contacts against the index of contacts by id, rather than scanning the contacts
+     *     for each, see {@link #checkContactsExist(Set) checkContactsExist}.
+     * </p>
+     *
+     * @throws IllegalArgumentException if any contact is unknown
+     */
+    private void checkContactsIndexed(Set<Contact> contacts) {
+
+        for (Contact c : contacts) {
+            if (!contactIndex.containsKey(c.getId()))
+                throw new IllegalArgumentException();
+        }
+
+    }
+
+    /**
+     * <code>removeRow()</code>
+     * <p>
+     *     Removes a row from the internal list of meetings by moving the last meeting into it, so that only the moved
+     *     meeting changes position. Views keep the list and index of meetings they were frozen with. Rows removed
+     *     together must be removed from the last, so that the meeting moved is never one to be removed.
+     * </p>
+     */
+    private void removeRow(int row) {
+
+        int last = meetings.size() - 1;
+        if (row < last) {
+            Meeting moved = (Meeting) meetings.get(last);
+            meetings.set(row, moved);
+            meetingRows.put(moved.getId(), row);
+        }
+        if (meetings instanceof OffHeapMeetingList)
+            ((OffHeapMeetingList) meetings).removeLast();
+        else
+            ((VersionedList<?>) meetings).removeLast();
+
+    }
+
+    /**
+     * <code>indexOfMeeting()</code>
+     * <p>
+     *     Finds the position of a meeting in the internal list of meetings by id, using the meetings index
+     * </p>
+     *
+     * @return index of the meeting, or -1 if not found
+     */
+    private int indexOfMeeting(int id) {
+
+        Integer row = meetingRows.get(id);
+        return row == null ? -1 : row;
+
+    }
+
     /**
      * <code>updateMeetingTypes()</code>
      * <p>
      *     This method checks the date of each scheduled meeting and converts any future meetings
-     *     to past meetings if the date has now past.
+     *     to past meetings if the date has now past. Meetings are replaced in place in the internal
+     *     list of meetings.
+     *
+     *     Occurrences of recurring meetings that have now past are added to the internal list of
+     *     meetings as past meetings.
+     *
+     *     The date of the earliest future meeting or occurrence is kept, so that the check is skipped until that
+     *     date has passed. Cached query results are invalidated for the contacts of each meeting that has passed.
      * </p>
      */
     private void updateMeetingTypes() {
 
-        // Initialise list to populate with updated meetings
-        List<Meeting> updatedMeetings = new ArrayList<Meeting>();
+        // compare the meeting dates against the current time
+        Calendar now = Calendar.getInstance();
+
+        // no meeting can have passed before the earliest future meeting or occurrence
+        if (now.getTimeInMillis() <= nextTransition)
+            return;
+        long next = Long.MAX_VALUE;
+        long before = version;
+
+        // add passed occurrences of recurring meetings as past meetings
+        for (int i = 0; i < recurringMeetings.size(); i++) {
+            RecurringMeeting r = recurringMeetings.get(i);
+            List<PastMeeting> passed = r.materializeBefore(now.getTimeInMillis());
+            for (PastMeeting pm : passed) {
+                addMeeting(pm);
+                if (changeEvents != null)
+                    publish(new ChangeEvent.PastMeetingAdded(++eventSequence, now.getTimeInMillis(), pm));
+            }
+            if (!passed.isEmpty()) {
+                seriesCopies.set(i, copyOf(r));
+                if (dirtySeries != null)
+                    dirtySeries.add(i);
+            }
+            if (r.getMaterialized() < r.getCount())
+                next = Math.min(next, r.getOccurrenceDate(r.getMaterialized()).getTimeInMillis());
+        }
+
+        // off-heap meetings are updated in their columns without creating meetings
+        if (meetings instanceof OffHeapMeetingList) {
+            OffHeapMeetingList list = (OffHeapMeetingList) meetings;
+            meetingsScanned += list.size();
+            List<Integer> updated = new ArrayList<Integer>();
+            if (list.updatePastStates(now.getTimeInMillis(), updated) > 0)
+                version++;
+            if (queryCache != null) {
+                for (int row : updated) {
+                    for (int id : list.getContactIds(row))
+                        queryCache.invalidateContact(id);
+                }
+            }
+            if (changeEvents != null) {
+                for (int row : updated)
+                    publish(new ChangeEvent.MeetingBecamePast(++eventSequence, now.getTimeInMillis(),
+                            (PastMeeting) list.get(row)));
+            }
+            nextTransition = Math.min(next, list.earliestFutureDate());
+            if (version != before)
+                refreshView();
+            return;
+        }
 
+        meetingsScanned += meetings.size();
         // for each meeting
-        for (Object m : meetings) {
+        for (int i = 0; i < meetings.size(); i++) {
+
+            Object m = meetings.get(i);
 
             // check the meeting type
             if (m instanceof FutureMeeting) {
@@ -1034,29 +3877,28 @@ public class ContactManagerImpl implements ContactManager {
                 // for all future meetings
                 FutureMeeting fm = (FutureMeeting) m;
 
-                // compare the meeting date against the current time
-                Calendar now = Calendar.getInstance();
                 if (now.compareTo(fm.getDate()) > 0) {              // if the time has past
 
                     PastMeeting pm = new PastMeetingImpl(fm, "");   // use the copy constructor to create new past meeting
-                    updatedMeetings.add(pm);                        // add past meeting to list of meetings
+                    meetings.set(i, pm);                            // replace future meeting with past meeting
+                    version++;
+                    if (queryCache != null)
+                        queryCache.invalidateContacts(pm.getContacts());
+                    if (changeEvents != null)
+                        publish(new ChangeEvent.MeetingBecamePast(++eventSequence, now.getTimeInMillis(), pm));
 
                 } else {
 
-                    updatedMeetings.add((Meeting) m);               // add unchanged future meetings to list
+                    next = Math.min(next, fm.getDate().getTimeInMillis());
 
                 }
 
-            } else {
-
-                updatedMeetings.add((Meeting) m);   // add unchanged past meetings to list
-
             }
 
         }
-
-        // point internal meeting list to updated list of meetings
-        meetings = updatedMeetings;
+        nextTransition = next;
+        if (version != before)
+            refreshView();
 
     }
 }
@@ -0,0 +1,259 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contact manager metrics
+ *
+ * Counts and latencies of the operations of a contact manager. Each operation, such as a method of the
+ * {@link ContactManager ContactManager} interface, or the loading and saving of its files, has its own
+ * {@link Operation Operation}, which records the latency of each call in a {@link LatencyHistogram LatencyHistogram}
+ * and counts errors by exception type. The bytes and records written by saves, and the records read by loads, are
+ * also counted.
+ *
+ * Calls are recorded by an {@link InstrumentedContactManager InstrumentedContactManager}, and loads and saves by a
+ * {@link ContactManagerImpl ContactManagerImpl} given the metrics in its options, see
+ * {@link ContactManagerOptions#setMetrics(ContactManagerMetrics) setMetrics}.
+ *
+ * Recording takes no locks: every count is a striped counter. The metrics are read either as a
+ * {@link MetricsSnapshot MetricsSnapshot}, see {@link #snapshot() snapshot}, or through JMX once registered, see
+ * {@link #register(String) register}.
+ */
+public class ContactManagerMetrics implements ContactManagerMetricsMXBean {
+
+    /* V A R I A B L E S */
+
+    private final ConcurrentMap<String, Operation> operations;  // operations by name
+    private final LongAdder bytesWritten;                       // bytes written by saves
+    private final LongAdder recordsWritten;                     // records written by saves
+    private final LongAdder recordsLoaded;                      // records read by loads
+
+    /* I N N E R   C L A S S E S */
+
+    /**
+     * The latencies and errors of one operation
+     */
+    public static class Operation {
+
+        private final String name;                              // operation name
+        private final LatencyHistogram latency;                 // latency of each call
+        private final ConcurrentMap<String, LongAdder> errors;  // number of errors by exception type
+
+        Operation(String name) {
+            this.name = name;
+            latency = new LatencyHistogram();
+            errors = new ConcurrentHashMap<String, LongAdder>();
+        }
+
+        /**
+         * <code>record()</code>
+         *
+         * @param nanos latency of a call in nanoseconds
+         */
+        public void record(long nanos) {
+            latency.record(nanos);
+        }
+
+        /**
+         * <code>error()</code>
+         *
+         * @param e exception thrown by a call
+         */
+        public void error(Throwable e) {
+
+            String type = e.getClass().getSimpleName();
+            LongAdder count = errors.get(type);
+            if (count == null) {
+                LongAdder added = new LongAdder();
+                count = errors.putIfAbsent(type, added);
+                if (count == null)
+                    count = added;
+            }
+            count.increment();
+
+        }
+
+        /**
+         * <code>snapshot()</code>
+         *
+         * @return the values recorded for the operation
+         */
+        MetricsSnapshot.Operation snapshot() {
+
+            Map<String, Long> errorCounts = new HashMap<String, Long>();
+            for (Map.Entry<String, LongAdder> e : errors.entrySet())
+                errorCounts.put(e.getKey(), e.getValue().sum());
+            return new MetricsSnapshot.Operation(name, latency.getBucketCounts(), latency.getCount(),
+                    latency.getTotalNanos(), latency.getMaxNanos(), errorCounts);
+
+        }
+
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public ContactManagerMetrics() {
+
+        operations = new ConcurrentHashMap<String, Operation>();
+        bytesWritten = new LongAdder();
+        recordsWritten = new LongAdder();
+        recordsLoaded = new LongAdder();
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>operation()</code>
+     *
+     * @param name operation name
+     * @return the operation with the given name, added if not yet recorded
+     */
+    public Operation operation(String name) {
+
+        Operation ret = operations.get(name);
+        if (ret == null) {
+            Operation added = new Operation(name);
+            ret = operations.putIfAbsent(name, added);
+            if (ret == null)
+                ret = added;
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>recordLoad()</code>
+     *
+     * @param nanos time taken to load the files of a contact manager
+     * @param records number of contacts, meetings and recurring meetings loaded
+     */
+    public void recordLoad(long nanos, long records) {
+
+        operation("load").record(nanos);
+        recordsLoaded.add(records);
+
+    }
+
+    /**
+     * <code>recordSave()</code>
+     *
+     * @param nanos time taken to save the files of a contact manager
+     * @param bytes number of bytes written
+     * @param records number of contacts, meetings and recurring meetings written
+     */
+    public void recordSave(long nanos, long bytes, long records) {
+
+        operation("save").record(nanos);
+        bytesWritten.add(bytes);
+        recordsWritten.add(records);
+
+    }
+
+    /**
+     * <code>snapshot()</code>
+     *
+     * @return the values recorded so far
+     */
+    public MetricsSnapshot snapshot() {
+
+        List<MetricsSnapshot.Operation> ops = new ArrayList<MetricsSnapshot.Operation>();
+        for (Operation op : operations.values())
+            ops.add(op.snapshot());
+        return new MetricsSnapshot(ops, bytesWritten.sum(), recordsWritten.sum(), recordsLoaded.sum());
+
+    }
+
+    /**
+     * <code>register()</code>
+     * <p>
+     *     Registers the metrics with the platform MBean server, under the object name
+     *     <code>ContactManager:type=Metrics,name=</code> followed by the given name.
+     * </p>
+     *
+     * @param name name distinguishing these metrics from others registered
+     * @return the object name registered
+     * @throws JMException if the metrics cannot be registered, for example if the name is already in use
+     */
+    public ObjectName register(String name) throws JMException {
+
+        ObjectName ret = new ObjectName("ContactManager:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, ret);
+        return ret;
+
+    }
+
+    /* M B E A N   A T T R I B U T E S */
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (MetricsSnapshot.Operation op : snapshot().getOperations().values())
+            ret.put(op.getName(), op.getCalls());
+        return ret;
+
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (MetricsSnapshot.Operation op : snapshot().getOperations().values()) {
+            for (Map.Entry<String, Long> e : op.getErrors().entrySet())
+                ret.put(op.getName() + ":" + e.getKey(), e.getValue());
+        }
+        return ret;
+
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+
+        Map<String, Double> ret = new TreeMap<String, Double>();
+        for (MetricsSnapshot.Operation op : snapshot().getOperations().values())
+            ret.put(op.getName(), op.getMeanMicros());
+        return ret;
+
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyMicros() {
+
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (MetricsSnapshot.Operation op : snapshot().getOperations().values())
+            ret.put(op.getName(), op.getPercentileMicros(99));
+        return ret;
+
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyMicros() {
+
+        Map<String, Long> ret = new TreeMap<String, Long>();
+        for (MetricsSnapshot.Operation op : snapshot().getOperations().values())
+            ret.put(op.getName(), op.getMaxMicros());
+        return ret;
+
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getRecordsWritten() {
+        return recordsWritten.sum();
+    }
+
+    @Override
+    public long getRecordsLoaded() {
+        return recordsLoaded.sum();
+    }
+
+}
@@ -0,0 +1,52 @@
+import java.util.Map;
+
+/**
+ * Contact manager metrics management interface
+ *
+ * The attributes of a {@link ContactManagerMetrics ContactManagerMetrics} exposed through JMX. Per-operation values
+ * are keyed by operation name, such as <code>getPastMeetingList</code>, <code>load</code> or <code>save</code>.
+ */
+public interface ContactManagerMetricsMXBean {
+
+    /**
+     * @return number of calls of each operation
+     */
+    Map<String, Long> getCallCounts();
+
+    /**
+     * @return number of errors of each operation by exception type, keyed by operation and type, such as
+     *         <code>getPastMeeting:IllegalArgumentException</code>
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return mean latency of each operation in microseconds
+     */
+    Map<String, Double> getMeanLatencyMicros();
+
+    /**
+     * @return estimated 99th percentile latency of each operation in microseconds
+     */
+    Map<String, Long> getP99LatencyMicros();
+
+    /**
+     * @return longest latency of each operation in microseconds
+     */
+    Map<String, Long> getMaxLatencyMicros();
+
+    /**
+     * @return number of bytes written to file by saves
+     */
+    long getBytesWritten();
+
+    /**
+     * @return number of contacts, meetings and recurring meetings written by saves
+     */
+    long getRecordsWritten();
+
+    /**
+     * @return number of contacts, meetings and recurring meetings read by loads
+     */
+    long getRecordsLoaded();
+
+}
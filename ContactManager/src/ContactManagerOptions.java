@@ -0,0 +1,492 @@
+import java.io.File;
+import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options for constructing a contact manager
+ *
+ * A contact manager is created with the default options by {@link ContactManagerImpl#ContactManagerImpl()
+ * ContactManagerImpl()}. Where a different storage setup is required, an options object is prepared and passed to
+ * {@link ContactManagerImpl#ContactManagerImpl(ContactManagerOptions) ContactManagerImpl(ContactManagerOptions)}.
+ *
+ * Each setter returns the options object so that options can be chained, e.g.
+ *
+ *      new ContactManagerImpl(new ContactManagerOptions().setOffHeapMeetings(true));
+ */
+public class ContactManagerOptions {
+
+    /* V A R I A B L E S */
+
+    private boolean offHeapMeetings = false;    // store meetings in off-heap columns
+    private boolean keepHistory = false;        // keep a history of changes
+    private int shards = 1;                     // number of files to store state in
+    private boolean lazyPastMeetings = false;   // read past meetings on demand
+    private int pastMeetingCacheSize = 1024;    // past meetings read on demand held in memory
+    private int archiveAfterDays = 0;           // age in days at which past meetings are archived, 0 for never
+    private int queryCacheSize = 0;             // query results held in the query cache, 0 for no cache
+    private ContactManagerMetrics metrics;      // metrics to record loads and saves in, or null
+    private int slowOperationLogSize = 0;       // slow calls held in the slow operation log, 0 for no log
+    private long slowOperationThresholdMicros = 10000;  // duration over which a call is slow
+    private File directory;                     // directory of the files, or null for the working directory
+    private ExecutorService flushExecutor;      // thread to write files on, or null for a thread of its own
+    private StringPool stringPool;              // pool of names and notes, or null for a pool of its own
+    private boolean compressFiles = false;      // gzip compress the xml files
+    private int deltaSaves = 0;                 // delta saves between full saves, 0 for full saves only
+    private int changeEventBufferSize = 0;      // change events buffered per subscriber, 0 for no events
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>copy()</code>
+     *
+     * @return a new options object with the same options as this one
+     */
+    public ContactManagerOptions copy() {
+
+        ContactManagerOptions ret = new ContactManagerOptions();
+        ret.offHeapMeetings = offHeapMeetings;
+        ret.keepHistory = keepHistory;
+        ret.shards = shards;
+        ret.lazyPastMeetings = lazyPastMeetings;
+        ret.pastMeetingCacheSize = pastMeetingCacheSize;
+        ret.archiveAfterDays = archiveAfterDays;
+        ret.queryCacheSize = queryCacheSize;
+        ret.metrics = metrics;
+        ret.slowOperationLogSize = slowOperationLogSize;
+        ret.slowOperationThresholdMicros = slowOperationThresholdMicros;
+        ret.directory = directory;
+        ret.flushExecutor = flushExecutor;
+        ret.stringPool = stringPool;
+        ret.compressFiles = compressFiles;
+        ret.deltaSaves = deltaSaves;
+        ret.changeEventBufferSize = changeEventBufferSize;
+        return ret;
+
+    }
+
+    /* G E T T E R S   A N D   S E T T E R S */
+
+    /**
+     * <code>isOffHeapMeetings()</code>
+     *
+     * @return true if meetings are to be stored off-heap, see {@link OffHeapMeetingList OffHeapMeetingList}
+     */
+    public boolean isOffHeapMeetings() {
+        return offHeapMeetings;
+    }
+
+    /**
+     * <code>setOffHeapMeetings()</code>
+     * <p>
+     *     When set, the contact manager keeps its meetings in direct byte buffers rather than as meeting objects on
+     *     the heap. Meeting objects are only created when they are returned by the contact manager.
+     * </p>
+     *
+     * @param offHeapMeetings true to store meetings off-heap
+     * @return this options object
+     */
+    public ContactManagerOptions setOffHeapMeetings(boolean offHeapMeetings) {
+        this.offHeapMeetings = offHeapMeetings;
+        return this;
+    }
+
+    /**
+     * <code>isKeepHistory()</code>
+     *
+     * @return true if a history of changes is to be kept, see {@link ChangeHistory ChangeHistory}
+     */
+    public boolean isKeepHistory() {
+        return keepHistory;
+    }
+
+    /**
+     * <code>setKeepHistory()</code>
+     * <p>
+     *     When set, the contact manager keeps an append-only history of the changes made to it, saved alongside its
+     *     file, so that its state as of an earlier time can be queried. See
+     *     {@link ContactManagerImpl#asOf(Calendar) asOf}.
+     * </p>
+     *
+     * @param keepHistory true to keep a history of changes
+     * @return this options object
+     */
+    public ContactManagerOptions setKeepHistory(boolean keepHistory) {
+        this.keepHistory = keepHistory;
+        return this;
+    }
+
+    /**
+     * <code>getShards()</code>
+     *
+     * @return number of files the contact manager's state is to be stored in
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * <code>setShards()</code>
+     * <p>
+     *     When more than one, the contact manager splits its state by id across that many shard files, which are
+     *     read and written in parallel. With one shard, the state is stored in the single contacts.txt file.
+     * </p>
+     *
+     * @param shards number of files to store state in
+     * @return this options object
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+    public ContactManagerOptions setShards(int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException();
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * <code>isCompressFiles()</code>
+     *
+     * @return true if the xml files are to be saved gzip compressed
+     */
+    public boolean isCompressFiles() {
+        return compressFiles;
+    }
+
+    /**
+     * <code>setCompressFiles()</code>
+     * <p>
+     *     When set, the contact manager saves contacts.txt, or its shard files, gzip compressed, see
+     *     {@link XmlStore XmlStore}. Files are read whether compressed or not, so the option can be changed between
+     *     runs: files are saved in the new form at the next flush.
+     * </p>
+     *
+     * @param compressFiles true to save the xml files compressed
+     * @return this options object
+     */
+    public ContactManagerOptions setCompressFiles(boolean compressFiles) {
+        this.compressFiles = compressFiles;
+        return this;
+    }
+
+    /**
+     * <code>getDeltaSaves()</code>
+     *
+     * @return number of delta saves between full saves, or 0 if every save is full
+     */
+    public int getDeltaSaves() {
+        return deltaSaves;
+    }
+
+    /**
+     * <code>setDeltaSaves()</code>
+     * <p>
+     *     When more than zero, the contact manager tracks the contacts and meetings changed since its last save, and
+     *     a save writes only those to a numbered delta file alongside contacts.txt, so that the cost of a save
+     *     follows the amount of change rather than the size of the contact manager. After the given number of
+     *     delta saves, the next save writes contacts.txt in full and removes the delta files. The delta files are
+     *     applied in order over contacts.txt when it is read.
+     *
+     *     Delta saves are made only with a single shard, and with past meetings held in memory, see
+     *     {@link #setShards(int) setShards} and {@link #setLazyPastMeetings(boolean) setLazyPastMeetings}. Otherwise
+     *     every save is full.
+     * </p>
+     *
+     * @param deltaSaves number of delta saves between full saves, 0 for full saves only
+     * @return this options object
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public ContactManagerOptions setDeltaSaves(int deltaSaves) {
+        if (deltaSaves < 0)
+            throw new IllegalArgumentException();
+        this.deltaSaves = deltaSaves;
+        return this;
+    }
+
+    /**
+     * <code>isLazyPastMeetings()</code>
+     *
+     * @return true if past meetings are to be read on demand, see {@link PastMeetingSegment PastMeetingSegment}
+     */
+    public boolean isLazyPastMeetings() {
+        return lazyPastMeetings;
+    }
+
+    /**
+     * <code>setLazyPastMeetings()</code>
+     * <p>
+     *     When set, the contact manager saves past meetings to a separate segment file, contacts.past, and on start up
+     *     reads only the segment's index. Each past meeting is read from file when first requested, and held in a
+     *     bounded cache, see {@link #setPastMeetingCacheSize(int) setPastMeetingCacheSize}. Contacts, future meetings
+     *     and recurring meetings are still read in full.
+     * </p>
+     *
+     * @param lazyPastMeetings true to read past meetings on demand
+     * @return this options object
+     */
+    public ContactManagerOptions setLazyPastMeetings(boolean lazyPastMeetings) {
+        this.lazyPastMeetings = lazyPastMeetings;
+        return this;
+    }
+
+    /**
+     * <code>getPastMeetingCacheSize()</code>
+     *
+     * @return largest number of past meetings read on demand to hold in memory
+     */
+    public int getPastMeetingCacheSize() {
+        return pastMeetingCacheSize;
+    }
+
+    /**
+     * <code>setPastMeetingCacheSize()</code>
+     *
+     * @param pastMeetingCacheSize largest number of past meetings read on demand to hold in memory
+     * @return this options object
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public ContactManagerOptions setPastMeetingCacheSize(int pastMeetingCacheSize) {
+        if (pastMeetingCacheSize < 1)
+            throw new IllegalArgumentException();
+        this.pastMeetingCacheSize = pastMeetingCacheSize;
+        return this;
+    }
+
+    /**
+     * <code>getArchiveAfterDays()</code>
+     *
+     * @return age in days at which past meetings are archived, or 0 if they are never archived
+     */
+    public int getArchiveAfterDays() {
+        return archiveAfterDays;
+    }
+
+    /**
+     * <code>setArchiveAfterDays()</code>
+     * <p>
+     *     When set, on start up the contact manager moves past meetings older than the given number of days to a
+     *     compressed archive segment file, contacts.archive, see
+     *     {@link ContactManagerImpl#archivePastMeetings(Calendar) archivePastMeetings}. Archived meetings are no
+     *     longer held in memory or written by a flush, but are still read on demand.
+     * </p>
+     *
+     * @param archiveAfterDays age in days at which past meetings are archived, or 0 to never archive them
+     * @return this options object
+     * @throws IllegalArgumentException if the age is negative
+     */
+    public ContactManagerOptions setArchiveAfterDays(int archiveAfterDays) {
+        if (archiveAfterDays < 0)
+            throw new IllegalArgumentException();
+        this.archiveAfterDays = archiveAfterDays;
+        return this;
+    }
+
+    /**
+     * <code>getQueryCacheSize()</code>
+     *
+     * @return largest number of query results to cache, or 0 if results are not cached
+     */
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * <code>setQueryCacheSize()</code>
+     * <p>
+     *     When set, the contact manager caches the results of the meeting lists of a contact and the searches for
+     *     contacts by name, see {@link QueryCache QueryCache}. Results are invalidated only for the contacts whose
+     *     meetings change.
+     * </p>
+     *
+     * @param queryCacheSize largest number of query results to cache, or 0 to not cache results
+     * @return this options object
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public ContactManagerOptions setQueryCacheSize(int queryCacheSize) {
+        if (queryCacheSize < 0)
+            throw new IllegalArgumentException();
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    /**
+     * <code>getMetrics()</code>
+     *
+     * @return metrics to record loads and saves in, or null if they are not recorded
+     */
+    public ContactManagerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * <code>setMetrics()</code>
+     * <p>
+     *     When set, the contact manager records the time taken to load its files on start up, and to save them on
+     *     each flush, with the number of records read and the bytes and records written. See
+     *     {@link InstrumentedContactManager InstrumentedContactManager} for the calls of each method.
+     * </p>
+     *
+     * @param metrics metrics to record loads and saves in, or null to not record them
+     * @return this options object
+     */
+    public ContactManagerOptions setMetrics(ContactManagerMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * <code>getSlowOperationLogSize()</code>
+     *
+     * @return largest number of slow calls to log, or 0 if slow calls are not logged
+     */
+    public int getSlowOperationLogSize() {
+        return slowOperationLogSize;
+    }
+
+    /**
+     * <code>setSlowOperationLogSize()</code>
+     * <p>
+     *     When set, the contact manager logs the most recent calls that took longer than the slow operation
+     *     threshold, see {@link #setSlowOperationThresholdMicros(long) setSlowOperationThresholdMicros} and
+     *     {@link SlowOperationLog SlowOperationLog}.
+     * </p>
+     *
+     * @param slowOperationLogSize largest number of slow calls to log, or 0 to not log slow calls
+     * @return this options object
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public ContactManagerOptions setSlowOperationLogSize(int slowOperationLogSize) {
+        if (slowOperationLogSize < 0)
+            throw new IllegalArgumentException();
+        this.slowOperationLogSize = slowOperationLogSize;
+        return this;
+    }
+
+    /**
+     * <code>getSlowOperationThresholdMicros()</code>
+     *
+     * @return duration in microseconds at or over which a call is logged as slow
+     */
+    public long getSlowOperationThresholdMicros() {
+        return slowOperationThresholdMicros;
+    }
+
+    /**
+     * <code>setSlowOperationThresholdMicros()</code>
+     *
+     * @param slowOperationThresholdMicros duration in microseconds at or over which a call is logged as slow, 10
+     *                                     milliseconds by default
+     * @return this options object
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public ContactManagerOptions setSlowOperationThresholdMicros(long slowOperationThresholdMicros) {
+        if (slowOperationThresholdMicros < 0)
+            throw new IllegalArgumentException();
+        this.slowOperationThresholdMicros = slowOperationThresholdMicros;
+        return this;
+    }
+
+    /**
+     * <code>getDirectory()</code>
+     *
+     * @return directory holding the files of the contact manager, or null for the working directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * <code>setDirectory()</code>
+     * <p>
+     *     When set, the contact manager reads and writes its files, contacts.txt and the others, in the given
+     *     directory rather than the working directory. The directory is created if it does not exist. Contact
+     *     managers in different directories are independent of each other, see {@link TenantRegistry TenantRegistry}.
+     * </p>
+     *
+     * @param directory directory holding the files of the contact manager, or null for the working directory
+     * @return this options object
+     */
+    public ContactManagerOptions setDirectory(File directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * <code>getFlushExecutor()</code>
+     *
+     * @return thread to write files on, or null if the contact manager starts a thread of its own
+     */
+    public ExecutorService getFlushExecutor() {
+        return flushExecutor;
+    }
+
+    /**
+     * <code>setFlushExecutor()</code>
+     * <p>
+     *     When set, the contact manager writes its files on the given executor rather than starting a thread of its
+     *     own, so that many contact managers can share one thread. The executor must run tasks one at a time, in the
+     *     order they were submitted, for example a single thread executor, so that flushes are written in order. The
+     *     executor is not shut down by the contact manager.
+     * </p>
+     *
+     * @param flushExecutor thread to write files on, or null for a thread of its own
+     * @return this options object
+     */
+    public ContactManagerOptions setFlushExecutor(ExecutorService flushExecutor) {
+        this.flushExecutor = flushExecutor;
+        return this;
+    }
+
+    /**
+     * <code>getStringPool()</code>
+     *
+     * @return pool of names and notes, or null if the contact manager keeps a pool of its own
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * <code>setStringPool()</code>
+     * <p>
+     *     The contact manager canonicalizes the names and notes it loads and is given through a
+     *     {@link StringPool StringPool}, so that equal strings share one instance. When set, the given pool is used,
+     *     so that contact managers sharing it also share their strings. Otherwise the contact manager keeps a pool
+     *     of its own.
+     * </p>
+     *
+     * @param stringPool pool of names and notes, or null for a pool of its own
+     * @return this options object
+     */
+    public ContactManagerOptions setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+        return this;
+    }
+
+    /**
+     * <code>getChangeEventBufferSize()</code>
+     *
+     * @return number of change events buffered for each subscriber, or 0 if change events are not published
+     */
+    public int getChangeEventBufferSize() {
+        return changeEventBufferSize;
+    }
+
+    /**
+     * <code>setChangeEventBufferSize()</code>
+     * <p>
+     *     When more than zero, the contact manager publishes the changes made to it, see
+     *     {@link ContactManagerImpl#getChangeEvents() getChangeEvents}, buffering up to the given number of events
+     *     for each subscriber. The buffer size is rounded up to a power of two.
+     * </p>
+     *
+     * @param changeEventBufferSize number of change events buffered per subscriber, 0 for no events
+     * @return this options object
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public ContactManagerOptions setChangeEventBufferSize(int changeEventBufferSize) {
+        if (changeEventBufferSize < 0)
+            throw new IllegalArgumentException();
+        this.changeEventBufferSize = changeEventBufferSize;
+        return this;
+    }
+
+}
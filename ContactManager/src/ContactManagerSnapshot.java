@@ -0,0 +1,586 @@
+import java.util.*;
+
+/**
+ * Contact manager snapshot
+ *
+ * A read-only view of a contact manager pinned at a version, see {@link ContactManager#snapshot() snapshot}. All
+ * queries made on the view see the same state, whatever is written to the contact manager, or whatever meetings pass,
+ * in between. A meeting is past or future as it was when the view was taken, and the future occurrences of recurring
+ * meetings are those that were future then.
+ *
+ * The view reads a {@link StoreSnapshot StoreSnapshot} and takes no locks, so readers of the view never block
+ * writers to the contact manager. Methods that would change the contact manager throw an
+ * <code>UnsupportedOperationException</code>, as does adding notes to a contact returned by the view, see
+ * {@link ContactImpl#readOnly(int, String, String) ContactImpl.readOnly}.
+ *
+ * A contact manager builds its views from lists frozen in constant time, see {@link VersionedList VersionedList}, and
+ * shares its indexes of contacts and meetings by id with each view, see {@link VersionedList#index(List, Map) index}.
+ * Otherwise the indexes are built when the view is, from the lists of the snapshot. A view holds the only reference to
+ * its version of the state, which is reclaimed once no view references it.
+ */
+public class ContactManagerSnapshot implements ContactManager {
+
+    /* V A R I A B L E S */
+
+    private final long version;                             // version of the contact manager viewed
+    private final long validUntil;                          // time until which no meeting of the view passes
+    private final StoreSnapshot snapshot;                   // state at that version
+    private final Map<Integer, Contact> contactIndex;       // contacts by id
+    private final Map<Integer, Meeting> meetingIndex;       // meetings by id
+
+    /* I N N E R   C L A S S E S */
+
+    // the next past meeting of a source of past meetings in order of date
+    private static class Source {
+        final int number;                                   // position of the source, for meetings of equal date
+        final Iterator<PastMeeting> meetings;               // remaining meetings
+        PastMeeting next;                                   // next meeting
+
+        Source(int number, Iterator<PastMeeting> meetings) {
+            this.number = number;
+            this.meetings = meetings;
+            this.next = meetings.next();
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>ContactManagerSnapshot()</code> constructor
+     * <p>
+     *     Indexes the contacts and meetings of the snapshot by id.
+     * </p>
+     *
+     * @param version version of the contact manager viewed
+     * @param snapshot state at that version
+     */
+    public ContactManagerSnapshot(long version, StoreSnapshot snapshot) {
+
+        this.version = version;
+        this.snapshot = snapshot;
+        validUntil = Long.MAX_VALUE;
+
+        // index contacts and meetings by id
+        contactIndex = new HashMap<Integer, Contact>();
+        for (Contact c : snapshot.getContacts())
+            contactIndex.put(c.getId(), c);
+        meetingIndex = new HashMap<Integer, Meeting>();
+        for (Meeting m : snapshot.getMeetings())
+            meetingIndex.put(m.getId(), m);
+
+    }
+
+    /**
+     * <code>ContactManagerSnapshot()</code> constructor with indexes
+     * <p>
+     *     Views the snapshot through the given indexes, which are not copied.
+     * </p>
+     *
+     * @param version version of the contact manager viewed
+     * @param validUntil time in epoch milliseconds until which no future meeting of the view passes
+     * @param snapshot state at that version
+     * @param contactIndex contacts of the snapshot by id
+     * @param meetingIndex meetings of the snapshot's list of meetings by id
+     */
+    public ContactManagerSnapshot(long version, long validUntil, StoreSnapshot snapshot,
+                                  Map<Integer, Contact> contactIndex, Map<Integer, Meeting> meetingIndex) {
+
+        this.version = version;
+        this.validUntil = validUntil;
+        this.snapshot = snapshot;
+        this.contactIndex = contactIndex;
+        this.meetingIndex = meetingIndex;
+
+    }
+
+    /* G E T T E R S */
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getValidUntil() {
+        return validUntil;
+    }
+
+    public StoreSnapshot getStoreSnapshot() {
+        return snapshot;
+    }
+
+    /* I N T E R F A C E   M E T H O D S */
+
+    /**
+     * <code>addFutureMeeting</code>
+     * <p>
+     *     Not supported by a read-only view.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <code>getPastMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public PastMeeting getPastMeeting(int id) {
+
+        Meeting m = getMeeting(id);
+        if (m instanceof FutureMeeting)
+            throw new IllegalArgumentException();
+        return (PastMeeting) m;
+
+    }
+
+    /**
+     * <code>getFutureMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public FutureMeeting getFutureMeeting(int id) {
+
+        Meeting m = getMeeting(id);
+        if (m instanceof PastMeeting)
+            throw new IllegalArgumentException();
+        return (FutureMeeting) m;
+
+    }
+
+    /**
+     * <code>getMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public Meeting getMeeting(int id) {
+
+        Meeting ret = meetingIndex.get(id);
+
+        // if not found, check for a past meeting read on demand or archived
+        for (PastMeetingSegment segment : snapshot.getPastSegments()) {
+            if (ret == null)
+                ret = segment.get(id, contactIndex);
+        }
+
+        // if not found, check for a future occurrence of a recurring meeting
+        if (ret == null) {
+            for (RecurringMeeting r : snapshot.getRecurringMeetings()) {
+                int i = r.indexOf(id);
+                if (i >= r.getMaterialized())
+                    ret = r.getOccurrence(i);
+            }
+        }
+
+        return ret;
+
+    }
+
+    /**
+     * <code>getFutureMeetingList(Contact)</code> by contact
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Meeting> getFutureMeetingList(Contact contact) {
+
+        // if the contact is unknown to the view, throw an exception
+        if (contact == null || !contactIndex.containsKey(contact.getId()))
+            throw new IllegalArgumentException();
+
+        List<Meeting> held = new ArrayList<Meeting>();
+
+        // future meetings with the contact
+        for (Meeting m : snapshot.getMeetings()) {
+            if (m instanceof FutureMeeting && hasContact(m.getContacts(), contact.getId()))
+                held.add(m);
+        }
+        sortByDate(held);
+
+        // future occurrences of each recurring meeting with the contact, merged as the list is read
+        List<RecurringMeeting> series = new ArrayList<RecurringMeeting>();
+        for (RecurringMeeting r : snapshot.getRecurringMeetings()) {
+            if (hasContact(r.getContacts(), contact.getId()))
+                series.add(r);
+        }
+
+        return new LazyMeetingList(held, series);
+
+    }
+
+    /**
+     * <code>getFutureMeetingList(Calendar)</code> by date
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Meeting> getFutureMeetingList(Calendar date) {
+
+        List<Meeting> ret = new ArrayList<Meeting>();
+
+        // meetings on the date
+        for (Meeting m : snapshot.getMeetings()) {
+            if (m.getDate().compareTo(date) == 0)
+                ret.add(m);
+        }
+
+        // past meetings read on demand or archived on the date
+        for (PastMeetingSegment segment : snapshot.getPastSegments()) {
+            for (int id : segment.getIdsOnDate(date.getTimeInMillis()))
+                ret.add(segment.get(id, contactIndex));
+        }
+
+        // future occurrence of each recurring meeting on the date
+        for (RecurringMeeting r : snapshot.getRecurringMeetings()) {
+            int i = r.firstFrom(date.getTimeInMillis());
+            if (i < r.getCount() && r.getOccurrenceDate(i).compareTo(date) == 0)
+                ret.add(r.getOccurrence(i));
+        }
+
+        sortByDate(ret);
+        return ret;
+
+    }
+
+    /**
+     * <code>getPastMeetingList(Contact)</code> by contact
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PastMeeting> getPastMeetingList(Contact contact) {
+
+        List<PastMeeting> ret = new ArrayList<PastMeeting>();
+        for (Iterator<PastMeeting> it = iteratePastMeetings(contact); it.hasNext(); )
+            ret.add(it.next());
+        return ret;
+
+    }
+
+    /**
+     * <code>addNewPastMeeting()</code>
+     * <p>
+     *     Not supported by a read-only view.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <code>addMeetingNotes()</code>
+     * <p>
+     *     Not supported by a read-only view.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addMeetingNotes(int id, String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <code>addNewContact()</code>
+     * <p>
+     *     Not supported by a read-only view.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void addNewContact(String name, String notes) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <code>getContacts()</code> by id(s)
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Contact> getContacts(int... ids) {
+
+        Set<Contact> ret = new HashSet<Contact>();
+        for (int id : ids) {
+            Contact c = contactIndex.get(id);
+            if (c == null)
+                throw new IllegalArgumentException();
+            ret.add(c);
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>getContacts()</code> by name
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Contact> getContacts(String name) {
+
+        Set<Contact> ret = new HashSet<Contact>();
+        for (Iterator<Contact> it = iterateContacts(name); it.hasNext(); )
+            ret.add(it.next());
+        return ret;
+
+    }
+
+    /**
+     * <code>flush()</code>
+     * <p>
+     *     Not supported by a read-only view.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void flush() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <code>snapshot()</code>
+     * <p>
+     *     A view is already pinned, so is its own snapshot.
+     * </p>
+     *
+     * @return this view
+     */
+    @Override
+    public ContactManager snapshot() {
+        return this;
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>getMeetingList()</code> by date range
+     * <p>
+     *     Returns the meetings of the view, past and future, dated within the given range, as
+     *     {@link #getFutureMeetingList(Calendar) getFutureMeetingList} does for a single date. Past meetings read on
+     *     demand or archived are found from the date index of their segment, see
+     *     {@link PastMeetingSegment#getIdsWithin(long, long) getIdsWithin}, and the occurrences of each recurring
+     *     meeting by binary search.
+     * </p>
+     *
+     * @param from start of the range, included
+     * @param to end of the range, excluded
+     * @return list of meetings within the range, in chronological order, or an empty list
+     * @throws IllegalArgumentException if the range ends before it starts
+     * @throws NullPointerException if either date is null
+     */
+    public List<Meeting> getMeetingList(Calendar from, Calendar to) {
+
+        if (from == null || to == null)
+            throw new NullPointerException();
+        if (to.compareTo(from) < 0)
+            throw new IllegalArgumentException();
+
+        List<Meeting> ret = new ArrayList<Meeting>();
+
+        // meetings within the range
+        for (Meeting m : snapshot.getMeetings()) {
+            if (m.getDate().compareTo(from) >= 0 && m.getDate().compareTo(to) < 0)
+                ret.add(m);
+        }
+
+        // past meetings read on demand or archived within the range
+        for (PastMeetingSegment segment : snapshot.getPastSegments()) {
+            for (int id : segment.getIdsWithin(from.getTimeInMillis(), to.getTimeInMillis()))
+                ret.add(segment.get(id, contactIndex));
+        }
+
+        // future occurrences of each recurring meeting within the range
+        for (RecurringMeeting r : snapshot.getRecurringMeetings()) {
+            for (int i = r.firstFrom(from.getTimeInMillis());
+                 i < r.getCount() && r.getOccurrenceDate(i).compareTo(to) < 0; i++)
+                ret.add(r.getOccurrence(i));
+        }
+
+        sortByDate(ret);
+        return ret;
+
+    }
+
+    /**
+     * <code>iterateContacts()</code>
+     * <p>
+     *     As {@link #getContacts(String) getContacts} by name, but iterates over the contacts whose names contain
+     *     the given string as they are found, without collecting them first.
+     * </p>
+     *
+     * @param name the string to search for
+     * @return iterator over the contacts whose names contain the string
+     * @throws NullPointerException if the name is null
+     */
+    public Iterator<Contact> iterateContacts(final String name) {
+
+        if (name == null)
+            throw new NullPointerException();
+
+        final Iterator<Contact> contacts = snapshot.getContacts().iterator();
+        return new Iterator<Contact>() {
+
+            private Contact next = find();          // next contact whose name matches, or null if none
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Contact next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                Contact ret = next;
+                next = find();
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private Contact find() {
+                while (contacts.hasNext()) {
+                    Contact c = contacts.next();
+                    if (c.getName().contains(name))
+                        return c;
+                }
+                return null;
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>iteratePastMeetings()</code>
+     * <p>
+     *     As {@link #getPastMeetingList(Contact) getPastMeetingList}, but iterates over the past meetings with the
+     *     contact in chronological order as they are read. The past meetings held in the list of meetings are sorted
+     *     up front, and merged with a priority queue with those of each segment, which are indexed in order of date,
+     *     so a segment meeting is only read once it is reached.
+     * </p>
+     *
+     * @param contact one of the view's contacts
+     * @return iterator over the past meetings with the contact, in chronological order
+     * @throws IllegalArgumentException if the contact does not exist
+     */
+    public Iterator<PastMeeting> iteratePastMeetings(final Contact contact) {
+
+        // if the contact is unknown to the view, throw an exception
+        if (contact == null || !contactIndex.containsKey(contact.getId()))
+            throw new IllegalArgumentException();
+
+        // past meetings with the contact
+        List<PastMeeting> held = new ArrayList<PastMeeting>();
+        for (Meeting m : snapshot.getMeetings()) {
+            if (m instanceof PastMeeting && hasContact(m.getContacts(), contact.getId()))
+                held.add((PastMeeting) m);
+        }
+        sortByDate(held);
+
+        // sources in order, the held meetings then past meetings read on demand or archived with the contact
+        List<Iterator<PastMeeting>> sources = new ArrayList<Iterator<PastMeeting>>();
+        sources.add(held.iterator());
+        for (final PastMeetingSegment segment : snapshot.getPastSegments()) {
+            final Iterator<Integer> ids = segment.getIdsWithContact(contact.getId()).iterator();
+            sources.add(new Iterator<PastMeeting>() {
+                @Override
+                public boolean hasNext() {
+                    return ids.hasNext();
+                }
+
+                @Override
+                public PastMeeting next() {
+                    return segment.get(ids.next(), contactIndex);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+
+        // merged by date, meetings of equal date in the order of their sources
+        final PriorityQueue<Source> merge = new PriorityQueue<Source>(sources.size(), new Comparator<Source>() {
+            @Override
+            public int compare(Source o1, Source o2) {
+                int ret = o1.next.getDate().compareTo(o2.next.getDate());
+                return ret != 0 ? ret : Integer.compare(o1.number, o2.number);
+            }
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).hasNext())
+                merge.add(new Source(i, sources.get(i)));
+        }
+
+        return new Iterator<PastMeeting>() {
+
+            @Override
+            public boolean hasNext() {
+                return !merge.isEmpty();
+            }
+
+            @Override
+            public PastMeeting next() {
+                if (merge.isEmpty())
+                    throw new NoSuchElementException();
+                Source source = merge.poll();
+                PastMeeting ret = source.next;
+                if (source.meetings.hasNext()) {
+                    source.next = source.meetings.next();
+                    merge.add(source);
+                }
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>hasContact()</code>
+     *
+     * @return true if the given meeting contacts include the contact with the given id
+     */
+    private static boolean hasContact(Set<Contact> meetingContacts, int contactId) {
+
+        for (Contact c : meetingContacts) {
+            if (c.getId() == contactId)
+                return true;
+        }
+        return false;
+
+    }
+
+    /**
+     * <code>sortByDate()</code>
+     * <p>
+     *     Rearranges the given list of meetings into chronological order
+     * </p>
+     */
+    private static void sortByDate(List<? extends Meeting> toSort) {
+
+        Collections.sort(toSort, new Comparator<Meeting>() {
+            @Override
+            public int compare(Meeting o1, Meeting o2) {
+                return o1.getDate().compareTo(o2.getDate());
+            }
+        });
+
+    }
+
+}
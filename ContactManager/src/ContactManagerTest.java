@@ -4,15 +4,25 @@ import org.hamcrest.beans.SamePropertyValuesAs;
 import org.hamcrest.collection.IsCollectionWithSize;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.w3c.dom.Document;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 // Utility libraries and methods
+import java.io.File;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <h1>ContactManager Test Module</h1>
@@ -47,6 +57,33 @@ import java.util.*;
  * <li>24. <code>getContacts()</code> by name test: {@link #testGetContactsByName() testGetContacts by name}</li>
  * <li>25. <code>getContacts()</code> by name <code>NullPointerException</code> test: {@link #testGetContactsByNameThrowsNullPointerException() testGetContacts by name NullPointerException}</li>
  * <li>26. <code>flush()</code> main test: {@link #testFlush() testFlush main}</li>
+ * <li>27. <code>getCoAttendees()</code> and <code>getSharedMeetings()</code> test: {@link #testCoAttendance() testCoAttendance}</li>
+ * <li>28. <code>findConflicts()</code> and <code>addFutureMeeting()</code> with duration test: {@link #testFindConflicts() testFindConflicts}</li>
+ * <li>29. <code>findFreeSlot()</code> test: {@link #testFindFreeSlot() testFindFreeSlot}</li>
+ * <li>30. <code>addRecurringMeeting()</code> test: {@link #testAddRecurringMeeting() testAddRecurringMeeting}</li>
+ * <li>31. <code>flushAsync()</code> test: {@link #testFlushAsync() testFlushAsync}</li>
+ * <li>32. <code>snapshot()</code> test: {@link #testSnapshot() testSnapshot}</li>
+ * <li>33. sharded storage test: {@link #testShards() testShards}</li>
+ * <li>34. past meetings read on demand test: {@link #testLazyPastMeetings() testLazyPastMeetings}</li>
+ * <li>35. <code>archivePastMeetings()</code> test: {@link #testArchivePastMeetings() testArchivePastMeetings}</li>
+ * <li>36. query cache test: {@link #testQueryCache() testQueryCache}</li>
+ * <li>37. load and save metrics test: {@link #testMetrics() testMetrics}</li>
+ * <li>38. slow operation log test: {@link #testSlowOperations() testSlowOperations}</li>
+ * <li>39. string deduplication on load test: {@link #testStringDeduplication() testStringDeduplication}</li>
+ * <li>40. compressed files test: {@link #testCompressFiles() testCompressFiles}</li>
+ * <li>41. delta saves test: {@link #testDeltaSaves() testDeltaSaves}</li>
+ * <li>42. change events test: {@link #testChangeEvents() testChangeEvents}</li>
+ * <li>43. batch queries test: {@link #testBatchQueries() testBatchQueries}</li>
+ * <li>44. date range queries test: {@link #testDateRangeQueries() testDateRangeQueries}</li>
+ * <li>45. upcoming and recent meetings test: {@link #testUpcomingAndRecentMeetings() testUpcomingAndRecentMeetings}
+ * </li>
+ * <li>46. snapshot versions test: {@link #testSnapshotVersions() testSnapshotVersions}</li>
+ * <li>47. lazy past meeting queries test: {@link #testLazyPastMeetingQueries() testLazyPastMeetingQueries}</li>
+ * <li>48. read-only view contacts test: {@link #testSnapshotContactsReadOnly() testSnapshotContactsReadOnly}</li>
+ * <li>49. off-heap queries test: {@link #testOffHeapQueries() testOffHeapQueries}</li>
+ * <li>50. recurring meeting statistics test: {@link #testRecurringMeetingStatistics() testRecurringMeetingStatistics}</li>
+ * <li>51. archiving with views test: {@link #testArchiveWithViews() testArchiveWithViews}</li>
+ * <li>52. interrupted shard saves test: {@link #testInterruptedShardSaves() testInterruptedShardSaves}</li>
  * </ul></p>
  *
  * All tests passed in single run.
@@ -914,6 +951,1325 @@ public class ContactManagerTest {
 
     }
 
+    /**
+     * 27. <code>testCoAttendance()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManagerImpl#getCoAttendees getCoAttendees} and
+     *     {@link ContactManagerImpl#getSharedMeetings getSharedMeetings} methods. Two unique contacts share two
+     *     meetings, one past and one future, and one of them also meets a third unique contact.
+     * </p>
+     */
+    @Test
+    public void testCoAttendance() {
+
+        ContactManagerImpl cm = (ContactManagerImpl) contactManager;
+
+        // setup three unique contacts
+        String uniqueNotes = sdf.format(new Date()).toString();
+        Contact a = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes + "a")).toArray()[0];
+        Contact b = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes + "b")).toArray()[0];
+        Contact c = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes + "c")).toArray()[0];
+
+        // a and b share a past and a future meeting, a and c share a future meeting
+        Set<Contact> ab = new HashSet<Contact>();
+        ab.add(a);
+        ab.add(b);
+        Set<Contact> ac = new HashSet<Contact>();
+        ac.add(a);
+        ac.add(c);
+        cm.addNewPastMeeting(ab, past, uniqueNotes);
+        int futureId = cm.addFutureMeeting(ab, future);
+        cm.addFutureMeeting(ac, future);
+
+        // check co-attendees of a, weighted by meetings shared
+        Map<Contact, Integer> coAttendees = cm.getCoAttendees(a);
+        assertEquals(2, coAttendees.size());
+        assertEquals(Integer.valueOf(2), coAttendees.get(b));
+        assertEquals(Integer.valueOf(1), coAttendees.get(c));
+
+        // check meetings shared by a and b, in chronological order
+        List<Meeting> shared = cm.getSharedMeetings(a, b);
+        assertEquals(2, shared.size());
+        assertTrue(shared.get(0) instanceof PastMeeting);
+        assertEquals(futureId, shared.get(1).getId());
+
+        // check b and c have shared no meetings
+        assertTrue(cm.getSharedMeetings(b, c).isEmpty());
+
+    }
+
+    /**
+     * 28. <code>testFindConflicts()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManagerImpl#findConflicts findConflicts} method, and
+     *     {@link ContactManagerImpl#addFutureMeeting(Set, Calendar, int, boolean) addFutureMeeting} with a duration.
+     *     A unique contact has a 60 minute meeting. An overlapping meeting should be found as a conflict and rejected
+     *     when conflicts are rejected, while a meeting immediately after should not conflict.
+     * </p>
+     */
+    @Test
+    public void testFindConflicts() {
+
+        ContactManagerImpl cm = (ContactManagerImpl) contactManager;
+
+        // setup unique contact
+        String uniqueNotes = sdf.format(new Date()).toString();
+        Contact c = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes)).toArray()[0];
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+
+        // add 60 minute meeting
+        int meetingId = cm.addFutureMeeting(cs, future, 60, true);
+        assertEquals(60, cm.getMeeting(meetingId).getDuration());
+
+        // 30 minutes in, the meeting conflicts
+        Calendar halfway = (Calendar) future.clone();
+        halfway.add(Calendar.MINUTE, 30);
+        Calendar later = (Calendar) future.clone();
+        later.add(Calendar.MINUTE, 90);
+        List<Meeting> conflicts = cm.findConflicts(cs, halfway, later);
+        assertEquals(1, conflicts.size());
+        assertEquals(meetingId, conflicts.get(0).getId());
+
+        // 60 minutes in, the meeting has ended
+        Calendar end = (Calendar) future.clone();
+        end.add(Calendar.MINUTE, 60);
+        assertTrue(cm.findConflicts(cs, end, later).isEmpty());
+        cm.addFutureMeeting(cs, end, 30, true);
+
+        // an overlapping meeting is rejected
+        thrown.expect(SchedulingConflictException.class);
+        cm.addFutureMeeting(cs, halfway, 60, true);
+
+    }
+
+    /**
+     * 29. <code>testFindFreeSlot()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManagerImpl#findFreeSlot findFreeSlot} method. Two
+     *     unique contacts have back to back and overlapping meetings, leaving a gap of 30 minutes and then free time.
+     *     A 30 minute slot should be found in the gap, and a 60 minute slot after the last meeting.
+     * </p>
+     */
+    @Test
+    public void testFindFreeSlot() {
+
+        ContactManagerImpl cm = (ContactManagerImpl) contactManager;
+
+        // setup two unique contacts
+        String uniqueNotes = sdf.format(new Date()).toString();
+        Contact a = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes + "a")).toArray()[0];
+        Contact b = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes + "b")).toArray()[0];
+        Set<Contact> as = new HashSet<Contact>();
+        as.add(a);
+        Set<Contact> bs = new HashSet<Contact>();
+        bs.add(b);
+        Set<Contact> ab = new HashSet<Contact>(as);
+        ab.add(b);
+
+        // a is busy for the first 60 minutes, b from 30 to 90 minutes, and both from 120 to 180 minutes
+        cm.addFutureMeeting(as, minutesAfterFuture(0), 60, false);
+        cm.addFutureMeeting(bs, minutesAfterFuture(30), 60, false);
+        cm.addFutureMeeting(ab, minutesAfterFuture(120), 60, false);
+
+        // 30 minutes are free from 90 minutes
+        Calendar slot = cm.findFreeSlot(ab, 30, future, minutesAfterFuture(600));
+        assertEquals(minutesAfterFuture(90).getTimeInMillis(), slot.getTimeInMillis());
+
+        // 60 minutes are free from 180 minutes
+        slot = cm.findFreeSlot(ab, 60, future, minutesAfterFuture(600));
+        assertEquals(minutesAfterFuture(180).getTimeInMillis(), slot.getTimeInMillis());
+
+        // no slot of 60 minutes before 200 minutes
+        assertTrue(cm.findFreeSlot(ab, 60, future, minutesAfterFuture(200)) == null);
+
+    }
+
+    /**
+     * 30. <code>testAddRecurringMeeting()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManagerImpl#addRecurringMeeting addRecurringMeeting}
+     *     method. A daily series of five meetings with a unique contact, starting in two seconds, should be returned as
+     *     five future meetings. Once the first occurrence has passed, it should be a past meeting that can take notes,
+     *     and four future meetings should remain.
+     * </p>
+     */
+    @Test
+    public void testAddRecurringMeeting() {
+
+        ContactManagerImpl cm = (ContactManagerImpl) contactManager;
+
+        // setup unique contact
+        String uniqueNotes = sdf.format(new Date()).toString();
+        Contact c = (Contact) cm.getContacts(generateUniqueContactForMeetings(uniqueNotes)).toArray()[0];
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+
+        // add daily series starting in two seconds
+        Calendar soon = Calendar.getInstance();
+        soon.add(Calendar.SECOND, +2);
+        int firstId = cm.addRecurringMeeting(cs, soon, 30, RecurringMeeting.Frequency.DAILY, 5);
+
+        // check all occurrences are future meetings, in order
+        List<Meeting> fms = cm.getFutureMeetingList(c);
+        assertEquals(5, fms.size());
+        assertEquals(firstId + 4, fms.get(4).getId());
+        assertTrue(checkChronologyOfList(fms));
+        assertEquals(firstId + 1, cm.getFutureMeeting(firstId + 1).getId());
+
+        // wait until the first occurrence has passed
+        Calendar now = Calendar.getInstance();
+        while (now.compareTo(soon) <= 0)
+            now = Calendar.getInstance();
+
+        // check the first occurrence is now a past meeting that can take notes
+        cm.addMeetingNotes(firstId, uniqueNotes);
+        assertEquals(uniqueNotes, cm.getPastMeeting(firstId).getNotes());
+        assertEquals(1, cm.getPastMeetingList(c).size());
+        assertEquals(4, cm.getFutureMeetingList(c).size());
+
+    }
+
+    /**
+     * 31. <code>testFlushAsync()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManagerImpl#flushAsync() flushAsync} method. A unique
+     *     contact added before the flush should be saved, while one added after the flush is started should not change
+     *     the snapshot being written. Once the future completes, a new contact manager should read the saved data.
+     * </p>
+     */
+    @Test
+    public void testFlushAsync() {
+
+        ContactManagerImpl cm = (ContactManagerImpl) contactManager;
+
+        // add unique contact and meeting before flush
+        String uniqueNotes = sdf.format(new Date()).toString();
+        int contactId = generateUniqueContactForMeetings(uniqueNotes);
+        int meetingId = cm.addFutureMeeting(cm.getContacts(contactId), future);
+
+        // start flush, and keep using the contact manager while it is written
+        CompletableFuture<Void> saved = cm.flushAsync();
+        int laterId = generateUniqueContactForMeetings(uniqueNotes + "later");
+        saved.join();
+
+        // check saved data is read by a new contact manager
+        ContactManager newContactManager = new ContactManagerImpl();
+        assertEquals(1, newContactManager.getContacts(contactId).size());
+        assertEquals(meetingId, newContactManager.getFutureMeeting(meetingId).getId());
+
+        // check contact added after the flush started was not saved
+        try {
+            newContactManager.getContacts(laterId);
+            fail("contact added after snapshot should not be saved");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // save again so later tests see the later contact
+        cm.flush();
+
+    }
+
+    /**
+     * 32. <code>testSnapshot()</code> test
+     * <p>
+     *     This method tests the contact manager's {@link ContactManager#snapshot() snapshot} method. A view taken
+     *     before a meeting is added and before a meeting passes should not see either change, while a new view should.
+     *     A view taken when nothing has changed should be the same view.
+     * </p>
+     */
+    @Test
+    public void testSnapshot() {
+
+        // setup unique contact with a meeting starting in two seconds
+        String uniqueNotes = sdf.format(new Date()).toString();
+        Contact c = (Contact) contactManager.getContacts(generateUniqueContactForMeetings(uniqueNotes)).toArray()[0];
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+        Calendar soon = Calendar.getInstance();
+        soon.add(Calendar.SECOND, +2);
+        int soonId = contactManager.addFutureMeeting(cs, soon);
+
+        // take a view, and check an unchanged contact manager returns the same view
+        ContactManager view = contactManager.snapshot();
+        assertTrue(view == contactManager.snapshot());
+
+        // add a meeting and wait until the first meeting has passed
+        int laterId = contactManager.addFutureMeeting(cs, future);
+        Calendar now = Calendar.getInstance();
+        while (now.compareTo(soon) <= 0)
+            now = Calendar.getInstance();
+
+        // check the view sees neither change
+        assertEquals(1, view.getFutureMeetingList(c).size());
+        assertEquals(soonId, view.getFutureMeeting(soonId).getId());
+        assertTrue(view.getMeeting(laterId) == null);
+        assertTrue(view.getPastMeetingList(c).isEmpty());
+
+        // check a new view sees both changes
+        ContactManager newView = contactManager.snapshot();
+        assertEquals(soonId, newView.getPastMeeting(soonId).getId());
+        assertEquals(laterId, newView.getFutureMeetingList(c).get(0).getId());
+
+        // check the view is read-only
+        try {
+            view.addNewContact("Name", "Notes");
+            fail("view should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+    }
+
+    /**
+     * 33. <code>testShards()</code> test
+     * <p>
+     *     This method tests sharded storage, see {@link ContactManagerOptions#setShards(int) setShards}. A meeting
+     *     between two unique contacts, held in different shards, is flushed to four shard files and read back. Saving
+     *     with a single file again should remove the shard files.
+     * </p>
+     */
+    @Test
+    public void testShards() {
+
+        ContactManagerOptions options = new ContactManagerOptions().setShards(4);
+        ContactManager sharded = new ContactManagerImpl(options);
+
+        // add two unique contacts with consecutive ids, and a meeting between them
+        String uniqueNotes = sdf.format(new Date()).toString();
+        sharded.addNewContact("SHARD", uniqueNotes + "a");
+        sharded.addNewContact("SHARD", uniqueNotes + "b");
+        Set<Contact> cs = new HashSet<Contact>();
+        for (Contact c : sharded.getContacts("SHARD")) {
+            if (c.getNotes().startsWith(uniqueNotes))
+                cs.add(c);
+        }
+        assertEquals(2, cs.size());
+        int meetingId = sharded.addFutureMeeting(cs, future);
+
+        // flush to shard files
+        sharded.flush();
+        for (int i = 0; i < 4; i++)
+            assertTrue(new File("contacts-" + i + ".txt").exists());
+
+        // check the meeting and its contacts are read back from the shards
+        ContactManager reloaded = new ContactManagerImpl(options);
+        assertEquals(2, reloaded.getFutureMeeting(meetingId).getContacts().size());
+        assertEquals(uniqueNotes, ((Contact) reloaded.getContacts(meetingId - 1).toArray()[0]).getNotes()
+                .substring(0, uniqueNotes.length()));
+
+        // save to the single file again, removing the shard files
+        new ContactManagerImpl().flush();
+        assertTrue(!new File("contacts-0.txt").exists());
+        assertTrue(new ContactManagerImpl().getFutureMeeting(meetingId) != null);
+
+    }
+
+    /**
+     * 34. <code>testLazyPastMeetings()</code> test
+     * <p>
+     *     This method tests past meetings read on demand, see
+     *     {@link ContactManagerOptions#setLazyPastMeetings(boolean) setLazyPastMeetings}. A past meeting with a unique
+     *     contact is flushed to the past meetings segment, then read back on demand and given notes. Saving without
+     *     the option again should remove the segment.
+     * </p>
+     */
+    @Test
+    public void testLazyPastMeetings() {
+
+        ContactManagerOptions options = new ContactManagerOptions().setLazyPastMeetings(true);
+        ContactManagerImpl lazy = new ContactManagerImpl(options);
+
+        // add past meeting with unique contact, and flush to the segment
+        String uniqueNotes = sdf.format(new Date()).toString();
+        lazy.addNewContact("LAZY", uniqueNotes);
+        Contact c = null;
+        for (Contact found : lazy.getContacts("LAZY")) {
+            if (found.getNotes().equals(uniqueNotes))
+                c = found;
+        }
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+        lazy.addNewPastMeeting(cs, past, uniqueNotes);
+        lazy.flush();
+        assertTrue(new File("contacts.past").exists());
+
+        // check the past meeting is read back on demand
+        ContactManagerImpl reloaded = new ContactManagerImpl(options);
+        Contact reloadedContact = (Contact) reloaded.getContacts(c.getId()).toArray()[0];
+        List<PastMeeting> pms = reloaded.getPastMeetingList(reloadedContact);
+        assertEquals(1, pms.size());
+        assertEquals(uniqueNotes, pms.get(0).getNotes());
+        int meetingId = pms.get(0).getId();
+        assertEquals(Integer.valueOf(1), reloaded.getMeetingStatistics().getCountsByContact().get(c.getId()));
+
+        // add notes to the meeting, and check it is saved again
+        reloaded.addMeetingNotes(meetingId, uniqueNotes + "more");
+        assertEquals(1, reloaded.getPastMeetingList(reloadedContact).size());
+        reloaded.flush();
+        assertEquals(uniqueNotes + "more", new ContactManagerImpl(options).getPastMeeting(meetingId).getNotes());
+
+        // save without the option, reading every past meeting into the xml file and removing the segment
+        new ContactManagerImpl().flush();
+        assertTrue(!new File("contacts.past").exists());
+        assertEquals(uniqueNotes + "more", new ContactManagerImpl().getPastMeeting(meetingId).getNotes());
+
+    }
+
+    /**
+     * 35. <code>testArchivePastMeetings()</code> test
+     * <p>
+     *     This method tests the archiving of old past meetings, see
+     *     {@link ContactManagerImpl#archivePastMeetings(Calendar) archivePastMeetings}. A past meeting with a unique
+     *     contact is archived, then should still be found, before and after being flushed and read back. Adding notes
+     *     to the archived meeting should hold it in the xml file again.
+     * </p>
+     */
+    @Test
+    public void testArchivePastMeetings() throws Exception {
+
+        ContactManagerImpl archiving = new ContactManagerImpl();
+
+        // add past meeting with unique contact
+        String uniqueNotes = sdf.format(new Date()).toString();
+        archiving.addNewContact("ARCHIVE", uniqueNotes);
+        Contact c = null;
+        for (Contact found : archiving.getContacts("ARCHIVE")) {
+            if (found.getNotes().equals(uniqueNotes))
+                c = found;
+        }
+        Set<Contact> cs = new HashSet<Contact>();
+        cs.add(c);
+        archiving.addNewPastMeeting(cs, past, uniqueNotes);
+
+        // archive meetings up to just after the meeting
+        Calendar before = (Calendar) past.clone();
+        before.add(Calendar.MINUTE, 1);
+        assertTrue(archiving.archivePastMeetings(before) >= 1);
+        assertTrue(new File("contacts.archive").exists());
+        List<PastMeeting> pms = archiving.getPastMeetingList(c);
+        assertEquals(1, pms.size());
+        assertEquals(uniqueNotes, pms.get(0).getNotes());
+        int meetingId = pms.get(0).getId();
+
+        // check the archived meeting is read back after a flush
+        archiving.flush();
+        ContactManagerImpl reloaded = new ContactManagerImpl();
+        assertEquals(uniqueNotes, reloaded.getPastMeeting(meetingId).getNotes());
+        Contact reloadedContact = (Contact) reloaded.getContacts(c.getId()).toArray()[0];
+        assertEquals(1, reloaded.getPastMeetingList(reloadedContact).size());
+
+        // add notes to the archived meeting, and check it is saved again
+        reloaded.addMeetingNotes(meetingId, uniqueNotes + "more");
+        reloaded.flush();
+        assertEquals(uniqueNotes + "more", new ContactManagerImpl().getPastMeeting(meetingId).getNotes());
+
+    }
+
+    /**
+     * 36. <code>testQueryCache()</code> test
+     * <p>
+     *     This method tests the query cache, see
+     *     {@link ContactManagerOptions#setQueryCacheSize(int) setQueryCacheSize}. Repeated queries should be answered
+     *     from the cache, and a new meeting, or a new contact with a matching name, should be seen by the next query.
+     * </p>
+     */
+    @Test
+    public void testQueryCache() {
+
+        ContactManagerImpl cached = new ContactManagerImpl(new ContactManagerOptions().setQueryCacheSize(16));
+
+        // add unique contact, and search for it twice
+        String uniqueNotes = sdf.format(new Date()).toString();
+        cached.addNewContact("CACHE " + uniqueNotes, uniqueNotes);
+        assertEquals(1, cached.getContacts("CACHE " + uniqueNotes).size());
+        assertEquals(1, cached.getContacts("CACHE " + uniqueNotes).size());
+        assertEquals(1, cached.getQueryCacheHits());
+
+        // a contact with a matching name invalidates the search
+        cached.addNewContact("CACHE " + uniqueNotes + " 2", uniqueNotes);
+        Set<Contact> cs = cached.getContacts("CACHE " + uniqueNotes);
+        assertEquals(2, cs.size());
+
+        // a new meeting invalidates the meeting lists of its contacts
+        Contact c = (Contact) cs.toArray()[0];
+        assertEquals(0, cached.getFutureMeetingList(c).size());
+        cached.addFutureMeeting(Collections.singleton(c), future);
+        assertEquals(1, cached.getFutureMeetingList(c).size());
+        cached.getFutureMeetingList(c);
+        assertEquals(2, cached.getQueryCacheHits());
+        assertEquals(4, cached.getQueryCacheMisses());
+
+    }
+
+    /**
+     * 37. <code>testMetrics()</code> test
+     * <p>
+     *     This method tests the metrics recorded by an instrumented contact manager, see
+     *     {@link InstrumentedContactManager InstrumentedContactManager}. The load on construction, each call, and the
+     *     save made by a flush should be recorded.
+     * </p>
+     */
+    @Test
+    public void testMetrics() {
+
+        InstrumentedContactManager instrumented = new InstrumentedContactManager(new ContactManagerOptions());
+        instrumented.addNewContact("METRICS", sdf.format(new Date()).toString());
+        instrumented.flush();
+
+        MetricsSnapshot s = instrumented.getMetrics().snapshot();
+        assertEquals(1, s.getOperation("load").getCalls());
+        assertEquals(1, s.getOperation("addNewContact").getCalls());
+        assertEquals(1, s.getOperation("flush").getCalls());
+        assertEquals(1, s.getOperation("save").getCalls());
+        assertTrue(s.getBytesWritten() > 0);
+        assertTrue(s.getRecordsWritten() > 0);
+
+    }
+
+    /**
+     * 38. <code>testSlowOperations()</code> test
+     * <p>
+     *     This method tests the slow operation log, see
+     *     {@link ContactManagerOptions#setSlowOperationLogSize(int) setSlowOperationLogSize}. With a threshold of
+     *     zero every call is logged, with the shape of its arguments and the contacts it scanned. Calls made from
+     *     within a call are logged only as the call that made them.
+     * </p>
+     */
+    @Test
+    public void testSlowOperations() {
+
+        ContactManagerImpl logged = new ContactManagerImpl(new ContactManagerOptions()
+                .setSlowOperationLogSize(2).setSlowOperationThresholdMicros(0));
+
+        String uniqueNotes = sdf.format(new Date()).toString();
+        logged.addNewContact("SLOW", uniqueNotes);
+        logged.getContacts("SLOW");
+        Contact c = (Contact) logged.getContacts("SLOW").toArray()[0];
+        logged.getContacts(c.getId());
+
+        // the two most recent calls are kept
+        List<SlowOperationLog.Entry> entries = logged.getSlowOperations();
+        assertEquals(2, entries.size());
+        assertEquals("getContacts(String)", entries.get(0).getMethod());
+        assertEquals("4 chars", entries.get(0).getShape());
+        assertEquals("getContacts(int...)", entries.get(1).getMethod());
+        assertEquals("1 ids", entries.get(1).getShape());
+        assertEquals(1, entries.get(1).getResultSize());
+        assertTrue(entries.get(1).getContactsScanned() > 0);
+
+        // calls made from within a call are not logged apart from it
+        logged.addFutureMeeting(logged.getContacts(c.getId()), future, 30, true);
+        entries = logged.getSlowOperations();
+        assertEquals("getContacts(int...)", entries.get(0).getMethod());
+        assertEquals("addFutureMeeting", entries.get(1).getMethod());
+        logged.getTopContacts(1);
+        entries = logged.getSlowOperations();
+        assertEquals("addFutureMeeting", entries.get(0).getMethod());
+        assertEquals("getTopContacts", entries.get(1).getMethod());
+
+        // a call failing after a call made from within it leaves later calls logged
+        try {
+            logged.addFutureMeeting(logged.getContacts(c.getId()), future, 30, true);
+            fail("the meeting conflicts with the meeting added");
+        } catch (SchedulingConflictException e) {
+            // expected
+        }
+        logged.findFreeSlot(logged.getContacts(c.getId()), 30, future, future);
+        entries = logged.getSlowOperations();
+        assertEquals("getContacts(int...)", entries.get(0).getMethod());
+        assertEquals("findFreeSlot", entries.get(1).getMethod());
+
+    }
+
+    /**
+     * 39. <code>testStringDeduplication()</code> test
+     * <p>
+     *     This method tests that equal names and notes share one instance, both when given to the contact manager and
+     *     when read back from file, see {@link StringPool StringPool}.
+     * </p>
+     */
+    @Test
+    public void testStringDeduplication() {
+
+        String uniqueNotes = sdf.format(new Date()).toString();
+        String name = "DEDUP " + uniqueNotes;
+        contactManager.addNewContact(new String(name), new String(uniqueNotes));
+        contactManager.addNewContact(new String(name), new String(uniqueNotes));
+        contactManager.addNewContact(new String(name), new String(""));
+        contactManager.flush();
+
+        for (ContactManager cm : Arrays.asList(contactManager, new ContactManagerImpl())) {
+            List<Contact> dedup = new ArrayList<Contact>(cm.getContacts(name));
+            assertEquals(3, dedup.size());
+            Set<String> notes = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+            Set<String> names = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+            for (Contact c : dedup) {
+                notes.add(c.getNotes());
+                names.add(c.getName());
+            }
+            assertEquals(2, notes.size());      // the unique notes and the empty string
+            assertEquals(1, names.size());
+        }
+
+        ContactManagerImpl reloaded = new ContactManagerImpl();
+        assertTrue(reloaded.getLoadDeduplicated() > 0);
+
+    }
+
+    /**
+     * 40. <code>testCompressFiles()</code> test
+     * <p>
+     *     This method tests that files saved compressed, see
+     *     {@link ContactManagerOptions#setCompressFiles(boolean) setCompressFiles}, are smaller and are read back
+     *     both with and without the option set.
+     * </p>
+     */
+    @Test
+    public void testCompressFiles() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        File plainDir = new File(dir, "plain");
+        File gzipDir = new File(dir, "gzip");
+
+        ContactManager plain = new ContactManagerImpl(new ContactManagerOptions().setDirectory(plainDir));
+        ContactManager gzip = new ContactManagerImpl(new ContactManagerOptions().setDirectory(gzipDir)
+                .setCompressFiles(true));
+        for (int i = 0; i < 100; i++) {
+            plain.addNewContact("COMPRESSED", "notes " + i);
+            gzip.addNewContact("COMPRESSED", "notes " + i);
+        }
+        plain.flush();
+        gzip.flush();
+
+        // compressed file is smaller, and read back whatever the option
+        File plainFile = new File(plainDir, "contacts.txt");
+        File gzipFile = new File(gzipDir, "contacts.txt");
+        assertTrue(gzipFile.length() * 3 < plainFile.length());
+        assertEquals(100, new ContactManagerImpl(new ContactManagerOptions().setDirectory(gzipDir))
+                .getContacts("COMPRESSED").size());
+        assertEquals(100, new ContactManagerImpl(new ContactManagerOptions().setDirectory(plainDir)
+                .setCompressFiles(true)).getContacts("COMPRESSED").size());
+
+        for (File d : new File[] {plainDir, gzipDir}) {
+            for (File f : d.listFiles())
+                f.delete();
+            d.delete();
+        }
+        dir.delete();
+
+    }
+
+    /**
+     * 41. <code>testDeltaSaves()</code> test
+     * <p>
+     *     This method tests delta saves, see {@link ContactManagerOptions#setDeltaSaves(int) setDeltaSaves}. Saves
+     *     after the first write only the changes, which are applied over the contacts file when read back, until a
+     *     full save removes the delta files. A delta holds only the contacts and recurring meetings changed since
+     *     the save before.
+     * </p>
+     */
+    @Test
+    public void testDeltaSaves() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerOptions options = new ContactManagerOptions().setDirectory(dir).setDeltaSaves(2);
+
+        // first save is full
+        ContactManager cm = new ContactManagerImpl(options);
+        for (int i = 0; i < 50; i++)
+            cm.addNewContact("DELTA", "notes " + i);
+        cm.flush();
+        File base = new File(dir, "contacts.txt");
+        long baseLength = base.length();
+
+        // next saves write only the changes
+        cm.addNewContact("DELTA SERIES", "new");
+        Set<Contact> series = cm.getContacts("DELTA SERIES");
+        int firstId = ((ContactManagerImpl) cm).addRecurringMeeting(series, future, 30,
+                RecurringMeeting.Frequency.WEEKLY, 3);
+        cm.flush();
+        File delta1 = new File(dir, "contacts.delta.1");
+        assertTrue(delta1.exists());
+        assertTrue(delta1.length() * 5 < baseLength);
+        assertEquals(baseLength, base.length());
+
+        Contact changed = (Contact) cm.getContacts("DELTA").toArray()[0];
+        changed.addNotes(" changed");
+        Set<Contact> attendees = new HashSet<Contact>();
+        attendees.add(changed);
+        cm.addNewPastMeeting(attendees, past, "delta meeting");
+        cm.flush();
+        File delta2 = new File(dir, "contacts.delta.2");
+        assertTrue(delta2.exists());
+
+        // second delta holds only the contact given notes, and no recurring meeting
+        XmlStore store = new XmlStore();
+        Document doc = store.parse(delta2);
+        List<Contact> deltaContacts = store.readContacts(doc);
+        assertEquals(1, deltaContacts.size());
+        assertEquals(changed.getId(), deltaContacts.get(0).getId());
+        assertTrue(store.readRecurringMeetings(doc, new HashMap<Integer, Contact>()).isEmpty());
+
+        // read back as the contacts file with the deltas applied
+        ContactManager reloaded = new ContactManagerImpl(options);
+        assertEquals(51, reloaded.getContacts("DELTA").size());
+        Contact reread = (Contact) reloaded.getContacts(changed.getId()).toArray()[0];
+        assertEquals(changed.getNotes(), reread.getNotes());
+        assertEquals(1, reloaded.getPastMeetingList(reread).size());
+        assertEquals("delta meeting", reloaded.getPastMeetingList(reread).get(0).getNotes());
+        assertEquals(firstId + 2, reloaded.getFutureMeeting(firstId + 2).getId());
+
+        // after two deltas, the next save is full and removes the deltas
+        reloaded.addNewContact("DELTA", "after");
+        reloaded.flush();
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(52, new ContactManagerImpl(options).getContacts("DELTA").size());
+
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+
+    }
+
+    /**
+     * 42. <code>testChangeEvents()</code> test
+     * <p>
+     *     This method tests the publishing of change events, see
+     *     {@link ContactManagerImpl#getChangeEvents() getChangeEvents}. A subscriber requesting every event receives
+     *     each change in order, while events for a subscriber that requests none are dropped once its buffer is full.
+     * </p>
+     */
+    @Test
+    public void testChangeEvents() throws Exception {
+
+        ContactManagerImpl published = new ContactManagerImpl(new ContactManagerOptions()
+                .setChangeEventBufferSize(16));
+
+        // subscriber taking every event
+        final BlockingQueue<ChangeEvent> received = new LinkedBlockingQueue<ChangeEvent>();
+        published.getChangeEvents().subscribe(new Flow.Subscriber<ChangeEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ChangeEvent item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        // subscriber taking none
+        published.getChangeEvents().subscribe(new Flow.Subscriber<ChangeEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(ChangeEvent item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        String uniqueNotes = sdf.format(new Date()).toString();
+        published.addNewContact("EVENTS", uniqueNotes);
+        Contact c = (Contact) published.getContacts("EVENTS").toArray()[0];
+        Set<Contact> attendees = new HashSet<Contact>();
+        attendees.add(c);
+        int futureId = published.addFutureMeeting(attendees, future);
+        published.addNewPastMeeting(attendees, past, "");
+        int pastId = published.getPastMeetingList(c).get(0).getId();
+        published.addMeetingNotes(pastId, "notes");
+        published.addNewContact("EVENTS", "second");
+        published.addNewContact("EVENTS", "third");
+
+        // events received in order
+        List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+        for (int i = 0; i < 6; i++)
+            events.add(received.poll(5, TimeUnit.SECONDS));
+        assertTrue(events.get(0) instanceof ChangeEvent.ContactAdded);
+        assertEquals(c.getId(), ((ChangeEvent.ContactAdded) events.get(0)).getContact().getId());
+        assertTrue(events.get(1) instanceof ChangeEvent.MeetingScheduled);
+        assertEquals(futureId, ((ChangeEvent.MeetingScheduled) events.get(1)).getMeeting().getId());
+        assertTrue(events.get(2) instanceof ChangeEvent.PastMeetingAdded);
+        assertTrue(events.get(3) instanceof ChangeEvent.NotesAdded);
+        assertEquals("notes", ((ChangeEvent.NotesAdded) events.get(3)).getNotes());
+        for (int i = 0; i < 6; i++)
+            assertEquals(i + 1, events.get(i).getSequence());
+
+        // events beyond the buffer of the subscriber taking none are dropped
+        assertEquals(0, published.getDroppedChangeEvents());    // still within its buffer
+        for (int i = 0; i < 20; i++)
+            published.addNewContact("EVENTS", "more " + i);
+        assertTrue(published.getDroppedChangeEvents() > 0);
+
+        published.closeChangeEvents();
+
+    }
+
+    /**
+     * 43. <code>testBatchQueries()</code> test
+     * <p>
+     *     This method tests the batch queries, see {@link ContactManagerImpl#getMeetings(int...) getMeetings},
+     *     {@link ContactManagerImpl#getFutureMeetingLists(Set) getFutureMeetingLists} and
+     *     {@link ContactManagerImpl#getPastMeetingLists(Set) getPastMeetingLists}, which answer as the single
+     *     queries would for each key.
+     * </p>
+     */
+    @Test
+    public void testBatchQueries() {
+
+        ContactManagerImpl batched = new ContactManagerImpl(new ContactManagerOptions().setQueryCacheSize(16));
+
+        // two contacts with meetings, one shared
+        String uniqueNotes = sdf.format(new Date()).toString();
+        batched.addNewContact("BATCH", uniqueNotes + " 1");
+        batched.addNewContact("BATCH", uniqueNotes + " 2");
+        Set<Contact> both = new HashSet<Contact>();
+        Contact first = null;
+        for (Contact c : batched.getContacts("BATCH")) {
+            if (c.getNotes().startsWith(uniqueNotes)) {
+                both.add(c);
+                if (c.getNotes().endsWith(" 1"))
+                    first = c;
+            }
+        }
+        Set<Contact> justFirst = new HashSet<Contact>();
+        justFirst.add(first);
+        int shared = batched.addFutureMeeting(both, future);
+        int own = batched.addFutureMeeting(justFirst, future);
+        batched.addNewPastMeeting(both, past, "batched");
+
+        // meetings by id, leaving out unknown ids
+        Map<Integer, Meeting> meetings = batched.getMeetings(own, -1, shared);
+        assertEquals(Arrays.asList(own, shared), new ArrayList<Integer>(meetings.keySet()));
+        assertEquals(shared, meetings.get(shared).getId());
+
+        // meeting lists as the single queries, whether or not cached
+        batched.getFutureMeetingList(first);
+        Map<Contact, List<Meeting>> futureLists = batched.getFutureMeetingLists(both);
+        Map<Contact, List<PastMeeting>> pastLists = batched.getPastMeetingLists(both);
+        for (Contact c : both) {
+            assertEquals(batched.getFutureMeetingList(c), futureLists.get(c));
+            assertEquals(batched.getPastMeetingList(c), pastLists.get(c));
+            assertEquals(1, pastLists.get(c).size());
+        }
+        assertEquals(2, futureLists.get(first).size());
+
+        // unknown contacts are rejected
+        Set<Contact> unknown = new HashSet<Contact>();
+        unknown.add(new ContactImpl(-1, "unknown"));
+        try {
+            batched.getFutureMeetingLists(unknown);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+    /**
+     * 44. <code>testDateRangeQueries()</code> test
+     * <p>
+     *     This method tests the past and future meetings of a contact within a date range, see
+     *     {@link ContactManagerImpl#getPastMeetingList(Contact, Calendar, Calendar) getPastMeetingList} and
+     *     {@link ContactManagerImpl#getFutureMeetingList(Contact, Calendar, Calendar) getFutureMeetingList}, which
+     *     return the meetings of the whole lists dated within the range, including the occurrences of the contact's
+     *     recurring meetings in order among them.
+     * </p>
+     */
+    @Test
+    public void testDateRangeQueries() {
+
+        ContactManagerImpl ranged = new ContactManagerImpl();
+
+        // a contact with a meeting on each of the last and next 10 days
+        String uniqueNotes = sdf.format(new Date()).toString();
+        ranged.addNewContact("RANGE", uniqueNotes);
+        Contact contact = null;
+        for (Contact c : ranged.getContacts("RANGE")) {
+            if (c.getNotes().equals(uniqueNotes))
+                contact = c;
+        }
+        Set<Contact> contacts = new HashSet<Contact>();
+        contacts.add(contact);
+        for (int day = 1; day <= 10; day++) {
+            Calendar before = (Calendar) past.clone();
+            before.add(Calendar.DAY_OF_MONTH, 1 - day);
+            ranged.addNewPastMeeting(contacts, before, "day " + day);
+            Calendar after = (Calendar) future.clone();
+            after.add(Calendar.DAY_OF_MONTH, day - 1);
+            ranged.addFutureMeeting(contacts, after);
+        }
+
+        // the last 5 days, from the start of the earliest meeting included
+        Calendar from = (Calendar) past.clone();
+        from.add(Calendar.DAY_OF_MONTH, -4);
+        List<PastMeeting> recent = ranged.getPastMeetingList(contact, from, Calendar.getInstance());
+        assertEquals(ranged.getPastMeetingList(contact).subList(5, 10), recent);
+
+        // the next 3 days, to the start of the next meeting excluded
+        Calendar to = (Calendar) future.clone();
+        to.add(Calendar.DAY_OF_MONTH, 3);
+        List<Meeting> upcoming = ranged.getFutureMeetingList(contact, Calendar.getInstance(), to);
+        assertEquals(ranged.getFutureMeetingList(contact).subList(0, 3), upcoming);
+
+        // a daily recurring meeting of the contact between the meetings, and one of another contact, in the same range
+        Calendar halfDayLater = (Calendar) future.clone();
+        halfDayLater.add(Calendar.HOUR_OF_DAY, 12);
+        int firstId = ranged.addRecurringMeeting(contacts, halfDayLater, 30, RecurringMeeting.Frequency.DAILY, 10);
+        ranged.addNewContact("RANGE OTHER", uniqueNotes);
+        Set<Contact> others = new HashSet<Contact>();
+        for (Contact c : ranged.getContacts("RANGE OTHER")) {
+            if (c.getNotes().equals(uniqueNotes))
+                others.add(c);
+        }
+        ranged.addRecurringMeeting(others, halfDayLater, 30, RecurringMeeting.Frequency.DAILY, 10);
+        upcoming = ranged.getFutureMeetingList(contact, Calendar.getInstance(), to);
+        assertEquals(6, upcoming.size());
+        assertEquals(firstId, upcoming.get(1).getId());
+        assertEquals(firstId + 2, upcoming.get(5).getId());
+        List<Meeting> whole = ranged.getFutureMeetingList(contact);
+        for (int i = 0; i < upcoming.size(); i++)
+            assertEquals(whole.get(i).getId(), upcoming.get(i).getId());
+
+        // an empty range, and a range ending before it starts
+        assertTrue(ranged.getPastMeetingList(contact, to, to).isEmpty());
+        try {
+            ranged.getFutureMeetingList(contact, to, from);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+    }
+
+    /**
+     * 45. <code>testUpcomingAndRecentMeetings()</code> test
+     * <p>
+     *     This method tests the next future meetings and the latest past meetings across all contacts, see
+     *     {@link ContactManagerImpl#getUpcomingMeetings(int) getUpcomingMeetings} and
+     *     {@link ContactManagerImpl#getRecentPastMeetings(int) getRecentPastMeetings}, including the occurrences of
+     *     recurring meetings.
+     * </p>
+     */
+    @Test
+    public void testUpcomingAndRecentMeetings() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerImpl timed = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir));
+
+        // past meetings on each of the last 5 days, future meetings every other day, and a daily recurring meeting
+        timed.addNewContact("Basil", "first");
+        timed.addNewContact("Sybil", "second");
+        Set<Contact> basil = timed.getContacts(1);
+        Set<Contact> sybil = timed.getContacts(2);
+        for (int day = 0; day < 5; day++) {
+            Calendar before = (Calendar) past.clone();
+            before.add(Calendar.DAY_OF_MONTH, -day);
+            timed.addNewPastMeeting(day % 2 == 0 ? basil : sybil, before, "day " + day);
+        }
+        for (int day = 0; day < 6; day += 2) {
+            Calendar after = (Calendar) future.clone();
+            after.add(Calendar.DAY_OF_MONTH, day);
+            timed.addFutureMeeting(day % 4 == 0 ? basil : sybil, after);
+        }
+        Calendar start = (Calendar) future.clone();
+        start.add(Calendar.HOUR_OF_DAY, 1);
+        timed.addRecurringMeeting(sybil, start, 30, RecurringMeeting.Frequency.DAILY, 3);
+
+        // all upcoming meetings in chronological order, of which the first few are the next meetings
+        List<Meeting> upcoming = timed.getUpcomingMeetings(100);
+        assertEquals(6, upcoming.size());
+        for (int i = 1; i < upcoming.size(); i++)
+            assertTrue(upcoming.get(i - 1).getDate().compareTo(upcoming.get(i).getDate()) <= 0);
+        List<Meeting> next = timed.getUpcomingMeetings(4);
+        assertEquals(4, next.size());
+        for (int i = 0; i < next.size(); i++)
+            assertEquals(upcoming.get(i).getId(), next.get(i).getId());   // occurrences are made on each call
+        assertEquals(start, upcoming.get(1).getDate());
+
+        // latest past meetings first
+        List<PastMeeting> recent = timed.getRecentPastMeetings(3);
+        assertEquals(3, recent.size());
+        for (int day = 0; day < 3; day++) {
+            Calendar before = (Calendar) past.clone();
+            before.add(Calendar.DAY_OF_MONTH, -day);
+            assertEquals(before, recent.get(day).getDate());
+            assertEquals("day " + day, recent.get(day).getNotes());
+        }
+        assertTrue(timed.getRecentPastMeetings(0).isEmpty());
+
+    }
+
+    /**
+     * 46. <code>testSnapshotVersions()</code> test
+     * <p>
+     *     This method tests that views of an off-heap contact manager are pinned at their version, see
+     *     {@link ContactManager#snapshot() snapshot}. Notes added to a contact or a meeting, and meetings added, after
+     *     a view is taken should not be seen by the view, while the view published by each change should see them.
+     * </p>
+     */
+    @Test
+    public void testSnapshotVersions() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerImpl offHeap = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir)
+                .setOffHeapMeetings(true));
+        offHeap.addNewContact("Basil", "first");
+        Contact basil = offHeap.getContacts(1).iterator().next();
+        offHeap.addNewPastMeeting(offHeap.getContacts(1), past, "Agenda");
+        int pastId = offHeap.getPastMeetingList(basil).get(0).getId();
+        ContactManager view = offHeap.snapshot();
+
+        // change the contact, the meeting, and add a meeting
+        basil.addNotes(" and second");
+        offHeap.addMeetingNotes(pastId, "Minutes");
+        int futureId = offHeap.addFutureMeeting(offHeap.getContacts(1), future);
+
+        // the view sees none of the changes
+        assertEquals("first", view.getContacts(1).iterator().next().getNotes());
+        assertEquals("Agenda", view.getPastMeeting(pastId).getNotes());
+        assertTrue(view.getMeeting(futureId) == null);
+
+        // the view published by the last change sees them all, and is returned until the next change
+        ContactManager latest = offHeap.snapshot();
+        assertTrue(latest == offHeap.snapshot());
+        assertEquals("first and second", latest.getContacts(1).iterator().next().getNotes());
+        assertEquals("Minutes", latest.getPastMeeting(pastId).getNotes());
+        assertEquals(futureId, latest.getFutureMeeting(futureId).getId());
+
+    }
+
+    /**
+     * 47. <code>testLazyPastMeetingQueries()</code> test
+     * <p>
+     *     This method tests that past meetings read on demand, which are found from the index of their segment
+     *     rather than held in the contact manager's indexes, are still returned by the co-attendance, scheduling and
+     *     date range queries, once each: read on demand, then after notes are added to the meeting, then after it is
+     *     archived.
+     * </p>
+     */
+    @Test
+    public void testLazyPastMeetingQueries() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerOptions options = new ContactManagerOptions().setDirectory(dir).setLazyPastMeetings(true);
+        ContactManagerImpl lazy = new ContactManagerImpl(options);
+        lazy.addNewContact("Basil", "");
+        lazy.addNewContact("Rebecca", "");
+        lazy.addNewPastMeeting(lazy.getContacts(1, 2), past, "Agenda");
+        lazy.flush();
+
+        // read back with the past meeting in the segment
+        ContactManagerImpl reloaded = new ContactManagerImpl(options);
+        Contact basil = reloaded.getContacts(1).iterator().next();
+        Contact rebecca = reloaded.getContacts(2).iterator().next();
+        Calendar before = (Calendar) past.clone();
+        before.add(Calendar.MINUTE, -1);
+        Calendar after = (Calendar) past.clone();
+        after.add(Calendar.MINUTE, 1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(1), reloaded.getCoAttendees(basil).get(rebecca));
+            assertEquals(1, reloaded.getSharedMeetings(basil, rebecca).size());
+            assertEquals(1, reloaded.findConflicts(reloaded.getContacts(2), before, after).size());
+            assertEquals(1, reloaded.getPastMeetingList(basil, before, after).size());
+            assertEquals(1, reloaded.getRecentPastMeetings(5).size());
+            assertEquals(1, reloaded.snapshot().getPastMeetingList(basil).size());
+            assertTrue(reloaded.findFreeSlot(reloaded.getContacts(1), 1, past, after) == null);
+
+            // move the meeting into the list by adding notes, then into the archive, checking again each time
+            if (i == 0)
+                reloaded.addMeetingNotes(reloaded.getRecentPastMeetings(1).get(0).getId(), "Minutes");
+            else if (i == 1)
+                assertEquals(1, reloaded.archivePastMeetings(after));
+        }
+
+    }
+
+    /**
+     * 48. <code>testSnapshotContactsReadOnly()</code> test
+     * <p>
+     *     This method tests that the contacts of a view cannot be changed, see
+     *     {@link ContactManager#snapshot() snapshot}. Adding notes to a contact of a view should throw an exception,
+     *     leaving the view, the contact manager and the contacts saved from a view unchanged.
+     * </p>
+     */
+    @Test
+    public void testSnapshotContactsReadOnly() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerOptions options = new ContactManagerOptions().setDirectory(dir);
+        ContactManager cm = new ContactManagerImpl(options);
+        cm.addNewContact("Basil", "notes");
+        ContactManager view = cm.snapshot();
+
+        try {
+            view.getContacts(1).iterator().next().addNotes(" from view");
+            fail("contacts of a view should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals("notes", view.getContacts(1).iterator().next().getNotes());
+        assertEquals("notes", cm.snapshot().getContacts(1).iterator().next().getNotes());
+
+        // the live contact takes notes, which are saved
+        cm.getContacts(1).iterator().next().addNotes(" live");
+        cm.flush();
+        assertEquals("notes live", new ContactManagerImpl(options).getContacts(1).iterator().next().getNotes());
+
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+
+    }
+
+    /**
+     * 49. <code>testOffHeapQueries()</code> test
+     * <p>
+     *     This method tests the queries of an off-heap contact manager, see
+     *     {@link ContactManagerOptions#setOffHeapMeetings(boolean) setOffHeapMeetings}, which find meetings by id
+     *     from the meetings index and otherwise match the state, contact and date columns of each row before a
+     *     meeting is created. Each query should return only the meetings matching it.
+     * </p>
+     */
+    @Test
+    public void testOffHeapQueries() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerImpl offHeap = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir)
+                .setOffHeapMeetings(true));
+        offHeap.addNewContact("Basil", "");
+        offHeap.addNewContact("Rebecca", "");
+        Contact basil = offHeap.getContacts(1).iterator().next();
+        Contact rebecca = offHeap.getContacts(2).iterator().next();
+        offHeap.addNewPastMeeting(offHeap.getContacts(1), past, "Basil only");
+        offHeap.addNewPastMeeting(offHeap.getContacts(1, 2), past, "Both");
+        int futureId = offHeap.addFutureMeeting(offHeap.getContacts(2), future);
+
+        // by contact and state
+        assertEquals(2, offHeap.getPastMeetingList(basil).size());
+        assertEquals(1, offHeap.getPastMeetingList(rebecca).size());
+        assertEquals("Both", offHeap.getPastMeetingList(rebecca).get(0).getNotes());
+        assertTrue(offHeap.getFutureMeetingList(basil).isEmpty());
+        assertEquals(futureId, offHeap.getFutureMeetingList(rebecca).get(0).getId());
+        Set<Contact> both = new HashSet<Contact>(Arrays.asList(basil, rebecca));
+        assertEquals(1, offHeap.getPastMeetingLists(both).get(rebecca).size());
+        assertEquals(1, offHeap.getFutureMeetingLists(both).get(rebecca).size());
+        assertTrue(offHeap.getFutureMeetingLists(both).get(basil).isEmpty());
+
+        // by date and by id
+        assertEquals(2, offHeap.getFutureMeetingList(past).size());
+        int pastId = offHeap.getPastMeetingList(rebecca).get(0).getId();
+        assertEquals(pastId, offHeap.getMeeting(pastId).getId());
+        assertEquals("Both", offHeap.getPastMeeting(pastId).getNotes());
+        assertEquals(futureId, offHeap.getFutureMeeting(futureId).getId());
+        try {
+            offHeap.getFutureMeeting(pastId);
+            fail("a past meeting is not a future meeting");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+
+    }
+
+    /**
+     * 50. <code>testRecurringMeetingStatistics()</code> test
+     * <p>
+     *     This method tests that the contact manager's
+     *     {@link ContactManagerImpl#getMeetingStatistics() getMeetingStatistics} and
+     *     {@link ContactManagerImpl#getTopContacts(int) getTopContacts} count the occurrences of a recurring meeting
+     *     not yet made concrete, so that they agree with the meetings returned by the queries.
+     * </p>
+     */
+    @Test
+    public void testRecurringMeetingStatistics() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerImpl cm = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir));
+        cm.addNewContact("Basil", "");
+        cm.addNewContact("Rebecca", "");
+        Contact basil = cm.getContacts(1).iterator().next();
+        Contact rebecca = cm.getContacts(2).iterator().next();
+        cm.addFutureMeeting(cm.getContacts(1, 2), future);
+        cm.addFutureMeeting(cm.getContacts(2), future);
+        cm.addRecurringMeeting(cm.getContacts(1), future, 30, RecurringMeeting.Frequency.WEEKLY, 3);
+
+        // check the statistics count each occurrence of the series, as the queries return them
+        MeetingStatistics stats = cm.getMeetingStatistics();
+        assertEquals(5, stats.getMeetingCount());
+        assertEquals(Integer.valueOf(cm.getFutureMeetingList(basil).size()),
+                stats.getCountsByContact().get(basil.getId()));
+        assertEquals(Integer.valueOf(4), stats.getCountsByContact().get(basil.getId()));
+        assertEquals(Integer.valueOf(2), stats.getCountsByContact().get(rebecca.getId()));
+        int byMonth = 0;
+        for (int count : stats.getCountsByMonth().values())
+            byMonth += count;
+        assertEquals(5, byMonth);
+        assertEquals(Arrays.asList(basil, rebecca), cm.getTopContacts(2));
+
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+
+    }
+
+    /**
+     * 51. <code>testArchiveWithViews()</code> test
+     * <p>
+     *     This method tests that archiving, see {@link ContactManagerImpl#archivePastMeetings(Calendar)
+     *     archivePastMeetings}, removes only the rows of the meetings archived, on and off the heap. The meetings kept,
+     *     including those moved into the rows freed, should still be found by id, and a view taken before archiving
+     *     should still find every meeting in the rows it was frozen with.
+     * </p>
+     */
+    @Test
+    public void testArchiveWithViews() throws Exception {
+
+        for (boolean offHeap : new boolean[] {false, true}) {
+
+            File dir = File.createTempFile("contacts", "");
+            dir.delete();
+            ContactManagerImpl cm = new ContactManagerImpl(new ContactManagerOptions().setDirectory(dir)
+                    .setOffHeapMeetings(offHeap));
+            cm.addNewContact("Basil", "");
+            Contact basil = cm.getContacts(1).iterator().next();
+            Calendar older = (Calendar) past.clone();
+            older.add(Calendar.YEAR, -1);
+            cm.addNewPastMeeting(cm.getContacts(1), older, "Old");
+            cm.addNewPastMeeting(cm.getContacts(1), past, "Recent");
+            int futureId = cm.addFutureMeeting(cm.getContacts(1), future);
+            int oldId = 0, recentId = 0;
+            for (PastMeeting pm : cm.getPastMeetingList(basil)) {
+                if (pm.getNotes().equals("Old"))
+                    oldId = pm.getId();
+                else
+                    recentId = pm.getId();
+            }
+            ContactManagerSnapshot before = cm.snapshot();
+
+            // archive the oldest meeting, whose row is taken by the last meeting
+            Calendar cutoff = (Calendar) older.clone();
+            cutoff.add(Calendar.DAY_OF_MONTH, 1);
+            assertEquals(1, cm.archivePastMeetings(cutoff));
+            assertEquals("Old", cm.getPastMeeting(oldId).getNotes());
+            assertEquals("Recent", cm.getPastMeeting(recentId).getNotes());
+            assertEquals(futureId, cm.getFutureMeeting(futureId).getId());
+            assertEquals(2, cm.getPastMeetingList(basil).size());
+            assertEquals(1, cm.getFutureMeetingList(basil).size());
+            ContactManagerSnapshot after = cm.snapshot();
+            assertEquals("Old", after.getPastMeeting(oldId).getNotes());
+            assertEquals("Recent", after.getPastMeeting(recentId).getNotes());
+            assertEquals(futureId, after.getFutureMeeting(futureId).getId());
+
+            // the view taken before archiving is unchanged
+            assertEquals("Old", before.getPastMeeting(oldId).getNotes());
+            assertEquals(futureId, before.getFutureMeeting(futureId).getId());
+            assertEquals(2, before.getPastMeetingList(basil).size());
+
+            // a meeting added after archiving takes the next row
+            int addedId = cm.addFutureMeeting(cm.getContacts(1), future);
+            assertEquals(2, cm.getFutureMeetingList(basil).size());
+            assertEquals(addedId, cm.getFutureMeeting(addedId).getId());
+            assertTrue(before.getMeeting(addedId) == null);
+
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+
+        }
+
+    }
+
+    /**
+     * 52. <code>testInterruptedShardSaves()</code> test
+     * <p>
+     *     This method tests that the shard files read at start up are all of one save, see
+     *     {@link ContactManagerOptions#setShards(int) setShards}. A save interrupted before its manifest was written
+     *     should leave the previous save, and one interrupted after it should be completed. A contact manager whose
+     *     files could not be read should not overwrite them when flushed.
+     * </p>
+     */
+    @Test
+    public void testInterruptedShardSaves() throws Exception {
+
+        File dir = File.createTempFile("contacts", "");
+        dir.delete();
+        ContactManagerOptions options = new ContactManagerOptions().setDirectory(dir).setShards(2);
+        File shard0 = new File(dir, "contacts-0.txt"), shard1 = new File(dir, "contacts-1.txt");
+        File next0 = new File(dir, "contacts-0.txt.next"), next1 = new File(dir, "contacts-1.txt.next");
+
+        // keep the files of a save with one contact, then of a save with two
+        ContactManagerImpl cm = new ContactManagerImpl(options);
+        cm.addNewContact("FIRST", "");
+        cm.flush();
+        byte[] first0 = Files.readAllBytes(shard0.toPath()), first1 = Files.readAllBytes(shard1.toPath());
+        cm.addNewContact("SECOND", "");
+        cm.flush();
+        byte[] second0 = Files.readAllBytes(shard0.toPath()), second1 = Files.readAllBytes(shard1.toPath());
+        assertTrue(!new File(dir, "contacts.shards").exists());
+
+        // interrupted before the manifest: the first save is read, and the next files are removed
+        Files.write(shard0.toPath(), first0);
+        Files.write(shard1.toPath(), first1);
+        Files.write(next0.toPath(), second0);
+        assertEquals(1, new ContactManagerImpl(options).getContacts("").size());
+        assertTrue(!next0.exists());
+
+        // interrupted after the manifest: the second save is completed
+        Files.write(shard1.toPath(), second1);
+        Files.write(next0.toPath(), second0);
+        Files.write(new File(dir, "contacts.shards").toPath(), "2".getBytes("UTF-8"));
+        assertEquals(2, new ContactManagerImpl(options).getContacts("").size());
+        assertTrue(!next0.exists() && !next1.exists());
+        assertTrue(!new File(dir, "contacts.shards").exists());
+
+        // a shard that cannot be read is not overwritten
+        Files.write(shard0.toPath(), "<contactManager".getBytes("UTF-8"));
+        ContactManagerImpl partial = new ContactManagerImpl(options);
+        try {
+            partial.flushAsync().join();
+            fail("files not read should not be overwritten");
+        } catch (CompletionException e) {
+            // expected
+        }
+        assertEquals("<contactManager", new String(Files.readAllBytes(shard0.toPath()), "UTF-8"));
+
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+
+    }
+
     /* I N T E R N A L   M E T H O D S */
 
     /**
@@ -945,6 +2301,22 @@ public class ContactManagerTest {
 
     }
 
+    /**
+     * <code>minutesAfterFuture</code> internal method
+     * <p>
+     *     internal test method to get a date a number of minutes after the generic future date
+     *     @param minutes minutes after the future date
+     *     @return date
+     * </p>
+     */
+    private Calendar minutesAfterFuture(int minutes) {
+
+        Calendar ret = (Calendar) future.clone();
+        ret.add(Calendar.MINUTE, minutes);
+        return ret;
+
+    }
+
     /**
      * <code>checkChronologyOfListPast</code> internal method
      * <p>
@@ -24,6 +24,12 @@ public class FutureMeetingImpl implements FutureMeeting {
 
     }
 
+    public FutureMeetingImpl(int meetingId, Calendar meetingDate, Set<Contact> meetingContacts, int meetingDuration) {
+
+        m = new MeetingImpl(meetingId, meetingDate, meetingContacts, meetingDuration);
+
+    }
+
     @Override
     public int getId() {
         return m.getId();
@@ -34,6 +40,11 @@ public class FutureMeetingImpl implements FutureMeeting {
         return m.getDate();
     }
 
+    @Override
+    public int getDuration() {
+        return m.getDuration();
+    }
+
     @Override
     public Set<Contact> getContacts() {
         return m.getContacts();
@@ -0,0 +1,367 @@
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Instrumented contact manager
+ *
+ * A contact manager that decorates another, recording the latency of every call of each
+ * {@link ContactManager ContactManager} method, and counting the exceptions each throws by type, in a
+ * {@link ContactManagerMetrics ContactManagerMetrics}. Calls are passed on to the decorated contact manager unchanged,
+ * and its results and exceptions are passed back.
+ *
+ * Recording takes no locks, so adds little to each call and the decorator can be left in place under full load.
+ * Overloaded methods are recorded as separate operations, named by their parameter type, such as
+ * <code>getFutureMeetingList(Contact)</code>.
+ *
+ * To also record the loads and saves of a {@link ContactManagerImpl ContactManagerImpl}, construct the decorator from
+ * options, see {@link #InstrumentedContactManager(ContactManagerOptions) InstrumentedContactManager(options)}.
+ */
+public class InstrumentedContactManager implements ContactManager {
+
+    /* V A R I A B L E S */
+
+    private final ContactManager delegate;                  // decorated contact manager
+    private final ContactManagerMetrics metrics;            // metrics recorded
+    private final ContactManagerMetrics.Operation addFutureMeetingCalls;  // operation of each method
+    private final ContactManagerMetrics.Operation getPastMeetingCalls;
+    private final ContactManagerMetrics.Operation getFutureMeetingCalls;
+    private final ContactManagerMetrics.Operation getMeetingCalls;
+    private final ContactManagerMetrics.Operation futureMeetingListByContactCalls;
+    private final ContactManagerMetrics.Operation futureMeetingListByDateCalls;
+    private final ContactManagerMetrics.Operation getPastMeetingListCalls;
+    private final ContactManagerMetrics.Operation addNewPastMeetingCalls;
+    private final ContactManagerMetrics.Operation addMeetingNotesCalls;
+    private final ContactManagerMetrics.Operation addNewContactCalls;
+    private final ContactManagerMetrics.Operation contactsByIdCalls;
+    private final ContactManagerMetrics.Operation contactsByNameCalls;
+    private final ContactManagerMetrics.Operation flushCalls;
+    private final ContactManagerMetrics.Operation snapshotCalls;
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>InstrumentedContactManager()</code> constructor
+     *
+     * @param delegate contact manager to decorate
+     * @param metrics metrics to record calls in
+     */
+    public InstrumentedContactManager(ContactManager delegate, ContactManagerMetrics metrics) {
+
+        this.delegate = delegate;
+        this.metrics = metrics;
+        addFutureMeetingCalls = metrics.operation("addFutureMeeting");
+        getPastMeetingCalls = metrics.operation("getPastMeeting");
+        getFutureMeetingCalls = metrics.operation("getFutureMeeting");
+        getMeetingCalls = metrics.operation("getMeeting");
+        futureMeetingListByContactCalls = metrics.operation("getFutureMeetingList(Contact)");
+        futureMeetingListByDateCalls = metrics.operation("getFutureMeetingList(Calendar)");
+        getPastMeetingListCalls = metrics.operation("getPastMeetingList");
+        addNewPastMeetingCalls = metrics.operation("addNewPastMeeting");
+        addMeetingNotesCalls = metrics.operation("addMeetingNotes");
+        addNewContactCalls = metrics.operation("addNewContact");
+        contactsByIdCalls = metrics.operation("getContacts(int...)");
+        contactsByNameCalls = metrics.operation("getContacts(String)");
+        flushCalls = metrics.operation("flush");
+        snapshotCalls = metrics.operation("snapshot");
+
+    }
+
+    /**
+     * <code>InstrumentedContactManager(ContactManagerOptions)</code> constructor
+     * <p>
+     *     Decorates a new {@link ContactManagerImpl ContactManagerImpl} built with the given options, recording its
+     *     loads and saves as well as calls in new metrics. The options are given the metrics, see
+     *     {@link ContactManagerOptions#setMetrics(ContactManagerMetrics) setMetrics}.
+     * </p>
+     *
+     * @param options storage options
+     */
+    public InstrumentedContactManager(ContactManagerOptions options) {
+
+        this(new ContactManagerImpl(options.setMetrics(new ContactManagerMetrics())), options.getMetrics());
+
+    }
+
+    /* G E T T E R S */
+
+    public ContactManager getDelegate() {
+        return delegate;
+    }
+
+    public ContactManagerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /* I N T E R F A C E   M E T H O D S */
+
+    /**
+     * <code>addFutureMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.addFutureMeeting(contacts, date);
+        } catch (RuntimeException e) {
+            addFutureMeetingCalls.error(e);
+            throw e;
+        } finally {
+            addFutureMeetingCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getPastMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public PastMeeting getPastMeeting(int id) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getPastMeeting(id);
+        } catch (RuntimeException e) {
+            getPastMeetingCalls.error(e);
+            throw e;
+        } finally {
+            getPastMeetingCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getFutureMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public FutureMeeting getFutureMeeting(int id) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getFutureMeeting(id);
+        } catch (RuntimeException e) {
+            getFutureMeetingCalls.error(e);
+            throw e;
+        } finally {
+            getFutureMeetingCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public Meeting getMeeting(int id) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getMeeting(id);
+        } catch (RuntimeException e) {
+            getMeetingCalls.error(e);
+            throw e;
+        } finally {
+            getMeetingCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getFutureMeetingList(Contact)</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Meeting> getFutureMeetingList(Contact contact) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getFutureMeetingList(contact);
+        } catch (RuntimeException e) {
+            futureMeetingListByContactCalls.error(e);
+            throw e;
+        } finally {
+            futureMeetingListByContactCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getFutureMeetingList(Calendar)</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Meeting> getFutureMeetingList(Calendar date) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getFutureMeetingList(date);
+        } catch (RuntimeException e) {
+            futureMeetingListByDateCalls.error(e);
+            throw e;
+        } finally {
+            futureMeetingListByDateCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getPastMeetingList</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PastMeeting> getPastMeetingList(Contact contact) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getPastMeetingList(contact);
+        } catch (RuntimeException e) {
+            getPastMeetingListCalls.error(e);
+            throw e;
+        } finally {
+            getPastMeetingListCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>addNewPastMeeting</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+
+        long start = System.nanoTime();
+        try {
+            delegate.addNewPastMeeting(contacts, date, text);
+        } catch (RuntimeException e) {
+            addNewPastMeetingCalls.error(e);
+            throw e;
+        } finally {
+            addNewPastMeetingCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>addMeetingNotes</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public void addMeetingNotes(int id, String text) {
+
+        long start = System.nanoTime();
+        try {
+            delegate.addMeetingNotes(id, text);
+        } catch (RuntimeException e) {
+            addMeetingNotesCalls.error(e);
+            throw e;
+        } finally {
+            addMeetingNotesCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>addNewContact</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public void addNewContact(String name, String notes) {
+
+        long start = System.nanoTime();
+        try {
+            delegate.addNewContact(name, notes);
+        } catch (RuntimeException e) {
+            addNewContactCalls.error(e);
+            throw e;
+        } finally {
+            addNewContactCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getContacts(int...)</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Contact> getContacts(int... ids) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getContacts(ids);
+        } catch (RuntimeException e) {
+            contactsByIdCalls.error(e);
+            throw e;
+        } finally {
+            contactsByIdCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>getContacts(String)</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Contact> getContacts(String name) {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.getContacts(name);
+        } catch (RuntimeException e) {
+            contactsByNameCalls.error(e);
+            throw e;
+        } finally {
+            contactsByNameCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>flush</code>
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() {
+
+        long start = System.nanoTime();
+        try {
+            delegate.flush();
+        } catch (RuntimeException e) {
+            flushCalls.error(e);
+            throw e;
+        } finally {
+            flushCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * <code>snapshot()</code>
+     * {@inheritDoc}
+     * <p>
+     *     The call is recorded, but reads made on the view returned are not.
+     * </p>
+     */
+    @Override
+    public ContactManager snapshot() {
+
+        long start = System.nanoTime();
+        try {
+            return delegate.snapshot();
+        } catch (RuntimeException e) {
+            snapshotCalls.error(e);
+            throw e;
+        } finally {
+            snapshotCalls.record(System.nanoTime() - start);
+        }
+
+    }
+
+}
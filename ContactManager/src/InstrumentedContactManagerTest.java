@@ -0,0 +1,85 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedContactManagerTest {
+
+    private ContactManagerMetrics metrics;
+    private InstrumentedContactManager instrumented;
+
+    @Before
+    public void setUp() throws Exception {
+
+        // decorate a read-only view of one contact and one past meeting
+        Contact basil = new ContactImpl(1, "Basil Mason");
+        Calendar date = Calendar.getInstance();
+        date.setTimeInMillis(1000);
+        StoreSnapshot state = new StoreSnapshot(1, Collections.singletonList(basil),
+                Collections.<Meeting>singletonList(new PastMeetingImpl(2, date, Collections.singleton(basil), "")),
+                Collections.<RecurringMeeting>emptyList());
+        metrics = new ContactManagerMetrics();
+        instrumented = new InstrumentedContactManager(new ContactManagerSnapshot(0, state), metrics);
+    }
+
+    @Test
+    public void testCalls() throws Exception {
+
+        assertEquals(2, instrumented.getPastMeeting(2).getId());
+        instrumented.getPastMeeting(3);
+        assertEquals(1, instrumented.getContacts("Basil").size());
+
+        MetricsSnapshot s = metrics.snapshot();
+        assertEquals(2, s.getOperation("getPastMeeting").getCalls());
+        assertEquals(1, s.getOperation("getContacts(String)").getCalls());
+        assertEquals(0, s.getOperation("getContacts(int...)").getCalls());
+        assertTrue(s.getOperation("getPastMeeting").getMaxMicros() >= 0);
+
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+
+        // writes to a read-only view throw, and are counted by exception type
+        try {
+            instrumented.addNewContact("Rebecca White", "");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            instrumented.getContacts(99);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        MetricsSnapshot s = metrics.snapshot();
+        assertEquals(Long.valueOf(1), s.getOperation("addNewContact").getErrors().get("UnsupportedOperationException"));
+        assertEquals(1, s.getOperation("getContacts(int...)").getErrorCount());
+        assertEquals(1, s.getOperation("getContacts(int...)").getCalls());
+
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+
+        instrumented.getMeeting(2);
+
+        ObjectName name = metrics.register("test-" + System.nanoTime());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            TabularData calls = (TabularData) server.getAttribute(name, "CallCounts");
+            assertEquals(1L, calls.get(new Object[] {"getMeeting"}).get("value"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+
+    }
+}
@@ -0,0 +1,488 @@
+import java.util.*;
+
+/**
+ * Interval tree
+ *
+ * A balanced (AVL) binary search tree of time intervals, each labelled with a meeting id. Intervals are ordered by
+ * their start, then by id, and each node also holds the latest end of any interval in its subtree. This allows the
+ * intervals overlapping a given interval to be found in O(log n + k) time, where k is the number found, since any
+ * subtree ending before the given interval starts is skipped.
+ *
+ * Intervals are half open: an interval from start to end includes start but not end. Times are in epoch
+ * milliseconds.
+ */
+public class IntervalTree {
+
+    /* V A R I A B L E S */
+
+    private Node root;      // root of the tree
+    private int size;       // number of intervals held
+
+    /* I N N E R   C L A S S E S */
+
+    // a node of the tree, holding one interval
+    private static class Node {
+        final long start, end;  // interval
+        final int id;           // meeting id
+        long maxEnd;            // latest end in this subtree
+        int height;             // height of this subtree
+        Node left, right;       // children
+
+        Node(long start, long end, int id) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.maxEnd = end;
+            this.height = 1;
+        }
+    }
+
+    // iterator over the intervals on one side of a time, moving away from it
+    private class StartIterator implements Iterator<Integer> {
+
+        private final Deque<Node> stack = new ArrayDeque<Node>();   // path to the next nodes to visit
+        private final long time;                                    // time to start from
+        private final boolean forward;                              // whether moving to later intervals
+
+        StartIterator(long time, boolean forward) {
+            this.time = time;
+            this.forward = forward;
+            push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Integer next() {
+            if (stack.isEmpty())
+                throw new NoSuchElementException();
+            Node n = stack.pop();
+            push(forward ? n.right : n.left);
+            return n.id;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        // descend towards the time from a node, stacking the nodes on the side iterated, nearest the time on top
+        private void push(Node n) {
+            while (n != null) {
+                if (forward ? n.start >= time : n.start < time) {
+                    stack.push(n);
+                    n = forward ? n.left : n.right;
+                } else {
+                    n = forward ? n.right : n.left;
+                }
+            }
+        }
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>insert()</code>
+     * <p>
+     *     Adds an interval to the tree. An id must only be added once for a given start.
+     * </p>
+     *
+     * @param start start of the interval
+     * @param end end of the interval, after start
+     * @param id meeting id
+     * @throws IllegalArgumentException if the end is not after the start
+     */
+    public void insert(long start, long end, int id) {
+
+        if (end <= start)
+            throw new IllegalArgumentException();
+
+        root = insert(root, new Node(start, end, id));
+        size++;
+
+    }
+
+    /**
+     * <code>remove()</code>
+     * <p>
+     *     Removes an interval from the tree, found by its start and id.
+     * </p>
+     *
+     * @param start start of the interval
+     * @param id meeting id
+     * @return true if the interval was held
+     */
+    public boolean remove(long start, int id) {
+
+        int before = size;
+        root = remove(root, start, id);
+        return size < before;
+
+    }
+
+    /**
+     * <code>findOverlapping()</code>
+     *
+     * @param start start of the interval to check
+     * @param end end of the interval to check
+     * @return ids of the intervals overlapping the given interval, in order of start
+     */
+    public List<Integer> findOverlapping(long start, long end) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        findOverlapping(root, start, end, ret);
+        return ret;
+
+    }
+
+    /**
+     * <code>findStarting()</code>
+     * <p>
+     *     Finds the intervals starting within the given time, in O(log n + k) time, where k is the number found,
+     *     since subtrees starting before or after the given time are skipped.
+     * </p>
+     *
+     * @param from start of the time, included
+     * @param to end of the time, excluded
+     * @return ids of the intervals starting within the given time, in order of start
+     */
+    public List<Integer> findStarting(long from, long to) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        findStarting(root, from, to, ret);
+        return ret;
+
+    }
+
+    /**
+     * <code>endingAfter()</code>
+     * <p>
+     *     Iterates lazily over the intervals that end after the given time, in order of start. Subtrees that end
+     *     before the given time are skipped. Each interval is returned as an array of its start and end, and the tree
+     *     must not be modified while iterating.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return iterator over the intervals ending after the given time
+     */
+    public Iterator<long[]> endingAfter(final long time) {
+
+        return new Iterator<long[]>() {
+
+            private final Deque<Node> stack = new ArrayDeque<Node>();   // path to the next nodes to visit
+            private Node next = null;                                   // next interval to return
+
+            {
+                pushLeft(root);
+                advance();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public long[] next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                long[] ret = new long[] {next.start, next.end};
+                advance();
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            // descend left from a node, skipping subtrees that end before the time
+            private void pushLeft(Node n) {
+                while (n != null && n.maxEnd > time) {
+                    stack.push(n);
+                    n = n.left;
+                }
+            }
+
+            // find the next node in order that ends after the time
+            private void advance() {
+                next = null;
+                while (next == null && !stack.isEmpty()) {
+                    Node n = stack.pop();
+                    pushLeft(n.right);
+                    if (n.end > time)
+                        next = n;
+                }
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>startingFrom()</code>
+     * <p>
+     *     Iterates lazily over the ids of the intervals that start at or after the given time, earliest first. Only
+     *     the path to the first interval is read before iterating, so reading the first k intervals takes
+     *     O(log n + k) time. The tree must not be modified while iterating.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return iterator over the ids of the intervals starting at or after the given time, in order of start
+     */
+    public Iterator<Integer> startingFrom(long time) {
+        return new StartIterator(time, true);
+    }
+
+    /**
+     * <code>startingBefore()</code>
+     * <p>
+     *     Iterates lazily over the ids of the intervals that start before the given time, latest first, as for
+     *     {@link #startingFrom(long) startingFrom}. The tree must not be modified while iterating.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return iterator over the ids of the intervals starting before the given time, in reverse order of start
+     */
+    public Iterator<Integer> startingBefore(long time) {
+        return new StartIterator(time, false);
+    }
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of intervals held
+     */
+    public int size() {
+        return size;
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>findOverlapping()</code>
+     * <p>
+     *     Adds the ids of intervals in the subtree overlapping the given interval to a list, in order of start.
+     *     Subtrees that end before the interval starts, or that start after the interval ends, are skipped.
+     * </p>
+     */
+    private static void findOverlapping(Node n, long start, long end, List<Integer> found) {
+
+        // skip subtrees that end before the interval starts
+        if (n == null || n.maxEnd <= start)
+            return;
+
+        findOverlapping(n.left, start, end, found);
+
+        // intervals to the right start no earlier than this one
+        if (n.start < end) {
+            if (n.end > start)
+                found.add(n.id);
+            findOverlapping(n.right, start, end, found);
+        }
+
+    }
+
+    /**
+     * <code>findStarting()</code>
+     * <p>
+     *     Adds the ids of intervals in the subtree starting within the given time to a list, in order of start
+     * </p>
+     */
+    private static void findStarting(Node n, long from, long to, List<Integer> found) {
+
+        if (n == null)
+            return;
+
+        // intervals to the left start no later than this one, and to the right no earlier
+        if (n.start >= from)
+            findStarting(n.left, from, to, found);
+        if (n.start >= from && n.start < to)
+            found.add(n.id);
+        if (n.start < to)
+            findStarting(n.right, from, to, found);
+
+    }
+
+    /**
+     * <code>insert()</code>
+     *
+     * @return the subtree with the node inserted, rebalanced
+     */
+    private static Node insert(Node n, Node toInsert) {
+
+        if (n == null)
+            return toInsert;
+
+        if (compare(toInsert, n) < 0)
+            n.left = insert(n.left, toInsert);
+        else
+            n.right = insert(n.right, toInsert);
+
+        return balance(n);
+
+    }
+
+    /**
+     * <code>remove()</code>
+     * <p>
+     *     Removes the node of the given interval from the subtree, if present. A node with two children is replaced
+     *     by the earliest node of its right subtree.
+     * </p>
+     *
+     * @return the subtree with the node removed, rebalanced
+     */
+    private Node remove(Node n, long start, int id) {
+
+        if (n == null)
+            return null;
+
+        int c = compare(start, id, n);
+        if (c < 0) {
+            n.left = remove(n.left, start, id);
+        } else if (c > 0) {
+            n.right = remove(n.right, start, id);
+        } else {
+            size--;
+            if (n.left == null)
+                return n.right;
+            if (n.right == null)
+                return n.left;
+            Node successor = n.right;
+            while (successor.left != null)
+                successor = successor.left;
+            successor.right = removeEarliest(n.right);
+            successor.left = n.left;
+            n = successor;
+        }
+
+        return balance(n);
+
+    }
+
+    /**
+     * <code>removeEarliest()</code>
+     *
+     * @return the subtree with its earliest node removed, rebalanced
+     */
+    private static Node removeEarliest(Node n) {
+
+        if (n.left == null)
+            return n.right;
+        n.left = removeEarliest(n.left);
+        return balance(n);
+
+    }
+
+    /**
+     * <code>compare()</code>
+     *
+     * @return order of two nodes by start, then by id
+     */
+    private static int compare(Node a, Node b) {
+        return compare(a.start, a.id, b);
+    }
+
+    /**
+     * <code>compare()</code>
+     *
+     * @return order of an interval and a node by start, then by id
+     */
+    private static int compare(long start, int id, Node b) {
+        if (start != b.start)
+            return start < b.start ? -1 : 1;
+        return id < b.id ? -1 : (id == b.id ? 0 : 1);
+    }
+
+    /**
+     * <code>balance()</code>
+     * <p>
+     *     Restores the AVL balance of a subtree whose children differ in height by at most two, after an insert or a
+     *     remove, updating heights and latest ends.
+     * </p>
+     *
+     * @return the balanced subtree
+     */
+    private static Node balance(Node n) {
+
+        update(n);
+
+        if (height(n.left) - height(n.right) > 1) {             // left heavy
+            if (height(n.left.left) < height(n.left.right))
+                n.left = rotateLeft(n.left);
+            return rotateRight(n);
+        }
+
+        if (height(n.right) - height(n.left) > 1) {             // right heavy
+            if (height(n.right.right) < height(n.right.left))
+                n.right = rotateRight(n.right);
+            return rotateLeft(n);
+        }
+
+        return n;
+
+    }
+
+    /**
+     * <code>rotateLeft()</code>
+     *
+     * @return the subtree rotated left
+     */
+    private static Node rotateLeft(Node n) {
+
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+
+    }
+
+    /**
+     * <code>rotateRight()</code>
+     *
+     * @return the subtree rotated right
+     */
+    private static Node rotateRight(Node n) {
+
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+
+    }
+
+    /**
+     * <code>update()</code>
+     * <p>
+     *     Recomputes the height and latest end of a node from its children
+     * </p>
+     */
+    private static void update(Node n) {
+
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        n.maxEnd = n.end;
+        if (n.left != null)
+            n.maxEnd = Math.max(n.maxEnd, n.left.maxEnd);
+        if (n.right != null)
+            n.maxEnd = Math.max(n.maxEnd, n.right.maxEnd);
+
+    }
+
+    /**
+     * <code>height()</code>
+     *
+     * @return height of a subtree, zero if empty
+     */
+    private static int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+}
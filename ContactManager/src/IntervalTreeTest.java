@@ -0,0 +1,168 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IntervalTreeTest {
+
+    private IntervalTree tree;
+
+    @Before
+    public void setUp() throws Exception {
+
+        tree = new IntervalTree();
+        tree.insert(0, 10, 1);
+        tree.insert(5, 15, 2);
+        tree.insert(20, 30, 3);
+        tree.insert(20, 25, 4);
+
+    }
+
+    @Test
+    public void testFindOverlapping() throws Exception {
+
+        assertEquals(Arrays.asList(1, 2), tree.findOverlapping(8, 12));
+        assertEquals(Arrays.asList(2, 3, 4), tree.findOverlapping(10, 21));
+        assertEquals(Arrays.asList(3), tree.findOverlapping(25, 40));
+
+    }
+
+    @Test
+    public void testIntervalsAreHalfOpen() throws Exception {
+
+        assertTrue(tree.findOverlapping(15, 20).isEmpty());
+        assertTrue(tree.findOverlapping(30, 40).isEmpty());
+
+    }
+
+    @Test
+    public void testFindOverlappingMatchesScan() throws Exception {
+
+        // insert random intervals, in random order, and compare against a scan of every interval
+        Random random = new Random(42);
+        IntervalTree large = new IntervalTree();
+        long[][] intervals = new long[2000][];
+        for (int i = 0; i < intervals.length; i++) {
+            long start = random.nextInt(100000);
+            intervals[i] = new long[] {start, start + 1 + random.nextInt(500)};
+            large.insert(intervals[i][0], intervals[i][1], i);
+        }
+        assertEquals(intervals.length, large.size());
+
+        for (int q = 0; q < 100; q++) {
+
+            long start = random.nextInt(100000), end = start + 1 + random.nextInt(1000);
+
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int i = 0; i < intervals.length; i++) {
+                if (intervals[i][0] < end && intervals[i][1] > start)
+                    expected.add(i);
+            }
+
+            assertEquals(expected, new HashSet<Integer>(large.findOverlapping(start, end)));
+
+        }
+
+    }
+
+    @Test
+    public void testEndingAfter() throws Exception {
+
+        // intervals ending after 12, in order of start then id
+        Iterator<long[]> it = tree.endingAfter(12);
+        assertArrayEquals(new long[] {5, 15}, it.next());
+        assertArrayEquals(new long[] {20, 30}, it.next());
+        assertArrayEquals(new long[] {20, 25}, it.next());
+        assertFalse(it.hasNext());
+
+        assertFalse(tree.endingAfter(30).hasNext());
+
+    }
+
+    @Test
+    public void testFindStarting() throws Exception {
+
+        // intervals starting from 5 up to 20, not those that only overlap
+        assertEquals(Arrays.asList(2), tree.findStarting(5, 20));
+        assertEquals(Arrays.asList(1, 2, 3, 4), tree.findStarting(0, 21));
+        assertEquals(Arrays.asList(3, 4), tree.findStarting(20, 21));
+        assertTrue(tree.findStarting(6, 20).isEmpty());
+
+    }
+
+    @Test
+    public void testStartingFromAndBefore() throws Exception {
+
+        // intervals starting from 5, earliest first, and before 20, latest first
+        List<Integer> from = new ArrayList<Integer>();
+        for (Iterator<Integer> it = tree.startingFrom(5); it.hasNext(); )
+            from.add(it.next());
+        assertEquals(Arrays.asList(2, 3, 4), from);
+        List<Integer> before = new ArrayList<Integer>();
+        for (Iterator<Integer> it = tree.startingBefore(20); it.hasNext(); )
+            before.add(it.next());
+        assertEquals(Arrays.asList(2, 1), before);
+
+        assertFalse(tree.startingFrom(21).hasNext());
+        assertFalse(tree.startingBefore(0).hasNext());
+
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+
+        assertTrue(tree.remove(5, 2));
+        assertFalse(tree.remove(5, 2));
+        assertFalse(tree.remove(20, 1));
+        assertEquals(3, tree.size());
+        assertEquals(Arrays.asList(1), tree.findOverlapping(8, 12));
+        assertTrue(tree.findOverlapping(10, 20).isEmpty());
+
+    }
+
+    @Test
+    public void testRemoveMatchesScan() throws Exception {
+
+        // insert random intervals, remove half of them in random order, and compare against a scan of the rest
+        Random random = new Random(7);
+        IntervalTree large = new IntervalTree();
+        long[][] intervals = new long[2000][];
+        for (int i = 0; i < intervals.length; i++) {
+            long start = random.nextInt(100000);
+            intervals[i] = new long[] {start, start + 1 + random.nextInt(500)};
+            large.insert(intervals[i][0], intervals[i][1], i);
+        }
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < intervals.length; i++)
+            order.add(i);
+        Collections.shuffle(order, random);
+        Set<Integer> removed = new HashSet<Integer>(order.subList(0, intervals.length / 2));
+        for (int i : removed)
+            assertTrue(large.remove(intervals[i][0], i));
+        assertEquals(intervals.length - removed.size(), large.size());
+
+        for (int q = 0; q < 100; q++) {
+
+            long start = random.nextInt(100000), end = start + 1 + random.nextInt(1000);
+
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int i = 0; i < intervals.length; i++) {
+                if (!removed.contains(i) && intervals[i][0] < end && intervals[i][1] > start)
+                    expected.add(i);
+            }
+
+            assertEquals(expected, new HashSet<Integer>(large.findOverlapping(start, end)));
+
+        }
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInsertEmptyIntervalThrowsIllegalArgumentException() throws Exception {
+
+        tree.insert(10, 10, 5);
+
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Latency histogram
+ *
+ * A histogram of durations in buckets of powers of two microseconds. Bucket 0 counts durations under one microsecond,
+ * and bucket i counts durations of at least 2^(i-1) and under 2^i microseconds. The last bucket counts all longer
+ * durations.
+ *
+ * Durations are recorded without locks into striped counters, see <code>LongAdder</code>, so that many threads can
+ * record at once with little contention. Reads sum the stripes, so counts read while durations are being recorded
+ * may not be exactly consistent with each other.
+ */
+public class LatencyHistogram {
+
+    /* C O N S T A N T S */
+
+    public static final int BUCKETS = 40;           // number of buckets, the last up to about six days
+
+    /* V A R I A B L E S */
+
+    private final LongAdder[] buckets;              // count of durations in each bucket
+    private final LongAdder count;                  // count of all durations
+    private final LongAdder totalNanos;             // sum of all durations
+    private final LongAccumulator maxNanos;         // longest duration
+
+    /* C O N S T R U C T O R S */
+
+    public LatencyHistogram() {
+
+        buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+        count = new LongAdder();
+        totalNanos = new LongAdder();
+        maxNanos = new LongAccumulator(new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return Math.max(left, right);
+            }
+        }, 0);
+
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>percentileMicros()</code>
+     * <p>
+     *     Estimates a percentile from bucket counts, see {@link #getPercentileMicros(double) getPercentileMicros}.
+     * </p>
+     *
+     * @param counts count of durations in each bucket
+     * @param percentile percentile, from 0 to 100
+     * @return estimated duration at the percentile in microseconds, or 0 if there are no durations
+     */
+    public static long percentileMicros(long[] counts, double percentile) {
+
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+
+        // find the bucket holding the percentile
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+                return upperMicros(i);
+        }
+        return upperMicros(BUCKETS - 1);
+
+    }
+
+    /**
+     * <code>upperMicros()</code>
+     *
+     * @return upper bound of a bucket in microseconds
+     */
+    public static long upperMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>record()</code>
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+
+        buckets[bucketOf(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+
+    }
+
+    /**
+     * <code>getBucketCounts()</code>
+     *
+     * @return count of durations in each bucket
+     */
+    public long[] getBucketCounts() {
+
+        long[] ret = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            ret[i] = buckets[i].sum();
+        return ret;
+
+    }
+
+    /**
+     * <code>getPercentileMicros()</code>
+     * <p>
+     *     Estimates a percentile as the upper bound of the bucket it falls in, so is accurate to within a factor of
+     *     two.
+     * </p>
+     *
+     * @param percentile percentile, from 0 to 100
+     * @return estimated duration at the percentile in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        return percentileMicros(getBucketCounts(), percentile);
+    }
+
+    /* G E T T E R S */
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * <code>getMeanMicros()</code>
+     *
+     * @return mean duration in microseconds, or 0 if nothing has been recorded
+     */
+    public double getMeanMicros() {
+
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>bucketOf()</code>
+     *
+     * @return bucket of a duration in nanoseconds
+     */
+    private static int bucketOf(long nanos) {
+
+        long micros = nanos / 1000;
+        if (micros <= 0)
+            return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+    }
+
+}
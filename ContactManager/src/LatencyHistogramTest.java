@@ -0,0 +1,43 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() throws Exception {
+
+        // 98 calls of 3 microseconds, one of 100 microseconds and one of 5 milliseconds
+        histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++)
+            histogram.record(3000);
+        histogram.record(100000);
+        histogram.record(5000000);
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(98, counts[2]);        // 2 to 4 microseconds
+        assertEquals(1, counts[7]);         // 64 to 128 microseconds
+        assertEquals(1, counts[13]);        // 4096 to 8192 microseconds
+        assertEquals(100, histogram.getCount());
+        assertEquals(5000000, histogram.getMaxNanos());
+        assertEquals((98 * 3000 + 100000 + 5000000) / 1000.0 / 100, histogram.getMeanMicros(), 0.001);
+
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+
+        assertEquals(4, histogram.getPercentileMicros(50));
+        assertEquals(128, histogram.getPercentileMicros(99));
+        assertEquals(8192, histogram.getPercentileMicros(100));
+        assertEquals(0, new LatencyHistogram().getPercentileMicros(99));
+
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.*;
+
+/**
+ * Lazy meeting list
+ *
+ * A list of meetings in chronological order, merged from a sorted list of concrete meetings and the future occurrences
+ * of recurring meetings. The occurrences are only created as the list is read: reading the first k meetings merges
+ * the sources with a priority queue on the date of each one's next meeting, in O(k log r) time for r recurring
+ * meetings, so a series of many occurrences costs nothing until its occurrences are read. The size is known without
+ * merging.
+ *
+ * The occurrences of each recurring meeting are those not yet made concrete when the list is made. Meetings of equal
+ * date are in the order of their sources: concrete meetings first, then the recurring meetings in the order given.
+ *
+ * The list may be modified, in which case it is merged in full first. It is not synchronized.
+ */
+public class LazyMeetingList extends AbstractList<Meeting> implements RandomAccess {
+
+    /* V A R I A B L E S */
+
+    private final List<Meeting> held;           // concrete meetings, in chronological order
+    private final List<RecurringMeeting> series;    // recurring meetings
+    private final int[] from;                   // index of the first occurrence of each recurring meeting listed
+    private final int size;                     // number of meetings in the sources
+    private final List<Meeting> merged;         // meetings merged so far, in order
+    private PriorityQueue<Source> heads;        // next meeting of each source, or null until the merge starts
+    private boolean mergedAll;                  // true once every meeting is merged, after which it may be modified
+
+    /* I N N E R   C L A S S E S */
+
+    // the next meeting of a source, the concrete meetings or a recurring meeting
+    private static class Source {
+        final int number;                       // 0 for the concrete meetings, otherwise 1 + recurring meeting index
+        int next;                               // index of the next meeting in the source
+        long date;                              // date of the next meeting in epoch milliseconds
+
+        Source(int number, int next, long date) {
+            this.number = number;
+            this.next = next;
+            this.date = date;
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>LazyMeetingList()</code> constructor
+     *
+     * @param held concrete meetings in chronological order, which must not be modified afterwards
+     * @param series recurring meetings whose occurrences not yet made concrete are listed
+     */
+    public LazyMeetingList(List<Meeting> held, List<RecurringMeeting> series) {
+
+        this.held = held;
+        this.series = new ArrayList<RecurringMeeting>(series);
+        from = new int[series.size()];
+        int total = held.size();
+        for (int i = 0; i < from.length; i++) {
+            from[i] = this.series.get(i).getMaterialized();
+            total += this.series.get(i).getCount() - from[i];
+        }
+        size = total;
+        merged = new ArrayList<Meeting>();
+
+    }
+
+    // a copy of a list, sharing its sources but not its merge
+    private LazyMeetingList(LazyMeetingList list) {
+
+        held = list.held;
+        series = list.series;
+        from = list.from;
+        size = list.size;
+        merged = new ArrayList<Meeting>();
+
+    }
+
+    /* L I S T   M E T H O D S */
+
+    /**
+     * <code>get()</code>
+     * <p>
+     *     Merges the sources up to the given index, if not merged already
+     * </p>
+     *
+     * @return meeting at the given index
+     */
+    @Override
+    public Meeting get(int index) {
+
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        if (!mergedAll)
+            mergeTo(index);
+        return merged.get(index);
+
+    }
+
+    @Override
+    public int size() {
+        return mergedAll ? merged.size() : size;
+    }
+
+    @Override
+    public Meeting set(int index, Meeting m) {
+        mergeAll();
+        return merged.set(index, m);
+    }
+
+    @Override
+    public void add(int index, Meeting m) {
+        mergeAll();
+        modCount++;
+        merged.add(index, m);
+    }
+
+    @Override
+    public Meeting remove(int index) {
+        mergeAll();
+        modCount++;
+        return merged.remove(index);
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>copy()</code>
+     *
+     * @return a list of the same meetings, sharing the sources of this list, but none of the meetings merged
+     */
+    public LazyMeetingList copy() {
+        return new LazyMeetingList(this);
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>mergeTo()</code>
+     * <p>
+     *     Merges meetings from the sources until the given index is merged, taking the earliest next meeting of any
+     *     source each time
+     * </p>
+     */
+    private void mergeTo(int index) {
+
+        // start the merge with the first meeting of each source
+        if (heads == null) {
+            heads = new PriorityQueue<Source>(series.size() + 1, new Comparator<Source>() {
+                @Override
+                public int compare(Source o1, Source o2) {
+                    if (o1.date != o2.date)
+                        return o1.date < o2.date ? -1 : 1;
+                    return o1.number - o2.number;
+                }
+            });
+            if (!held.isEmpty())
+                heads.add(new Source(0, 0, held.get(0).getDate().getTimeInMillis()));
+            for (int i = 0; i < from.length; i++) {
+                RecurringMeeting r = series.get(i);
+                if (from[i] < r.getCount())
+                    heads.add(new Source(i + 1, from[i], r.getOccurrenceDate(from[i]).getTimeInMillis()));
+            }
+        }
+
+        while (merged.size() <= index) {
+
+            // take the earliest next meeting
+            Source s = heads.poll();
+            if (s.number == 0) {
+                merged.add(held.get(s.next++));
+                if (s.next < held.size()) {
+                    s.date = held.get(s.next).getDate().getTimeInMillis();
+                    heads.add(s);
+                }
+            } else {
+                RecurringMeeting r = series.get(s.number - 1);
+                merged.add(r.getOccurrence(s.next++));
+                if (s.next < r.getCount()) {
+                    s.date = r.getOccurrenceDate(s.next).getTimeInMillis();
+                    heads.add(s);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * <code>mergeAll()</code>
+     * <p>
+     *     Merges every meeting, so that the list can be modified as an ordinary list
+     * </p>
+     */
+    private void mergeAll() {
+
+        if (mergedAll)
+            return;
+        if (size > 0)
+            mergeTo(size - 1);
+        mergedAll = true;
+
+    }
+
+}
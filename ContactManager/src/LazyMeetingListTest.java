@@ -0,0 +1,76 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LazyMeetingListTest {
+
+    private Set<Contact> contacts;
+    private Calendar start;
+
+    @Before
+    public void setUp() throws Exception {
+
+        start = new GregorianCalendar(2015, Calendar.MARCH, 16, 9, 0);
+        contacts = new HashSet<Contact>();
+        contacts.add(new ContactImpl(1, "Basil Mason"));
+
+    }
+
+    @Test
+    public void testMergesInChronologicalOrder() throws Exception {
+
+        // weekly and daily series, with a concrete meeting on the second day
+        RecurringMeeting weekly = new RecurringMeeting(100, start, 30, contacts, RecurringMeeting.Frequency.WEEKLY,
+                3, 0);
+        RecurringMeeting daily = new RecurringMeeting(200, start, 30, contacts, RecurringMeeting.Frequency.DAILY,
+                3, 1);
+        Calendar second = (Calendar) start.clone();
+        second.add(Calendar.HOUR_OF_DAY, 25);
+        List<Meeting> held = Collections.<Meeting>singletonList(new FutureMeetingImpl(7, second, contacts));
+
+        List<Meeting> list = new LazyMeetingList(held, Arrays.asList(weekly, daily));
+        assertEquals(1 + 3 + 2, list.size());
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Meeting m : list)
+            ids.add(m.getId());
+        assertEquals(Arrays.asList(100, 201, 7, 202, 101, 102), ids);
+
+    }
+
+    @Test
+    public void testOccurrencesCreatedAsRead() throws Exception {
+
+        // a series too long to expand in full
+        RecurringMeeting daily = new RecurringMeeting(100, start, 30, contacts, RecurringMeeting.Frequency.DAILY,
+                Integer.MAX_VALUE - 200, 0);
+        List<Meeting> list = new LazyMeetingList(Collections.<Meeting>emptyList(), Collections.singletonList(daily));
+
+        assertEquals(Integer.MAX_VALUE - 200, list.size());
+        assertEquals(109, list.get(9).getId());
+
+    }
+
+    @Test
+    public void testCopyAndModify() throws Exception {
+
+        RecurringMeeting weekly = new RecurringMeeting(100, start, 30, contacts, RecurringMeeting.Frequency.WEEKLY,
+                3, 0);
+        LazyMeetingList list = new LazyMeetingList(Collections.<Meeting>emptyList(),
+                Collections.singletonList(weekly));
+        LazyMeetingList copy = list.copy();
+
+        // modifying a list leaves its copy as it was
+        list.remove(0);
+        list.add(new FutureMeetingImpl(7, start, contacts));
+        assertEquals(3, list.size());
+        assertEquals(101, list.get(0).getId());
+        assertEquals(7, list.get(2).getId());
+        assertEquals(3, copy.size());
+        assertEquals(100, copy.get(0).getId());
+
+    }
+
+}
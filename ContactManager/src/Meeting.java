@@ -9,10 +9,15 @@ import java.util.Set;
 /**
  * A class to represent meetings
  *
- * Meetings have unique IDs, scheduled date and a list of participating contacts
+ * Meetings have unique IDs, scheduled date, duration and a list of participating contacts
  */
 public interface Meeting {
 
+    /**
+     * The duration in minutes of meetings created without a duration.
+     */
+    int DEFAULT_DURATION = 60;
+
     /**
      * Returns the id of the meeting.
      *
@@ -27,6 +32,18 @@ public interface Meeting {
      */
     Calendar getDate();
 
+    /**
+     * Return the duration of the meeting.
+     *
+     * Meetings without a duration of their own last the default duration, so implementations written before
+     * meetings had a duration need not implement this method.
+     *
+     * @return the duration of the meeting in minutes.
+     */
+    default int getDuration() {
+        return DEFAULT_DURATION;
+    }
+
     /**
      * Return the details of people that attended the meeting.
      *
@@ -0,0 +1,27 @@
+/**
+ * Meeting columns
+ *
+ * A list of meetings whose dates and contacts can be read by position without creating meeting objects. Implemented
+ * by lists that hold meetings in columns, so that tasks which only need dates and contacts, such as a
+ * {@link MeetingCountTask MeetingCountTask}, can avoid creating a meeting for each position.
+ */
+public interface MeetingColumns {
+
+    /**
+     * @return number of meetings
+     */
+    int size();
+
+    /**
+     * @param index position of a meeting
+     * @return date of the meeting in epoch milliseconds
+     */
+    long getDateMillis(int index);
+
+    /**
+     * @param index position of a meeting
+     * @return ids of the contacts of the meeting
+     */
+    int[] getContactIds(int index);
+
+}
@@ -0,0 +1,192 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Meeting count task
+ *
+ * A fork/join task that counts meetings per contact and per month over a range of a list of meetings. Ranges larger
+ * than a threshold are split in two and counted in parallel, and the partial counts of each half are merged. Use
+ * {@link #count(List[]) count} to count whole lists on the common fork/join pool.
+ *
+ * Meetings held in columns, such as in an {@link OffHeapMeetingList OffHeapMeetingList} or a
+ * {@link PastMeetingSegment PastMeetingSegment}, are counted from their columns without creating meeting objects, see
+ * {@link MeetingColumns MeetingColumns}.
+ *
+ * The list must not be modified while it is being counted.
+ */
+public class MeetingCountTask extends RecursiveTask<MeetingCountTask.Counts> {
+
+    /* V A R I A B L E S */
+
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 4096;  // largest range counted without splitting
+
+    private final List<?> meetings;             // meetings to count
+    private final int from, to;                 // range to count, from inclusive, to exclusive
+
+    /* I N N E R   C L A S S E S */
+
+    // partial counts for a range of meetings, counters are held in arrays to be updated in place
+    static class Counts {
+        final Map<Integer, int[]> byContact = new HashMap<Integer, int[]>();
+        final Map<Integer, int[]> byMonth = new HashMap<Integer, int[]>();
+        int meetings = 0;
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public MeetingCountTask(List<?> meetings, int from, int to) {
+        this.meetings = meetings;
+        this.from = from;
+        this.to = to;
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>count()</code>
+     * <p>
+     *     Counts all of the meetings in the given lists on the common fork/join pool
+     * </p>
+     *
+     * @param meetingLists lists of meetings
+     * @return statistics of the meetings
+     */
+    public static MeetingStatistics count(List<?>... meetingLists) {
+
+        Counts counts = new Counts();
+        for (List<?> meetings : meetingLists)
+            merge(counts, ForkJoinPool.commonPool().invoke(new MeetingCountTask(meetings, 0, meetings.size())));
+
+        return new MeetingStatistics(toCountMap(counts.byContact), toCountMap(counts.byMonth), counts.meetings);
+    }
+
+    /* T A S K   M E T H O D S */
+
+    /**
+     * <code>compute()</code>
+     * <p>
+     *     Counts the range directly if it is small enough, otherwise splits it in two halves, counting one half on
+     *     this thread while the other half is forked.
+     * </p>
+     *
+     * @return counts for the range
+     */
+    @Override
+    protected Counts compute() {
+
+        // count small ranges directly
+        if (to - from <= THRESHOLD)
+            return countRange();
+
+        // split range in two
+        int mid = (from + to) >>> 1;
+        MeetingCountTask left = new MeetingCountTask(meetings, from, mid);
+        MeetingCountTask right = new MeetingCountTask(meetings, mid, to);
+
+        left.fork();                        // count left half in parallel
+        Counts ret = right.compute();       // count right half on this thread
+        merge(ret, left.join());            // merge left half into right half
+
+        return ret;
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>countRange()</code>
+     *
+     * @return counts for the range, counted on this thread
+     */
+    private Counts countRange() {
+
+        Counts ret = new Counts();
+        Calendar month = Calendar.getInstance();    // reused to find the month of each meeting
+
+        for (int i = from; i < to; i++) {
+
+            long date;
+            int[] contactIds;
+
+            // read meeting from columns if held in columns
+            if (meetings instanceof MeetingColumns) {
+
+                MeetingColumns columns = (MeetingColumns) meetings;
+                date = columns.getDateMillis(i);
+                contactIds = columns.getContactIds(i);
+
+            } else {
+
+                Meeting m = (Meeting) meetings.get(i);
+                date = m.getDate().getTimeInMillis();
+                contactIds = new int[m.getContacts().size()];
+                int j = 0;
+                for (Contact c : m.getContacts())
+                    contactIds[j++] = c.getId();
+
+            }
+
+            // count by contact
+            for (int id : contactIds)
+                increment(ret.byContact, id, 1);
+
+            // count by month
+            month.setTimeInMillis(date);
+            increment(ret.byMonth, month.get(Calendar.YEAR) * 100 + month.get(Calendar.MONTH) + 1, 1);
+
+            ret.meetings++;
+
+        }
+
+        return ret;
+    }
+
+    /**
+     * <code>merge()</code>
+     * <p>
+     *     Adds the counts of one range to the counts of another
+     * </p>
+     */
+    private static void merge(Counts into, Counts from) {
+
+        for (Map.Entry<Integer, int[]> e : from.byContact.entrySet())
+            increment(into.byContact, e.getKey(), e.getValue()[0]);
+        for (Map.Entry<Integer, int[]> e : from.byMonth.entrySet())
+            increment(into.byMonth, e.getKey(), e.getValue()[0]);
+        into.meetings += from.meetings;
+
+    }
+
+    /**
+     * <code>increment()</code>
+     * <p>
+     *     Adds to the counter held for a key, creating the counter if required
+     * </p>
+     */
+    private static void increment(Map<Integer, int[]> counters, int key, int by) {
+
+        int[] counter = counters.get(key);
+        if (counter == null) {
+            counter = new int[1];
+            counters.put(key, counter);
+        }
+        counter[0] += by;
+
+    }
+
+    /**
+     * <code>toCountMap()</code>
+     *
+     * @return map of counts from a map of counters
+     */
+    private static Map<Integer, Integer> toCountMap(Map<Integer, int[]> counters) {
+
+        Map<Integer, Integer> ret = new HashMap<Integer, Integer>();
+        for (Map.Entry<Integer, int[]> e : counters.entrySet())
+            ret.put(e.getKey(), e.getValue()[0]);
+        return ret;
+
+    }
+
+}
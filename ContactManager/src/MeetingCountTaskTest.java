@@ -0,0 +1,68 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MeetingCountTaskTest {
+
+    private List<Meeting> meetings;
+    private Contact basil, rebecca, anon;
+
+    @Before
+    public void setUp() throws Exception {
+
+        basil = new ContactImpl(1, "Basil Mason");
+        rebecca = new ContactImpl(2, "Rebecca White");
+        anon = new ContactImpl(3, "Anon");
+
+        Set<Contact> both = new HashSet<Contact>();
+        both.add(basil);
+        both.add(rebecca);
+        Set<Contact> all = new HashSet<Contact>(both);
+        all.add(anon);
+
+        // enough meetings for the task to split, 10000 in March 2015 and 5000 in April 2015
+        meetings = new ArrayList<Meeting>();
+        for (int i = 0; i < 10000; i++)
+            meetings.add(new PastMeetingImpl(i, new GregorianCalendar(2015, Calendar.MARCH, 23), both, ""));
+        for (int i = 10000; i < 15000; i++)
+            meetings.add(new FutureMeetingImpl(i, new GregorianCalendar(2015, Calendar.APRIL, 1), all));
+    }
+
+    @Test
+    public void testCount() throws Exception {
+
+        MeetingStatistics stats = MeetingCountTask.count(meetings);
+
+        assertEquals(15000, stats.getMeetingCount());
+        assertEquals(Integer.valueOf(15000), stats.getCountsByContact().get(basil.getId()));
+        assertEquals(Integer.valueOf(15000), stats.getCountsByContact().get(rebecca.getId()));
+        assertEquals(Integer.valueOf(5000), stats.getCountsByContact().get(anon.getId()));
+        assertEquals(Integer.valueOf(10000), stats.getCountsByMonth().get(201503));
+        assertEquals(Integer.valueOf(5000), stats.getCountsByMonth().get(201504));
+
+    }
+
+    @Test
+    public void testTopContactIds() throws Exception {
+
+        MeetingStatistics stats = MeetingCountTask.count(meetings);
+
+        assertEquals(Arrays.asList(basil.getId(), rebecca.getId()), stats.getTopContactIds(2));
+        assertEquals(Arrays.asList(basil.getId(), rebecca.getId(), anon.getId()), stats.getTopContactIds(50));
+        assertTrue(stats.getTopContactIds(0).isEmpty());
+
+    }
+
+    @Test
+    public void testCountEmpty() throws Exception {
+
+        MeetingStatistics stats = MeetingCountTask.count(new ArrayList<Meeting>());
+
+        assertEquals(0, stats.getMeetingCount());
+        assertTrue(stats.getCountsByContact().isEmpty());
+
+    }
+}
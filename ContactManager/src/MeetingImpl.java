@@ -13,22 +13,29 @@ public class MeetingImpl implements Meeting {
 
     private int meetingId;
     private Calendar meetingDate;
+    private int meetingDuration;
     private Set<Contact> meetingContacts;
 
     // constructors
 
     public MeetingImpl(Calendar meetingDate, Set<Contact> meetingContacts) {
 
-        this.meetingId = ContactManagerImpl.uniqueId();
-        this.meetingDate = meetingDate;
-        this.meetingContacts = meetingContacts;
+        this(ContactManagerImpl.uniqueId(), meetingDate, meetingContacts);
 
     }
 
     public MeetingImpl(int meetingId, Calendar meetingDate, Set<Contact> meetingContacts) {
+
+        // by default meetings last the default duration
+        this(meetingId, meetingDate, meetingContacts, DEFAULT_DURATION);
+
+    }
+
+    public MeetingImpl(int meetingId, Calendar meetingDate, Set<Contact> meetingContacts, int meetingDuration) {
         this.meetingId = meetingId;
         this.meetingDate = meetingDate;
         this.meetingContacts = meetingContacts;
+        this.meetingDuration = meetingDuration;
     }
 
     /** {@inheritDoc}
@@ -47,6 +54,14 @@ public class MeetingImpl implements Meeting {
         return meetingDate;
     }
 
+    /** {@inheritDoc}
+     *
+     */
+    @Override
+    public int getDuration() {
+        return meetingDuration;
+    }
+
     /** {@inheritDoc}
      *
      */
@@ -0,0 +1,108 @@
+import java.util.*;
+
+/**
+ * Meeting statistics
+ *
+ * Aggregate counts over the meetings of a contact manager, computed in one pass by a
+ * {@link MeetingCountTask MeetingCountTask}. Counts are keyed by primitive values rather than by contact or meeting
+ * objects:
+ *
+ *      by contact: contact id  -> number of meetings the contact is in
+ *      by month:   yyyyMM      -> number of meetings in the month, e.g. 201503 for March 2015
+ *
+ * A statistics object is a fixed copy of the counts at the time it was computed.
+ */
+public class MeetingStatistics {
+
+    /* V A R I A B L E S */
+
+    private final Map<Integer, Integer> countsByContact;    // contact id -> meeting count
+    private final Map<Integer, Integer> countsByMonth;      // yyyyMM -> meeting count
+    private final int meetingCount;                         // number of meetings counted
+
+    /* C O N S T R U C T O R S */
+
+    public MeetingStatistics(Map<Integer, Integer> countsByContact, Map<Integer, Integer> countsByMonth,
+                             int meetingCount) {
+        this.countsByContact = Collections.unmodifiableMap(countsByContact);
+        this.countsByMonth = Collections.unmodifiableMap(countsByMonth);
+        this.meetingCount = meetingCount;
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>getCountsByContact()</code>
+     *
+     * @return number of meetings per contact, keyed by contact id. Contacts with no meetings are not present.
+     */
+    public Map<Integer, Integer> getCountsByContact() {
+        return countsByContact;
+    }
+
+    /**
+     * <code>getCountsByMonth()</code>
+     *
+     * @return number of meetings per month, keyed by year * 100 + month (1 to 12). Months with no meetings are not
+     *         present.
+     */
+    public Map<Integer, Integer> getCountsByMonth() {
+        return countsByMonth;
+    }
+
+    /**
+     * <code>getMeetingCount()</code>
+     *
+     * @return number of meetings counted
+     */
+    public int getMeetingCount() {
+        return meetingCount;
+    }
+
+    /**
+     * <code>getTopContactIds()</code>
+     * <p>
+     *     Finds the contacts with the most meetings. A bounded heap of size n is kept while scanning the counts, so
+     *     only n contacts are ever ordered. Ties are broken by the lower contact id.
+     * </p>
+     *
+     * @param n number of contacts to return
+     * @return ids of up to n contacts, with the most meetings first
+     * @throws IllegalArgumentException if n is negative
+     */
+    public List<Integer> getTopContactIds(int n) {
+
+        if (n < 0)
+            throw new IllegalArgumentException();
+
+        // order entries with the fewest meetings first, so the head of the heap is the first to drop
+        Comparator<Map.Entry<Integer, Integer>> fewestFirst = new Comparator<Map.Entry<Integer, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Integer, Integer> o1, Map.Entry<Integer, Integer> o2) {
+                int c = o1.getValue().compareTo(o2.getValue());
+                return c != 0 ? c : o2.getKey().compareTo(o1.getKey());
+            }
+        };
+
+        // keep the n contacts with the most meetings
+        PriorityQueue<Map.Entry<Integer, Integer>> heap =
+                new PriorityQueue<Map.Entry<Integer, Integer>>(Math.max(1, n), fewestFirst);
+        for (Map.Entry<Integer, Integer> e : countsByContact.entrySet()) {
+            if (heap.size() < n) {
+                heap.add(e);
+            } else if (n > 0 && fewestFirst.compare(e, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+
+        // drain the heap, most meetings last, then reverse
+        List<Integer> ret = new ArrayList<Integer>();
+        while (!heap.isEmpty())
+            ret.add(heap.poll().getKey());
+        Collections.reverse(ret);
+
+        return ret;
+    }
+
+}
@@ -0,0 +1,126 @@
+import java.util.*;
+
+/**
+ * Metrics snapshot
+ *
+ * The values of a {@link ContactManagerMetrics ContactManagerMetrics} read at one time, for metrics to be pulled and
+ * inspected or reported without reading the live counters again. A snapshot is immutable.
+ */
+public class MetricsSnapshot {
+
+    /* V A R I A B L E S */
+
+    private final Map<String, Operation> operations;        // operations by name, in order of name
+    private final long bytesWritten;                        // bytes written by saves
+    private final long recordsWritten;                      // records written by saves
+    private final long recordsLoaded;                       // records read by loads
+
+    /* I N N E R   C L A S S E S */
+
+    /**
+     * The values recorded for one operation
+     */
+    public static class Operation {
+
+        private final String name;                      // operation name
+        private final long[] bucketCounts;              // latency histogram, see LatencyHistogram
+        private final long calls;                       // number of calls
+        private final long totalNanos;                  // sum of latencies
+        private final long maxNanos;                    // longest latency
+        private final Map<String, Long> errors;         // number of errors by exception type
+
+        public Operation(String name, long[] bucketCounts, long calls, long totalNanos, long maxNanos,
+                         Map<String, Long> errors) {
+            this.name = name;
+            this.bucketCounts = bucketCounts.clone();
+            this.calls = calls;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.errors = Collections.unmodifiableMap(new TreeMap<String, Long>(errors));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrorCount() {
+            long ret = 0;
+            for (long n : errors.values())
+                ret += n;
+            return ret;
+        }
+
+        public Map<String, Long> getErrors() {
+            return errors;
+        }
+
+        public long[] getBucketCounts() {
+            return bucketCounts.clone();
+        }
+
+        public double getMeanMicros() {
+            return calls == 0 ? 0 : totalNanos / 1000.0 / calls;
+        }
+
+        public long getMaxMicros() {
+            return maxNanos / 1000;
+        }
+
+        /**
+         * <code>getPercentileMicros()</code>
+         *
+         * @return estimated latency at the given percentile in microseconds, see {@link LatencyHistogram}
+         */
+        public long getPercentileMicros(double percentile) {
+            return LatencyHistogram.percentileMicros(bucketCounts, percentile);
+        }
+
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public MetricsSnapshot(Collection<Operation> operations, long bytesWritten, long recordsWritten,
+                           long recordsLoaded) {
+
+        Map<String, Operation> byName = new TreeMap<String, Operation>();
+        for (Operation op : operations)
+            byName.put(op.getName(), op);
+        this.operations = Collections.unmodifiableMap(byName);
+        this.bytesWritten = bytesWritten;
+        this.recordsWritten = recordsWritten;
+        this.recordsLoaded = recordsLoaded;
+
+    }
+
+    /* G E T T E R S */
+
+    public Map<String, Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * <code>getOperation()</code>
+     *
+     * @return values of the operation with the given name, or null if it has not been recorded
+     */
+    public Operation getOperation(String name) {
+        return operations.get(name);
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public long getRecordsLoaded() {
+        return recordsLoaded;
+    }
+
+}
@@ -0,0 +1,682 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Off-heap list of meetings
+ *
+ * A list of meetings held in columns of direct byte buffers, outside of the java heap. One row is held per meeting
+ * and each column holds one field of the meeting:
+ *
+ *      ids:            meeting id                              (int)
+ *      dates:          meeting date in epoch milliseconds      (long)
+ *      durations:      meeting duration in minutes             (int)
+ *      states:         future or past                          (byte)
+ *      contactOffsets: first contact of the meeting in the shared contact column   (int)
+ *      contactLengths: number of contacts in the meeting                           (int)
+ *      notesOffsets:   first byte of the meeting notes in the shared notes column  (int)
+ *      notesLengths:   number of bytes of the meeting notes                        (int)
+ *
+ * Rows are held in chunks of 256 rows, each chunk one direct buffer holding the columns of its rows one after another.
+ * The contacts of all meetings are kept by id in one shared int column, and the notes of all meetings are kept as
+ * UTF-8 bytes in one shared byte column.
+ *
+ * Meeting objects are flyweights, created by {@link #get(int) get} each time a meeting is read. Contacts are resolved
+ * from their ids with the contact index supplied by the contact manager.
+ *
+ * Rows may be replaced with {@link #set(int, Meeting) set}, which is used when a meeting becomes a past meeting or
+ * receives notes. Contacts and notes that are unchanged are reused, otherwise they are appended to the shared columns
+ * and the old values are left unreferenced until the shared columns are compacted, see {@link #compact() compact}.
+ * Only the last row can be removed, see {@link #removeLast() removeLast}, leaving its contacts and notes unreferenced.
+ *
+ * The list can be frozen as it is in constant time, see {@link #freeze(Map) freeze}, giving a read-only list that later
+ * changes do not affect. The chunks are held in a {@link VersionedList VersionedList}, and a chunk that a frozen list
+ * may read is copied before one of its rows is replaced or reused, rather than changed. Values appended to the shared
+ * columns lie beyond those of every frozen list, so are written in place.
+ */
+public class OffHeapMeetingList extends AbstractList<Meeting> implements MeetingColumns {
+
+    /* V A R I A B L E S */
+
+    private static final int INITIAL_ROWS = 1024;               // rows the shared columns initially have room for
+    private static final int CHUNK_ROWS = 256;                  // rows per chunk
+    private static final int IDS = 0,                           // start of each column within a chunk
+                             DATES = IDS + CHUNK_ROWS * 4,
+                             DURATIONS = DATES + CHUNK_ROWS * 8,
+                             STATES = DURATIONS + CHUNK_ROWS * 4,
+                             CONTACT_OFFSETS = STATES + CHUNK_ROWS,
+                             CONTACT_LENGTHS = CONTACT_OFFSETS + CHUNK_ROWS * 4,
+                             NOTES_OFFSETS = CONTACT_LENGTHS + CHUNK_ROWS * 4,
+                             NOTES_LENGTHS = NOTES_OFFSETS + CHUNK_ROWS * 4,
+                             CHUNK_BYTES = NOTES_LENGTHS + CHUNK_ROWS * 4;
+    private static final byte FUTURE = 0, PAST = 1;             // meeting states
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<Integer, Contact> contactIndex;           // contact manager contacts by id
+    private final VersionedList<Chunk> chunks;                  // row columns, in chunks of rows
+    private ByteBuffer contactColumn, notesColumn;              // shared columns
+    private int rows;                                           // number of rows in use
+    private int contactCount, notesBytes;                       // used length of the shared columns
+    private int wastedContacts, wastedNotesBytes;               // unreferenced length of the shared columns
+    private long epoch;                                         // current epoch, advanced by each freeze
+    private int frozenRows;                                     // number of rows of the largest frozen list
+
+    /* I N N E R   C L A S S E S */
+
+    // a chunk of rows, stamped with the epoch it was created in
+    private static final class Chunk {
+        final long epoch;
+        final ByteBuffer rows;
+
+        Chunk(long epoch, ByteBuffer rows) {
+            this.epoch = epoch;
+            this.rows = rows;
+        }
+    }
+
+    // a read-only list of the rows as they were when frozen
+    private static final class Frozen extends AbstractList<Meeting> implements MeetingColumns, RandomAccess {
+        private final List<Chunk> chunks;
+        private final int rows;
+        private final ByteBuffer contactColumn, notesColumn;
+        private final Map<Integer, Contact> contacts;
+
+        Frozen(List<Chunk> chunks, int rows, ByteBuffer contactColumn, ByteBuffer notesColumn,
+               Map<Integer, Contact> contacts) {
+            this.chunks = chunks;
+            this.rows = rows;
+            this.contactColumn = contactColumn;
+            this.notesColumn = notesColumn;
+            this.contacts = contacts;
+        }
+
+        @Override
+        public Meeting get(int index) {
+            checkIndex(index, rows);
+            return readMeeting(chunks, contactColumn, notesColumn, contacts, index);
+        }
+
+        @Override
+        public int size() {
+            return rows;
+        }
+
+        @Override
+        public long getDateMillis(int index) {
+            checkIndex(index, rows);
+            return chunk(chunks, index).getLong(DATES + slot(index) * 8);
+        }
+
+        @Override
+        public int[] getContactIds(int index) {
+            checkIndex(index, rows);
+            return readContactIds(chunks, contactColumn, index);
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>OffHeapMeetingList()</code> constructor
+     *
+     * @param contactIndex the contact manager's contacts by id, used to resolve the contacts of a meeting
+     */
+    public OffHeapMeetingList(Map<Integer, Contact> contactIndex) {
+
+        this.contactIndex = contactIndex;
+        chunks = new VersionedList<Chunk>();
+
+        // allocate shared columns
+        contactColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 4 * 2);
+        notesColumn = ByteBuffer.allocateDirect(INITIAL_ROWS * 16);
+
+    }
+
+    /* L I S T   M E T H O D S */
+
+    /**
+     * <code>get()</code>
+     * <p>
+     *     Creates a flyweight meeting for the given row. A past meeting is returned for past rows and a future meeting
+     *     for future rows.
+     * </p>
+     *
+     * @return meeting at the given row
+     */
+    @Override
+    public Meeting get(int index) {
+
+        checkIndex(index, rows);
+        return readMeeting(chunks, contactColumn, notesColumn, contactIndex, index);
+
+    }
+
+    /**
+     * <code>set()</code>
+     * <p>
+     *     Replaces the meeting at the given row. The previous meeting is not returned, so that no meeting is created
+     *     for it.
+     * </p>
+     *
+     * @return null
+     */
+    @Override
+    public Meeting set(int index, Meeting m) {
+
+        checkIndex(index, rows);
+        writeRow(index, m, false);
+        return null;
+
+    }
+
+    /**
+     * <code>add()</code>
+     * <p>
+     *     Appends a meeting as a new row, in a new chunk if the last chunk is full.
+     * </p>
+     *
+     * @return true
+     */
+    @Override
+    public boolean add(Meeting m) {
+
+        if (rows % CHUNK_ROWS == 0)
+            chunks.add(new Chunk(epoch, ByteBuffer.allocateDirect(CHUNK_BYTES)));
+
+        writeRow(rows, m, true);
+        rows++;
+        modCount++;
+        return true;
+
+    }
+
+    /**
+     * <code>removeLast()</code>
+     * <p>
+     *     Removes the last row, and its chunk once the chunk holds no rows. The row's contacts and notes are left
+     *     unreferenced until the shared columns are compacted. No meeting is created for the row.
+     * </p>
+     *
+     * @throws NoSuchElementException if the list is empty
+     */
+    public void removeLast() {
+
+        if (rows == 0)
+            throw new NoSuchElementException();
+
+        rows--;
+        ByteBuffer chunk = chunk(chunks, rows);
+        wastedContacts += chunk.getInt(CONTACT_LENGTHS + slot(rows) * 4);
+        wastedNotesBytes += chunk.getInt(NOTES_LENGTHS + slot(rows) * 4);
+        if (rows % CHUNK_ROWS == 0)
+            chunks.removeLast();
+        modCount++;
+
+    }
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of meetings
+     */
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    /* C O L U M N   M E T H O D S */
+
+    /**
+     * <code>getId()</code>
+     *
+     * @return id of the meeting at the given row, read without creating a meeting
+     */
+    public int getId(int index) {
+        checkIndex(index, rows);
+        return chunk(chunks, index).getInt(IDS + slot(index) * 4);
+    }
+
+    /**
+     * <code>getDateMillis()</code>
+     *
+     * @return date of the meeting at the given row in epoch milliseconds, read without creating a meeting
+     */
+    @Override
+    public long getDateMillis(int index) {
+        checkIndex(index, rows);
+        return chunk(chunks, index).getLong(DATES + slot(index) * 8);
+    }
+
+    /**
+     * <code>getContactIds()</code>
+     *
+     * @return ids of the contacts of the meeting at the given row, read without creating a meeting
+     */
+    @Override
+    public int[] getContactIds(int index) {
+        checkIndex(index, rows);
+        return readContactIds(chunks, contactColumn, index);
+    }
+
+    /**
+     * <code>isPast()</code>
+     *
+     * @return true if the meeting at the given row is a past meeting, read without creating a meeting
+     */
+    public boolean isPast(int index) {
+        checkIndex(index, rows);
+        return chunk(chunks, index).get(STATES + slot(index)) == PAST;
+    }
+
+    /**
+     * <code>hasContact()</code>
+     *
+     * @return true if the contacts of the meeting at the given row include the contact with the given id, read
+     *         without creating a meeting or an array of its contact ids
+     */
+    public boolean hasContact(int index, int contactId) {
+
+        checkIndex(index, rows);
+        ByteBuffer chunk = chunk(chunks, index);
+        int offset = chunk.getInt(CONTACT_OFFSETS + slot(index) * 4);
+        int length = chunk.getInt(CONTACT_LENGTHS + slot(index) * 4);
+        for (int i = 0; i < length; i++) {
+            if (contactColumn.getInt((offset + i) * 4) == contactId)
+                return true;
+        }
+        return false;
+
+    }
+
+    /**
+     * <code>updatePastStates()</code>
+     * <p>
+     *     Marks each future meeting dated before the given time as a past meeting with no notes. The columns are
+     *     updated directly, no meetings are created.
+     * </p>
+     *
+     * @param now time in epoch milliseconds
+     * @return number of meetings marked as past
+     */
+    public int updatePastStates(long now) {
+        return updatePastStates(now, null);
+    }
+
+    /**
+     * <code>updatePastStates()</code> with updated rows
+     * <p>
+     *     As {@link #updatePastStates(long) updatePastStates}, also adding the row of each meeting marked as past to
+     *     the given list.
+     * </p>
+     *
+     * @param now time in epoch milliseconds
+     * @param updatedRows list to add updated rows to, or null
+     * @return number of meetings marked as past
+     */
+    public int updatePastStates(long now, List<Integer> updatedRows) {
+
+        int updated = 0;
+        for (int i = 0; i < rows; i++) {
+            ByteBuffer chunk = chunk(chunks, i);
+            int slot = slot(i);
+            if (chunk.get(STATES + slot) == FUTURE && now > chunk.getLong(DATES + slot * 8)) {
+                chunk = writable(i);
+                chunk.put(STATES + slot, PAST);                 // mark as past meeting
+                chunk.putInt(NOTES_LENGTHS + slot * 4, 0);      // with empty notes
+                updated++;
+                if (updatedRows != null)
+                    updatedRows.add(i);
+            }
+        }
+        return updated;
+
+    }
+
+    /**
+     * <code>earliestFutureDate()</code>
+     *
+     * @return earliest date of the future meetings in epoch milliseconds, or <code>Long.MAX_VALUE</code> if there are
+     *         none
+     */
+    public long earliestFutureDate() {
+
+        long ret = Long.MAX_VALUE;
+        for (int i = 0; i < rows; i++) {
+            ByteBuffer chunk = chunk(chunks, i);
+            if (chunk.get(STATES + slot(i)) == FUTURE)
+                ret = Math.min(ret, chunk.getLong(DATES + slot(i) * 8));
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>compact()</code>
+     * <p>
+     *     Copies the contacts and notes still referenced by a row into new shared columns, releasing the values left
+     *     unreferenced by replaced rows. Called by the contact manager while flushing, once at least half of the
+     *     shared columns are unreferenced. A frozen list keeps the shared columns it was frozen with.
+     * </p>
+     *
+     * @return number of bytes reclaimed
+     */
+    public int compact() {
+
+        int reclaimed = getWastedBytes();
+        ByteBuffer contactsKept =
+                ByteBuffer.allocateDirect(Math.max(INITIAL_ROWS * 4, (contactCount - wastedContacts) * 4));
+        ByteBuffer notesKept = ByteBuffer.allocateDirect(Math.max(INITIAL_ROWS, notesBytes - wastedNotesBytes));
+        int contactsUsed = 0, notesUsed = 0;
+
+        for (int i = 0; i < rows; i++) {
+
+            ByteBuffer chunk = writable(i);
+            int slot = slot(i);
+
+            // copy the contacts of the row
+            int offset = chunk.getInt(CONTACT_OFFSETS + slot * 4);
+            int length = chunk.getInt(CONTACT_LENGTHS + slot * 4);
+            chunk.putInt(CONTACT_OFFSETS + slot * 4, contactsUsed);
+            for (int j = 0; j < length; j++)
+                contactsKept.putInt((contactsUsed + j) * 4, contactColumn.getInt((offset + j) * 4));
+            contactsUsed += length;
+
+            // copy the notes of the row
+            offset = chunk.getInt(NOTES_OFFSETS + slot * 4);
+            length = chunk.getInt(NOTES_LENGTHS + slot * 4);
+            chunk.putInt(NOTES_OFFSETS + slot * 4, notesUsed);
+            for (int j = 0; j < length; j++)
+                notesKept.put(notesUsed + j, notesColumn.get(offset + j));
+            notesUsed += length;
+
+        }
+
+        contactColumn = contactsKept;
+        notesColumn = notesKept;
+        contactCount = contactsUsed;
+        notesBytes = notesUsed;
+        wastedContacts = 0;
+        wastedNotesBytes = 0;
+        return reclaimed;
+
+    }
+
+    /**
+     * <code>getWastedBytes()</code>
+     *
+     * @return number of bytes of the shared columns no longer referenced by any row
+     */
+    public int getWastedBytes() {
+        return wastedContacts * 4 + wastedNotesBytes;
+    }
+
+    /**
+     * <code>getSharedBytes()</code>
+     *
+     * @return number of bytes of the shared columns in use, whether referenced or not
+     */
+    public int getSharedBytes() {
+        return contactCount * 4 + notesBytes;
+    }
+
+    /**
+     * <code>freeze()</code>
+     * <p>
+     *     Starts a new epoch, so that the chunks holding rows now are copied rather than changed from here on. No rows
+     *     are copied by the freeze itself.
+     * </p>
+     *
+     * @param contacts contacts by id, used to resolve the contacts of the meetings read from the frozen list
+     * @return a read-only list of the meetings as they are now, unaffected by later changes to this list
+     */
+    public List<Meeting> freeze(Map<Integer, Contact> contacts) {
+
+        epoch++;
+        frozenRows = Math.max(frozenRows, rows);
+        return new Frozen(chunks.freeze(), rows, contactColumn, notesColumn, contacts);
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>writeRow()</code>
+     * <p>
+     *     Writes the fields of a meeting into a row. For an existing row, contacts and notes are only appended to the
+     *     shared columns if they have changed.
+     * </p>
+     */
+    private void writeRow(int index, Meeting m, boolean newRow) {
+
+        ByteBuffer chunk = writable(index);
+        int slot = slot(index);
+        chunk.putInt(IDS + slot * 4, m.getId());
+        chunk.putLong(DATES + slot * 8, m.getDate().getTimeInMillis());
+        chunk.putInt(DURATIONS + slot * 4, m.getDuration());
+        chunk.put(STATES + slot, m instanceof PastMeeting ? PAST : FUTURE);
+
+        // meeting contacts
+        if (newRow || !sameContacts(chunk, slot, m.getContacts())) {
+
+            if (!newRow)
+                wastedContacts += chunk.getInt(CONTACT_LENGTHS + slot * 4);
+
+            // grow contact column if required
+            if ((contactCount + m.getContacts().size()) * 4 > contactColumn.capacity())
+                contactColumn = grow(contactColumn, (contactCount + m.getContacts().size()) * 4);
+
+            chunk.putInt(CONTACT_OFFSETS + slot * 4, contactCount);
+            chunk.putInt(CONTACT_LENGTHS + slot * 4, m.getContacts().size());
+            for (Contact c : m.getContacts()) {
+                contactColumn.putInt(contactCount * 4, c.getId());
+                contactCount++;
+            }
+
+        }
+
+        // meeting notes, only held for past meetings
+        String notes = (m instanceof PastMeeting) ? ((PastMeeting) m).getNotes() : "";
+        byte[] bytes = notes.getBytes(UTF8);
+        if (newRow || !sameNotes(chunk, slot, bytes)) {
+
+            if (!newRow)
+                wastedNotesBytes += chunk.getInt(NOTES_LENGTHS + slot * 4);
+
+            // grow notes column if required
+            if (notesBytes + bytes.length > notesColumn.capacity())
+                notesColumn = grow(notesColumn, notesBytes + bytes.length);
+
+            chunk.putInt(NOTES_OFFSETS + slot * 4, notesBytes);
+            chunk.putInt(NOTES_LENGTHS + slot * 4, bytes.length);
+            for (int i = 0; i < bytes.length; i++)
+                notesColumn.put(notesBytes + i, bytes[i]);
+            notesBytes += bytes.length;
+
+        }
+
+    }
+
+    /**
+     * <code>writable()</code>
+     * <p>
+     *     Returns the chunk holding the given row, ready to be written. If a frozen list may read the row and the
+     *     chunk was created before the last freeze, the chunk is first replaced by a copy created in this epoch.
+     * </p>
+     *
+     * @return chunk of the given row
+     */
+    private ByteBuffer writable(int index) {
+
+        Chunk chunk = chunks.get(index / CHUNK_ROWS);
+        if (index < frozenRows && chunk.epoch != epoch) {
+            ByteBuffer copy = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            ByteBuffer old = chunk.rows.duplicate();
+            old.clear();
+            copy.put(old);
+            copy.clear();
+            chunk = new Chunk(epoch, copy);
+            chunks.set(index / CHUNK_ROWS, chunk);
+        }
+        return chunk.rows;
+
+    }
+
+    /**
+     * <code>sameContacts()</code>
+     *
+     * @return true if the given contacts are the contacts held for the given slot of a chunk
+     */
+    private boolean sameContacts(ByteBuffer chunk, int slot, Set<Contact> meetingContacts) {
+
+        int offset = chunk.getInt(CONTACT_OFFSETS + slot * 4);
+        int length = chunk.getInt(CONTACT_LENGTHS + slot * 4);
+        if (length != meetingContacts.size())
+            return false;
+
+        // check each given contact is held, searching the few ids of the row rather than collecting them
+        for (Contact c : meetingContacts) {
+            int i = offset;
+            while (i < offset + length && contactColumn.getInt(i * 4) != c.getId())
+                i++;
+            if (i == offset + length)
+                return false;
+        }
+        return true;
+
+    }
+
+    /**
+     * <code>sameNotes()</code>
+     *
+     * @return true if the given UTF-8 bytes are the notes held for the given slot of a chunk, compared without
+     *         decoding them
+     */
+    private boolean sameNotes(ByteBuffer chunk, int slot, byte[] bytes) {
+
+        int offset = chunk.getInt(NOTES_OFFSETS + slot * 4);
+        if (chunk.getInt(NOTES_LENGTHS + slot * 4) != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (notesColumn.get(offset + i) != bytes[i])
+                return false;
+        }
+        return true;
+
+    }
+
+    /**
+     * <code>grow()</code>
+     * <p>
+     *     Copies a column into a new direct buffer of at least the required size. The capacity is at least doubled
+     *     so that appends are amortised.
+     * </p>
+     *
+     * @return the new column
+     */
+    private ByteBuffer grow(ByteBuffer column, int required) {
+
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(column.capacity() * 2, required));
+        ByteBuffer old = column.duplicate();
+        old.clear();            // copy the whole of the old column
+        grown.put(old);
+        grown.clear();
+        return grown;
+
+    }
+
+    /**
+     * <code>readMeeting()</code>
+     * <p>
+     *     Creates a flyweight meeting for the given row of the given chunks and shared columns
+     * </p>
+     *
+     * @return meeting at the given row
+     */
+    private static Meeting readMeeting(List<Chunk> chunks, ByteBuffer contactColumn, ByteBuffer notesColumn,
+                                       Map<Integer, Contact> contacts, int index) {
+
+        ByteBuffer chunk = chunk(chunks, index);
+        int slot = slot(index);
+
+        // meeting date
+        Calendar date = Calendar.getInstance();
+        date.setTimeInMillis(chunk.getLong(DATES + slot * 8));
+
+        // meeting contacts
+        Set<Contact> meetingContacts = new HashSet<Contact>();
+        int offset = chunk.getInt(CONTACT_OFFSETS + slot * 4);
+        int length = chunk.getInt(CONTACT_LENGTHS + slot * 4);
+        for (int i = offset; i < offset + length; i++)
+            meetingContacts.add(contacts.get(contactColumn.getInt(i * 4)));
+
+        // create flyweight of the meeting type
+        int id = chunk.getInt(IDS + slot * 4);
+        int duration = chunk.getInt(DURATIONS + slot * 4);
+        if (chunk.get(STATES + slot) == PAST)
+            return new PastMeetingImpl(id, date, meetingContacts, readNotes(chunk, slot, notesColumn), duration);
+        else
+            return new FutureMeetingImpl(id, date, meetingContacts, duration);
+
+    }
+
+    /**
+     * <code>readContactIds()</code>
+     *
+     * @return ids of the contacts held for the given row of the given chunks and contact column
+     */
+    private static int[] readContactIds(List<Chunk> chunks, ByteBuffer contactColumn, int index) {
+
+        ByteBuffer chunk = chunk(chunks, index);
+        int offset = chunk.getInt(CONTACT_OFFSETS + slot(index) * 4);
+        int[] ret = new int[chunk.getInt(CONTACT_LENGTHS + slot(index) * 4)];
+        for (int i = 0; i < ret.length; i++)
+            ret[i] = contactColumn.getInt((offset + i) * 4);
+        return ret;
+
+    }
+
+    /**
+     * <code>readNotes()</code>
+     *
+     * @return notes held for the given slot of a chunk
+     */
+    private static String readNotes(ByteBuffer chunk, int slot, ByteBuffer notesColumn) {
+
+        int offset = chunk.getInt(NOTES_OFFSETS + slot * 4);
+        byte[] bytes = new byte[chunk.getInt(NOTES_LENGTHS + slot * 4)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = notesColumn.get(offset + i);
+        return new String(bytes, UTF8);
+
+    }
+
+    /**
+     * <code>chunk()</code>
+     *
+     * @return the chunk of the given chunks holding the given row, to be read
+     */
+    private static ByteBuffer chunk(List<Chunk> chunks, int index) {
+        return chunks.get(index / CHUNK_ROWS).rows;
+    }
+
+    /**
+     * <code>slot()</code>
+     *
+     * @return position of the given row within its chunk
+     */
+    private static int slot(int index) {
+        return index % CHUNK_ROWS;
+    }
+
+    /**
+     * <code>checkIndex()</code>
+     * <p>
+     *     Throws an IndexOutOfBoundsException if the given row is not in use
+     * </p>
+     */
+    private static void checkIndex(int index, int rows) {
+        if (index < 0 || index >= rows)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows);
+    }
+
+}
@@ -0,0 +1,170 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OffHeapMeetingListTest {
+
+    private OffHeapMeetingList list;
+    private Map<Integer, Contact> contactIndex;
+    private Set<Contact> contacts;
+    private Calendar past, future;
+
+    @Before
+    public void setUp() throws Exception {
+
+        past = Calendar.getInstance();
+        past.add(Calendar.DAY_OF_MONTH, -1);
+        future = Calendar.getInstance();
+        future.add(Calendar.DAY_OF_MONTH, +1);
+
+        contactIndex = new HashMap<Integer, Contact>();
+        contactIndex.put(1, new ContactImpl(1, "Basil Mason"));
+        contactIndex.put(2, new ContactImpl(2, "Rebecca White"));
+        contacts = new HashSet<Contact>(contactIndex.values());
+
+        list = new OffHeapMeetingList(contactIndex);
+    }
+
+    @Test
+    public void testAddAndGet() throws Exception {
+
+        list.add(new FutureMeetingImpl(10, future, contacts));
+        list.add(new PastMeetingImpl(11, past, contacts, "Agenda"));
+
+        assertEquals(2, list.size());
+
+        Meeting fm = list.get(0);
+        assertTrue(fm instanceof FutureMeeting);
+        assertEquals(10, fm.getId());
+        assertEquals(future.getTimeInMillis(), fm.getDate().getTimeInMillis());
+        assertEquals(contacts, fm.getContacts());
+
+        Meeting pm = list.get(1);
+        assertTrue(pm instanceof PastMeeting);
+        assertEquals(11, pm.getId());
+        assertEquals("Agenda", ((PastMeeting) pm).getNotes());
+
+    }
+
+    @Test
+    public void testStateAndContactColumns() throws Exception {
+
+        list.add(new FutureMeetingImpl(10, future, Collections.singleton(contactIndex.get(1))));
+        list.add(new PastMeetingImpl(11, past, contacts, "Agenda"));
+
+        assertFalse(list.isPast(0));
+        assertTrue(list.isPast(1));
+        assertTrue(list.hasContact(0, 1));
+        assertFalse(list.hasContact(0, 2));
+        assertTrue(list.hasContact(1, 2));
+        assertFalse(list.hasContact(1, 3));
+
+    }
+
+    @Test
+    public void testSetReplacesRow() throws Exception {
+
+        list.add(new FutureMeetingImpl(10, past, contacts));
+        list.set(0, new PastMeetingImpl(list.get(0), "Notes added"));
+
+        assertEquals(1, list.size());
+        assertTrue(list.get(0) instanceof PastMeeting);
+        assertEquals("Notes added", ((PastMeeting) list.get(0)).getNotes());
+        assertEquals(contacts, list.get(0).getContacts());
+
+    }
+
+    @Test
+    public void testCompactReclaimsReplacedValues() throws Exception {
+
+        list.add(new PastMeetingImpl(10, past, contacts, "First notes"));
+        list.add(new PastMeetingImpl(11, past, contacts, "Kept"));
+        assertNull(list.set(0, new PastMeetingImpl(list.get(0), "Second")));
+        assertEquals("First notes".length(), list.getWastedBytes());
+
+        // rows read the same after compaction, with nothing unreferenced
+        int used = list.getSharedBytes();
+        assertEquals("First notes".length(), list.compact());
+        assertEquals(0, list.getWastedBytes());
+        assertEquals(used - "First notes".length(), list.getSharedBytes());
+        assertEquals("Second", ((PastMeeting) list.get(0)).getNotes());
+        assertEquals("Kept", ((PastMeeting) list.get(1)).getNotes());
+        assertEquals(contacts, list.get(1).getContacts());
+
+    }
+
+    @Test
+    public void testUpdatePastStates() throws Exception {
+
+        list.add(new FutureMeetingImpl(10, past, contacts));
+        list.add(new FutureMeetingImpl(11, future, contacts));
+        list.updatePastStates(Calendar.getInstance().getTimeInMillis());
+
+        assertTrue(list.get(0) instanceof PastMeeting);
+        assertEquals("", ((PastMeeting) list.get(0)).getNotes());
+        assertTrue(list.get(1) instanceof FutureMeeting);
+
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() throws Exception {
+
+        for (int i = 0; i < 5000; i++)
+            list.add(new PastMeetingImpl(i, past, contacts, "Meeting " + i));
+
+        assertEquals(5000, list.size());
+        assertEquals(4999, list.getId(4999));
+        assertEquals("Meeting 4999", ((PastMeeting) list.get(4999)).getNotes());
+        assertEquals("Meeting 0", ((PastMeeting) list.get(0)).getNotes());
+
+    }
+
+    @Test
+    public void testFrozenListUnchanged() throws Exception {
+
+        for (int i = 0; i < 600; i++)
+            list.add(new FutureMeetingImpl(i, past, contacts));
+        List<Meeting> frozen = list.freeze(contactIndex);
+
+        // replace rows, mark rows as past, append rows and compact
+        list.set(0, new PastMeetingImpl(list.get(0), "Notes added"));
+        list.updatePastStates(Calendar.getInstance().getTimeInMillis());
+        list.add(new PastMeetingImpl(600, past, contacts, "Appended"));
+        list.compact();
+
+        assertEquals(600, frozen.size());
+        assertTrue(frozen.get(0) instanceof FutureMeeting);
+        assertTrue(frozen.get(599) instanceof FutureMeeting);
+        assertEquals(contacts, frozen.get(0).getContacts());
+        assertEquals("Notes added", ((PastMeeting) list.get(0)).getNotes());
+        assertTrue(list.get(599) instanceof PastMeeting);
+        assertEquals(601, list.size());
+
+    }
+
+    @Test
+    public void testRemoveLast() throws Exception {
+
+        for (int i = 0; i < 257; i++)
+            list.add(new PastMeetingImpl(i, past, contacts, "Meeting " + i));
+        List<Meeting> frozen = list.freeze(contactIndex);
+
+        // remove the row of a chunk of its own, and a row of a chunk the frozen list reads, then reuse them
+        list.removeLast();
+        list.removeLast();
+        list.add(new FutureMeetingImpl(1000, future, contacts));
+        list.add(new FutureMeetingImpl(1001, future, contacts));
+
+        assertEquals(257, list.size());
+        assertEquals(1000, list.get(255).getId());
+        assertEquals(1001, list.get(256).getId());
+        assertEquals(257, frozen.size());
+        assertEquals("Meeting 255", ((PastMeeting) frozen.get(255)).getNotes());
+        assertEquals("Meeting 256", ((PastMeeting) frozen.get(256)).getNotes());
+        assertTrue(list.getWastedBytes() > 0);
+
+    }
+}
@@ -12,17 +12,25 @@ public class PastMeetingImpl implements PastMeeting {
 
     private int meetingId;
     private Calendar meetingDate;
+    private int meetingDuration;
     private Set<Contact> meetingContacts;
     private String meetingNotes;
 
     // constructors
 
-    // fully specified constructor
+    // constructor with default duration
     public PastMeetingImpl(int meetingId, Calendar meetingDate, Set<Contact> meetingContacts, String meetingNotes) {
+        this(meetingId, meetingDate, meetingContacts, meetingNotes, DEFAULT_DURATION);
+    }
+
+    // fully specified constructor
+    public PastMeetingImpl(int meetingId, Calendar meetingDate, Set<Contact> meetingContacts, String meetingNotes,
+                           int meetingDuration) {
         this.meetingId = meetingId;
         this.meetingDate = meetingDate;
         this.meetingContacts = meetingContacts;
         this.meetingNotes = meetingNotes;
+        this.meetingDuration = meetingDuration;
     }
 
     // copy constructor
@@ -31,6 +39,7 @@ public class PastMeetingImpl implements PastMeeting {
         this.meetingDate = meeting.getDate();
         this.meetingContacts = meeting.getContacts();
         this.meetingNotes = meetingNotes;
+        this.meetingDuration = meeting.getDuration();
     }
 
     /** {@inheritDoc}
@@ -57,6 +66,14 @@ public class PastMeetingImpl implements PastMeeting {
         return meetingDate;
     }
 
+    /** {@inheritDoc}
+     *
+     */
+    @Override
+    public int getDuration() {
+        return meetingDuration;
+    }
+
     /** {@inheritDoc}
      *
      */
@@ -0,0 +1,906 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Past meeting segment
+ *
+ * A binary file of past meetings, read on demand. When a segment is opened only its index is read: the id, date,
+ * duration and contacts of each meeting, and where the meeting's record lies in the file. A past meeting, with its
+ * notes, is only read from file when it is first requested, and is then held in a bounded cache of the most recently
+ * used meetings.
+ *
+ * The file holds one record per meeting, followed by the index and a trailer:
+ *
+ *      record:     id (int), date (long), duration (int), number of contacts (int), contact ids (int each),
+ *                  notes length (int), notes (UTF-8 bytes)
+ *      index:      for each record, id (int), record offset (long), record length (int), date (long),
+ *                  duration (int), number of contacts (int), contact ids (int each)
+ *      trailer:    index offset (long), number of records (int), magic number (int)
+ *
+ * Notes may be compressed, which is marked by the magic number. Each record's notes are deflated separately, so that
+ * any record can still be read on its own. Compressed segments suit meetings that are rarely read, such as those
+ * archived by the contact manager.
+ *
+ * The index is also used to answer queries by contact and by time without reading any meeting: the meetings of a
+ * contact in order of date, from a contact index built when first needed, and all meetings in order of date, from a
+ * date index built when first needed. Both are arrays of positions in the index, so a contact manager can answer its
+ * schedule, timeline and co-attendance queries for the meetings of a segment without holding them on the heap.
+ *
+ * A segment is immutable. When a meeting in the segment is replaced, for example when notes are added, a new segment
+ * is made with {@link #without(int) without}, which shares the file, index and cache of the original but no longer
+ * includes the meeting. The meetings still included are the live meetings of the segment.
+ *
+ * Reads may be made from any thread.
+ */
+public class PastMeetingSegment {
+
+    /* C O N S T A N T S */
+
+    private static final int MAGIC = 0x434d5053;    // "CMPS"
+    private static final int MAGIC_COMPRESSED = 0x434d505a;     // "CMPZ", notes compressed
+    private static final int TRAILER = 16;          // bytes in the trailer
+
+    /* V A R I A B L E S */
+
+    private final Store store;                      // file, index and cache, shared between segments
+    private final Set<Integer> superseded;          // ids of meetings no longer included
+    private volatile int[] live;                    // positions of live meetings in the index, found on first use
+
+    /* I N N E R   C L A S S E S */
+
+    // the file, index and cache of a segment
+    private static class Store {
+        final FileChannel channel;                  // file, open for reading
+        final boolean compressed;                   // true if notes are compressed
+        final int[] ids;                            // meeting id at each position
+        final long[] offsets;                       // record offset at each position
+        final int[] lengths;                        // record length at each position
+        final long[] dates;                         // meeting date at each position
+        final int[] durations;                      // meeting duration at each position
+        final int[][] contactIds;                   // meeting contacts at each position
+        final Map<Integer, Integer> positions;      // meeting id -> position
+        int maxDuration;                            // longest meeting duration in minutes
+        final LinkedHashMap<Integer, PastMeeting> cache;    // most recently used meetings, guarded by itself
+        volatile Map<Integer, int[]> byContact;     // contact id -> positions of the contact's meetings by date
+        volatile int[] byDate;                      // positions of all meetings by date
+
+        Store(FileChannel channel, boolean compressed, int count, final int cacheSize) {
+            this.channel = channel;
+            this.compressed = compressed;
+            ids = new int[count];
+            offsets = new long[count];
+            lengths = new int[count];
+            dates = new long[count];
+            durations = new int[count];
+            contactIds = new int[count][];
+            positions = new HashMap<Integer, Integer>(count * 2);
+            cache = new LinkedHashMap<Integer, PastMeeting>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, PastMeeting> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+    }
+
+    // a view of the live meetings as a list, read by position
+    private class LiveList extends AbstractList<Meeting> implements MeetingColumns, RandomAccess {
+
+        private final Map<Integer, Contact> contactIndex;   // contacts by id
+
+        LiveList(Map<Integer, Contact> contactIndex) {
+            this.contactIndex = contactIndex;
+        }
+
+        @Override
+        public Meeting get(int index) {
+            return PastMeetingSegment.this.get(store.ids[live()[index]], contactIndex);
+        }
+
+        @Override
+        public int size() {
+            return live().length;
+        }
+
+        @Override
+        public long getDateMillis(int index) {
+            return store.dates[live()[index]];
+        }
+
+        @Override
+        public int[] getContactIds(int index) {
+            return store.contactIds[live()[index]].clone();
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    private PastMeetingSegment(Store store, Set<Integer> superseded) {
+        this.store = store;
+        this.superseded = superseded;
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>open()</code>
+     * <p>
+     *     Opens a segment file, reading its index only
+     * </p>
+     *
+     * @param file segment file
+     * @param cacheSize largest number of meetings to hold in the cache
+     * @return segment of all the meetings in the file
+     * @throws IOException if the file cannot be read, or is not a segment file
+     */
+    public static PastMeetingSegment open(File file, int cacheSize) throws IOException {
+
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+
+            // read trailer
+            long size = channel.size();
+            if (size < TRAILER)
+                throw new IOException("not a past meeting segment: " + file);
+            ByteBuffer trailer = read(channel, size - TRAILER, TRAILER);
+            long indexOffset = trailer.getLong();
+            int count = trailer.getInt();
+            int magic = trailer.getInt();
+            if (magic != MAGIC && magic != MAGIC_COMPRESSED)
+                throw new IOException("not a past meeting segment: " + file);
+
+            // read index
+            Store store = new Store(channel, magic == MAGIC_COMPRESSED, count, cacheSize);
+            ByteBuffer index = read(channel, indexOffset, (int) (size - TRAILER - indexOffset));
+            for (int i = 0; i < count; i++) {
+                store.ids[i] = index.getInt();
+                store.offsets[i] = index.getLong();
+                store.lengths[i] = index.getInt();
+                store.dates[i] = index.getLong();
+                store.durations[i] = index.getInt();
+                store.contactIds[i] = new int[index.getInt()];
+                for (int j = 0; j < store.contactIds[i].length; j++)
+                    store.contactIds[i][j] = index.getInt();
+                store.positions.put(store.ids[i], i);
+                store.maxDuration = Math.max(store.maxDuration, store.durations[i]);
+            }
+
+            return new PastMeetingSegment(store, Collections.<Integer>emptySet());
+
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw new IOException("not a past meeting segment: " + file, e);
+        }
+
+    }
+
+    /**
+     * <code>write()</code>
+     * <p>
+     *     Writes a new segment file holding the live meetings of an existing segment, copied as they are without being
+     *     read as meetings, followed by the given past meetings. The file is written to a temporary file alongside,
+     *     which is then renamed over the file.
+     * </p>
+     *
+     * @param file segment file to write
+     * @param existing existing segment, or null if there is none
+     * @param pastMeetings past meetings to add, none of which are live in the existing segment
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, PastMeetingSegment existing, List<PastMeeting> pastMeetings)
+            throws IOException {
+        write(file, existing, pastMeetings, false);
+    }
+
+    /**
+     * <code>write()</code> with compression
+     * <p>
+     *     As {@link #write(File, PastMeetingSegment, List) write}, optionally compressing the notes of each meeting.
+     *     Records of the existing segment are copied as they are if compressed the same way, otherwise their notes are
+     *     read and written again.
+     * </p>
+     *
+     * @param compress true to compress notes
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, PastMeetingSegment existing, List<PastMeeting> pastMeetings,
+                             boolean compress) throws IOException {
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        long offset = 0;
+        int count = 0;
+
+        try {
+
+            // copy live records of the existing segment
+            if (existing != null) {
+                Store s = existing.store;
+                for (int i : existing.live()) {
+                    int length;
+                    if (s.compressed == compress) {
+                        ByteBuffer record = read(s.channel, s.offsets[i], s.lengths[i]);
+                        out.write(record.array(), 0, s.lengths[i]);
+                        length = s.lengths[i];
+                    } else {
+                        length = writeRecord(out, s.ids[i], s.dates[i], s.durations[i], s.contactIds[i],
+                                encode(existing.readNotes(i), compress));
+                    }
+                    writeIndexEntry(index, s.ids[i], offset, length, s.dates[i], s.durations[i], s.contactIds[i]);
+                    offset += length;
+                    count++;
+                }
+            }
+
+            // write records of the new past meetings
+            for (PastMeeting pm : pastMeetings) {
+                int[] contactIds = contactIds(pm.getContacts());
+                long date = pm.getDate().getTimeInMillis();
+                int length = writeRecord(out, pm.getId(), date, pm.getDuration(), contactIds,
+                        encode(pm.getNotes(), compress));
+                writeIndexEntry(index, pm.getId(), offset, length, date, pm.getDuration(), contactIds);
+                offset += length;
+                count++;
+            }
+
+            // write index and trailer
+            out.write(indexBytes.toByteArray());
+            out.writeLong(offset);
+            out.writeInt(count);
+            out.writeInt(compress ? MAGIC_COMPRESSED : MAGIC);
+
+        } finally {
+            out.close();
+        }
+
+        // rename the temporary file over the file, atomically if possible
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>contains()</code>
+     *
+     * @return true if the meeting with the given id is live in this segment
+     */
+    public boolean contains(int id) {
+        return store.positions.containsKey(id) && !superseded.contains(id);
+    }
+
+    /**
+     * <code>get()</code>
+     * <p>
+     *     Returns a live past meeting, from the cache if held there, otherwise read from file and added to the cache.
+     *     Contacts are found by id in the given index.
+     * </p>
+     *
+     * @param id meeting id
+     * @param contactIndex contacts by id
+     * @return the past meeting, or null if it is not live in this segment
+     * @throws UncheckedIOException if the meeting cannot be read from file
+     */
+    public PastMeeting get(int id, Map<Integer, Contact> contactIndex) {
+
+        if (!contains(id))
+            return null;
+
+        // check cache
+        synchronized (store.cache) {
+            PastMeeting cached = store.cache.get(id);
+            if (cached != null)
+                return cached;
+        }
+
+        // read record from file
+        int i = store.positions.get(id);
+        String notes;
+        try {
+            notes = readNotes(i);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // build meeting and add to cache
+        Calendar date = Calendar.getInstance();
+        date.setTimeInMillis(store.dates[i]);
+        Set<Contact> contacts = new HashSet<Contact>();
+        for (int contactId : store.contactIds[i])
+            contacts.add(contactIndex.get(contactId));
+        PastMeeting ret = new PastMeetingImpl(id, date, contacts, notes, store.durations[i]);
+
+        synchronized (store.cache) {
+            store.cache.put(id, ret);
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>getDateMillis()</code>
+     *
+     * @return date of a meeting in the segment in epoch milliseconds, read from the index
+     */
+    public long getDateMillis(int id) {
+        return store.dates[store.positions.get(id)];
+    }
+
+    /**
+     * <code>getDuration()</code>
+     *
+     * @return duration of a meeting in the segment in minutes, read from the index
+     */
+    public int getDuration(int id) {
+        return store.durations[store.positions.get(id)];
+    }
+
+    /**
+     * <code>getContactIds()</code>
+     *
+     * @return ids of the contacts of a meeting in the segment, read from the index
+     */
+    public int[] getContactIds(int id) {
+        return store.contactIds[store.positions.get(id)].clone();
+    }
+
+    /**
+     * <code>getIds()</code>
+     *
+     * @return ids of the live meetings, in the order they are held in the file
+     */
+    public List<Integer> getIds() {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        for (int i : live())
+            ret.add(store.ids[i]);
+        return ret;
+
+    }
+
+    /**
+     * <code>getIdsWithContact()</code>
+     *
+     * @return ids of the live meetings that include the given contact, found from the index
+     */
+    public List<Integer> getIdsWithContact(int contactId) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        int[] positions = byContact().get(contactId);
+        if (positions != null) {
+            for (int i : positions) {
+                if (!superseded.contains(store.ids[i]))
+                    ret.add(store.ids[i]);
+            }
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>getIdsWithContact()</code> within a range
+     *
+     * @param contactId id of a contact
+     * @param from start of the range in epoch milliseconds, included
+     * @param to end of the range in epoch milliseconds, excluded
+     * @return ids of the live meetings that include the given contact dated within the range, in order of date,
+     *         found from the index in O(log n + k) time
+     */
+    public List<Integer> getIdsWithContact(int contactId, long from, long to) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        int[] positions = byContact().get(contactId);
+        if (positions != null) {
+            for (int j = firstFrom(positions, from); j < positions.length && store.dates[positions[j]] < to; j++) {
+                if (!superseded.contains(store.ids[positions[j]]))
+                    ret.add(store.ids[positions[j]]);
+            }
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>findOverlapping()</code>
+     *
+     * @param contactId id of a contact
+     * @param start start of the time in epoch milliseconds
+     * @param end end of the time in epoch milliseconds
+     * @return ids of the live meetings that include the given contact and overlap the time, in order of date
+     */
+    public List<Integer> findOverlapping(int contactId, long start, long end) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        Iterator<long[]> times = times(contactId, start);
+        while (times.hasNext()) {
+            long[] t = times.next();
+            if (t[0] >= end)
+                break;
+            ret.add((int) t[2]);
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>endingAfter()</code>
+     * <p>
+     *     Iterates lazily over the live meetings of a contact that end after the given time, in order of start. Each
+     *     meeting is returned as an array of its start and end in epoch milliseconds, as by
+     *     {@link IntervalTree#endingAfter(long) IntervalTree.endingAfter}.
+     * </p>
+     *
+     * @param contactId id of a contact
+     * @param time time in epoch milliseconds
+     * @return iterator over the meetings of the contact ending after the given time
+     */
+    public Iterator<long[]> endingAfter(int contactId, long time) {
+
+        final Iterator<long[]> times = times(contactId, time);
+
+        return new Iterator<long[]>() {
+
+            @Override
+            public boolean hasNext() {
+                return times.hasNext();
+            }
+
+            @Override
+            public long[] next() {
+                return Arrays.copyOf(times.next(), 2);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>startingBefore()</code>
+     * <p>
+     *     Iterates lazily over the ids of the live meetings dated before the given time, latest first, from the date
+     *     index.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return iterator over the ids of the meetings dated before the time
+     */
+    public Iterator<Integer> startingBefore(long time) {
+
+        final int[] positions = byDate();
+        final int first = firstFrom(positions, time);
+
+        return new Iterator<Integer>() {
+
+            private int next = advance(first - 1);     // index in the date index of the next meeting, or -1
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if (next < 0)
+                    throw new NoSuchElementException();
+                int ret = store.ids[positions[next]];
+                next = advance(next - 1);
+                return ret;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            // the index of the latest live meeting at or before the given index, or -1 if none
+            private int advance(int j) {
+                while (j >= 0 && superseded.contains(store.ids[positions[j]]))
+                    j--;
+                return j;
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>getIdsWithin()</code>
+     *
+     * @param from start of the range in epoch milliseconds, included
+     * @param to end of the range in epoch milliseconds, excluded
+     * @return ids of the live meetings dated within the range, in order of date, found from the date index in
+     *         O(log n + k) time
+     */
+    public List<Integer> getIdsWithin(long from, long to) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        int[] positions = byDate();
+        for (int j = firstFrom(positions, from); j < positions.length && store.dates[positions[j]] < to; j++) {
+            if (!superseded.contains(store.ids[positions[j]]))
+                ret.add(store.ids[positions[j]]);
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>getIdsOnDate()</code>
+     *
+     * @return ids of the live meetings dated at exactly the given time, found from the index
+     */
+    public List<Integer> getIdsOnDate(long date) {
+
+        List<Integer> ret = new ArrayList<Integer>();
+        for (int i : live()) {
+            if (store.dates[i] == date)
+                ret.add(store.ids[i]);
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>asList()</code>
+     *
+     * @param contactIndex contacts by id, used for meetings read from file
+     * @return a read-only list view of the live meetings, whose dates and contacts can be read from the index
+     *         without reading meetings, see {@link MeetingColumns MeetingColumns}
+     */
+    public List<Meeting> asList(Map<Integer, Contact> contactIndex) {
+        return new LiveList(contactIndex);
+    }
+
+    /**
+     * <code>without()</code>
+     *
+     * @param id id of a meeting that has been replaced
+     * @return a segment sharing the file, index and cache of this segment, without the given meeting
+     */
+    public PastMeetingSegment without(int id) {
+        return without(Collections.singleton(id));
+    }
+
+    /**
+     * <code>without()</code> many
+     *
+     * @param ids ids of meetings that have been replaced or moved
+     * @return a segment sharing the file, index and cache of this segment, without the given meetings
+     */
+    public PastMeetingSegment without(Collection<Integer> ids) {
+
+        Set<Integer> ret = new HashSet<Integer>(superseded);
+        ret.addAll(ids);
+        return new PastMeetingSegment(store, Collections.unmodifiableSet(ret));
+
+    }
+
+    /**
+     * <code>isCompressed()</code>
+     *
+     * @return true if the notes of the segment are compressed
+     */
+    public boolean isCompressed() {
+        return store.compressed;
+    }
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of live meetings
+     */
+    public int size() {
+        return live().length;
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>live()</code>
+     *
+     * @return positions of the live meetings in the index
+     */
+    private int[] live() {
+
+        int[] ret = live;
+        if (ret == null) {
+            ret = new int[store.ids.length - superseded.size()];
+            int j = 0;
+            for (int i = 0; i < store.ids.length; i++) {
+                if (!superseded.contains(store.ids[i]))
+                    ret[j++] = i;
+            }
+            if (j < ret.length)
+                ret = Arrays.copyOf(ret, j);
+            live = ret;
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>byContact()</code>
+     *
+     * @return the contact index of the segment, from contact id to the positions of the contact's meetings in order
+     *         of date, built on first use
+     */
+    private Map<Integer, int[]> byContact() {
+
+        Map<Integer, int[]> ret = store.byContact;
+        if (ret == null) {
+            synchronized (store) {
+                ret = store.byContact;
+                if (ret == null) {
+
+                    // count the meetings of each contact, then fill in their positions
+                    Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+                    for (int[] ids : store.contactIds) {
+                        for (int id : ids) {
+                            int[] count = counts.get(id);
+                            if (count == null)
+                                counts.put(id, count = new int[1]);
+                            count[0]++;
+                        }
+                    }
+                    ret = new HashMap<Integer, int[]>(counts.size() * 2);
+                    for (Map.Entry<Integer, int[]> e : counts.entrySet()) {
+                        ret.put(e.getKey(), new int[e.getValue()[0]]);
+                        e.getValue()[0] = 0;
+                    }
+                    for (int i : byDate()) {
+                        for (int id : store.contactIds[i])
+                            ret.get(id)[counts.get(id)[0]++] = i;
+                    }
+
+                    store.byContact = ret;
+                }
+            }
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>byDate()</code>
+     *
+     * @return the date index of the segment, the positions of all meetings in order of date, built on first use
+     */
+    private int[] byDate() {
+
+        int[] ret = store.byDate;
+        if (ret == null) {
+            Integer[] positions = new Integer[store.ids.length];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = i;
+            Arrays.sort(positions, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Long.compare(store.dates[o1], store.dates[o2]);
+                }
+            });
+            ret = new int[positions.length];
+            for (int i = 0; i < ret.length; i++)
+                ret[i] = positions[i];
+            store.byDate = ret;
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>firstFrom()</code>
+     *
+     * @return index of the first of the given positions, in order of date, dated at or after the given time, or the
+     *         number of positions if none is, by binary search
+     */
+    private int firstFrom(int[] positions, long time) {
+
+        int lo = 0, hi = positions.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (store.dates[positions[mid]] >= time)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+
+    }
+
+    /**
+     * <code>times()</code>
+     * <p>
+     *     Iterates lazily over the live meetings of a contact that end after the given time, in order of start. A
+     *     meeting ends after the time only if it starts less than the longest duration before it, so the search
+     *     starts there. Each meeting is returned as an array of its start, end, and id.
+     * </p>
+     *
+     * @return iterator over the meetings of the contact ending after the given time
+     */
+    private Iterator<long[]> times(int contactId, final long time) {
+
+        int[] found = byContact().get(contactId);
+        final int[] positions = found == null ? new int[0] : found;
+        final int first = firstFrom(positions, time - store.maxDuration * 60000L + 1);
+
+        return new Iterator<long[]>() {
+
+            private int next = advance(first);     // index in the contact's positions of the next meeting
+
+            @Override
+            public boolean hasNext() {
+                return next < positions.length;
+            }
+
+            @Override
+            public long[] next() {
+                if (next >= positions.length)
+                    throw new NoSuchElementException();
+                int i = positions[next];
+                next = advance(next + 1);
+                return new long[] {store.dates[i], end(i), store.ids[i]};
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            // the index of the first live meeting at or after the given index that ends after the time
+            private int advance(int j) {
+                while (j < positions.length
+                        && (end(positions[j]) <= time || superseded.contains(store.ids[positions[j]])))
+                    j++;
+                return j;
+            }
+
+            // the end of the meeting at the given position in epoch milliseconds
+            private long end(int i) {
+                return store.dates[i] + store.durations[i] * 60000L;
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>readNotes()</code>
+     *
+     * @return notes of the meeting at the given position, read from file
+     */
+    private String readNotes(int i) throws IOException {
+
+        ByteBuffer record = read(store.channel, store.offsets[i], store.lengths[i]);
+        int from = 4 + 8 + 4 + 4 + 4 * store.contactIds[i].length + 4;
+        if (!store.compressed)
+            return new String(record.array(), from, record.limit() - from, StandardCharsets.UTF_8);
+
+        // inflate compressed notes
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(record.array(), from,
+                record.limit() - from));
+        ByteArrayOutputStream notes = new ByteArrayOutputStream();
+        byte[] buf = new byte[512];
+        int n;
+        while ((n = in.read(buf)) > 0)
+            notes.write(buf, 0, n);
+        return new String(notes.toByteArray(), StandardCharsets.UTF_8);
+
+    }
+
+    /**
+     * <code>encode()</code>
+     *
+     * @return notes as UTF-8 bytes, deflated if to be compressed
+     */
+    private static byte[] encode(String notes, boolean compress) throws IOException {
+
+        byte[] ret = notes.getBytes(StandardCharsets.UTF_8);
+        if (!compress)
+            return ret;
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(deflated);
+        out.write(ret);
+        out.close();
+        return deflated.toByteArray();
+
+    }
+
+    /**
+     * <code>writeRecord()</code>
+     * <p>
+     *     Writes the record of a meeting
+     * </p>
+     *
+     * @return length of the record in bytes
+     */
+    private static int writeRecord(DataOutputStream out, int id, long date, int duration, int[] contactIds,
+                                   byte[] notes) throws IOException {
+
+        out.writeInt(id);
+        out.writeLong(date);
+        out.writeInt(duration);
+        out.writeInt(contactIds.length);
+        for (int contactId : contactIds)
+            out.writeInt(contactId);
+        out.writeInt(notes.length);
+        out.write(notes);
+        return 4 + 8 + 4 + 4 + 4 * contactIds.length + 4 + notes.length;
+
+    }
+
+    /**
+     * <code>read()</code>
+     *
+     * @return a heap buffer of the given number of bytes read from a file at the given position
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+
+        ByteBuffer ret = ByteBuffer.allocate(length);
+        while (ret.hasRemaining()) {
+            if (channel.read(ret, position + ret.position()) < 0)
+                throw new EOFException();
+        }
+        ret.flip();
+        return ret;
+
+    }
+
+    /**
+     * <code>writeIndexEntry()</code>
+     * <p>
+     *     Writes the index entry of a record
+     * </p>
+     */
+    private static void writeIndexEntry(DataOutputStream index, int id, long offset, int length, long date,
+                                        int duration, int[] contactIds) throws IOException {
+
+        index.writeInt(id);
+        index.writeLong(offset);
+        index.writeInt(length);
+        index.writeLong(date);
+        index.writeInt(duration);
+        index.writeInt(contactIds.length);
+        for (int contactId : contactIds)
+            index.writeInt(contactId);
+
+    }
+
+    /**
+     * <code>contactIds()</code>
+     *
+     * @return ids of the given contacts
+     */
+    private static int[] contactIds(Set<Contact> contacts) {
+
+        int[] ret = new int[contacts.size()];
+        int i = 0;
+        for (Contact c : contacts)
+            ret[i++] = c.getId();
+        return ret;
+
+    }
+
+}
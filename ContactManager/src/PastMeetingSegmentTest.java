@@ -0,0 +1,170 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PastMeetingSegmentTest {
+
+    private File file;
+    private Map<Integer, Contact> contactIndex;
+    private Contact basil, rebecca;
+    private PastMeetingSegment segment;
+
+    @Before
+    public void setUp() throws Exception {
+
+        file = File.createTempFile("contacts", ".past");
+        file.deleteOnExit();
+
+        basil = new ContactImpl(1, "Basil Mason");
+        rebecca = new ContactImpl(2, "Rebecca White");
+        contactIndex = new HashMap<Integer, Contact>();
+        contactIndex.put(basil.getId(), basil);
+        contactIndex.put(rebecca.getId(), rebecca);
+
+        Set<Contact> both = new HashSet<Contact>(contactIndex.values());
+        Set<Contact> justBasil = Collections.singleton(basil);
+
+        // three past meetings, the last with notes that are not ascii
+        List<PastMeeting> pms = new ArrayList<PastMeeting>();
+        pms.add(new PastMeetingImpl(10, date(1000), both, "Agenda", 30));
+        pms.add(new PastMeetingImpl(11, date(2000), justBasil, ""));
+        pms.add(new PastMeetingImpl(12, date(2000), both, "Caf\u00e9 \u2013 minutes", 90));
+        PastMeetingSegment.write(file, null, pms);
+
+        segment = PastMeetingSegment.open(file, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+
+        PastMeeting pm = segment.get(12, contactIndex);
+        assertEquals(12, pm.getId());
+        assertEquals("Caf\u00e9 \u2013 minutes", pm.getNotes());
+        assertEquals(90, pm.getDuration());
+        assertEquals(2000, pm.getDate().getTimeInMillis());
+        assertEquals(2, pm.getContacts().size());
+
+        // cached meetings are returned again
+        assertTrue(pm == segment.get(12, contactIndex));
+
+        assertTrue(segment.get(99, contactIndex) == null);
+
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+
+        assertEquals(3, segment.size());
+        assertEquals(Arrays.asList(10, 11, 12), segment.getIds());
+        assertEquals(Arrays.asList(10, 12), segment.getIdsWithContact(rebecca.getId()));
+        assertEquals(Arrays.asList(11, 12), segment.getIdsOnDate(2000));
+        assertEquals(30, segment.getDuration(10));
+        assertEquals(Meeting.DEFAULT_DURATION, segment.getDuration(11));
+
+    }
+
+    @Test
+    public void testQueriesByContactAndTime() throws Exception {
+
+        long end10 = 1000 + 30 * 60000L;        // end of the first meeting
+
+        assertEquals(Arrays.asList(10), segment.getIdsWithContact(rebecca.getId(), 0, 1500));
+        assertEquals(Arrays.asList(10, 11, 12), segment.getIdsWithContact(basil.getId(), 1000, 3000));
+        assertEquals(Arrays.asList(12), segment.findOverlapping(rebecca.getId(), end10, end10 + 1));
+
+        Iterator<long[]> times = segment.endingAfter(rebecca.getId(), end10);
+        assertArrayEquals(new long[] {2000, 2000 + 90 * 60000L}, times.next());
+        assertFalse(times.hasNext());
+
+        // latest first, skipping meetings no longer included
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Iterator<Integer> it = segment.without(12).startingBefore(2001); it.hasNext(); )
+            ids.add(it.next());
+        assertEquals(Arrays.asList(11, 10), ids);
+
+    }
+
+    @Test
+    public void testWithout() throws Exception {
+
+        PastMeetingSegment without = segment.without(10);
+
+        assertFalse(without.contains(10));
+        assertTrue(without.get(10, contactIndex) == null);
+        assertEquals(Arrays.asList(12), without.getIdsWithContact(rebecca.getId()));
+        assertEquals(2, without.asList(contactIndex).size());
+
+        // original is unchanged
+        assertTrue(segment.contains(10));
+
+    }
+
+    @Test
+    public void testWriteFromExisting() throws Exception {
+
+        // rewrite without one meeting, adding a new one
+        List<PastMeeting> added = new ArrayList<PastMeeting>();
+        added.add(new PastMeetingImpl(13, date(3000), Collections.singleton(rebecca), "New"));
+        File other = File.createTempFile("contacts", ".past");
+        other.deleteOnExit();
+        PastMeetingSegment.write(other, segment.without(11), added);
+
+        PastMeetingSegment rewritten = PastMeetingSegment.open(other, 10);
+        assertEquals(Arrays.asList(10, 12, 13), rewritten.getIds());
+        assertEquals("Agenda", rewritten.get(10, contactIndex).getNotes());
+        assertEquals("New", rewritten.get(13, contactIndex).getNotes());
+        other.delete();
+
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+
+        // rewrite compressed, adding a new meeting with long notes
+        StringBuilder notes = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            notes.append("Minutes of the meeting. ");
+        List<PastMeeting> added = new ArrayList<PastMeeting>();
+        added.add(new PastMeetingImpl(13, date(3000), Collections.singleton(rebecca), notes.toString()));
+        File other = File.createTempFile("contacts", ".archive");
+        other.deleteOnExit();
+        PastMeetingSegment.write(other, segment, added, true);
+
+        PastMeetingSegment compressed = PastMeetingSegment.open(other, 10);
+        assertTrue(compressed.isCompressed());
+        assertFalse(segment.isCompressed());
+        assertTrue(other.length() < file.length() + notes.length());
+        assertEquals("Caf\u00e9 \u2013 minutes", compressed.get(12, contactIndex).getNotes());
+        assertEquals(notes.toString(), compressed.get(13, contactIndex).getNotes());
+        assertEquals(Arrays.asList(10, 12, 13), compressed.getIdsWithContact(rebecca.getId()));
+        other.delete();
+
+    }
+
+    @Test
+    public void testCount() throws Exception {
+
+        MeetingStatistics stats = MeetingCountTask.count(segment.asList(contactIndex));
+
+        assertEquals(3, stats.getMeetingCount());
+        assertEquals(Integer.valueOf(3), stats.getCountsByContact().get(basil.getId()));
+        assertEquals(Integer.valueOf(2), stats.getCountsByContact().get(rebecca.getId()));
+
+    }
+
+    private static Calendar date(long time) {
+        Calendar ret = Calendar.getInstance();
+        ret.setTimeInMillis(time);
+        return ret;
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.*;
+
+/**
+ * Query cache
+ *
+ * A bounded cache of the results of contact manager queries, keyed by the query and its argument. Once the cache is
+ * full, the least recently used result is evicted.
+ *
+ * Results are invalidated precisely. The meeting lists of a contact are invalidated when that contact's meetings
+ * change, see {@link #invalidateContact(int) invalidateContact}, leaving the results for other contacts cached.
+ * Searches for contacts by name are invalidated when a contact is added whose name they would match, see
+ * {@link #invalidateName(String) invalidateName}.
+ *
+ * Hits and misses are counted. The cache is not synchronized, and is used by the contact manager while it is locked.
+ */
+public class QueryCache {
+
+    /* E N U M S */
+
+    // the cached queries
+    public enum Query {
+        FUTURE_BY_CONTACT,      // future meetings of a contact id
+        PAST_BY_CONTACT,        // past meetings of a contact id
+        CONTACTS_BY_NAME        // contacts whose names contain a string
+    }
+
+    /* V A R I A B L E S */
+
+    private final LinkedHashMap<Key, Object> results;   // results by query and argument, least recently used first
+    private final Set<String> names;                    // arguments of the cached searches by name
+    private long hits;                                  // number of queries answered from the cache
+    private long misses;                                // number of queries not in the cache
+
+    /* I N N E R   C L A S S E S */
+
+    // a query and its argument
+    private static class Key {
+        final Query query;
+        final Object argument;
+
+        Key(Query query, Object argument) {
+            this.query = query;
+            this.argument = argument;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return query == other.query && argument.equals(other.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + argument.hashCode();
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>QueryCache()</code> constructor
+     *
+     * @param capacity largest number of results to hold
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public QueryCache(final int capacity) {
+
+        if (capacity < 1)
+            throw new IllegalArgumentException();
+
+        names = new HashSet<String>();
+        results = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() <= capacity)
+                    return false;
+                if (eldest.getKey().query == Query.CONTACTS_BY_NAME)
+                    names.remove(eldest.getKey().argument);
+                return true;
+            }
+        };
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>get()</code>
+     *
+     * @param query query made
+     * @param argument argument of the query
+     * @return the cached result, or null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Query query, Object argument) {
+
+        Object ret = results.get(new Key(query, argument));
+        if (ret == null)
+            misses++;
+        else
+            hits++;
+        return (T) ret;
+
+    }
+
+    /**
+     * <code>put()</code>
+     * <p>
+     *     Caches the result of a query. The result must not be changed once cached.
+     * </p>
+     *
+     * @param query query made
+     * @param argument argument of the query
+     * @param result result of the query
+     */
+    public void put(Query query, Object argument, Object result) {
+
+        results.put(new Key(query, argument), result);
+        if (query == Query.CONTACTS_BY_NAME)
+            names.add((String) argument);
+
+    }
+
+    /**
+     * <code>invalidateContact()</code>
+     * <p>
+     *     Removes the meeting lists of a contact, whose meetings have changed
+     * </p>
+     *
+     * @param contactId id of the contact
+     */
+    public void invalidateContact(int contactId) {
+
+        results.remove(new Key(Query.FUTURE_BY_CONTACT, contactId));
+        results.remove(new Key(Query.PAST_BY_CONTACT, contactId));
+
+    }
+
+    /**
+     * <code>invalidateContacts()</code>
+     * <p>
+     *     Removes the meeting lists of each of the given contacts
+     * </p>
+     *
+     * @param contacts contacts whose meetings have changed
+     */
+    public void invalidateContacts(Set<Contact> contacts) {
+
+        for (Contact c : contacts)
+            invalidateContact(c.getId());
+
+    }
+
+    /**
+     * <code>invalidateName()</code>
+     * <p>
+     *     Removes the searches by name that a newly added contact would match
+     * </p>
+     *
+     * @param name name of the added contact
+     */
+    public void invalidateName(String name) {
+
+        Iterator<String> i = names.iterator();
+        while (i.hasNext()) {
+            String searched = i.next();
+            if (name.contains(searched)) {
+                results.remove(new Key(Query.CONTACTS_BY_NAME, searched));
+                i.remove();
+            }
+        }
+
+    }
+
+    /* G E T T E R S */
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+}
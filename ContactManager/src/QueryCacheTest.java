@@ -0,0 +1,70 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+    private QueryCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+
+        cache = new QueryCache(3);
+        cache.put(QueryCache.Query.FUTURE_BY_CONTACT, 1, Arrays.asList("future 1"));
+        cache.put(QueryCache.Query.PAST_BY_CONTACT, 1, Arrays.asList("past 1"));
+        cache.put(QueryCache.Query.CONTACTS_BY_NAME, "Bas", Collections.singleton("Basil"));
+    }
+
+    @Test
+    public void testGet() throws Exception {
+
+        List<String> future = cache.get(QueryCache.Query.FUTURE_BY_CONTACT, 1);
+        assertEquals(Arrays.asList("future 1"), future);
+        assertNull(cache.get(QueryCache.Query.FUTURE_BY_CONTACT, 2));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+    }
+
+    @Test
+    public void testInvalidateContact() throws Exception {
+
+        cache.invalidateContact(2);
+        assertEquals(3, cache.size());
+
+        cache.invalidateContact(1);
+        assertNull(cache.get(QueryCache.Query.FUTURE_BY_CONTACT, 1));
+        assertNull(cache.get(QueryCache.Query.PAST_BY_CONTACT, 1));
+        assertNotNull(cache.get(QueryCache.Query.CONTACTS_BY_NAME, "Bas"));
+
+    }
+
+    @Test
+    public void testInvalidateName() throws Exception {
+
+        // a contact whose name does not match leaves the search cached
+        cache.invalidateName("Rebecca White");
+        assertNotNull(cache.get(QueryCache.Query.CONTACTS_BY_NAME, "Bas"));
+
+        cache.invalidateName("Basil Mason");
+        assertNull(cache.get(QueryCache.Query.CONTACTS_BY_NAME, "Bas"));
+        assertEquals(2, cache.size());
+
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        // use the oldest result, so the next oldest is evicted
+        cache.get(QueryCache.Query.FUTURE_BY_CONTACT, 1);
+        cache.put(QueryCache.Query.FUTURE_BY_CONTACT, 2, Arrays.asList("future 2"));
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(QueryCache.Query.PAST_BY_CONTACT, 1));
+        assertNotNull(cache.get(QueryCache.Query.FUTURE_BY_CONTACT, 1));
+
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.*;
+
+/**
+ * Recurring meeting
+ *
+ * A series of meetings held at a regular frequency (daily, weekly or monthly) from a first date, for a set number of
+ * occurrences. A series is held as one record however many occurrences it has. Occurrences are expanded on demand as
+ * flyweight future meetings, see {@link #getOccurrence(int) getOccurrence}.
+ *
+ * Each occurrence has its own meeting id. The ids of a series are reserved as one block when it is created, so the
+ * id of an occurrence is the first id of the series plus the index of the occurrence.
+ *
+ * As occurrences pass, the contact manager makes them concrete past meetings. The number of occurrences made concrete
+ * is held by the series, and only the occurrences after them are expanded.
+ */
+public class RecurringMeeting {
+
+    /* V A R I A B L E S */
+
+    private final int firstId;                  // id of the first occurrence
+    private final Calendar start;               // date of the first occurrence
+    private final int duration;                 // duration of each occurrence in minutes
+    private final Set<Contact> contacts;        // contacts of each occurrence
+    private final Frequency frequency;          // frequency of occurrences
+    private final int count;                    // number of occurrences
+    private int materialized;                   // number of occurrences made concrete past meetings
+
+    /* E N U M S */
+
+    // frequencies of occurrences, as a calendar field and amount to add between occurrences
+    public enum Frequency {
+        DAILY ("daily", Calendar.DAY_OF_MONTH, 1),
+        WEEKLY ("weekly", Calendar.DAY_OF_MONTH, 7),
+        MONTHLY ("monthly", Calendar.MONTH, 1);
+        private final String frequency;
+        private final int field, amount;
+        private Frequency(final String frequency, final int field, final int amount) {
+            this.frequency = frequency;
+            this.field = field;
+            this.amount = amount;
+        }
+        @Override
+        public String toString() {
+            return frequency;
+        }
+        // the frequency with the given name
+        public static Frequency fromString(String frequency) {
+            for (Frequency f : values()) {
+                if (f.frequency.equals(frequency))
+                    return f;
+            }
+            throw new IllegalArgumentException(frequency);
+        }
+    }
+
+    /* I N N E R   C L A S S E S */
+
+    // a view of the occurrences not yet made concrete as a list, read by position
+    private class OccurrenceList extends AbstractList<Meeting> implements MeetingColumns, RandomAccess {
+
+        private final int first;            // index of the first occurrence in the view
+        private final int[] contactIds;     // ids of the contacts of each occurrence
+
+        OccurrenceList(int first) {
+            this.first = first;
+            contactIds = new int[contacts.size()];
+            int i = 0;
+            for (Contact c : contacts)
+                contactIds[i++] = c.getId();
+        }
+
+        @Override
+        public Meeting get(int index) {
+            return getOccurrence(first + index);
+        }
+
+        @Override
+        public int size() {
+            return count - first;
+        }
+
+        @Override
+        public long getDateMillis(int index) {
+            return getOccurrenceDate(first + index).getTimeInMillis();
+        }
+
+        @Override
+        public int[] getContactIds(int index) {
+            return contactIds.clone();
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public RecurringMeeting(int firstId, Calendar start, int duration, Set<Contact> contacts, Frequency frequency,
+                            int count, int materialized) {
+        this.firstId = firstId;
+        this.start = start;
+        this.duration = duration;
+        this.contacts = contacts;
+        this.frequency = frequency;
+        this.count = count;
+        this.materialized = materialized;
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>countUntil()</code>
+     *
+     * @return number of occurrences of a series from the start date up to and including the until date
+     */
+    public static int countUntil(Calendar start, Frequency frequency, Calendar until) {
+
+        // find the first occurrence after until by doubling then halving
+        int hi = 1;
+        while (!occurrenceDate(start, frequency, hi).after(until))
+            hi *= 2;
+        int lo = 0;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (occurrenceDate(start, frequency, mid).after(until))
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+
+    }
+
+    /* G E T T E R S */
+
+    public int getFirstId() {
+        return firstId;
+    }
+
+    public Calendar getStart() {
+        return start;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public Set<Contact> getContacts() {
+        return contacts;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getMaterialized() {
+        return materialized;
+    }
+
+    /* O C C U R R E N C E S */
+
+    /**
+     * <code>indexOf()</code>
+     *
+     * @return index of the occurrence with the given meeting id, or -1 if the id is not of this series
+     */
+    public int indexOf(int id) {
+        return (id >= firstId && id < firstId + count) ? id - firstId : -1;
+    }
+
+    /**
+     * <code>getOccurrenceDate()</code>
+     *
+     * @return date of the occurrence at the given index
+     */
+    public Calendar getOccurrenceDate(int index) {
+        return occurrenceDate(start, frequency, index);
+    }
+
+    /**
+     * <code>getOccurrence()</code>
+     *
+     * @return a future meeting for the occurrence at the given index
+     */
+    public FutureMeeting getOccurrence(int index) {
+        return new FutureMeetingImpl(firstId + index, getOccurrenceDate(index), contacts, duration);
+    }
+
+    /**
+     * <code>firstFrom()</code>
+     * <p>
+     *     Finds the first occurrence not yet made concrete that is on or after the given time, by binary search over
+     *     the occurrences.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return index of the occurrence, or the number of occurrences if there is none
+     */
+    public int firstFrom(long time) {
+
+        int lo = materialized, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getOccurrenceDate(mid).getTimeInMillis() >= time)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+
+    }
+
+    /**
+     * <code>endingAfter()</code>
+     * <p>
+     *     Iterates lazily over the occurrences not yet made concrete that end after the given time, in order. Each
+     *     occurrence is returned as an array of its start and end in epoch milliseconds.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return iterator over the occurrences ending after the given time
+     */
+    public Iterator<long[]> endingAfter(long time) {
+
+        final int first = firstFrom(time - duration * 60000L + 1);
+
+        return new Iterator<long[]>() {
+
+            private int next = first;   // index of the next occurrence
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public long[] next() {
+                if (next >= count)
+                    throw new NoSuchElementException();
+                long start = getOccurrenceDate(next++).getTimeInMillis();
+                return new long[] {start, start + duration * 60000L};
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /**
+     * <code>asList()</code>
+     *
+     * @return a read-only list view of the occurrences not yet made concrete, whose dates and contacts can be read
+     *         without creating meetings, see {@link MeetingColumns MeetingColumns}. The view does not change as
+     *         occurrences are made concrete.
+     */
+    public List<Meeting> asList() {
+        return new OccurrenceList(materialized);
+    }
+
+    /**
+     * <code>materializeBefore()</code>
+     * <p>
+     *     Makes the occurrences before the given time concrete past meetings with no notes. The past meetings are
+     *     returned to be added to the contact manager's meetings, and are no longer expanded by the series.
+     * </p>
+     *
+     * @param time time in epoch milliseconds
+     * @return past meetings for the occurrences made concrete, in order
+     */
+    public List<PastMeeting> materializeBefore(long time) {
+
+        List<PastMeeting> ret = new ArrayList<PastMeeting>();
+        while (materialized < count && getOccurrenceDate(materialized).getTimeInMillis() < time) {
+            ret.add(new PastMeetingImpl(firstId + materialized, getOccurrenceDate(materialized), contacts, "",
+                    duration));
+            materialized++;
+        }
+        return ret;
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>occurrenceDate()</code>
+     *
+     * @return date of the occurrence at the given index of a series. Each date is found from the start date, so that
+     *         monthly occurrences keep the day of the month where possible.
+     */
+    private static Calendar occurrenceDate(Calendar start, Frequency frequency, int index) {
+
+        Calendar ret = (Calendar) start.clone();
+        ret.add(frequency.field, frequency.amount * index);
+        return ret;
+
+    }
+
+}
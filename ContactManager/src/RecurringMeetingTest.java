@@ -0,0 +1,69 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RecurringMeetingTest {
+
+    private RecurringMeeting weekly;
+    private Calendar start;
+
+    @Before
+    public void setUp() throws Exception {
+
+        start = new GregorianCalendar(2015, Calendar.MARCH, 16, 9, 0);
+
+        Set<Contact> contacts = new HashSet<Contact>();
+        contacts.add(new ContactImpl(1, "Basil Mason"));
+
+        weekly = new RecurringMeeting(100, start, 30, contacts, RecurringMeeting.Frequency.WEEKLY, 10, 0);
+    }
+
+    @Test
+    public void testOccurrences() throws Exception {
+
+        FutureMeeting third = weekly.getOccurrence(2);
+
+        assertEquals(102, third.getId());
+        assertEquals(new GregorianCalendar(2015, Calendar.MARCH, 30, 9, 0), third.getDate());
+        assertEquals(30, third.getDuration());
+        assertEquals(2, weekly.indexOf(102));
+        assertEquals(-1, weekly.indexOf(110));
+
+    }
+
+    @Test
+    public void testFirstFrom() throws Exception {
+
+        assertEquals(0, weekly.firstFrom(start.getTimeInMillis()));
+        assertEquals(1, weekly.firstFrom(start.getTimeInMillis() + 1));
+        assertEquals(10, weekly.firstFrom(new GregorianCalendar(2016, 0, 1).getTimeInMillis()));
+
+    }
+
+    @Test
+    public void testMaterializeBefore() throws Exception {
+
+        List<PastMeeting> past = weekly.materializeBefore(new GregorianCalendar(2015, Calendar.MARCH, 24).getTimeInMillis());
+
+        assertEquals(2, past.size());
+        assertEquals(101, past.get(1).getId());
+        assertEquals(2, weekly.getMaterialized());
+        assertEquals(2, weekly.firstFrom(start.getTimeInMillis()));
+
+    }
+
+    @Test
+    public void testCountUntil() throws Exception {
+
+        assertEquals(3, RecurringMeeting.countUntil(start, RecurringMeeting.Frequency.WEEKLY,
+                new GregorianCalendar(2015, Calendar.MARCH, 30, 9, 0)));
+        assertEquals(12, RecurringMeeting.countUntil(start, RecurringMeeting.Frequency.MONTHLY,
+                new GregorianCalendar(2016, Calendar.MARCH, 1)));
+        assertEquals(0, RecurringMeeting.countUntil(start, RecurringMeeting.Frequency.DAILY,
+                new GregorianCalendar(2015, Calendar.MARCH, 1)));
+
+    }
+}
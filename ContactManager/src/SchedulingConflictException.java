@@ -0,0 +1,31 @@
+import java.util.List;
+
+/**
+ * Scheduling conflict exception
+ *
+ * Thrown when a meeting cannot be scheduled because one or more of its contacts already has a meeting at an
+ * overlapping time. The conflicting meetings are held by the exception.
+ *
+ * As a conflict is a problem with the arguments given for the new meeting, this is an IllegalArgumentException.
+ */
+public class SchedulingConflictException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Meeting> conflicts;  // meetings overlapping the requested time
+
+    public SchedulingConflictException(List<Meeting> conflicts) {
+        super(conflicts.size() + " conflicting meeting(s)");
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * <code>getConflicts()</code>
+     *
+     * @return meetings overlapping the requested time, in chronological order
+     */
+    public List<Meeting> getConflicts() {
+        return conflicts;
+    }
+
+}
@@ -0,0 +1,144 @@
+import java.util.*;
+
+/**
+ * Slow operation log
+ *
+ * A bounded log of the contact manager calls that took longer than a threshold, held in memory in a ring buffer. Once
+ * the log is full, each new entry overwrites the oldest.
+ *
+ * Each {@link Entry Entry} records the shape of the call rather than its arguments: the method, a short description
+ * of the arguments such as the number of ids or the length of a search string, the size of the result, and how many
+ * meetings and contacts were scanned to answer it. This shows which callers hit the linear scans of the contact
+ * manager.
+ *
+ * Methods are synchronized, so the log can be read from any thread while calls are recorded.
+ */
+public class SlowOperationLog {
+
+    /* V A R I A B L E S */
+
+    private final Entry[] entries;                  // ring buffer of entries
+    private int next;                               // position of the next entry to write
+    private long count;                             // number of entries ever added
+
+    /* I N N E R   C L A S S E S */
+
+    /**
+     * A slow call
+     */
+    public static class Entry {
+
+        private final long time;                    // time the call ended in epoch milliseconds
+        private final String method;                // method called
+        private final String shape;                 // description of the arguments
+        private final int resultSize;               // number of items returned
+        private final long meetingsScanned;         // meetings scanned by the call
+        private final long contactsScanned;         // contacts scanned by the call
+        private final long nanos;                   // duration of the call
+
+        public Entry(long time, String method, String shape, int resultSize, long meetingsScanned,
+                     long contactsScanned, long nanos) {
+            this.time = time;
+            this.method = method;
+            this.shape = shape;
+            this.resultSize = resultSize;
+            this.meetingsScanned = meetingsScanned;
+            this.contactsScanned = contactsScanned;
+            this.nanos = nanos;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getShape() {
+            return shape;
+        }
+
+        public int getResultSize() {
+            return resultSize;
+        }
+
+        public long getMeetingsScanned() {
+            return meetingsScanned;
+        }
+
+        public long getContactsScanned() {
+            return contactsScanned;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return method + " [" + shape + "] " + (nanos / 1000) + "us, result " + resultSize + ", scanned "
+                    + meetingsScanned + " meetings and " + contactsScanned + " contacts";
+        }
+
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>SlowOperationLog()</code> constructor
+     *
+     * @param capacity largest number of entries to hold
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SlowOperationLog(int capacity) {
+
+        if (capacity < 1)
+            throw new IllegalArgumentException();
+        entries = new Entry[capacity];
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>add()</code>
+     * <p>
+     *     Adds an entry, overwriting the oldest if the log is full
+     * </p>
+     *
+     * @param entry entry to add
+     */
+    public synchronized void add(Entry entry) {
+
+        entries[next] = entry;
+        next = (next + 1) % entries.length;
+        count++;
+
+    }
+
+    /**
+     * <code>getEntries()</code>
+     *
+     * @return the entries held, oldest first
+     */
+    public synchronized List<Entry> getEntries() {
+
+        List<Entry> ret = new ArrayList<Entry>(entries.length);
+        int held = (int) Math.min(count, entries.length);
+        for (int i = 0; i < held; i++)
+            ret.add(entries[(next - held + i + entries.length) % entries.length]);
+        return ret;
+
+    }
+
+    /**
+     * <code>getCount()</code>
+     *
+     * @return number of entries ever added, including those overwritten
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,50 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SlowOperationLogTest {
+
+    private SlowOperationLog log;
+
+    @Before
+    public void setUp() throws Exception {
+
+        log = new SlowOperationLog(3);
+    }
+
+    @Test
+    public void testGetEntries() throws Exception {
+
+        assertTrue(log.getEntries().isEmpty());
+
+        log.add(entry("getMeeting"));
+        log.add(entry("getContacts(String)"));
+        List<SlowOperationLog.Entry> entries = log.getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("getMeeting", entries.get(0).getMethod());
+        assertEquals("getContacts(String)", entries.get(1).getMethod());
+
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+
+        // five entries in a log of three, keeping the last three, oldest first
+        for (int i = 0; i < 5; i++)
+            log.add(entry("call " + i));
+
+        List<SlowOperationLog.Entry> entries = log.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("call 2", entries.get(0).getMethod());
+        assertEquals("call 4", entries.get(2).getMethod());
+        assertEquals(5, log.getCount());
+
+    }
+
+    private static SlowOperationLog.Entry entry(String method) {
+        return new SlowOperationLog.Entry(0, method, "id", 1, 10, 0, 20000000);
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * Store snapshot
+ *
+ * A point-in-time copy of the state of a contact manager: its unique ID seed, contacts, meetings and recurring
+ * meetings. A snapshot is captured while the contact manager is locked, and can then be read, for example written to
+ * file, while the contact manager continues to change.
+ *
+ * A snapshot is captured by copying the given state, see {@link #capture(int, Collection, List, Collection)
+ * capture}: meetings are immutable, so the list of meetings is copied by reference, while contacts and recurring
+ * meetings can change, so each is copied. A contact manager instead builds its snapshots from lists frozen in constant
+ * time, see {@link VersionedList VersionedList}, and only captures the few changes written by a delta save.
+ *
+ * Where past meetings are loaded on demand, a snapshot also holds the {@link PastMeetingSegment PastMeetingSegment} of
+ * past meetings not held in its list of meetings. Segments are immutable, so the segment is held by reference. Likewise
+ * it holds the compressed segment of archived past meetings, if any.
+ */
+public class StoreSnapshot {
+
+    /* V A R I A B L E S */
+
+    private final int cmId;                                 // unique ID seed
+    private final List<Contact> contacts;                   // copies of contacts
+    private final List<Meeting> meetings;                   // meetings, past and future
+    private final List<RecurringMeeting> recurringMeetings; // copies of recurring meetings
+    private final PastMeetingSegment pastSegment;           // past meetings read on demand, or null
+    private final PastMeetingSegment archiveSegment;        // archived past meetings, or null
+
+    /* C O N S T R U C T O R S */
+
+    public StoreSnapshot(int cmId, List<Contact> contacts, List<Meeting> meetings,
+                         List<RecurringMeeting> recurringMeetings) {
+        this(cmId, contacts, meetings, recurringMeetings, null);
+    }
+
+    public StoreSnapshot(int cmId, List<Contact> contacts, List<Meeting> meetings,
+                         List<RecurringMeeting> recurringMeetings, PastMeetingSegment pastSegment) {
+        this(cmId, contacts, meetings, recurringMeetings, pastSegment, null);
+    }
+
+    public StoreSnapshot(int cmId, List<Contact> contacts, List<Meeting> meetings,
+                         List<RecurringMeeting> recurringMeetings, PastMeetingSegment pastSegment,
+                         PastMeetingSegment archiveSegment) {
+        this.cmId = cmId;
+        this.contacts = Collections.unmodifiableList(contacts);
+        this.meetings = Collections.unmodifiableList(meetings);
+        this.recurringMeetings = Collections.unmodifiableList(recurringMeetings);
+        this.pastSegment = pastSegment;
+        this.archiveSegment = archiveSegment;
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>capture()</code>
+     * <p>
+     *     Captures a snapshot of the given state. The caller must hold whatever lock guards the state.
+     * </p>
+     *
+     * @return snapshot of the state
+     */
+    public static StoreSnapshot capture(int cmId, Collection<Contact> contacts, List<?> meetings,
+                                        Collection<RecurringMeeting> recurringMeetings) {
+        return capture(cmId, contacts, meetings, recurringMeetings, null);
+    }
+
+    /**
+     * <code>capture()</code> with past meeting segment
+     * <p>
+     *     As {@link #capture(int, Collection, List, Collection) capture}, also holding a segment of past meetings.
+     * </p>
+     *
+     * @return snapshot of the state
+     */
+    public static StoreSnapshot capture(int cmId, Collection<Contact> contacts, List<?> meetings,
+                                        Collection<RecurringMeeting> recurringMeetings,
+                                        PastMeetingSegment pastSegment) {
+        return capture(cmId, contacts, meetings, recurringMeetings, pastSegment, null);
+    }
+
+    /**
+     * <code>capture()</code> with past meeting and archive segments
+     * <p>
+     *     As {@link #capture(int, Collection, List, Collection, PastMeetingSegment) capture}, also holding a segment
+     *     of archived past meetings.
+     * </p>
+     *
+     * @return snapshot of the state
+     */
+    public static StoreSnapshot capture(int cmId, Collection<Contact> contacts, List<?> meetings,
+                                        Collection<RecurringMeeting> recurringMeetings,
+                                        PastMeetingSegment pastSegment, PastMeetingSegment archiveSegment) {
+
+        // copy contacts, since their notes can change, as read-only copies for the views that read them
+        List<Contact> contactCopies = new ArrayList<Contact>(contacts.size());
+        for (Contact c : contacts)
+            contactCopies.add(ContactImpl.readOnly(c.getId(), c.getName(), c.getNotes()));
+
+        // copy the list of meetings by reference, since meetings are replaced rather than changed
+        List<Meeting> meetingCopies = new ArrayList<Meeting>(meetings.size());
+        for (Object m : meetings.toArray())
+            meetingCopies.add((Meeting) m);
+
+        // copy recurring meetings, since the number of occurrences made concrete can change
+        List<RecurringMeeting> seriesCopies = new ArrayList<RecurringMeeting>(recurringMeetings.size());
+        for (RecurringMeeting r : recurringMeetings)
+            seriesCopies.add(new RecurringMeeting(r.getFirstId(), r.getStart(), r.getDuration(), r.getContacts(),
+                    r.getFrequency(), r.getCount(), r.getMaterialized()));
+
+        return new StoreSnapshot(cmId, contactCopies, meetingCopies, seriesCopies, pastSegment, archiveSegment);
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>split()</code>
+     * <p>
+     *     Splits the snapshot into shards by id: each contact, meeting and recurring meeting is placed in the shard
+     *     numbered by its id modulo the number of shards. Every shard holds the unique ID seed.
+     * </p>
+     *
+     * @param shards number of shards
+     * @return snapshot of each shard, in order of shard number
+     */
+    public List<StoreSnapshot> split(int shards) {
+
+        List<List<Contact>> shardContacts = new ArrayList<List<Contact>>(shards);
+        List<List<Meeting>> shardMeetings = new ArrayList<List<Meeting>>(shards);
+        List<List<RecurringMeeting>> shardSeries = new ArrayList<List<RecurringMeeting>>(shards);
+        for (int i = 0; i < shards; i++) {
+            shardContacts.add(new ArrayList<Contact>());
+            shardMeetings.add(new ArrayList<Meeting>());
+            shardSeries.add(new ArrayList<RecurringMeeting>());
+        }
+
+        // place each item by its id
+        for (Contact c : contacts)
+            shardContacts.get(shardOf(c.getId(), shards)).add(c);
+        for (Meeting m : meetings)
+            shardMeetings.get(shardOf(m.getId(), shards)).add(m);
+        for (RecurringMeeting r : recurringMeetings)
+            shardSeries.get(shardOf(r.getFirstId(), shards)).add(r);
+
+        List<StoreSnapshot> ret = new ArrayList<StoreSnapshot>(shards);
+        for (int i = 0; i < shards; i++)
+            ret.add(new StoreSnapshot(cmId, shardContacts.get(i), shardMeetings.get(i), shardSeries.get(i)));
+        return ret;
+
+    }
+
+    /* G E T T E R S */
+
+    public int getCmId() {
+        return cmId;
+    }
+
+    public List<Contact> getContacts() {
+        return contacts;
+    }
+
+    public List<Meeting> getMeetings() {
+        return meetings;
+    }
+
+    public List<RecurringMeeting> getRecurringMeetings() {
+        return recurringMeetings;
+    }
+
+    public PastMeetingSegment getPastSegment() {
+        return pastSegment;
+    }
+
+    public PastMeetingSegment getArchiveSegment() {
+        return archiveSegment;
+    }
+
+    /**
+     * <code>getPastSegments()</code>
+     *
+     * @return the segments of past meetings not held in the list of meetings, read on demand then archived
+     */
+    public List<PastMeetingSegment> getPastSegments() {
+
+        List<PastMeetingSegment> ret = new ArrayList<PastMeetingSegment>(2);
+        if (pastSegment != null)
+            ret.add(pastSegment);
+        if (archiveSegment != null)
+            ret.add(archiveSegment);
+        return ret;
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>shardOf()</code>
+     *
+     * @return shard number of an id
+     */
+    private static int shardOf(int id, int shards) {
+        return ((id % shards) + shards) % shards;
+    }
+
+}
@@ -0,0 +1,112 @@
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * String pool
+ *
+ * Canonicalizes strings, so that equal names and notes held by many contacts and meetings share one instance rather
+ * than each holding a copy. The empty string, the most common notes, is always the one empty string constant.
+ *
+ * The pool holds its strings weakly: a string held by no contact or meeting is reclaimed by the garbage collector
+ * and drops out of the pool, so the pool never keeps alive strings that are no longer in use.
+ *
+ * Lookups are counted, with the number that found an equal string already pooled and the characters those would
+ * otherwise have held in copies, see {@link #getDeduplicated() getDeduplicated} and
+ * {@link #getCharsSaved() getCharsSaved}.
+ *
+ * Methods are synchronized, so one pool can be shared by contact managers loading on several threads, see
+ * {@link ContactManagerOptions#setStringPool(StringPool) setStringPool}.
+ */
+public class StringPool {
+
+    /* V A R I A B L E S */
+
+    private final WeakHashMap<String, WeakReference<String>> strings;   // pooled strings, weakly held
+    private long lookups;                           // number of strings canonicalized
+    private long deduplicated;                      // number of strings replaced by an equal pooled string
+    private long charsSaved;                        // characters in the strings replaced
+
+    /* C O N S T R U C T O R S */
+
+    public StringPool() {
+        strings = new WeakHashMap<String, WeakReference<String>>();
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>intern()</code>
+     * <p>
+     *     Returns the pooled string equal to the given string, adding the given string to the pool if there is none
+     * </p>
+     *
+     * @param s string to canonicalize, may be null
+     * @return a string equal to the given string, or null if it is null
+     */
+    public synchronized String intern(String s) {
+
+        if (s == null)
+            return null;
+        lookups++;
+
+        // the empty string is always the constant
+        if (s.isEmpty()) {
+            if (s != "")
+                deduplicated++;
+            return "";
+        }
+
+        // return the pooled string if still held, otherwise pool this one
+        WeakReference<String> ref = strings.get(s);
+        String ret = ref == null ? null : ref.get();
+        if (ret == null) {
+            strings.put(s, new WeakReference<String>(s));
+            return s;
+        }
+        if (ret != s) {
+            deduplicated++;
+            charsSaved += s.length();
+        }
+        return ret;
+
+    }
+
+    /* G E T T E R S */
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of strings pooled and not yet reclaimed
+     */
+    public synchronized int size() {
+        return strings.size();
+    }
+
+    /**
+     * <code>getLookups()</code>
+     *
+     * @return number of strings canonicalized
+     */
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * <code>getDeduplicated()</code>
+     *
+     * @return number of strings replaced by an equal string already pooled
+     */
+    public synchronized long getDeduplicated() {
+        return deduplicated;
+    }
+
+    /**
+     * <code>getCharsSaved()</code>
+     *
+     * @return number of characters in the strings replaced, no longer held in copies
+     */
+    public synchronized long getCharsSaved() {
+        return charsSaved;
+    }
+
+}
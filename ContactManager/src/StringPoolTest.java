@@ -0,0 +1,48 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+    private StringPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new StringPool();
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+
+        String first = new String("Basil");
+        String second = new String("Basil");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(2, pool.getLookups());
+        assertEquals(1, pool.getDeduplicated());
+        assertEquals(5, pool.getCharsSaved());
+        assertEquals(1, pool.size());
+
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+
+        assertSame("", pool.intern(new String("")));
+        assertSame("", pool.intern(""));
+        assertEquals(1, pool.getDeduplicated());
+        assertEquals(0, pool.size());
+
+    }
+
+    @Test
+    public void testNull() throws Exception {
+
+        assertNull(pool.intern(null));
+        assertEquals(0, pool.getLookups());
+
+    }
+
+}
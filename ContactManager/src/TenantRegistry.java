@@ -0,0 +1,504 @@
+import java.io.Closeable;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tenant registry
+ *
+ * Hosts the contact managers of many tenants in one process. Each tenant has its own contact manager, with its files
+ * in its own directory under a root directory, named after the tenant ID, see
+ * {@link ContactManagerOptions#setDirectory(File) setDirectory}.
+ *
+ * A tenant's contact manager is opened on first access, see {@link #get(String) get}, so tenants that are not in use
+ * take no memory. At most a given number of tenants are held open at once: opening another flushes and closes the
+ * least recently used. Tenants not accessed for a given time are also flushed and closed, by a background sweep or on
+ * calling {@link #evictIdle() evictIdle}.
+ *
+ * All tenants write their files on one shared thread, rather than a thread each, see
+ * {@link ContactManagerOptions#setFlushExecutor(java.util.concurrent.ExecutorService) setFlushExecutor}, and share
+ * the other options of the template options given, such as the metrics. Tenants also share one
+ * {@link StringPool StringPool}, so that names and notes common to many tenants are held once.
+ *
+ * The contact manager returned by the registry is a handle on the tenant, not the tenant's contact manager itself, and
+ * stays valid however often the tenant is closed. Each call made on the handle takes a lease on the tenant for the
+ * length of the call, reopening the tenant first if it has been closed, so callers may hold on to the handle. A tenant
+ * is only closed once no call holds a lease on it: a tenant chosen for closing while leased is closed when its last
+ * lease is released, so more than the largest number of tenants may be open while calls are in progress. Changes are
+ * therefore never made to a closed contact manager, nor is a tenant's directory ever open in two contact managers.
+ */
+public class TenantRegistry implements Closeable {
+
+    /* V A R I A B L E S */
+
+    private final File root;                            // directory holding a directory per tenant
+    private final ContactManagerOptions template;       // options for each tenant's contact manager
+    private final int maxActive;                        // largest number of tenants open at once
+    private final long idleMillis;                      // time after last access at which a tenant is closed
+    private final Map<String, Tenant> tenants;          // all tenants accessed, by ID
+    private final LinkedHashMap<String, Tenant> active; // open tenants, least recently used first
+    private final ExecutorService flushExecutor;        // shared thread for writing to file
+    private final ScheduledExecutorService sweeper;     // background thread closing idle tenants
+    private boolean closed;                             // whether the registry has been closed
+
+    /* I N N E R   C L A S S E S */
+
+    /**
+     * A tenant, open while it holds a contact manager
+     */
+    private static class Tenant {
+
+        private final String id;                        // tenant ID
+        private ContactManager handle;                  // handle returned to callers
+        private ContactManagerImpl manager;             // contact manager, or null if closed
+        private int leases;                             // calls in progress on the contact manager
+        private boolean closePending;                   // whether to close when the last lease is released
+        private volatile long lastAccess;               // time of last access in epoch milliseconds
+
+        Tenant(String id) {
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * A handle on a tenant, passing each call to the tenant's contact manager under a lease
+     */
+    private class TenantContactManager implements ContactManager {
+
+        private final Tenant tenant;                    // tenant called
+
+        TenantContactManager(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        @Override
+        public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.addFutureMeeting(contacts, date);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public PastMeeting getPastMeeting(int id) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getPastMeeting(id);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public FutureMeeting getFutureMeeting(int id) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getFutureMeeting(id);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public Meeting getMeeting(int id) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getMeeting(id);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public List<Meeting> getFutureMeetingList(Contact contact) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getFutureMeetingList(contact);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public List<Meeting> getFutureMeetingList(Calendar date) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getFutureMeetingList(date);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public List<PastMeeting> getPastMeetingList(Contact contact) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getPastMeetingList(contact);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                manager.addNewPastMeeting(contacts, date, text);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public void addMeetingNotes(int id, String text) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                manager.addMeetingNotes(id, text);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public void addNewContact(String name, String notes) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                manager.addNewContact(name, notes);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public Set<Contact> getContacts(int... ids) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getContacts(ids);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public Set<Contact> getContacts(String name) {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.getContacts(name);
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public void flush() {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                manager.flush();
+            } finally {
+                release(tenant);
+            }
+        }
+
+        @Override
+        public ContactManager snapshot() {
+            ContactManagerImpl manager = acquire(tenant);
+            try {
+                return manager.snapshot();
+            } finally {
+                release(tenant);
+            }
+        }
+
+    }
+
+    /* C O N S T R U C T O R S */
+
+    /**
+     * <code>TenantRegistry()</code> constructor
+     *
+     * @param root directory holding a directory per tenant
+     * @param template options for each tenant's contact manager, copied with the tenant's directory
+     * @param maxActive largest number of tenants open at once
+     * @param idleMillis time after last access at which a tenant is closed, or 0 to close tenants only to make room
+     * @throws IllegalArgumentException if maxActive is not positive, or idleMillis is negative
+     */
+    public TenantRegistry(File root, ContactManagerOptions template, int maxActive, long idleMillis) {
+
+        if (maxActive < 1 || idleMillis < 0)
+            throw new IllegalArgumentException();
+
+        this.root = root;
+        this.template = template.copy();
+        if (this.template.getStringPool() == null)
+            this.template.setStringPool(new StringPool());
+        this.maxActive = maxActive;
+        this.idleMillis = idleMillis;
+        tenants = new HashMap<String, Tenant>();
+        active = new LinkedHashMap<String, Tenant>(16, 0.75f, true);
+        flushExecutor = Executors.newSingleThreadExecutor(daemonThreads("tenant-registry-flush"));
+
+        // sweep for idle tenants at a fraction of the idle time
+        if (idleMillis > 0) {
+            long period = Math.max(1, idleMillis / 4);
+            sweeper = Executors.newSingleThreadScheduledExecutor(daemonThreads("tenant-registry-sweep"));
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    evictIdle();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>get()</code>
+     * <p>
+     *     Returns a handle on the contact manager of a tenant, opening the tenant if it is not open. Opening a tenant
+     *     reads its files, which is done without holding up access to other tenants. If more than the largest number
+     *     of tenants are then open, the least recently used are flushed and closed.
+     * </p>
+     *
+     * @param tenantId tenant ID, of letters, digits, hyphens and underscores
+     * @return a handle on the contact manager of the tenant, the same for every call with the tenant ID
+     * @throws IllegalArgumentException if the tenant ID is empty or has other characters
+     * @throws IllegalStateException if the registry has been closed
+     */
+    public ContactManager get(String tenantId) {
+
+        if (tenantId == null || !tenantId.matches("[A-Za-z0-9_-]+"))
+            throw new IllegalArgumentException();
+
+        // find tenant
+        Tenant tenant;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException();
+            tenant = tenants.get(tenantId);
+            if (tenant == null) {
+                tenant = new Tenant(tenantId);
+                tenant.handle = new TenantContactManager(tenant);
+                tenants.put(tenantId, tenant);
+            }
+        }
+
+        // open tenant
+        acquire(tenant);
+        release(tenant);
+
+        return tenant.handle;
+
+    }
+
+    /**
+     * <code>evictIdle()</code>
+     * <p>
+     *     Flushes and closes the tenants not accessed within the idle time. Called periodically in the background
+     *     when the idle time is set.
+     * </p>
+     *
+     * @return number of tenants closed
+     */
+    public int evictIdle() {
+
+        if (idleMillis == 0)
+            return 0;
+
+        // find idle tenants
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        List<Tenant> evicted = new ArrayList<Tenant>();
+        synchronized (this) {
+            for (Tenant t : active.values()) {
+                if (t.lastAccess < cutoff)
+                    evicted.add(t);
+            }
+            for (Tenant t : evicted)
+                active.remove(t.id);
+        }
+
+        // close them
+        int ret = 0;
+        for (Tenant t : evicted) {
+            if (evict(t))
+                ret++;
+        }
+        return ret;
+
+    }
+
+    /**
+     * <code>close()</code>
+     * <p>
+     *     Flushes and closes all open tenants, and stops the background threads. The registry cannot be used
+     *     afterwards.
+     * </p>
+     */
+    @Override
+    public void close() {
+
+        List<Tenant> evicted;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            evicted = new ArrayList<Tenant>(active.values());
+            active.clear();
+        }
+        if (sweeper != null)
+            sweeper.shutdownNow();
+        for (Tenant t : evicted)
+            evict(t);
+        flushExecutor.shutdown();
+
+    }
+
+    /* G E T T E R S */
+
+    /**
+     * <code>getActiveCount()</code>
+     *
+     * @return number of tenants open
+     */
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * <code>isActive()</code>
+     *
+     * @return whether the given tenant is open
+     */
+    public synchronized boolean isActive(String tenantId) {
+        return active.containsKey(tenantId);
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>acquire()</code>
+     * <p>
+     *     Takes a lease on a tenant, opening it if it is not open, then marks it as the most recently used and closes
+     *     the least recently used to make room. The tenant is locked only while its files are read, not for the
+     *     length of the lease. Each lease must be released, see {@link #release(Tenant) release}.
+     * </p>
+     *
+     * @return the contact manager of the tenant, open until the lease is released
+     * @throws IllegalStateException if the registry has been closed
+     */
+    private ContactManagerImpl acquire(Tenant tenant) {
+
+        // open tenant, locking only the tenant while its files are read
+        ContactManagerImpl ret;
+        synchronized (tenant) {
+            if (tenant.manager == null) {
+                synchronized (this) {
+                    if (closed)
+                        throw new IllegalStateException();
+                }
+                ContactManagerOptions options = template.copy()
+                        .setDirectory(new File(root, tenant.id))
+                        .setFlushExecutor(flushExecutor);
+                tenant.manager = new ContactManagerImpl(options);
+            }
+            tenant.leases++;
+            tenant.lastAccess = System.currentTimeMillis();
+            ret = tenant.manager;
+        }
+
+        // mark as most recently used, and close the least recently used to make room
+        List<Tenant> evicted = new ArrayList<Tenant>();
+        synchronized (this) {
+            if (!closed)
+                active.put(tenant.id, tenant);
+            Iterator<Tenant> it = active.values().iterator();
+            while (active.size() - evicted.size() > maxActive) {
+                Tenant t = it.next();
+                if (t == tenant)
+                    continue;
+                evicted.add(t);
+            }
+            for (Tenant t : evicted)
+                active.remove(t.id);
+        }
+        for (Tenant t : evicted)
+            evict(t);
+
+        return ret;
+
+    }
+
+    /**
+     * <code>release()</code>
+     * <p>
+     *     Releases a lease on a tenant, closing the tenant if it was chosen for closing while leased
+     * </p>
+     */
+    private void release(Tenant tenant) {
+
+        synchronized (tenant) {
+            tenant.leases--;
+            if (tenant.leases == 0 && tenant.closePending) {
+                tenant.closePending = false;
+                evict(tenant);
+            }
+        }
+
+    }
+
+    /**
+     * <code>evict()</code>
+     * <p>
+     *     Flushes and closes a tenant removed from the open tenants, unless it has been accessed again since. A
+     *     tenant with leases is not closed until they are released, see {@link #release(Tenant) release}. The tenant
+     *     is locked while flushing, so that it is not opened again until its files are written.
+     * </p>
+     *
+     * @return whether the tenant was closed
+     */
+    private boolean evict(Tenant tenant) {
+
+        synchronized (tenant) {
+            synchronized (this) {
+                if (active.containsKey(tenant.id))
+                    return false;
+            }
+            if (tenant.manager == null)
+                return false;
+            if (tenant.leases > 0) {
+                tenant.closePending = true;     // closed by the last lease released
+                return false;
+            }
+            tenant.manager.flush();
+            tenant.manager.closeChangeEvents();
+            tenant.manager = null;
+            return true;
+        }
+
+    }
+
+    /**
+     * <code>daemonThreads()</code>
+     *
+     * @return a factory of daemon threads with the given name, so that the registry does not keep the process alive
+     */
+    private static ThreadFactory daemonThreads(final String name) {
+
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+    }
+
+}
@@ -0,0 +1,170 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TenantRegistryTest {
+
+    private File root;
+    private TenantRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+
+        root = File.createTempFile("tenants", "");
+        root.delete();
+        root.mkdirs();
+        registry = new TenantRegistry(root, new ContactManagerOptions(), 2, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        registry.close();
+        delete(root);
+    }
+
+    @Test
+    public void testSeparateTenants() throws Exception {
+
+        registry.get("alpha").addNewContact("Alice", "alpha");
+        registry.get("beta").addNewContact("Bob", "beta");
+
+        assertEquals(1, registry.get("alpha").getContacts("").size());
+        assertEquals(1, registry.get("beta").getContacts("").size());
+        assertEquals(0, registry.get("alpha").getContacts("Bob").size());
+        assertSame(registry.get("alpha"), registry.get("alpha"));
+
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        registry.get("alpha").addNewContact("Alice", "alpha");
+        registry.get("beta");
+        registry.get("gamma");
+
+        // least recently used closed to make room, with its files flushed
+        assertEquals(2, registry.getActiveCount());
+        assertFalse(registry.isActive("alpha"));
+        assertTrue(new File(new File(root, "alpha"), "contacts.txt").exists());
+
+        // reopened from file on next access
+        Set<Contact> contacts = registry.get("alpha").getContacts("Alice");
+        assertEquals(1, contacts.size());
+        assertFalse(registry.isActive("beta"));
+
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+
+        TenantRegistry idle = new TenantRegistry(root, new ContactManagerOptions(), 10, 3600000);
+        try {
+            idle.get("alpha");
+            assertEquals(0, idle.evictIdle());
+            assertEquals(1, idle.getActiveCount());
+        } finally {
+            idle.close();
+        }
+        assertEquals(0, idle.getActiveCount());
+
+    }
+
+    @Test
+    public void testIdsPerTenant() throws Exception {
+
+        // each tenant continues its own IDs after reopening
+        registry.get("alpha").addNewContact("Alice", "alpha");
+        registry.get("beta").addNewContact("Bob", "beta");
+        registry.get("gamma");
+        registry.get("beta");
+        registry.get("alpha").addNewContact("Anne", "alpha");
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Contact c : registry.get("alpha").getContacts(""))
+            ids.add(c.getId());
+        assertEquals(2, ids.size());
+
+    }
+
+    @Test
+    public void testHandleReopensTenant() throws Exception {
+
+        // a handle held across the tenant being closed
+        ContactManager alpha = registry.get("alpha");
+        alpha.addNewContact("Alice", "alpha");
+        registry.get("beta");
+        registry.get("gamma");
+        assertFalse(registry.isActive("alpha"));
+
+        // reopens the tenant, and the change is saved when it is closed again
+        alpha.addNewContact("Anne", "alpha");
+        assertTrue(registry.isActive("alpha"));
+        assertEquals(2, alpha.getContacts("").size());
+        registry.get("beta");
+        registry.get("gamma");
+        ContactManagerOptions options = new ContactManagerOptions().setDirectory(new File(root, "alpha"));
+        assertEquals(2, new ContactManagerImpl(options).getContacts("").size());
+
+    }
+
+    @Test
+    public void testConcurrentCallsWhileEvicting() throws Exception {
+
+        // two tenants with room for one, so each call closes the other tenant
+        final TenantRegistry single = new TenantRegistry(root, new ContactManagerOptions(), 1, 0);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final ContactManager tenant = single.get("tenant" + (i % 2));
+            final String name = "Thread" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 25; j++)
+                        tenant.addNewContact(name, "" + j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        single.close();
+
+        // no change was made to a closed contact manager
+        for (int i = 0; i < 2; i++) {
+            ContactManagerOptions options = new ContactManagerOptions().setDirectory(new File(root, "tenant" + i));
+            assertEquals(50, new ContactManagerImpl(options).getContacts("").size());
+        }
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTenant() throws Exception {
+        registry.get("../alpha");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Exception {
+
+        registry.close();
+        registry.get("alpha");
+
+    }
+
+    private static void delete(File file) {
+
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children)
+                delete(child);
+        }
+        file.delete();
+
+    }
+
+}
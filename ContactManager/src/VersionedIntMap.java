@@ -0,0 +1,279 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned int map
+ *
+ * A map from non-negative int keys, such as ids, to values that can be frozen at its current contents in constant time,
+ * see {@link #freeze() freeze}, while it continues to change. The map counterpart of a
+ * {@link VersionedList VersionedList}, used by a {@link ChangeHistory ChangeHistory} to index the state it rebuilds.
+ *
+ * The values are held in a radix trie of nodes of 32 slots, indexed by five bits of the key at each level, so a key is
+ * found in O(log32 k) steps for keys below k. As in a versioned list, each node is stamped with the epoch it was
+ * created in, and each freeze starts a new epoch. A node of the current epoch is changed in place, while putting a key
+ * under a node of an earlier epoch copies the nodes on its path, at most O(log32 k) nodes, which a frozen map keeps as
+ * they were. A new map may start from a frozen map in constant time, sharing its nodes, see
+ * {@link #VersionedIntMap(Map) VersionedIntMap(Map)}.
+ *
+ * Removing a key, see {@link #remove(int) remove}, copies its path as a put does. The map is not synchronized: it
+ * must be changed by one thread at a time, but a frozen map, once safely published, may be read by any number of
+ * threads while the map is changed.
+ */
+public class VersionedIntMap<V> {
+
+    /* V A R I A B L E S */
+
+    private static final int BITS = 5;                  // bits of a key used at each level of the trie
+    private static final int WIDTH = 1 << BITS;         // slots per node
+    private static final int MASK = WIDTH - 1;          // mask of the bits used at each level
+    private static final AtomicLong EPOCHS = new AtomicLong();  // last epoch started by any map
+
+    private Node root;                                  // root node of the trie
+    private int shift;                                  // bits of a key below the root level
+    private int size;                                   // number of keys
+    private long epoch;                                 // current epoch, advanced by each freeze
+
+    /* I N N E R   C L A S S E S */
+
+    // a node of the trie, holding values in a leaf, otherwise the nodes below
+    private static final class Node {
+        final long epoch;                               // epoch the node was created in
+        final Object[] slots;                           // values or nodes
+
+        Node(long epoch, Object[] slots) {
+            this.epoch = epoch;
+            this.slots = slots;
+        }
+    }
+
+    // a read-only map of the values as they were when frozen, iterated in key order
+    private static final class Frozen<V> extends AbstractMap<Integer, V> {
+        private final Node root;
+        private final int shift;
+        private final int size;
+
+        Frozen(Node root, int shift, int size) {
+            this.root = root;
+            this.shift = shift;
+            this.size = size;
+        }
+
+        @Override
+        public V get(Object key) {
+            return key instanceof Integer ? VersionedIntMap.<V>lookup(root, shift, (Integer) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, V>> entrySet() {
+            Map<Integer, V> ret = new LinkedHashMap<Integer, V>();
+            collect(root, shift, 0, ret);
+            return Collections.unmodifiableSet(ret.entrySet());
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public VersionedIntMap() {
+        epoch = EPOCHS.incrementAndGet();
+        root = new Node(epoch, new Object[WIDTH]);
+    }
+
+    /**
+     * <code>VersionedIntMap(Map)</code> constructor
+     * <p>
+     *     Starts a map from the entries of a frozen map. The nodes of a map frozen from a versioned map are shared in
+     *     constant time, and copied as they are changed. The entries of any other map are copied.
+     * </p>
+     *
+     * @param frozen a frozen map, see {@link #freeze() freeze}
+     */
+    public VersionedIntMap(Map<Integer, V> frozen) {
+
+        this();
+        if (frozen instanceof Frozen) {
+            Frozen<V> from = (Frozen<V>) frozen;
+            root = from.root;
+            shift = from.shift;
+            size = from.size;
+        } else {
+            for (Map.Entry<Integer, V> e : frozen.entrySet())
+                put(e.getKey(), e.getValue());
+        }
+
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>get()</code>
+     *
+     * @return value of the given key, or null if none
+     */
+    public V get(int key) {
+        return VersionedIntMap.<V>lookup(root, shift, key);
+    }
+
+    /**
+     * <code>put()</code>
+     * <p>
+     *     Puts a value for a key, adding levels above the root until the key is in range. The nodes on the path of the
+     *     key that were created before the last freeze are copied first.
+     * </p>
+     *
+     * @param key a non-negative key
+     * @param value a value, not null
+     * @return the previous value of the key, or null if none
+     * @throws IllegalArgumentException if the key is negative
+     * @throws NullPointerException if the value is null
+     */
+    public V put(int key, V value) {
+
+        if (key < 0)
+            throw new IllegalArgumentException();
+        if (value == null)
+            throw new NullPointerException();
+
+        // add levels until the key is in range
+        while (shift < 30 && key >>> (shift + BITS) != 0) {
+            Object[] slots = new Object[WIDTH];
+            slots[0] = root;
+            root = new Node(epoch, slots);
+            shift += BITS;
+        }
+
+        // copy or create the nodes on the path
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (key >>> level) & MASK;
+            Node child = (Node) node.slots[slot];
+            node.slots[slot] = child == null ? new Node(epoch, new Object[WIDTH]) : editable(child);
+            node = (Node) node.slots[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        V ret = (V) node.slots[key & MASK];
+        node.slots[key & MASK] = value;
+        if (ret == null)
+            size++;
+        return ret;
+
+    }
+
+    /**
+     * <code>remove()</code>
+     * <p>
+     *     Removes a key. The nodes on the path of the key that were created before the last freeze are copied first,
+     *     so that a frozen map keeps the key. Emptied nodes are left in the trie.
+     * </p>
+     *
+     * @param key a key
+     * @return the previous value of the key, or null if none
+     */
+    public V remove(int key) {
+
+        if (get(key) == null)
+            return null;
+
+        // copy the nodes on the path
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (key >>> level) & MASK;
+            node.slots[slot] = editable((Node) node.slots[slot]);
+            node = (Node) node.slots[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        V ret = (V) node.slots[key & MASK];
+        node.slots[key & MASK] = null;
+        size--;
+        return ret;
+
+    }
+
+    /**
+     * <code>size()</code>
+     *
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * <code>freeze()</code>
+     * <p>
+     *     Starts a new epoch, so that the nodes reachable now are copied rather than changed from here on.
+     * </p>
+     *
+     * @return a read-only map of the entries as they are now, unaffected by later changes to this map
+     */
+    public Map<Integer, V> freeze() {
+
+        epoch = EPOCHS.incrementAndGet();
+        return new Frozen<V>(root, shift, size);
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>lookup()</code>
+     *
+     * @return the value of the given key in the trie with the given root, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V lookup(Node root, int shift, int key) {
+
+        if (key < 0 || (shift < 30 && key >>> (shift + BITS) != 0))
+            return null;
+        Node node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS)
+            node = (Node) node.slots[(key >>> level) & MASK];
+        return node == null ? null : (V) node.slots[key & MASK];
+
+    }
+
+    /**
+     * <code>collect()</code>
+     * <p>
+     *     Adds the entries below a node to a map, in key order
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> void collect(Node node, int level, int prefix, Map<Integer, V> into) {
+
+        for (int slot = 0; slot < WIDTH; slot++) {
+            Object o = node.slots[slot];
+            if (o == null)
+                continue;
+            int key = prefix | (slot << level);
+            if (level == 0)
+                into.put(key, (V) o);
+            else
+                collect((Node) o, level - BITS, key, into);
+        }
+
+    }
+
+    /**
+     * <code>editable()</code>
+     *
+     * @return the given node if created in the current epoch, otherwise a copy of it created in the current epoch
+     */
+    private Node editable(Node node) {
+        return node.epoch == epoch ? node : new Node(epoch, node.slots.clone());
+    }
+
+}
@@ -0,0 +1,92 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VersionedIntMapTest {
+
+    private VersionedIntMap<String> map;
+
+    @Before
+    public void setUp() throws Exception {
+
+        map = new VersionedIntMap<String>();
+
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+
+        // keys small and large enough for several levels of nodes
+        assertNull(map.put(3, "three"));
+        assertNull(map.put(70000, "large"));
+        assertEquals("three", map.put(3, "THREE"));
+        assertEquals(2, map.size());
+        assertEquals("THREE", map.get(3));
+        assertEquals("large", map.get(70000));
+        assertNull(map.get(4));
+        assertNull(map.get(Integer.MAX_VALUE));
+
+    }
+
+    @Test
+    public void testFrozenMapUnchanged() throws Exception {
+
+        for (int i = 0; i < 1100; i++)
+            map.put(i, "" + i);
+        Map<Integer, String> frozen = map.freeze();
+
+        // replace and add after the freeze
+        map.put(0, "changed");
+        map.put(5000, "added");
+
+        assertEquals(1100, frozen.size());
+        assertEquals("0", frozen.get(0));
+        assertFalse(frozen.containsKey(5000));
+        assertEquals("changed", map.get(0));
+        Iterator<Integer> keys = frozen.keySet().iterator();
+        assertEquals(Integer.valueOf(0), keys.next());
+        assertEquals(Integer.valueOf(1), keys.next());
+
+    }
+
+    @Test
+    public void testThawedMapSharesNodes() throws Exception {
+
+        map.put(1, "one");
+        Map<Integer, String> frozen = map.freeze();
+        VersionedIntMap<String> thawed = new VersionedIntMap<String>(frozen);
+
+        // changes to either map are seen by neither the other nor the frozen map
+        thawed.put(1, "thawed");
+        thawed.put(2, "two");
+        map.put(1, "original");
+        assertEquals("one", frozen.get(1));
+        assertEquals("thawed", thawed.get(1));
+        assertEquals("original", map.get(1));
+        assertNull(map.get(2));
+        assertEquals(2, thawed.size());
+
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+
+        map.put(1, "one");
+        map.put(2, "two");
+        Map<Integer, String> frozen = map.freeze();
+
+        // a removed key is kept by the frozen map
+        assertEquals("one", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.remove(70000));
+        assertNull(map.get(1));
+        assertEquals(1, map.size());
+        assertEquals("one", frozen.get(1));
+        assertEquals(2, frozen.size());
+
+    }
+
+}
@@ -0,0 +1,317 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned list
+ *
+ * A list that can be frozen at its current contents in constant time, see {@link #freeze() freeze}, while it continues
+ * to change. Used by the contact manager to pin a read-only view of its contacts and meetings without copying them,
+ * see {@link ContactManagerSnapshot ContactManagerSnapshot}.
+ *
+ * The elements are held in a trie of nodes of 32 slots, leaves holding the elements and each node above holding the
+ * nodes below it, so a position is found in O(log32 n) steps. Each node is stamped with the epoch it was created in,
+ * and each freeze starts a new epoch. A node of the current epoch is only reachable from the list, so is changed in
+ * place. A node of an earlier epoch may be reachable from a frozen list too, so replacing an element copies the nodes
+ * on its path instead, at most O(log32 n) nodes, and the frozen list keeps the nodes as they were. Elements appended
+ * beyond the end of every frozen list are written in place whatever the epoch.
+ *
+ * A new list may start from a frozen list in constant time, sharing its nodes, see
+ * {@link #VersionedList(List) VersionedList(List)}. Epochs are unique across all lists, and such a list copies the
+ * shared nodes its appends reach, so that no two lists ever change the same node.
+ *
+ * Only the last element can be removed, see {@link #removeLast() removeLast}. The list is not synchronized: it must
+ * be changed by one thread at a time, but a frozen list, once safely published, may be read by any number of threads
+ * while the list is changed.
+ */
+public class VersionedList<E> extends AbstractList<E> implements RandomAccess {
+
+    /* V A R I A B L E S */
+
+    private static final int BITS = 5;                  // bits of a position used at each level of the trie
+    private static final int WIDTH = 1 << BITS;         // slots per node
+    private static final int MASK = WIDTH - 1;          // mask of the bits used at each level
+    private static final AtomicLong EPOCHS = new AtomicLong();  // last epoch started by any list
+
+    private Node root;                                  // root node of the trie
+    private int shift;                                  // bits of a position below the root level
+    private int size;                                   // number of elements
+    private long epoch;                                 // current epoch, advanced by each freeze
+    private int frozenSize;                             // size of the largest frozen list
+    private boolean thawed;                             // started from a frozen list, so appends copy shared nodes
+
+    /* I N N E R   C L A S S E S */
+
+    // a node of the trie, holding elements in a leaf, otherwise the nodes below
+    private static final class Node {
+        final long epoch;                               // epoch the node was created in
+        final Object[] slots;                           // elements or nodes
+
+        Node(long epoch, Object[] slots) {
+            this.epoch = epoch;
+            this.slots = slots;
+        }
+    }
+
+    // a read-only list of the elements as they were when frozen
+    private static final class Frozen<E> extends AbstractList<E> implements RandomAccess {
+        private final Node root;
+        private final int shift;
+        private final int size;
+
+        Frozen(Node root, int shift, int size) {
+            this.root = root;
+            this.shift = shift;
+            this.size = size;
+        }
+
+        @Override
+        public E get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return VersionedList.<E>lookup(root, shift, index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /* C O N S T R U C T O R S */
+
+    public VersionedList() {
+        epoch = EPOCHS.incrementAndGet();
+        root = new Node(epoch, new Object[WIDTH]);
+    }
+
+    /**
+     * <code>VersionedList(List)</code> constructor
+     * <p>
+     *     Starts a list from the elements of a frozen list. The nodes of a list frozen from a versioned list are shared
+     *     in constant time, and copied as they are changed. The elements of any other list are copied.
+     * </p>
+     *
+     * @param frozen a frozen list, see {@link #freeze() freeze}
+     */
+    public VersionedList(List<E> frozen) {
+
+        this();
+        if (frozen instanceof Frozen) {
+            Frozen<E> from = (Frozen<E>) frozen;
+            root = from.root;
+            shift = from.shift;
+            size = from.size;
+            frozenSize = size;              // every node is shared with the frozen list
+            thawed = true;
+        } else {
+            addAll(frozen);
+        }
+
+    }
+
+    /* L I S T   M E T H O D S */
+
+    @Override
+    public E get(int index) {
+        checkIndex(index);
+        return VersionedList.<E>lookup(root, shift, index);
+    }
+
+    /**
+     * <code>set()</code>
+     * <p>
+     *     Replaces the element at the given position. If a frozen list may hold the position, the nodes on its path
+     *     that were created before the last freeze are copied first.
+     * </p>
+     *
+     * @return the element replaced
+     */
+    @Override
+    public E set(int index, E e) {
+
+        checkIndex(index);
+        boolean shared = index < frozenSize;
+        if (shared)
+            root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (index >>> level) & MASK;
+            if (shared)
+                node.slots[slot] = editable((Node) node.slots[slot]);
+            node = (Node) node.slots[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        E ret = (E) node.slots[index & MASK];
+        node.slots[index & MASK] = e;
+        return ret;
+
+    }
+
+    /**
+     * <code>add()</code>
+     * <p>
+     *     Appends an element, adding a level above the root once the trie is full
+     * </p>
+     *
+     * @return true
+     */
+    @Override
+    public boolean add(E e) {
+
+        // add a level once every slot below the root is used
+        if ((long) size == 1L << (shift + BITS)) {
+            Object[] slots = new Object[WIDTH];
+            slots[0] = root;
+            root = new Node(epoch, slots);
+            shift += BITS;
+        }
+
+        // create any missing nodes on the path, copying those a frozen list may hold the position in
+        boolean shared = thawed || size < frozenSize;
+        if (shared)
+            root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (size >>> level) & MASK;
+            if (node.slots[slot] == null)
+                node.slots[slot] = new Node(epoch, new Object[WIDTH]);
+            else if (shared)
+                node.slots[slot] = editable((Node) node.slots[slot]);
+            node = (Node) node.slots[slot];
+        }
+
+        node.slots[size & MASK] = e;
+        size++;
+        modCount++;
+        return true;
+
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>removeLast()</code>
+     * <p>
+     *     Removes the last element. If a frozen list may hold the position, the nodes on its path are copied first, as
+     *     for {@link #set(int, Object) set}, and a position freed within a frozen list is copied again when reused.
+     * </p>
+     *
+     * @return the element removed
+     * @throws NoSuchElementException if the list is empty
+     */
+    public E removeLast() {
+
+        if (size == 0)
+            throw new NoSuchElementException();
+        E ret = set(size - 1, null);
+        size--;
+        modCount++;
+        return ret;
+
+    }
+
+    /**
+     * <code>freeze()</code>
+     * <p>
+     *     Starts a new epoch, so that the nodes reachable now are copied rather than changed from here on.
+     * </p>
+     *
+     * @return a read-only list of the elements as they are now, unaffected by later changes to this list
+     */
+    public List<E> freeze() {
+
+        epoch = EPOCHS.incrementAndGet();
+        frozenSize = Math.max(frozenSize, size);
+        return new Frozen<E>(root, shift, size);
+
+    }
+
+    /* P U B L I C   S T A T I C */
+
+    /**
+     * <code>index()</code>
+     * <p>
+     *     Returns a read-only map by id over a frozen list, given the position of each id in the list it was frozen
+     *     from. Positions may be added to the given map as the list grows: ids at positions beyond the end of the
+     *     frozen list are not found. The map must be safe to read while it is changed, such as a
+     *     <code>ConcurrentHashMap</code>, and must not move an id once added.
+     * </p>
+     *
+     * @param frozen a frozen list
+     * @param positions position of each id in the list, including positions beyond the end of the frozen list
+     * @return elements of the frozen list by id
+     */
+    public static <E> Map<Integer, E> index(final List<E> frozen, final Map<Integer, Integer> positions) {
+
+        return new AbstractMap<Integer, E>() {
+
+            @Override
+            public E get(Object key) {
+                Integer position = positions.get(key);
+                return position == null || position >= frozen.size() ? null : frozen.get(position);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Map.Entry<Integer, E>> entrySet() {
+                Set<Map.Entry<Integer, E>> ret = new LinkedHashSet<Map.Entry<Integer, E>>();
+                for (Map.Entry<Integer, Integer> entry : positions.entrySet()) {
+                    if (entry.getValue() < frozen.size())
+                        ret.add(new AbstractMap.SimpleImmutableEntry<Integer, E>(entry.getKey(),
+                                frozen.get(entry.getValue())));
+                }
+                return ret;
+            }
+
+        };
+
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>lookup()</code>
+     *
+     * @return the element at the given position of the trie with the given root
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> E lookup(Node root, int shift, int index) {
+
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Node) node.slots[(index >>> level) & MASK];
+        return (E) node.slots[index & MASK];
+
+    }
+
+    /**
+     * <code>editable()</code>
+     *
+     * @return the given node if created in the current epoch, otherwise a copy of it created in the current epoch
+     */
+    private Node editable(Node node) {
+        return node.epoch == epoch ? node : new Node(epoch, node.slots.clone());
+    }
+
+    /**
+     * <code>checkIndex()</code>
+     * <p>
+     *     Throws an IndexOutOfBoundsException if the given position is not in use
+     * </p>
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+}
@@ -0,0 +1,141 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VersionedListTest {
+
+    private VersionedList<Integer> list;
+
+    @Before
+    public void setUp() throws Exception {
+
+        list = new VersionedList<Integer>();
+
+    }
+
+    @Test
+    public void testAddGetAndSet() throws Exception {
+
+        // enough elements for three levels of nodes
+        for (int i = 0; i < 5000; i++)
+            list.add(i);
+        assertEquals(5000, list.size());
+        assertEquals(Integer.valueOf(4999), list.get(4999));
+
+        assertEquals(Integer.valueOf(1234), list.set(1234, -1));
+        assertEquals(Integer.valueOf(-1), list.get(1234));
+        assertEquals(Integer.valueOf(1235), list.get(1235));
+
+    }
+
+    @Test
+    public void testFrozenListUnchanged() throws Exception {
+
+        for (int i = 0; i < 1100; i++)
+            list.add(i);
+        List<Integer> frozen = list.freeze();
+
+        // replace, append, and replace again after a second freeze
+        list.set(0, -1);
+        list.set(1099, -1);
+        for (int i = 1100; i < 2000; i++)
+            list.add(i);
+        List<Integer> second = list.freeze();
+        list.set(0, -2);
+        list.set(1500, -2);
+
+        assertEquals(1100, frozen.size());
+        for (int i = 0; i < 1100; i++)
+            assertEquals(Integer.valueOf(i), frozen.get(i));
+        assertEquals(2000, second.size());
+        assertEquals(Integer.valueOf(-1), second.get(0));
+        assertEquals(Integer.valueOf(1500), second.get(1500));
+        assertEquals(Integer.valueOf(-2), list.get(0));
+        assertEquals(Integer.valueOf(-2), list.get(1500));
+
+        try {
+            frozen.set(0, 0);
+            fail("frozen list should be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+    }
+
+    @Test
+    public void testThawedListSharesNodes() throws Exception {
+
+        for (int i = 0; i < 40; i++)
+            list.add(i);
+        List<Integer> frozen = list.freeze();
+        VersionedList<Integer> thawed = new VersionedList<Integer>(frozen);
+
+        // appends and replacements in either list are seen by neither the other nor the frozen list
+        thawed.add(-1);
+        thawed.set(0, -1);
+        list.add(40);
+        list.set(1, -2);
+        assertEquals(Integer.valueOf(-1), thawed.get(40));
+        assertEquals(Integer.valueOf(1), thawed.get(1));
+        assertEquals(Integer.valueOf(40), list.get(40));
+        assertEquals(Integer.valueOf(0), list.get(0));
+        assertEquals(40, frozen.size());
+        assertEquals(Integer.valueOf(0), frozen.get(0));
+        assertEquals(Integer.valueOf(1), frozen.get(1));
+
+    }
+
+    @Test
+    public void testRemoveLast() throws Exception {
+
+        for (int i = 0; i < 40; i++)
+            list.add(i);
+        List<Integer> frozen = list.freeze();
+
+        // remove below the end of the frozen list, then reuse the positions freed
+        assertEquals(Integer.valueOf(39), list.removeLast());
+        assertEquals(Integer.valueOf(38), list.removeLast());
+        list.add(-1);
+        List<Integer> second = list.freeze();
+        list.removeLast();
+        list.add(-2);
+
+        assertEquals(40, frozen.size());
+        assertEquals(Integer.valueOf(38), frozen.get(38));
+        assertEquals(Integer.valueOf(39), frozen.get(39));
+        assertEquals(39, second.size());
+        assertEquals(Integer.valueOf(-1), second.get(38));
+        assertEquals(39, list.size());
+        assertEquals(Integer.valueOf(-2), list.get(38));
+
+        try {
+            new VersionedList<Integer>().removeLast();
+            fail("an empty list has no last element");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+
+        Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+        list.add(10);
+        positions.put(7, 0);
+        Map<Integer, Integer> index = VersionedList.index(list.freeze(), positions);
+
+        // an id added after the freeze is not found in the frozen list
+        list.add(11);
+        positions.put(8, 1);
+        assertEquals(Integer.valueOf(10), index.get(7));
+        assertNull(index.get(8));
+        assertTrue(index.containsKey(7));
+        assertEquals(1, index.size());
+
+    }
+
+}
@@ -0,0 +1,48 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads
+ *
+ * Creates executors that start a virtual thread for each task, where the runtime has virtual threads, so that many
+ * thousands of tasks can wait at once without a platform thread each. The factory method is looked up by name, so
+ * that the contact manager also runs on runtimes without virtual threads, where a pool of daemon platform threads
+ * is used instead.
+ */
+class VirtualThreads {
+
+    /* C O N S T R U C T O R S */
+
+    private VirtualThreads() {
+    }
+
+    /* P A C K A G E   S T A T I C */
+
+    /**
+     * <code>newExecutor()</code>
+     *
+     * @param name name of the platform threads, if virtual threads are not available
+     * @param threads number of platform threads, if virtual threads are not available
+     * @return an executor starting a virtual thread per task, or else a pool of the given number of daemon threads
+     */
+    static ExecutorService newExecutor(final String name, int threads) {
+
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,639 @@
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Xml store
+ *
+ * Writes a {@link StoreSnapshot StoreSnapshot} of a contact manager to file in the contact manager's xml format, and
+ * reads it back. See {@link ContactManagerImpl ContactManagerImpl} for the format.
+ *
+ * A file is read in two steps. Contacts are read first, then meetings, whose contacts are referenced by id, are read
+ * against an index of contacts. When a contact manager's state is split across several files, every file's contacts
+ * are read before any meetings, so a meeting may reference a contact held in another file.
+ *
+ * A file is saved by writing it in full to a temporary file alongside it, which is then renamed over the file. The
+ * rename is atomic where the file system supports it, so the file is never left part written.
+ *
+ * A file may be saved gzip compressed, see {@link #save(StoreSnapshot, File, boolean) save}. The xml is repetitive,
+ * so compresses to a fraction of its size. Compressed files are detected by their gzip header when read, so a file
+ * is read whether or not it was saved compressed.
+ *
+ * Names and notes read may be canonicalized through a {@link StringPool StringPool}, so that equal strings read from
+ * many elements share one instance. The number of strings replaced by a pooled string is counted, see
+ * {@link #getDeduplicated() getDeduplicated}.
+ *
+ * An xml store is not thread-safe, but is cheap to create, so one is created for each file read or written.
+ */
+public class XmlStore {
+
+    /* V A R I A B L E S */
+
+    private static final int GZIP_MAGIC = 0x1f8b;   // first two bytes of a gzip compressed file
+    private static final int BUFFER_SIZE = 65536;   // size of file buffers
+
+    private final SimpleDateFormat format;      // format for dates in file
+    private final SimpleDateFormat dayFormat;   // format for dates in file held to the day only
+    private final StringPool pool;              // pool of names and notes read, or null to read them as they are
+    private long deduplicated;                  // number of strings read replaced by a pooled string
+
+    /* C O N S T R U C T O R S */
+
+    public XmlStore() {
+        this(null);
+    }
+
+    /**
+     * <code>XmlStore(StringPool)</code> constructor
+     *
+     * @param pool pool to canonicalize the names and notes read through, or null to read them as they are
+     */
+    public XmlStore(StringPool pool) {
+        format = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+        dayFormat = new SimpleDateFormat("dd-MM-yyyy");
+        this.pool = pool;
+    }
+
+    /* P U B L I C   M E T H O D S */
+
+    /**
+     * <code>save()</code>
+     * <p>
+     *     Writes a snapshot to a temporary file, then renames the temporary file over the given file
+     * </p>
+     *
+     * @param snapshot snapshot to save
+     * @param file file to save to
+     * @throws IOException if the file cannot be written
+     */
+    public void save(StoreSnapshot snapshot, File file) throws IOException {
+        save(snapshot, file, false);
+    }
+
+    /**
+     * <code>save()</code>
+     * <p>
+     *     As {@link #save(StoreSnapshot, File) save}, but gzip compressing the file if asked
+     * </p>
+     *
+     * @param snapshot snapshot to save
+     * @param file file to save to
+     * @param compress true to compress the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(StoreSnapshot snapshot, File file, boolean compress) throws IOException {
+
+        File temp = new File(file.getPath() + ".tmp");
+
+        // write the snapshot to the temporary file, compressing if asked
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE);
+        if (compress)
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        try {
+            write(snapshot, out);
+        } finally {
+            out.close();
+        }
+
+        // rename the temporary file over the file, atomically if possible
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+    }
+
+    /**
+     * <code>write()</code>
+     * <p>
+     *     Writes a snapshot as xml to an output stream
+     * </p>
+     *
+     * @param snapshot snapshot to write
+     * @param out stream to write to
+     * @throws IOException if the xml cannot be written
+     */
+    public void write(StoreSnapshot snapshot, OutputStream out) throws IOException {
+
+        // file write setup
+        Document output;                                    // document to be output to file
+        Element managerRoot, contactRoot, meetingRoot,
+                recurringMeetingRoot;                       // xml elements
+        DocumentBuilderFactory docFactory;                  // for xml output
+        DocumentBuilder docBuilder;                         // for xml output
+
+        // file write
+        try {
+
+            docFactory = DocumentBuilderFactory.newInstance();
+            docBuilder = docFactory.newDocumentBuilder();
+
+            // 1. root element - contactmanager
+            output = docBuilder.newDocument();
+            Element rootElement = output.createElement("contactmanager");
+            output.appendChild(rootElement);
+
+            // 2. manager element - manager
+            managerRoot = output.createElement("manager");
+            rootElement.appendChild(managerRoot);
+
+            // output unique id seed
+            Element eId = output.createElement("CM_ID");
+            eId.appendChild(output.createTextNode("" + snapshot.getCmId()));
+            managerRoot.appendChild(eId);
+
+            // 3. contacts element - contact
+            contactRoot = output.createElement("contacts");
+            rootElement.appendChild(contactRoot);
+
+            // 4. meetings element - meeting
+            meetingRoot = output.createElement("meetings");
+            rootElement.appendChild(meetingRoot);
+
+            // 5. recurring meetings element - recurringMeeting
+            recurringMeetingRoot = output.createElement("recurringMeetings");
+            rootElement.appendChild(recurringMeetingRoot);
+
+            // write contacts to document
+            for (Contact c : snapshot.getContacts()) {
+                // call internal method to setup contact elements
+                addContactElement(output, contactRoot, "" + c.getId(), c.getName(), c.getNotes());
+            }
+
+            // write meetings to output
+            for (Meeting m : snapshot.getMeetings()) {
+
+                // check meeting type
+                if (m instanceof PastMeeting) {
+
+                    // call internal method to setup meeting element
+                    PastMeeting pm = (PastMeeting) m;
+                    addMeetingElement(output,
+                            meetingRoot,
+                            "" + pm.getId(),
+                            ContactManagerImpl.MeetingType.PAST.toString(),
+                            pm.getDate(),
+                            pm.getDuration(),
+                            pm.getContacts(),
+                            pm.getNotes());
+
+                } else if (m instanceof FutureMeeting) {
+
+                    // call internal method to setup meeting element
+                    FutureMeeting fm = (FutureMeeting) m;
+                    addMeetingElement(output,
+                            meetingRoot,
+                            "" + fm.getId(),
+                            ContactManagerImpl.MeetingType.FUTURE.toString(),
+                            fm.getDate(),
+                            fm.getDuration(),
+                            fm.getContacts(),
+                            "");
+
+                }
+
+            }
+
+            // write recurring meetings to output
+            for (RecurringMeeting r : snapshot.getRecurringMeetings()) {
+                // call internal method to setup recurring meeting element
+                addRecurringMeetingElement(output, recurringMeetingRoot, r);
+            }
+
+            // write the output into xml file
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            Transformer transformer = transformerFactory.newTransformer();
+            DOMSource source = new DOMSource(output);
+            StreamResult result = new StreamResult(out);
+
+            // write
+            transformer.transform(source, result);
+
+        // handle exceptions as failures to write
+        } catch (ParserConfigurationException pce) {
+            throw new IOException(pce);
+        } catch (TransformerException tfe) {
+            throw new IOException(tfe);
+        }
+
+    }
+
+    /* R E A D */
+
+    /**
+     * <code>parse()</code>
+     * <p>
+     *     Reads an xml file into a document, to be read by the other read methods. A gzip compressed file is
+     *     decompressed as it is read.
+     * </p>
+     *
+     * @param file file to read
+     * @return document read
+     * @throws IOException if the file cannot be read or is not well formed
+     */
+    public Document parse(File file) throws IOException {
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+
+            // decompress if the file starts with the gzip header
+            in.mark(2);
+            int magic = (in.read() << 8) | in.read();
+            in.reset();
+            if (magic == GZIP_MAGIC)
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+
+            // xml DOM builder
+            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();    // setup xml read
+            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();                  // setup xml read
+            Document doc = dBuilder.parse(in, file.toURI().toString());                 // read in file
+            doc.getDocumentElement().normalize();                                       // normalise xml
+            return doc;
+
+        // handle exceptions as failures to read
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+
+    }
+
+    /**
+     * <code>readCmId()</code>
+     *
+     * @return the unique ID seed in the manager section of a document
+     */
+    public int readCmId(Document doc) {
+
+        NodeList managerNodes = doc.getElementsByTagName("manager");    // get manager section
+        return Integer.parseInt(managerNodes.item(0).getTextContent()); // only one node expected
+                                                                        // containing unique ID seed
+    }
+
+    /**
+     * <code>readContacts()</code>
+     *
+     * @return the contacts in the contacts section of a document
+     */
+    public List<Contact> readContacts(Document doc) {
+
+        List<Contact> ret = new ArrayList<Contact>();
+
+        NodeList contactNodes = doc.getElementsByTagName("contact");    // get list of contact nodes
+        for (int i = 0; i < contactNodes.getLength(); i++) {
+
+            Node nNode = contactNodes.item(i);      // current node
+
+            if (nNode.getNodeType() == Node.ELEMENT_NODE) {     // read only element type nodes
+
+                Element eElement = (Element) nNode; // current element node
+
+                // create contact based on node
+                ret.add(new ContactImpl(Integer.parseInt(eElement.getAttribute("id")),
+                        intern(eElement.getElementsByTagName("name").item(0).getTextContent()),
+                        intern(eElement.getElementsByTagName("notes").item(0).getTextContent())));
+
+            }
+        }
+
+        return ret;
+
+    }
+
+    /**
+     * <code>readMeetings()</code>
+     * <p>
+     *     Reads the meetings section of a document. Meeting contacts are referenced by id, and are found in the given
+     *     index of contacts, which may hold contacts read from other documents.
+     * </p>
+     *
+     * @param doc document to read
+     * @param contactIndex every known contact by id
+     * @return the past and future meetings in the document
+     * @throws IOException if a date cannot be read
+     * @throws IllegalArgumentException if a meeting contact is not in the index
+     */
+    public List<Meeting> readMeetings(Document doc, Map<Integer, Contact> contactIndex) throws IOException {
+
+        List<Meeting> ret = new ArrayList<Meeting>();
+
+        NodeList meetingNodes = doc.getElementsByTagName("meeting");    // get list of meeting nodes
+        for (int i = 0; i < meetingNodes.getLength(); i++) {            // read each node into meeting list
+
+            Node nMeeting = meetingNodes.item(i);      // current node
+
+            if (nMeeting.getNodeType() == Node.ELEMENT_NODE) {     // read only element type nodes
+
+                Element eElement = (Element) nMeeting; // current element node
+
+                // meeting date from file as calendar object
+                Calendar meetingDate = Calendar.getInstance();  // create calendar object
+                meetingDate.setTime(parseDate(eElement.getElementsByTagName("date").item(0).getTextContent()));
+
+                // meeting notes
+                String meetingNotes = intern(eElement.getElementsByTagName("notes").item(0).getTextContent());
+
+                // meeting duration, if present
+                int meetingDuration = Meeting.DEFAULT_DURATION;
+                if (eElement.getElementsByTagName("duration").getLength() > 0)
+                    meetingDuration = Integer.parseInt(eElement.getElementsByTagName("duration").item(0).getTextContent());
+
+                // meeting contacts collection from file
+                Set<Contact> meetingContacts = readMeetingContacts(eElement, contactIndex);
+
+                // determine meeting type and add meeting to meeting list
+                int id = Integer.parseInt(eElement.getAttribute("id"));
+                if (eElement.getAttribute("type").equals(ContactManagerImpl.MeetingType.PAST.toString()))
+                    ret.add(new PastMeetingImpl(id, meetingDate, meetingContacts, meetingNotes, meetingDuration));
+                else if (eElement.getAttribute("type").equals(ContactManagerImpl.MeetingType.FUTURE.toString()))
+                    ret.add(new FutureMeetingImpl(id, meetingDate, meetingContacts, meetingDuration));
+
+            }
+        }
+
+        return ret;
+
+    }
+
+    /**
+     * <code>readRecurringMeetings()</code>
+     * <p>
+     *     Reads the recurring meetings section of a document. Contacts are found as for
+     *     {@link #readMeetings(Document, Map) readMeetings}.
+     * </p>
+     *
+     * @param doc document to read
+     * @param contactIndex every known contact by id
+     * @return each series of recurring meetings in the document
+     * @throws IOException if a date cannot be read
+     * @throws IllegalArgumentException if a meeting contact is not in the index
+     */
+    public List<RecurringMeeting> readRecurringMeetings(Document doc, Map<Integer, Contact> contactIndex)
+            throws IOException {
+
+        List<RecurringMeeting> ret = new ArrayList<RecurringMeeting>();
+
+        NodeList recurringMeetingNodes = doc.getElementsByTagName("recurringMeeting");  // get list of series nodes
+        for (int i = 0; i < recurringMeetingNodes.getLength(); i++) {   // read each node into series list
+
+            Element eElement = (Element) recurringMeetingNodes.item(i);     // current element node
+
+            // first occurrence date from file as calendar object
+            Calendar start = Calendar.getInstance();
+            start.setTime(parseDate(eElement.getElementsByTagName("date").item(0).getTextContent()));
+
+            ret.add(new RecurringMeeting(Integer.parseInt(eElement.getAttribute("id")),
+                    start,
+                    Integer.parseInt(eElement.getElementsByTagName("duration").item(0).getTextContent()),
+                    readMeetingContacts(eElement, contactIndex),
+                    RecurringMeeting.Frequency.fromString(eElement.getAttribute("frequency")),
+                    Integer.parseInt(eElement.getAttribute("count")),
+                    Integer.parseInt(eElement.getAttribute("materialized"))));
+
+        }
+
+        return ret;
+
+    }
+
+    /* G E T T E R S */
+
+    /**
+     * <code>getDeduplicated()</code>
+     *
+     * @return number of names and notes read that were replaced by an equal string already pooled
+     */
+    public long getDeduplicated() {
+        return deduplicated;
+    }
+
+    /* P R I V A T E   M E T H O D S */
+
+    /**
+     * <code>intern()</code>
+     *
+     * @return the pooled string equal to a string read, or the string itself if there is no pool
+     */
+    private String intern(String s) {
+
+        if (pool == null)
+            return s;
+        String ret = pool.intern(s);
+        if (ret != s)
+            deduplicated++;
+        return ret;
+
+    }
+
+    /**
+     * <code>parseDate()</code>
+     * <p>
+     *     Reads a date from file, held either to the minute or to the day only
+     * </p>
+     *
+     * @return date read
+     * @throws IOException if the date is held in neither format
+     */
+    private Date parseDate(String date) throws IOException {
+
+        try {
+            return format.parse(date);          // date held to the minute
+        } catch (ParseException e) {
+            try {
+                return dayFormat.parse(date);   // date held to the day only
+            } catch (ParseException de) {
+                throw new IOException(de);
+            }
+        }
+
+    }
+
+    /**
+     * <code>readMeetingContacts()</code>
+     * <p>
+     *     Reads the meeting contacts of a meeting or recurring meeting element, finding each contact by id in the
+     *     given index
+     * </p>
+     *
+     * @return contacts of the meeting
+     * @throws IllegalArgumentException if a contact is not in the index
+     */
+    private Set<Contact> readMeetingContacts(Element eElement, Map<Integer, Contact> contactIndex) {
+
+        Set<Contact> meetingContacts = new HashSet<Contact>();  // set for current meeting
+
+        Element mcs = (Element) eElement.getElementsByTagName("meetingContacts").item(0);
+        NodeList meetingContactNodes = mcs.getElementsByTagName("meetingContact");  // get list of meeting contact nodes
+
+        for (int j = 0; j < meetingContactNodes.getLength(); j++) {     // read each node into current meeting contact set
+
+            Node nMeetingContactNode = meetingContactNodes.item(j);             // current node
+
+            if (nMeetingContactNode.getNodeType() == Node.ELEMENT_NODE) {       // read only element type nodes
+
+                Element eMeetingContactElement = (Element) nMeetingContactNode; // current element node
+
+                int id = Integer.parseInt(eMeetingContactElement.getAttribute("id"));   // get meeting ID
+
+                Contact c = contactIndex.get(id);       // find contact by ID
+                if (c == null)                          // contact must be known
+                    throw new IllegalArgumentException();
+                meetingContacts.add(c);                 // add contact to meeting contacts set
+
+            }
+        }
+
+        return meetingContacts;
+
+    }
+
+    /**
+     * <code>addContactElement()</code>
+     * <p>
+     *     Creates an xml element for a contact
+     * </p>
+     */
+    private void addContactElement(Document output, Element root, String id, String name, String notes) {
+
+        Element contact, eName, eNotes;     // elements
+
+        // contact root
+        contact = output.createElement("contact");
+        root.appendChild(contact);
+
+        // set contact id attribute
+        contact.setAttribute("id", id);
+
+        // add contact name
+        eName = output.createElement("name");
+        eName.appendChild(output.createTextNode(name));
+        contact.appendChild(eName);
+
+        // add contact notes
+        eNotes = output.createElement("notes");
+        eNotes.appendChild(output.createTextNode(notes));
+        contact.appendChild(eNotes);
+
+    }
+
+    /**
+     * <code>addMeetingElement()</code>
+     * <p>
+     *     Creates an xml element for a meeting
+     * </p>
+     */
+    private void addMeetingElement(Document output,
+                                   Element root,
+                                   String id,
+                                   String type,
+                                   Calendar date,
+                                   int duration,
+                                   Set<Contact> meetingContacts,
+                                   String notes) {
+
+        Element meeting, eDate, eDuration, eMeetingContacts, eNotes;    // elements
+
+        // meeting root
+        meeting = output.createElement("meeting");
+        root.appendChild(meeting);
+
+        // set meeting id attribute
+        meeting.setAttribute("id", id);
+        meeting.setAttribute("type", type);
+
+        // meeting date
+        eDate = output.createElement("date");
+        eDate.appendChild(output.createTextNode(format.format(date.getTime())));
+        meeting.appendChild(eDate);
+
+        // meeting duration
+        eDuration = output.createElement("duration");
+        eDuration.appendChild(output.createTextNode("" + duration));
+        meeting.appendChild(eDuration);
+
+        // meeting contacts
+        eMeetingContacts = output.createElement("meetingContacts");
+        meeting.appendChild(eMeetingContacts);
+
+        // iterate through set of contacts
+        for (Contact c : meetingContacts) {
+
+            Element contact = output.createElement("meetingContact");
+            contact.setAttribute("id", "" + c.getId());
+            eMeetingContacts.appendChild(contact);
+
+        }
+
+        // meeting notes
+        eNotes = output.createElement("notes");
+        eNotes.appendChild(output.createTextNode(notes));
+        meeting.appendChild(eNotes);
+
+    }
+
+    /**
+     * <code>addRecurringMeetingElement()</code>
+     * <p>
+     *     Creates an xml element for a series of recurring meetings
+     * </p>
+     */
+    private void addRecurringMeetingElement(Document output, Element root, RecurringMeeting r) {
+
+        Element series, eDate, eDuration, eMeetingContacts;     // elements
+
+        // series root
+        series = output.createElement("recurringMeeting");
+        root.appendChild(series);
+
+        // set series attributes
+        series.setAttribute("id", "" + r.getFirstId());
+        series.setAttribute("frequency", r.getFrequency().toString());
+        series.setAttribute("count", "" + r.getCount());
+        series.setAttribute("materialized", "" + r.getMaterialized());
+
+        // first occurrence date
+        eDate = output.createElement("date");
+        eDate.appendChild(output.createTextNode(format.format(r.getStart().getTime())));
+        series.appendChild(eDate);
+
+        // occurrence duration
+        eDuration = output.createElement("duration");
+        eDuration.appendChild(output.createTextNode("" + r.getDuration()));
+        series.appendChild(eDuration);
+
+        // series contacts
+        eMeetingContacts = output.createElement("meetingContacts");
+        series.appendChild(eMeetingContacts);
+        for (Contact c : r.getContacts()) {
+            Element contact = output.createElement("meetingContact");
+            contact.setAttribute("id", "" + c.getId());
+            eMeetingContacts.appendChild(contact);
+        }
+
+    }
+
+}